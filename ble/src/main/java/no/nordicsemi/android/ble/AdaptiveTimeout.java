@@ -0,0 +1,174 @@
+/*
+ * Copyright (c) 2018, Nordic Semiconductor
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its contributors may be used to endorse or promote products derived from this
+ * software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE
+ * USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package no.nordicsemi.android.ble;
+
+import androidx.annotation.NonNull;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Estimates request timeouts from observed latencies, per device and request type.
+ * <p>
+ * The estimator follows the TCP retransmission timeout algorithm (RFC 6298): it keeps
+ * a smoothed latency and its mean deviation, and the timeout is set to the smoothed latency
+ * plus 4 deviations, which covers nearly all samples of a stable link. Each timeout doubles
+ * the next one, until a request completes again.
+ */
+final class AdaptiveTimeout {
+	private static final int ALPHA_SHIFT = 3; // 1/8
+	private static final int BETA_SHIFT = 2;  // 1/4
+	private static final int K = 4;
+	private static final int MAX_BACKOFF_SHIFT = 6;
+
+	private static final class Estimate {
+		/** Smoothed latency, in milliseconds. 0 if there was no sample yet. */
+		long srtt;
+		/** Latency variation, in milliseconds. */
+		long rttvar;
+		/** The number of timeouts since the last sample. */
+		int backoff;
+	}
+
+	private static final int TYPES = Request.Type.values().length;
+
+	private final Map<String, Estimate[]> estimates = new HashMap<>();
+	private long minTimeout, maxTimeout;
+
+	/**
+	 * Enables the estimator.
+	 *
+	 * @param minTimeout the lower bound of the timeout, in milliseconds.
+	 * @param maxTimeout the upper bound of the timeout, in milliseconds. This value is also used
+	 *                   until the first latency sample is known.
+	 */
+	synchronized void enable(final long minTimeout, final long maxTimeout) {
+		this.minTimeout = minTimeout;
+		this.maxTimeout = maxTimeout;
+	}
+
+	/**
+	 * Disables the estimator and clears all samples.
+	 */
+	synchronized void disable() {
+		this.minTimeout = 0;
+		this.maxTimeout = 0;
+		estimates.clear();
+	}
+
+	synchronized boolean isEnabled() {
+		return maxTimeout > 0;
+	}
+
+	/**
+	 * Returns the timeout to be used for the next request of given type to the given device.
+	 *
+	 * @param address the device address.
+	 * @param type    the request type.
+	 * @return The timeout in milliseconds, or 0 if disabled.
+	 */
+	synchronized long getTimeout(@NonNull final String address, @NonNull final Request.Type type) {
+		if (maxTimeout <= 0)
+			return 0;
+		final Estimate estimate = estimate(address, type, false);
+		if (estimate == null || estimate.srtt == 0)
+			return maxTimeout;
+		final long rto = estimate.srtt + Math.max(1, K * estimate.rttvar);
+		return Math.max(minTimeout, Math.min(maxTimeout, rto << estimate.backoff));
+	}
+
+	/**
+	 * Returns the timeout to be used for the given request to the given device.
+	 * <p>
+	 * Requests waiting for an event that may take any time to occur are excluded.
+	 *
+	 * @param address the device address.
+	 * @param request the request.
+	 * @return The timeout in milliseconds, or 0 if disabled or not applicable.
+	 */
+	long getTimeout(@NonNull final String address, @NonNull final TimeoutableRequest request) {
+		// Awaiting requests without a trigger wait for an event that may never come,
+		// e.g. a button press on the device. There is no latency to learn from.
+		if (request instanceof AwaitingRequest && ((AwaitingRequest<?>) request).getTrigger() == null)
+			return 0;
+		// With autoConnect, the connection is established when the device gets in range.
+		if (request instanceof ConnectRequest && ((ConnectRequest) request).shouldAutoConnect())
+			return 0;
+		return getTimeout(address, request.type);
+	}
+
+	/**
+	 * Adds a latency sample of a request that completed.
+	 *
+	 * @param address the device address.
+	 * @param type    the request type.
+	 * @param latency the latency in milliseconds.
+	 */
+	synchronized void onSample(@NonNull final String address, @NonNull final Request.Type type,
+							   final long latency) {
+		if (maxTimeout <= 0)
+			return;
+		final Estimate estimate = estimate(address, type, true);
+		// Avoid 0, which means that no sample was taken.
+		final long sample = Math.max(1, latency);
+		if (estimate.srtt == 0) {
+			estimate.srtt = sample;
+			estimate.rttvar = sample / 2;
+		} else {
+			final long delta = Math.abs(estimate.srtt - sample);
+			estimate.rttvar += (delta - estimate.rttvar) >> BETA_SHIFT;
+			estimate.srtt += (sample - estimate.srtt) >> ALPHA_SHIFT;
+			estimate.srtt = Math.max(1, estimate.srtt);
+		}
+		estimate.backoff = 0;
+	}
+
+	/**
+	 * Backs off the timeout after a request has timed out.
+	 *
+	 * @param address the device address.
+	 * @param type    the request type.
+	 */
+	synchronized void onTimeout(@NonNull final String address, @NonNull final Request.Type type) {
+		if (maxTimeout <= 0)
+			return;
+		final Estimate estimate = estimate(address, type, false);
+		if (estimate != null && estimate.backoff < MAX_BACKOFF_SHIFT)
+			estimate.backoff++;
+	}
+
+	private Estimate estimate(@NonNull final String address, @NonNull final Request.Type type,
+							  final boolean create) {
+		Estimate[] forDevice = estimates.get(address);
+		if (forDevice == null) {
+			if (!create)
+				return null;
+			forDevice = new Estimate[TYPES];
+			estimates.put(address, forDevice);
+		}
+		Estimate estimate = forDevice[type.ordinal()];
+		if (estimate == null && create)
+			estimate = forDevice[type.ordinal()] = new Estimate();
+		return estimate;
+	}
+}
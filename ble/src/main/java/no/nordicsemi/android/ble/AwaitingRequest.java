@@ -3,6 +3,7 @@ package no.nordicsemi.android.ble;
 import android.bluetooth.BluetoothGatt;
 import android.bluetooth.BluetoothGattCharacteristic;
 import android.bluetooth.BluetoothGattDescriptor;
+import android.os.ConditionVariable;
 
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
@@ -52,7 +53,9 @@ public abstract class AwaitingRequest<T> extends TimeoutableValueRequest<T> {
 			this.trigger.internalSuccess(device -> triggerStatus = BluetoothGatt.GATT_SUCCESS);
 			this.trigger.internalFail((device, status) -> {
 				triggerStatus = status;
-				syncLock.open();
+				final ConditionVariable syncLock = this.syncLock;
+				if (syncLock != null)
+					syncLock.open();
 				notifyFail(device, status);
 			});
 		}
@@ -37,6 +37,7 @@ import android.os.Looper;
 import android.util.Log;
 
 import java.util.UUID;
+import java.util.concurrent.Executor;
 
 import androidx.annotation.IntRange;
 import androidx.annotation.NonNull;
@@ -54,12 +55,15 @@ import no.nordicsemi.android.ble.annotation.PhyOption;
 import no.nordicsemi.android.ble.annotation.WriteType;
 import no.nordicsemi.android.ble.observer.BondingObserver;
 import no.nordicsemi.android.ble.observer.ConnectionObserver;
+import no.nordicsemi.android.ble.observer.RequestObserver;
 import no.nordicsemi.android.ble.callback.ConnectionPriorityCallback;
 import no.nordicsemi.android.ble.callback.FailCallback;
 import no.nordicsemi.android.ble.callback.MtuCallback;
+import no.nordicsemi.android.ble.callback.StreamProgressCallback;
 import no.nordicsemi.android.ble.callback.SuccessCallback;
 import no.nordicsemi.android.ble.data.Data;
 import no.nordicsemi.android.ble.data.DataMerger;
+import no.nordicsemi.android.ble.data.DataSource;
 import no.nordicsemi.android.ble.data.DataSplitter;
 import no.nordicsemi.android.ble.error.GattError;
 import no.nordicsemi.android.ble.utils.ILogger;
@@ -126,6 +130,8 @@ public abstract class BleManager implements ILogger {
 	BondingObserver bondingObserver;
 	@Nullable
 	ConnectionObserver connectionObserver;
+	@Nullable
+	RequestObserver requestObserver;
 
 	private final BroadcastReceiver mPairingRequestBroadcastReceiver = new BroadcastReceiver() {
 		@Override
@@ -162,6 +168,13 @@ public abstract class BleManager implements ILogger {
 	/**
 	 * The manager constructor.
 	 * <p>
+	 * Internal processing, that is GATT callbacks, enqueued requests, broadcasts, delayed
+	 * operations and timeouts, is done one event at a time on the thread that reported the event,
+	 * so GATT callbacks are not delayed by the handler's looper. Request callbacks, delayed
+	 * operations and timeouts use the thread of the given handler.
+	 * Use {@link #BleManager(Context, Handler, Executor)} to invoke request callbacks
+	 * on a different thread.
+	 * <p>
 	 * To connect a device, call {@link #connect(BluetoothDevice)}.
 	 *
 	 * @param context the context.
@@ -169,13 +182,54 @@ public abstract class BleManager implements ILogger {
 	 *                request callbacks (done/fail/with, etc).
 	 */
 	public BleManager(@NonNull final Context context, @NonNull final Handler handler) {
+		this(context, handler, null, null, MetricsRecorder.SYSTEM_CLOCK);
+	}
+
+	/**
+	 * The manager constructor for apps that should not use the main thread at all.
+	 * <p>
+	 * All internal processing, that is GATT callbacks, enqueued requests, broadcasts,
+	 * delayed operations and timeouts, is done on the thread of the given handler, for example
+	 * one created from a {@link android.os.HandlerThread}. Request callbacks, observers and
+	 * {@link #runOnCallbackThread(Runnable)} use the given executor instead.
+	 * <p>
+	 * Callbacks are invoked one at a time, in order, even if the executor uses a thread pool.
+	 * <p>
+	 * To connect a device, call {@link #connect(BluetoothDevice)}.
+	 *
+	 * @param context          the context.
+	 * @param handler          the handler for internal processing, which should not be attached
+	 *                         to the main looper.
+	 * @param callbackExecutor the executor used to invoke request callbacks (done/fail/with, etc).
+	 *                         Callbacks are serialized.
+	 */
+	public BleManager(@NonNull final Context context, @NonNull final Handler handler,
+					  @NonNull final Executor callbackExecutor) {
+		this(context, handler, callbackExecutor, handler::post, MetricsRecorder.SYSTEM_CLOCK);
+	}
+
+	/**
+	 * The manager constructor used by tests, which may process events on the calling threads
+	 * instead of posting them to the handler, and use a different clock.
+	 *
+	 * @param context          the context.
+	 * @param handler          the handler for delayed operations and timeouts.
+	 * @param callbackExecutor the executor used to invoke request callbacks, or null to post them
+	 *                         to the handler.
+	 * @param eventLoopTarget  the executor processing events, or null to process them on
+	 *                         the threads reporting them.
+	 * @param clock            the clock used for request metrics.
+	 */
+	BleManager(@NonNull final Context context, @NonNull final Handler handler,
+			   @Nullable final Executor callbackExecutor, @Nullable final Executor eventLoopTarget,
+			   @NonNull final MetricsRecorder.Clock clock) {
 		this.context = context;
 		this.requestHandler = getGattCallback();
-		this.requestHandler.init(this, handler);
+		this.requestHandler.init(this, handler, callbackExecutor, eventLoopTarget, clock);
 
 		context.registerReceiver(mPairingRequestBroadcastReceiver,
 				// BluetoothDevice.ACTION_PAIRING_REQUEST
-				new IntentFilter("android.bluetooth.device.action.PAIRING_REQUEST"));
+				new IntentFilter("android.bluetooth.device.action.PAIRING_REQUEST"), null, handler);
 	}
 
 	/**
@@ -197,8 +251,8 @@ public abstract class BleManager implements ILogger {
 	}
 
 	/**
-	 * Runs the given runnable using a handler given to the constructor.
-	 * If no handler was given, the callbacks will be called on UI thread.
+	 * Runs the given runnable using a handler or an executor given to the constructor.
+	 * If neither was given, the callbacks will be called on UI thread.
 	 *
 	 * @param runnable the runnable to be executed.
 	 */
@@ -256,6 +310,26 @@ public abstract class BleManager implements ILogger {
 		return this.bondingObserver;
 	}
 
+	/**
+	 * Sets the observer, that will receive life cycle events of all requests.
+	 * Unlike other observers, this one is called synchronously on the thread on which the
+	 * event occurred.
+	 *
+	 * @param observer the observer, or null to stop observing.
+	 * @see RequestObserver
+	 */
+	public final void setRequestObserver(@Nullable final RequestObserver observer) {
+		this.requestObserver = observer;
+	}
+
+	/**
+	 * Returns the current request observer object.
+	 */
+	@Nullable
+	public final RequestObserver getRequestObserver() {
+		return this.requestObserver;
+	}
+
 	/**
 	 * This method binds the manager with the give server instance. Apps that allow multiple
 	 * simultaneous connections and GATT server should use a single server instance, shared
@@ -391,6 +465,163 @@ public abstract class BleManager implements ILogger {
 		return requestHandler.getBatteryValue();
 	}
 
+	/**
+	 * Returns a snapshot of latency metrics of requests executed by this manager, grouped by
+	 * request type. For each type it contains the number of successful and failed requests and
+	 * histograms of time spent in the queue, execution time and callback dispatch delay.
+	 * <p>
+	 * Metrics are always recorded. Recording does not allocate memory and has negligible
+	 * overhead.
+	 *
+	 * @return The metrics snapshot.
+	 */
+	@NonNull
+	public final RequestMetrics getMetrics() {
+		return requestHandler.getMetrics();
+	}
+
+	/**
+	 * Clears all recorded request metrics.
+	 *
+	 * @see #getMetrics()
+	 */
+	public final void resetMetrics() {
+		requestHandler.resetMetrics();
+	}
+
+	/**
+	 * Adds a characteristic to be read after the initialization, when services are discovered.
+	 * The characteristics are read one after another, before the device becomes ready,
+	 * and their values are kept in the {@link #getValueCache() value cache}. Reading them
+	 * later completes immediately, with the cached value, as long as it is younger than the time
+	 * to live set using {@link ValueCache#setTimeToLive(UUID, long)}. Without a time to live,
+	 * only the first read completes with the prefetched value, and the next ones read it again.
+	 * <p>
+	 * Missing characteristics and characteristics without the READ property are skipped.
+	 *
+	 * @param serviceUuid        the UUID of the service.
+	 * @param characteristicUuid the UUID of the characteristic.
+	 * @see ValueCache
+	 */
+	public final void addPrefetch(@NonNull final UUID serviceUuid, @NonNull final UUID characteristicUuid) {
+		requestHandler.addPrefetch(serviceUuid, characteristicUuid);
+	}
+
+	/**
+	 * Removes all characteristics added using {@link #addPrefetch(UUID, UUID)}.
+	 */
+	public final void clearPrefetch() {
+		requestHandler.clearPrefetch();
+	}
+
+	/**
+	 * Returns the cache of characteristic values of the connected device.
+	 * Use it to set times to live of cached values and the size limit of the cache.
+	 *
+	 * @return The value cache.
+	 */
+	@NonNull
+	public final ValueCache getValueCache() {
+		return requestHandler.getValueCache();
+	}
+
+	/**
+	 * Sets the cache of decisions whether devices are supported. With the cache set,
+	 * a device that was not supported is rejected without calling
+	 * {@link BleManagerGattCallback#isRequiredServiceSupported(BluetoothGatt)}, unless its
+	 * services have changed, and the manager may check
+	 * {@link BleManagerGattCallback#isServiceLayoutUnchanged()} to bind characteristics faster.
+	 * <p>
+	 * The cache should not be used if the decision depends on anything else than
+	 * the discovered services.
+	 *
+	 * @param cache the cache, or null to disable caching.
+	 * @see ServiceCache
+	 */
+	public final void setServiceCache(@Nullable final ServiceCache cache) {
+		requestHandler.setServiceCache(cache);
+	}
+
+	/**
+	 * Sets the rate limiter of all characteristic writes of this manager, unless a limiter
+	 * was set for the characteristic using {@link #setWriteRateLimiter(UUID, WriteRateLimiter)}.
+	 * The limiter paces packets of {@link WriteRequest}s, including split and pipelined ones.
+	 *
+	 * @param limiter the limiter, or null to send packets as fast as possible.
+	 * @see WriteRateLimiter
+	 */
+	public final void setWriteRateLimiter(@Nullable final WriteRateLimiter limiter) {
+		requestHandler.setWriteRateLimiter(limiter);
+	}
+
+	/**
+	 * Sets the rate limiter of writes to characteristics with the given UUID.
+	 * This limiter takes precedence over the one set using
+	 * {@link #setWriteRateLimiter(WriteRateLimiter)}.
+	 *
+	 * @param characteristicUuid the characteristic UUID.
+	 * @param limiter the limiter, or null to remove it.
+	 * @see WriteRateLimiter
+	 */
+	public final void setWriteRateLimiter(@NonNull final UUID characteristicUuid,
+										  @Nullable final WriteRateLimiter limiter) {
+		requestHandler.setWriteRateLimiter(characteristicUuid, limiter);
+	}
+
+	/**
+	 * Sets the policy switching the connection priority depending on the load of the
+	 * connection. The high priority is requested when many requests are waiting in the queue
+	 * or notifications are received frequently, and the idle priority after an idle period.
+	 * <p>
+	 * Connection priority requests are supported on Android Lollipop or newer.
+	 *
+	 * @param policy the policy, or null to disable automatic switching.
+	 * @see ConnectionPriorityPolicy
+	 */
+	public final void setConnectionPriorityPolicy(@Nullable final ConnectionPriorityPolicy policy) {
+		requestHandler.setConnectionPriorityPolicy(policy);
+	}
+
+	/**
+	 * Sets the scheduler that coordinates GATT operations of this and other managers.
+	 * The same instance should be set for all managers in the process.
+	 *
+	 * @param scheduler the scheduler, or null to execute requests as soon as possible.
+	 * @see RadioScheduler
+	 */
+	public final void setRadioScheduler(@Nullable final RadioScheduler scheduler) {
+		requestHandler.setRadioScheduler(scheduler);
+	}
+
+	/**
+	 * Enables adaptive timeouts. When enabled, requests that support a timeout, but do not have
+	 * one set using {@link TimeoutableRequest#timeout(long)}, will time out after a period
+	 * estimated from latencies of previous requests of the same type to the same device.
+	 * This applies to connect requests without autoConnect, disconnect requests and to requests
+	 * waiting for a notification, indication or a read after a trigger.
+	 * <p>
+	 * The timeout is calculated like the TCP retransmission timeout: it is the smoothed latency
+	 * plus 4 times its mean deviation. Each timeout doubles the next one.
+	 *
+	 * @param minTimeout the minimum timeout, in milliseconds.
+	 * @param maxTimeout the maximum timeout, in milliseconds. This value is used until
+	 *                   the first request of a type completes.
+	 */
+	public final void enableAdaptiveTimeouts(@IntRange(from = 0) final long minTimeout,
+											 @IntRange(from = 1) final long maxTimeout) {
+		if (maxTimeout <= 0 || minTimeout > maxTimeout)
+			throw new IllegalArgumentException("Invalid timeout range");
+		requestHandler.enableAdaptiveTimeouts(minTimeout, maxTimeout);
+	}
+
+	/**
+	 * Disables adaptive timeouts enabled with {@link #enableAdaptiveTimeouts(long, long)}
+	 * and clears the learned latencies.
+	 */
+	public final void disableAdaptiveTimeouts() {
+		requestHandler.disableAdaptiveTimeouts();
+	}
+
 	@Override
 	@LogPriority
 	public int getMinLogPriority() {
@@ -1358,6 +1589,35 @@ public abstract class BleManager implements ILogger {
 				.setRequestHandler(requestHandler);
 	}
 
+	/**
+	 * Writes data streamed from the given source to the characteristic.
+	 * <p>
+	 * The data are read one packet ahead of the packet being sent, on a background thread,
+	 * and are always split into at-most MTU-3 bytes long packets. This way the payload, e.g.
+	 * a firmware image, doesn't have to be kept on the heap, and a slow source does not block
+	 * the thread processing GATT events. Use {@link WriteRequest#progress(StreamProgressCallback)}
+	 * to get the number of bytes sent. The source is closed when the request finishes.
+	 * If reading the source fails, the request fails with {@link FailCallback#REASON_IO_ERROR}.
+	 * If the characteristic is null, the {@link Request#fail(FailCallback) fail(FailCallback)}
+	 * callback will be called.
+	 * <p>
+	 * The returned request must be either enqueued using {@link Request#enqueue()} for
+	 * asynchronous use, or awaited using await() in synchronous execution.
+	 *
+	 * @param characteristic the characteristic to write to.
+	 * @param source         the source of data to be written to the characteristic.
+	 * @param writeType      the write type which is to be used.
+	 * @return The request.
+	 * @see DataSource
+	 */
+	@NonNull
+	protected WriteRequest writeCharacteristic(@Nullable final BluetoothGattCharacteristic characteristic,
+											   @NonNull final DataSource source,
+											   @WriteType final int writeType) {
+		return Request.newWriteRequest(characteristic, source, writeType)
+				.setRequestHandler(requestHandler);
+	}
+
 	/**
 	 * Writes at most length bytes from offset at given data to the characteristic.
 	 * <p>
@@ -1757,6 +2017,31 @@ public abstract class BleManager implements ILogger {
 				.setRequestHandler(requestHandler);
 	}
 
+	/**
+	 * Begins a bulk transfer. Requests added to the returned request using
+	 * {@link BulkTransferRequest#add(Operation)} will be executed with link parameters tuned
+	 * for throughput: the highest MTU, the LE 2M PHY and the high connection priority are
+	 * requested first, and a power-friendly connection priority is restored afterwards.
+	 * Parameters which are not supported are skipped.
+	 * <p>
+	 * Example of usage:
+	 * <pre>
+	 *     final BulkTransferRequest transfer = beginBulkTransfer()
+	 *           .add(writeCharacteristic(someCharacteristic, firmware).split());
+	 *     transfer
+	 *           .done(device -&gt; log(Log.INFO, transfer.getBytesPerSecond() + " B/s"))
+	 *           .enqueue();
+	 * </pre>
+	 *
+	 * @return The request.
+	 * @see BulkTransferRequest
+	 */
+	@NonNull
+	protected BulkTransferRequest beginBulkTransfer() {
+		return Request.newBulkTransferRequest()
+				.setRequestHandler(requestHandler);
+	}
+
 	/**
 	 * Returns true if {@link BluetoothGatt#beginReliableWrite()} has been called and
 	 * the Reliable Write hasn't been executed nor aborted yet.
@@ -1986,6 +2271,36 @@ public abstract class BleManager implements ILogger {
 		requestHandler.enqueue(request);
 	}
 
+	/**
+	 * Enqueues all given operations at once. The operations will be added to the queue
+	 * one after another, in the given order, and executed as if they were enqueued using
+	 * {@link Request#enqueue()} one by one.
+	 * <p>
+	 * Unlike {@link #beginAtomicRequestQueue()}, the operations are independent: a failure
+	 * of one of them does not cancel the others. The queue is locked and processed only once
+	 * for all the operations, which is faster than enqueueing them one by one.
+	 * Operations with different priorities (see {@link Request#priority(int)}) are added to
+	 * their own priority classes.
+	 *
+	 * @param operations the operations to be enqueued.
+	 * @throws IllegalStateException    if any of the operations was enqueued before.
+	 * @throws IllegalArgumentException if any of the operations is not a {@link Request}.
+	 */
+	protected final void enqueueAll(@NonNull final Operation... operations) {
+		final Request[] requests = new Request[operations.length];
+		for (int i = 0; i < operations.length; i++) {
+			final Operation operation = operations[i];
+			if (!(operation instanceof Request))
+				throw new IllegalArgumentException("Operation does not extend Request");
+			final Request request = (Request) operation;
+			if (request.enqueued)
+				throw new IllegalStateException("Request already enqueued");
+			requests[i] = request;
+		}
+		if (requests.length > 0)
+			requestHandler.enqueueAll(requests);
+	}
+
 	/**
 	 * Removes all enqueued requests from the queue.
 	 * The currently executed request will be cancelled and will fail with status
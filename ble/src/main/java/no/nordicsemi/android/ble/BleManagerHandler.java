@@ -18,18 +18,27 @@ import android.content.Intent;
 import android.content.IntentFilter;
 import android.os.Build;
 import android.os.Handler;
-import android.os.SystemClock;
 import android.util.Log;
 import android.util.Pair;
 
+import java.io.IOException;
 import java.lang.reflect.Method;
 import java.security.InvalidParameterException;
+import java.util.Collections;
 import java.util.Deque;
 import java.util.HashMap;
 import java.util.LinkedList;
+import java.util.List;
 import java.util.Map;
+import java.util.Random;
 import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
 import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 
 import androidx.annotation.IntRange;
 import androidx.annotation.Keep;
@@ -37,6 +46,7 @@ import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
 import androidx.annotation.RequiresApi;
 import androidx.annotation.RequiresPermission;
+import androidx.annotation.VisibleForTesting;
 import no.nordicsemi.android.ble.annotation.ConnectionPriority;
 import no.nordicsemi.android.ble.annotation.ConnectionState;
 import no.nordicsemi.android.ble.annotation.LogPriority;
@@ -49,10 +59,12 @@ import no.nordicsemi.android.ble.callback.FailCallback;
 import no.nordicsemi.android.ble.callback.MtuCallback;
 import no.nordicsemi.android.ble.callback.SuccessCallback;
 import no.nordicsemi.android.ble.data.Data;
+import no.nordicsemi.android.ble.data.DataSource;
 import no.nordicsemi.android.ble.data.PacketFilter;
 import no.nordicsemi.android.ble.error.GattError;
 import no.nordicsemi.android.ble.observer.BondingObserver;
 import no.nordicsemi.android.ble.observer.ConnectionObserver;
+import no.nordicsemi.android.ble.observer.RequestObserver;
 import no.nordicsemi.android.ble.utils.ParserUtils;
 
 @SuppressWarnings({"WeakerAccess", "unused", "deprecation", "DeprecatedIsStillUsed"})
@@ -74,14 +86,71 @@ abstract class BleManagerHandler extends RequestHandler {
 	private final static String ERROR_RELIABLE_WRITE = "Error on Execute Reliable Write";
 	private final static String ERROR_NOTIFY = "Error on sending notification/indication";
 
+	/**
+	 * Reads streamed data ahead for all managers, so that the event loop, which may run on
+	 * the main thread, never waits for a {@link DataSource}. Its only thread stops when idle.
+	 */
+	private final static Executor SOURCE_READER = new ThreadPoolExecutor(0, 1,
+			10, TimeUnit.SECONDS, new LinkedBlockingQueue<>(), task -> {
+				final Thread thread = new Thread(task, "BleManager-DataSource");
+				thread.setDaemon(true);
+				return thread;
+			});
+
 	private final Object LOCK = new Object();
-	private BluetoothDevice bluetoothDevice;
+	private volatile BluetoothDevice bluetoothDevice;
 	private BluetoothGatt bluetoothGatt;
 	private BleManager manager;
 	private BleServerManager serverManager;
+	/** The handler used for delayed operations and timeouts. */
 	private Handler handler;
+	/** The executor used to invoke request callbacks and observers. */
+	private Executor callbackExecutor;
+
+	private final TaskQueue taskQueue = new TaskQueue();
+	private MetricsRecorder metrics;
+	private final AdaptiveTimeout adaptiveTimeout = new AdaptiveTimeout();
+	/**
+	 * All state transitions of the handler are executed as tasks of this executor:
+	 * GATT callbacks, broadcasts, enqueued requests, timeouts and delayed operations.
+	 * Tasks are executed one at a time, in order, so the fields below don't need
+	 * synchronization. Fields read from other threads are volatile.
+	 */
+	private SerialExecutor eventLoop;
+	/** The scheduler shared with other managers, or null. */
+	private RadioScheduler radioScheduler;
+	/** Set when a slot was granted by the {@link #radioScheduler}, but not used yet. */
+	private boolean radioSlotGranted;
+	/** Set when the current operation holds a slot of the {@link #radioScheduler}. */
+	private boolean radioSlotHeld;
+	/** The entry of the connection pool this manager belongs to, or null. */
+	@Nullable
+	private volatile ConnectionPool.Entry<?> poolEntry;
+	private final RadioScheduler.Client radioClient = new RadioScheduler.Client() {
+		@Override
+		void onSlotGranted(@NonNull final RadioScheduler scheduler) {
+			eventLoop.execute(() -> {
+				if (scheduler != radioScheduler) {
+					// The scheduler was changed before the grant was handled. The slot has not
+					// been found by cancelRadioSlot(), so it must be returned here.
+					scheduler.release(radioClient, -1);
+					return;
+				}
+				radioSlotGranted = true;
+				if (taskQueue.isEmpty()) {
+					// The queue was cleared in the meantime, e.g. the device has disconnected.
+					cancelRadioSlot();
+				} else {
+					nextRequest(false);
+				}
+			});
+		}
 
-	private final Deque<Request> taskQueue = new LinkedBlockingDeque<>();
+		@Override
+		int getQueueDepth() {
+			return taskQueue.size();
+		}
+	};
 	private Deque<Request> initQueue;
 
 	/**
@@ -92,6 +161,13 @@ abstract class BleManagerHandler extends RequestHandler {
 	 * earlier. 20 sec should be OK here.
 	 */
 	private final static long CONNECTION_TIMEOUT_THRESHOLD = 20000; // ms
+	private final static long MTU_BEFORE_DISCOVERY_TIMEOUT = 1000; // ms
+	/**
+	 * Maximum number of attempts to send a packet of a pipelined {@link WriteRequest} when the
+	 * outgoing buffer is full, and the maximum delay between them.
+	 */
+	private final static int PIPELINE_MAX_RETRIES = 50;
+	private final static long PIPELINE_MAX_RETRY_DELAY = 10; // ms
 	/**
 	 * Flag set when services were discovered.
 	 */
@@ -114,18 +190,50 @@ abstract class BleManagerHandler extends RequestHandler {
 	 * A temporary counter to prevent requesting service discovery for old connection.
 	 */
 	private int connectionCount = 0;
+	/**
+	 * Reconnection after a link loss, if enabled using
+	 * {@link ConnectRequest#reconnectOnLinkLoss(int, int, int)}.
+	 */
+	@Nullable
+	private Reconnection reconnection;
+	/** Set when the MTU was requested before service discovery, until it's changed. */
+	private boolean mtuBeforeDiscoveryRequested;
+	/** Set when connection parameters were negotiated before service discovery. */
+	private boolean negotiatedBeforeDiscovery;
+	/** The time the connection was established, in the time base of {@link MetricsRecorder}. */
+	private long connectedTime;
+	/** The cache of service support decisions, or null. */
+	@Nullable
+	private volatile ServiceCache serviceCache;
+	/** Set when the discovered services match the ones cached for the device. */
+	private boolean serviceLayoutUnchanged;
+	/** Values of characteristics of the connected device. */
+	private final ValueCache valueCache = new ValueCache();
+	/** Service and characteristic UUID pairs to be read after initialization. */
+	private final List<UUID[]> prefetch = new CopyOnWriteArrayList<>();
+	/** The rate limiter of all characteristic writes, or null. */
+	@Nullable
+	private volatile WriteRateLimiter writeRateLimiter;
+	/** Rate limiters of writes to characteristics with given UUIDs. */
+	private final Map<UUID, WriteRateLimiter> characteristicWriteRateLimiters =
+			new ConcurrentHashMap<>();
+	/** The policy switching the connection priority depending on the load, or null. */
+	@Nullable
+	private volatile ConnectionPriorityPolicy priorityPolicy;
+	/** Set when a check of the idle period of the {@link #priorityPolicy} is scheduled. */
+	private boolean priorityIdleCheckScheduled;
 	/**
 	 * Flag set to true when the device is connected.
 	 */
-	private boolean connected;
+	private volatile boolean connected;
 	/**
 	 * Flag set to true when the initialization queue is complete.
 	 */
-	private boolean ready;
+	private volatile boolean ready;
 	/**
 	 * A flag indicating that an operation is currently in progress.
 	 */
-	private boolean operationInProgress;
+	private volatile boolean operationInProgress;
 	/**
 	 * This flag is set to false only when the {@link ConnectRequest#shouldAutoConnect()} method
 	 * returns true and the device got disconnected without calling {@link BleManager#disconnect()}
@@ -149,7 +257,7 @@ abstract class BleManagerHandler extends RequestHandler {
 	 * {@link BluetoothGatt#STATE_DISCONNECTED STATE_DISCONNECTED}
 	 */
 	@ConnectionState
-	private int connectionState = BluetoothGatt.STATE_DISCONNECTED;
+	private volatile int connectionState = BluetoothGatt.STATE_DISCONNECTED;
 	/**
 	 * This flag is required to resume operations after the connection priority request was made.
 	 * It is used only on Android Oreo and newer, as only there there is onConnectionUpdated
@@ -161,12 +269,12 @@ abstract class BleManagerHandler extends RequestHandler {
 	/**
 	 * A flag indicating that Reliable Write is in progress.
 	 */
-	private boolean reliableWriteInProgress;
+	private volatile boolean reliableWriteInProgress;
 	/**
 	 * The current MTU (Maximum Transfer Unit). The maximum number of bytes that can be sent in
 	 * a single packet is MTU-3.
 	 */
-	private int mtu = 23;
+	private volatile int mtu = 23;
 	/**
 	 * Last received battery value or -1 if value wasn't received.
 	 *
@@ -175,7 +283,7 @@ abstract class BleManagerHandler extends RequestHandler {
 	 */
 	@IntRange(from = -1, to = 100)
 	@Deprecated
-	private int batteryValue = -1;
+	private volatile int batteryValue = -1;
 	/** Values of non-shared characteristics. Each connected device has its own copy of such. */
 	private Map<BluetoothGattCharacteristic, byte[]> characteristicValues;
 	/** Values of non-shared descriptors. Each connected device has its own copy of such. */
@@ -224,58 +332,60 @@ abstract class BleManagerHandler extends RequestHandler {
 	private final BroadcastReceiver bluetoothStateBroadcastReceiver = new BroadcastReceiver() {
 		@Override
 		public void onReceive(final Context context, final Intent intent) {
-			final int state = intent.getIntExtra(BluetoothAdapter.EXTRA_STATE, BluetoothAdapter.STATE_OFF);
-			final int previousState = intent.getIntExtra(BluetoothAdapter.EXTRA_PREVIOUS_STATE, BluetoothAdapter.STATE_OFF);
-
-			log(Log.DEBUG, () ->
-				"[Broadcast] Action received: " + BluetoothAdapter.ACTION_STATE_CHANGED +
-						  ", state changed to " + state2String(state)
-			);
-
-			switch (state) {
-				case BluetoothAdapter.STATE_TURNING_OFF:
-				case BluetoothAdapter.STATE_OFF:
-					if (previousState != BluetoothAdapter.STATE_TURNING_OFF
-							&& previousState != BluetoothAdapter.STATE_OFF) {
-						// No more calls are possible
-						operationInProgress = true;
-						taskQueue.clear();
-						initQueue = null;
-
-						final BluetoothDevice device = bluetoothDevice;
-						if (device != null) {
-							// Signal the current request, if any
-							if (request != null && request.type != Request.Type.DISCONNECT) {
-								request.notifyFail(device, FailCallback.REASON_BLUETOOTH_DISABLED);
-								request = null;
-							}
-							if (awaitingRequest != null) {
-								awaitingRequest.notifyFail(device, FailCallback.REASON_BLUETOOTH_DISABLED);
-								awaitingRequest = null;
-							}
-							if (connectRequest != null) {
-								connectRequest.notifyFail(device, FailCallback.REASON_BLUETOOTH_DISABLED);
-								connectRequest = null;
+			eventLoop.execute(() -> {
+				final int state = intent.getIntExtra(BluetoothAdapter.EXTRA_STATE, BluetoothAdapter.STATE_OFF);
+				final int previousState = intent.getIntExtra(BluetoothAdapter.EXTRA_PREVIOUS_STATE, BluetoothAdapter.STATE_OFF);
+
+				log(Log.DEBUG, () ->
+					"[Broadcast] Action received: " + BluetoothAdapter.ACTION_STATE_CHANGED +
+							  ", state changed to " + state2String(state)
+				);
+
+				switch (state) {
+					case BluetoothAdapter.STATE_TURNING_OFF:
+					case BluetoothAdapter.STATE_OFF:
+						if (previousState != BluetoothAdapter.STATE_TURNING_OFF
+								&& previousState != BluetoothAdapter.STATE_OFF) {
+							// No more calls are possible
+							operationInProgress = true;
+							clearQueues(FailCallback.REASON_BLUETOOTH_DISABLED);
+
+							final BluetoothDevice device = bluetoothDevice;
+							if (device != null) {
+								// Signal the current request, if any
+								if (request != null && request.type != Request.Type.DISCONNECT) {
+									request.notifyFail(device, FailCallback.REASON_BLUETOOTH_DISABLED);
+									request = null;
+								}
+								if (awaitingRequest != null) {
+									awaitingRequest.notifyFail(device, FailCallback.REASON_BLUETOOTH_DISABLED);
+									awaitingRequest = null;
+								}
+								if (connectRequest != null) {
+									connectRequest.notifyFail(device, FailCallback.REASON_BLUETOOTH_DISABLED);
+									connectRequest = null;
+								}
 							}
-						}
 
-						// The connection is killed by the system, no need to disconnect gently.
-						userDisconnected = true;
-						// Allow new requests when Bluetooth is enabled again. close() doesn't do it.
-						// See: https://github.com/NordicSemiconductor/Android-BLE-Library/issues/25
-						// and: https://github.com/NordicSemiconductor/Android-BLE-Library/issues/41
-						operationInProgress = false;
-						// This will call close()
-						if (device != null) {
-							notifyDeviceDisconnected(device, ConnectionObserver.REASON_TERMINATE_LOCAL_HOST);
+							// The connection is killed by the system, no need to disconnect gently.
+							userDisconnected = true;
+							stopReconnecting();
+							// Allow new requests when Bluetooth is enabled again. close() doesn't do it.
+							// See: https://github.com/NordicSemiconductor/Android-BLE-Library/issues/25
+							// and: https://github.com/NordicSemiconductor/Android-BLE-Library/issues/41
+							operationInProgress = false;
+							// This will call close()
+							if (device != null) {
+								notifyDeviceDisconnected(device, ConnectionObserver.REASON_TERMINATE_LOCAL_HOST);
+							}
+						} else {
+							// Calling close() will prevent the STATE_OFF event from being logged
+							// (this receiver will be unregistered). But it doesn't matter.
+							close();
 						}
-					} else {
-						// Calling close() will prevent the STATE_OFF event from being logged
-						// (this receiver will be unregistered). But it doesn't matter.
-						close();
-					}
-					break;
-			}
+						break;
+				}
+			});
 		}
 
 		private String state2String(final int state) {
@@ -297,37 +407,87 @@ abstract class BleManagerHandler extends RequestHandler {
 	private final BroadcastReceiver mBondingBroadcastReceiver = new BroadcastReceiver() {
 		@Override
 		public void onReceive(final Context context, final Intent intent) {
-			final BluetoothDevice device = intent.getParcelableExtra(BluetoothDevice.EXTRA_DEVICE);
-			final int bondState = intent.getIntExtra(BluetoothDevice.EXTRA_BOND_STATE, -1);
-			final int previousBondState = intent.getIntExtra(BluetoothDevice.EXTRA_PREVIOUS_BOND_STATE, -1);
+			eventLoop.execute(() -> {
+				final BluetoothDevice device = intent.getParcelableExtra(BluetoothDevice.EXTRA_DEVICE);
+				final int bondState = intent.getIntExtra(BluetoothDevice.EXTRA_BOND_STATE, -1);
+				final int previousBondState = intent.getIntExtra(BluetoothDevice.EXTRA_PREVIOUS_BOND_STATE, -1);
+
+				// Skip other devices.
+				if (bluetoothDevice == null || device == null
+						|| !device.getAddress().equals(bluetoothDevice.getAddress()))
+					return;
 
-			// Skip other devices.
-			if (bluetoothDevice == null || device == null
-					|| !device.getAddress().equals(bluetoothDevice.getAddress()))
-				return;
 
+				log(Log.DEBUG, () ->
+						"[Broadcast] Action received: " + BluetoothDevice.ACTION_BOND_STATE_CHANGED +
+						    ", bond state changed to: " + ParserUtils.bondStateToString(bondState) +
+						    " (" + bondState + ")");
 
-			log(Log.DEBUG, () ->
-					"[Broadcast] Action received: " + BluetoothDevice.ACTION_BOND_STATE_CHANGED +
-					    ", bond state changed to: " + ParserUtils.bondStateToString(bondState) +
-					    " (" + bondState + ")");
-
-			switch (bondState) {
-				case BluetoothDevice.BOND_NONE:
-					if (previousBondState == BluetoothDevice.BOND_BONDING) {
-						postCallback(c -> c.onBondingFailed(device));
-						postBondingStateChange(o -> o.onBondingFailed(device));
-						log(Log.WARN, () -> "Bonding failed");
+				switch (bondState) {
+					case BluetoothDevice.BOND_NONE:
+						if (previousBondState == BluetoothDevice.BOND_BONDING) {
+							postCallback(c -> c.onBondingFailed(device));
+							postBondingStateChange(o -> o.onBondingFailed(device));
+							log(Log.WARN, () -> "Bonding failed");
+							if (request != null && request.type == Request.Type.CREATE_BOND) {
+								request.notifyFail(device, FailCallback.REASON_REQUEST_FAILED);
+								request = null;
+							}
+							// If the device started to pair just after the connection was
+							// established the services were not discovered. We may try to discover services
+							// despite the fail bonding process.
+							// See: https://github.com/NordicSemiconductor/Android-BLE-Library/issues/335
+							if (!servicesDiscovered && !serviceDiscoveryRequested) {
+								postOnEventLoop(() -> {
+									serviceDiscoveryRequested = true;
+									log(Log.VERBOSE, () -> "Discovering services...");
+									log(Log.DEBUG, () -> "gatt.discoverServices()");
+									bluetoothGatt.discoverServices();
+								});
+								return;
+							}
+						} else if (previousBondState == BluetoothDevice.BOND_BONDED) {
+							// Removing the bond will cause disconnection.
+							userDisconnected = true;
+
+							if (request != null && request.type == Request.Type.REMOVE_BOND) {
+								// The device has already disconnected by now.
+								log(Log.INFO, () -> "Bond information removed");
+								request.notifySuccess(device);
+								request = null;
+							}
+							// When the bond information has been removed (either with Remove Bond request
+							// or in Android Settings), the BluetoothGatt object should be closed, so
+							// the library won't reconnect to the device automatically.
+							// See: https://github.com/NordicSemiconductor/Android-BLE-Library/issues/157
+							if (!isConnected())
+								close();
+
+							// Due to https://github.com/NordicSemiconductor/Android-BLE-Library/issues/363,
+							// the call to close() here has been placed behind an if statement.
+							// Instead, the 'userDisconnected' flag is set to true (here and in
+							// 'internalRemoveBond()'.
+							// When the device gets disconnected, close() method will be called from
+							// 'notifyDeviceDisconnected(...)'.
+						}
+						break;
+					case BluetoothDevice.BOND_BONDING:
+						postCallback(c -> c.onBondingRequired(device));
+						postBondingStateChange(o -> o.onBondingRequired(device));
+						return;
+					case BluetoothDevice.BOND_BONDED:
+						log(Log.INFO, () -> "Device bonded");
+						postCallback(c -> c.onBonded(device));
+						postBondingStateChange(o -> o.onBonded(device));
 						if (request != null && request.type == Request.Type.CREATE_BOND) {
-							request.notifyFail(device, FailCallback.REASON_REQUEST_FAILED);
+							request.notifySuccess(device);
 							request = null;
+							break;
 						}
 						// If the device started to pair just after the connection was
-						// established the services were not discovered. We may try to discover services
-						// despite the fail bonding process.
-						// See: https://github.com/NordicSemiconductor/Android-BLE-Library/issues/335
+						// established the services were not discovered.
 						if (!servicesDiscovered && !serviceDiscoveryRequested) {
-							post(() -> {
+							postOnEventLoop(() -> {
 								serviceDiscoveryRequested = true;
 								log(Log.VERBOSE, () -> "Discovering services...");
 								log(Log.DEBUG, () -> "gatt.discoverServices()");
@@ -335,92 +495,63 @@ abstract class BleManagerHandler extends RequestHandler {
 							});
 							return;
 						}
-					} else if (previousBondState == BluetoothDevice.BOND_BONDED) {
-						// Removing the bond will cause disconnection.
-						userDisconnected = true;
-
-						if (request != null && request.type == Request.Type.REMOVE_BOND) {
-							// The device has already disconnected by now.
-							log(Log.INFO, () -> "Bond information removed");
-							request.notifySuccess(device);
-							request = null;
+						// On older Android versions, after executing a command on secured attribute
+						// of a device that is not bonded, let's say a write characteristic operation,
+						// the system will start bonding. The BOND_BONDING and BOND_BONDED events will
+						// be received, but the command will not be repeated automatically.
+						//
+						// Test results:
+						// Devices that require repeating the last task:
+						// - Nexus 4 with Android 5.1.1
+						// - Samsung S6 with 5.0.1
+						// - Samsung S8 with Android 7.0
+						// - Nexus 9 with Android 7.1.1
+						// Devices that repeat the request automatically:
+						// - Pixel 2 with Android 8.1.0
+						// - Samsung S8 with Android 8.0.0
+						//
+						if (Build.VERSION.SDK_INT < Build.VERSION_CODES.O) {
+							if (request != null) {
+								// Repeat the last command in that case.
+								enqueueFirst(request);
+								break;
+							}
 						}
-						// When the bond information has been removed (either with Remove Bond request
-						// or in Android Settings), the BluetoothGatt object should be closed, so
-						// the library won't reconnect to the device automatically.
-						// See: https://github.com/NordicSemiconductor/Android-BLE-Library/issues/157
-						if (!isConnected())
-							close();
-
-						// Due to https://github.com/NordicSemiconductor/Android-BLE-Library/issues/363,
-						// the call to close() here has been placed behind an if statement.
-						// Instead, the 'userDisconnected' flag is set to true (here and in
-						// 'internalRemoveBond()'.
-						// When the device gets disconnected, close() method will be called from
-						// 'notifyDeviceDisconnected(...)'.
-					}
-					break;
-				case BluetoothDevice.BOND_BONDING:
-					postCallback(c -> c.onBondingRequired(device));
-					postBondingStateChange(o -> o.onBondingRequired(device));
-					return;
-				case BluetoothDevice.BOND_BONDED:
-					log(Log.INFO, () -> "Device bonded");
-					postCallback(c -> c.onBonded(device));
-					postBondingStateChange(o -> o.onBonded(device));
-					if (request != null && request.type == Request.Type.CREATE_BOND) {
-						request.notifySuccess(device);
-						request = null;
-						break;
-					}
-					// If the device started to pair just after the connection was
-					// established the services were not discovered.
-					if (!servicesDiscovered && !serviceDiscoveryRequested) {
-						post(() -> {
-							serviceDiscoveryRequested = true;
-							log(Log.VERBOSE, () -> "Discovering services...");
-							log(Log.DEBUG, () -> "gatt.discoverServices()");
-							bluetoothGatt.discoverServices();
-						});
+						// No need to repeat the request.
 						return;
-					}
-					// On older Android versions, after executing a command on secured attribute
-					// of a device that is not bonded, let's say a write characteristic operation,
-					// the system will start bonding. The BOND_BONDING and BOND_BONDED events will
-					// be received, but the command will not be repeated automatically.
-					//
-					// Test results:
-					// Devices that require repeating the last task:
-					// - Nexus 4 with Android 5.1.1
-					// - Samsung S6 with 5.0.1
-					// - Samsung S8 with Android 7.0
-					// - Nexus 9 with Android 7.1.1
-					// Devices that repeat the request automatically:
-					// - Pixel 2 with Android 8.1.0
-					// - Samsung S8 with Android 8.0.0
-					//
-					if (Build.VERSION.SDK_INT < Build.VERSION_CODES.O) {
-						if (request != null) {
-							// Repeat the last command in that case.
-							enqueueFirst(request);
-							break;
-						}
-					}
-					// No need to repeat the request.
-					return;
-			}
-			nextRequest(true);
+				}
+				nextRequest(true);
+			});
 		}
 	};
 
 	/**
 	 * Initializes the object.
 	 *
-	 * @param manager The BLE manager.
+	 * @param manager          The BLE manager.
+	 * @param handler          The handler used for delayed operations and timeouts.
+	 * @param callbackExecutor The executor for request callbacks. If null, callbacks are posted
+	 *                         to the handler. Otherwise, callbacks are serialized using
+	 *                         the executor.
+	 * @param eventLoopTarget  The executor processing events, one at a time, or null to process
+	 *                         them on the threads reporting them.
+	 * @param clock            The clock used for request metrics, deadlines and rate limiting.
 	 */
-	void init(@NonNull final BleManager manager, @NonNull final Handler handler) {
+	void init(@NonNull final BleManager manager, @NonNull final Handler handler,
+			  @Nullable final Executor callbackExecutor, @Nullable final Executor eventLoopTarget,
+			  @NonNull final MetricsRecorder.Clock clock) {
 		this.manager = manager;
 		this.handler = handler;
+		this.metrics = new MetricsRecorder(clock);
+		// Exceptions thrown by the user code, e.g. initialize() or the callbacks, are not caught,
+		// so that they are not hidden and the handler is not left in an inconsistent state.
+		this.eventLoop = new SerialExecutor(eventLoopTarget);
+		if (callbackExecutor != null) {
+			// Callbacks must not run concurrently, even if the executor uses a thread pool.
+			this.callbackExecutor = new SerialExecutor(callbackExecutor);
+		} else {
+			this.callbackExecutor = handler::post;
+		}
 	}
 
 	/**
@@ -436,41 +567,44 @@ abstract class BleManagerHandler extends RequestHandler {
 	 * Closes and releases resources.
 	 */
 	void close() {
-		try {
-			final Context context = manager.getContext();
-			context.unregisterReceiver(bluetoothStateBroadcastReceiver);
-			context.unregisterReceiver(mBondingBroadcastReceiver);
-		} catch (final Exception e) {
-			// the receiver must have been not registered or unregistered before.
-		}
-		synchronized (LOCK) {
-			if (bluetoothGatt != null) {
-				if (manager.shouldClearCacheWhenDisconnected()) {
-					if (internalRefreshDeviceCache()) {
-						log(Log.INFO, () -> "Cache refreshed");
-					} else {
-						log(Log.WARN, () -> "Refreshing failed");
+		eventLoop.execute(() -> {
+			try {
+				final Context context = manager.getContext();
+				context.unregisterReceiver(bluetoothStateBroadcastReceiver);
+				context.unregisterReceiver(mBondingBroadcastReceiver);
+			} catch (final Exception e) {
+				// the receiver must have been not registered or unregistered before.
+			}
+			synchronized (LOCK) {
+				if (bluetoothGatt != null) {
+					if (manager.shouldClearCacheWhenDisconnected()) {
+						if (internalRefreshDeviceCache()) {
+							log(Log.INFO, () -> "Cache refreshed");
+						} else {
+							log(Log.WARN, () -> "Refreshing failed");
+						}
+					}
+					log(Log.DEBUG, () -> "gatt.close()");
+					try {
+						bluetoothGatt.close();
+					} catch (final Throwable t) {
+						// ignore
 					}
+					bluetoothGatt = null;
 				}
-				log(Log.DEBUG, () -> "gatt.close()");
-				try {
-					bluetoothGatt.close();
-				} catch (final Throwable t) {
-					// ignore
-				}
-				bluetoothGatt = null;
-			}
-			reliableWriteInProgress = false;
-			initialConnection = false;
-			// close() is called in notifyDeviceDisconnected, which may enqueue new requests.
-			// Setting this flag to false would allow to enqueue a new request before the
-			// current one ends processing. The following line should not be uncommented.
-			// mGattCallback.operationInProgress = false;
-			taskQueue.clear();
-			initQueue = null;
-			bluetoothDevice = null;
-			connected = false;
-		}
+				reliableWriteInProgress = false;
+				initialConnection = false;
+				// close() is called in notifyDeviceDisconnected, which may enqueue new requests.
+				// Setting this flag to false would allow to enqueue a new request before the
+				// current one ends processing. The following line should not be uncommented.
+				// mGattCallback.operationInProgress = false;
+				clearQueues(FailCallback.REASON_CANCELLED);
+				bluetoothDevice = null;
+				connected = false;
+			}
+			stopReconnecting();
+			cancelRadioSlot();
+		});
 	}
 
 	public BluetoothDevice getBluetoothDevice() {
@@ -575,9 +709,9 @@ abstract class BleManagerHandler extends RequestHandler {
 				if (connectRequest != null) {
 					// Register bonding broadcast receiver
 					context.registerReceiver(bluetoothStateBroadcastReceiver,
-							new IntentFilter(BluetoothAdapter.ACTION_STATE_CHANGED));
+							new IntentFilter(BluetoothAdapter.ACTION_STATE_CHANGED), null, handler);
 					context.registerReceiver(mBondingBroadcastReceiver,
-							new IntentFilter(BluetoothDevice.ACTION_BOND_STATE_CHANGED));
+							new IntentFilter(BluetoothDevice.ACTION_BOND_STATE_CHANGED), null, handler);
 				}
 			}
 		}
@@ -589,6 +723,17 @@ abstract class BleManagerHandler extends RequestHandler {
 		final boolean shouldAutoConnect = connectRequest.shouldAutoConnect();
 		// We will receive Link Loss events only when the device is connected with autoConnect=true.
 		userDisconnected = !shouldAutoConnect;
+		if (reconnection == null || reconnection.request != connectRequest) {
+			// A new connection was requested.
+			reconnection = !shouldAutoConnect && connectRequest.getReconnectAttempts() > 0 ?
+					new Reconnection(connectRequest.getReconnectAttempts(),
+							connectRequest.getReconnectDelay(), connectRequest.getReconnectMaxDelay(),
+							new Random()) : null;
+		}
+		if (reconnection != null) {
+			// Link loss is reported like with autoConnect, but the manager reconnects itself.
+			userDisconnected = false;
+		}
 		// The first connection will always be done with autoConnect = false to make the connection quick.
 		// If the shouldAutoConnect() method returned true, the manager will automatically try to
 		// reconnect to this device on link loss.
@@ -600,7 +745,7 @@ abstract class BleManagerHandler extends RequestHandler {
 		connectionState = BluetoothGatt.STATE_CONNECTING;
 		postCallback(c -> c.onDeviceConnecting(device));
 		postConnectionStateChange(o -> o.onDeviceConnecting(device));
-		connectionTime = SystemClock.elapsedRealtime();
+		connectionTime = elapsedRealtime();
 		if (Build.VERSION.SDK_INT > Build.VERSION_CODES.O) {
 			// connectRequest will never be null here.
 			final int preferredPhy = connectRequest.getPreferredPhy();
@@ -711,6 +856,7 @@ abstract class BleManagerHandler extends RequestHandler {
 			// This will be added as a second.
 			// Copy all callbacks from the current request and clear them in the original.
 			final Request bond = Request.createBond().setRequestHandler(this);
+			bond.priority = request.priority;
 			// bond.beforeCallback was already fired.
 			bond.successCallback = request.successCallback;
 			bond.invalidRequestCallback = request.invalidRequestCallback;
@@ -724,7 +870,9 @@ abstract class BleManagerHandler extends RequestHandler {
 			request.internalFailCallback = null;
 			enqueueFirst(bond);
 			// This will be added as first.
-			enqueueFirst(Request.removeBond().setRequestHandler(this));
+			final Request removeBond = Request.removeBond().setRequestHandler(this);
+			removeBond.priority = request.priority;
+			enqueueFirst(removeBond);
 			nextRequest(true);
 			return true;
 		}
@@ -896,7 +1044,7 @@ abstract class BleManagerHandler extends RequestHandler {
 			log(Log.DEBUG, () -> "server.notifyCharacteristicChanged(device, " + serverCharacteristic.getUuid() + ", " + confirm + ")");
 			final boolean result = serverManager.getServer().notifyCharacteristicChanged(bluetoothDevice, serverCharacteristic, confirm);
 			if (result && Build.VERSION.SDK_INT < Build.VERSION_CODES.LOLLIPOP) {
-				post(() -> {
+				postOnEventLoop(() -> {
 					notifyNotificationSent(bluetoothDevice);
 					nextRequest(true);
 				});
@@ -943,7 +1091,7 @@ abstract class BleManagerHandler extends RequestHandler {
 
 		log(Log.VERBOSE, () -> "Reading characteristic " + characteristic.getUuid());
 		log(Log.DEBUG, () -> "gatt.readCharacteristic(" + characteristic.getUuid() + ")");
-		return gatt.readCharacteristic(characteristic);
+		return gattReadCharacteristic(gatt, characteristic);
 	}
 
 	private boolean internalWriteCharacteristic(@Nullable final BluetoothGattCharacteristic characteristic) {
@@ -961,9 +1109,181 @@ abstract class BleManagerHandler extends RequestHandler {
 				"Writing characteristic " + characteristic.getUuid() +
 				" (" + ParserUtils.writeTypeToString(characteristic.getWriteType()) + ")");
 		log(Log.DEBUG, () -> "gatt.writeCharacteristic(" + characteristic.getUuid() + ")");
+		return gattWriteCharacteristic(gatt, characteristic);
+	}
+
+	// The methods below are package-private, so that tests can replace the GATT client.
+
+	boolean gattReadCharacteristic(@NonNull final BluetoothGatt gatt,
+								   @NonNull final BluetoothGattCharacteristic characteristic) {
+		return gatt.readCharacteristic(characteristic);
+	}
+
+	boolean gattWriteCharacteristic(@NonNull final BluetoothGatt gatt,
+									@NonNull final BluetoothGattCharacteristic characteristic) {
 		return gatt.writeCharacteristic(characteristic);
 	}
 
+	/**
+	 * Sends the current packet of the {@link WriteRequest}, unless the rate limiter of the
+	 * characteristic requires it to wait. In that case sending is postponed.
+	 *
+	 * @param wr the write request, currently in progress.
+	 * @return True if the packet was sent or postponed; false if the characteristic
+	 * is not available.
+	 */
+	private boolean internalWriteRequest(@NonNull final WriteRequest wr) {
+		final BluetoothGattCharacteristic characteristic = wr.characteristic;
+		if (characteristic == null)
+			return false;
+
+		final WriteRateLimiter limiter = getWriteRateLimiter(characteristic);
+		if (limiter != null && postponeWrite(wr, limiter, () -> {
+			if (!internalWriteRequest(wr))
+				failWriteRequest(wr);
+		})) {
+			return true;
+		}
+
+		if (!wr.isDataReady()) {
+			// Sending is resumed when the data source has been read.
+			wr.readAhead(mtu, SOURCE_READER, eventLoop, () -> {
+				if (request == wr && !wr.finished && !internalWriteRequest(wr))
+					failWriteRequest(wr);
+			});
+			return true;
+		}
+		characteristic.setValue(getNextPacket(wr));
+		characteristic.setWriteType(wr.getWriteType());
+		if (wr.getSourceException() != null) {
+			failStreamedWriteRequest(wr);
+			return true;
+		}
+		return internalWriteCharacteristic(characteristic, limiter);
+	}
+
+	/**
+	 * Returns the next packet of the {@link WriteRequest} and, if data are streamed, starts
+	 * reading the following one, so that it is ready when the packet has been sent.
+	 */
+	@NonNull
+	private byte[] getNextPacket(@NonNull final WriteRequest wr) {
+		final byte[] packet = wr.getData(mtu);
+		if (wr.hasMore())
+			wr.readAhead(mtu, SOURCE_READER, eventLoop, null);
+		return packet;
+	}
+
+	/**
+	 * Fails the streamed {@link WriteRequest} after reading its data source has failed.
+	 */
+	private void failStreamedWriteRequest(@NonNull final WriteRequest wr) {
+		//noinspection ConstantConditions
+		final String message = wr.getSourceException().getMessage();
+		log(Log.WARN, () -> "Reading data source failed: " + message);
+		final BluetoothDevice device = bluetoothDevice;
+		if (device != null) {
+			wr.notifyFail(device, FailCallback.REASON_IO_ERROR);
+		}
+		postOnEventLoop(() -> nextRequest(true));
+	}
+
+	/**
+	 * Postpones sending a packet if the rate limiter requires it.
+	 *
+	 * @param wr      the write request, currently in progress.
+	 * @param limiter the rate limiter.
+	 * @param send    the task sending the packet, executed after the delay, unless the request
+	 *                has finished in the meantime.
+	 * @return True if sending was postponed.
+	 */
+	private boolean postponeWrite(@NonNull final WriteRequest wr,
+								  @NonNull final WriteRateLimiter limiter,
+								  @NonNull final Runnable send) {
+		final long delay = limiter.getDelay(now());
+		if (delay == 0)
+			return false;
+		postDelayedOnEventLoop(() -> {
+			// Make sure the request has not been cancelled or failed in the meantime.
+			if (request == wr && !wr.finished) {
+				send.run();
+			}
+		}, (delay + 999_999) / 1_000_000);
+		return true;
+	}
+
+	private void failWriteRequest(@NonNull final WriteRequest wr) {
+		final BluetoothDevice device = bluetoothDevice;
+		if (device != null) {
+			wr.notifyFail(device, connected ?
+					FailCallback.REASON_NULL_ATTRIBUTE : FailCallback.REASON_DEVICE_DISCONNECTED);
+		}
+		nextRequest(true);
+	}
+
+	private boolean internalWriteCharacteristic(@NonNull final BluetoothGattCharacteristic characteristic,
+												@Nullable final WriteRateLimiter limiter) {
+		if (!internalWriteCharacteristic(characteristic))
+			return false;
+		if (limiter != null) {
+			final byte[] value = characteristic.getValue();
+			limiter.onPacketSent(value != null ? value.length : 0, now());
+		}
+		return true;
+	}
+
+	/**
+	 * Sends the next packet of a pipelined {@link WriteRequest} directly from the write callback.
+	 * If the packet could not be sent, most probably because the outgoing buffer is full,
+	 * sending is retried with an increasing delay.
+	 *
+	 * @param wr      the pipelined write request, currently in progress.
+	 * @param packet  the packet to be sent.
+	 * @param attempt the number of failed attempts so far.
+	 * @return True if the packet was sent or a retry was scheduled; false if the
+	 * characteristic is not available.
+	 */
+	private boolean internalWritePipelinedPacket(@NonNull final WriteRequest wr,
+												 @NonNull final byte[] packet,
+												 final int attempt) {
+		final BluetoothGattCharacteristic characteristic = wr.characteristic;
+		if (characteristic == null)
+			return false;
+		if (wr.getSourceException() != null) {
+			failStreamedWriteRequest(wr);
+			return true;
+		}
+
+		final WriteRateLimiter limiter = getWriteRateLimiter(characteristic);
+		if (limiter != null && postponeWrite(wr, limiter,
+				() -> internalWritePipelinedPacket(wr, packet, attempt))) {
+			return true;
+		}
+
+		characteristic.setValue(packet);
+		characteristic.setWriteType(wr.getWriteType());
+		if (internalWriteCharacteristic(characteristic, limiter))
+			return true;
+
+		if (attempt >= PIPELINE_MAX_RETRIES || !connected) {
+			final BluetoothDevice device = bluetoothDevice;
+			if (device != null) {
+				wr.notifyFail(device, connected ?
+						FailCallback.REASON_REQUEST_FAILED : FailCallback.REASON_DEVICE_DISCONNECTED);
+			}
+			postOnEventLoop(() -> nextRequest(true));
+			return true;
+		}
+		log(Log.DEBUG, () -> "Outgoing buffer full, retrying...");
+		postDelayedOnEventLoop(() -> {
+			// Make sure the request has not been cancelled or failed in the meantime.
+			if (request == wr && !wr.finished) {
+				internalWritePipelinedPacket(wr, packet, attempt + 1);
+			}
+		}, Math.min(attempt + 1, PIPELINE_MAX_RETRY_DELAY));
+		return true;
+	}
+
 	private boolean internalReadDescriptor(@Nullable final BluetoothGattDescriptor descriptor) {
 		final BluetoothGatt gatt = bluetoothGatt;
 		if (gatt == null || descriptor == null || !connected)
@@ -1122,7 +1442,76 @@ abstract class BleManagerHandler extends RequestHandler {
 		}
 		log(Log.VERBOSE, () -> "Requesting connection priority: " + text + "...");
 		log(Log.DEBUG, () -> "gatt.requestConnectionPriority(" + priorityText + ")");
-		return gatt.requestConnectionPriority(priority);
+		final ConnectionPriorityPolicy policy = priorityPolicy;
+		if (!gatt.requestConnectionPriority(priority)) {
+			if (policy != null)
+				policy.onPriorityRejected(priority);
+			return false;
+		}
+		if (policy != null) {
+			policy.onPriorityRequested(priority);
+			schedulePriorityIdleCheck();
+		}
+		return true;
+	}
+
+	/**
+	 * Adds a connection priority request at the front of the queue, if the
+	 * {@link #priorityPolicy} requires a different priority for the current load.
+	 */
+	private void adjustConnectionPriority() {
+		final ConnectionPriorityPolicy policy = priorityPolicy;
+		if (policy == null || !connected || Build.VERSION.SDK_INT < Build.VERSION_CODES.LOLLIPOP)
+			return;
+		final long now = elapsedRealtime();
+		policy.onQueueDepth(taskQueue.size(), now);
+		final int priority = policy.getPriorityToRequest(now);
+		if (priority == ConnectionPriorityPolicy.NONE)
+			return;
+		@SuppressWarnings("deprecation")
+		final ConnectionPriorityRequest request = Request.newConnectionPriorityRequest(priority);
+		request.setRequestHandler(this);
+		request.priority = Request.PRIORITY_CONTROL;
+		request.enqueueTime = now();
+		notifyRequestEnqueued(request);
+		taskQueue.addFirst(request);
+		request.enqueued = true;
+	}
+
+	/**
+	 * Schedules switching to the idle priority when the idle period of the
+	 * {@link #priorityPolicy} elapses.
+	 */
+	private void schedulePriorityIdleCheck() {
+		final ConnectionPriorityPolicy policy = priorityPolicy;
+		if (policy == null || priorityIdleCheckScheduled)
+			return;
+		final long delay = policy.getIdleDelay(elapsedRealtime());
+		if (delay == ConnectionPriorityPolicy.NONE)
+			return;
+		priorityIdleCheckScheduled = true;
+		postDelayedOnEventLoop(() -> {
+			priorityIdleCheckScheduled = false;
+			onConnectionLoadChanged();
+		}, delay);
+	}
+
+	/**
+	 * Requests a new connection priority if the {@link #priorityPolicy} requires it.
+	 * If an operation is in progress, the priority will be adjusted when it completes.
+	 */
+	private void onConnectionLoadChanged() {
+		final ConnectionPriorityPolicy policy = priorityPolicy;
+		if (policy == null || !connected)
+			return;
+		if (policy.getPriorityToRequest(elapsedRealtime()) == ConnectionPriorityPolicy.NONE) {
+			// The load is still high.
+			schedulePriorityIdleCheck();
+			return;
+		}
+		if (!operationInProgress) {
+			nextRequest(false);
+		}
 	}
 
 	@RequiresApi(api = Build.VERSION_CODES.O)
@@ -1266,8 +1655,12 @@ abstract class BleManagerHandler extends RequestHandler {
 	private void enqueueFirst(@NonNull final Request request) {
 		final RequestQueue rq = requestQueue;
 		if (rq == null) {
-			final Deque<Request> queue = initQueue != null ? initQueue : taskQueue;
-			queue.addFirst(request);
+			final Deque<Request> iq = initQueue;
+			if (iq != null) {
+				iq.addFirst(request);
+			} else {
+				taskQueue.addFirst(request);
+			}
 		} else {
 			rq.addFirst(request);
 		}
@@ -1283,82 +1676,783 @@ abstract class BleManagerHandler extends RequestHandler {
 
 	@Override
 	final void enqueue(@NonNull final Request request) {
-		final Deque<Request> queue = initQueue != null ? initQueue : taskQueue;
-		queue.add(request);
+		request.enqueueTime = now();
+		notifyRequestEnqueued(request);
 		request.enqueued = true;
-		nextRequest(false);
+		eventLoop.execute(() -> {
+			if (request.type == Request.Type.DISCONNECT) {
+				stopReconnecting();
+			}
+			final Deque<Request> iq = initQueue;
+			WriteRequest superseded = null;
+			if (iq != null) {
+				iq.add(request);
+			} else {
+				superseded = taskQueue.add(request);
+			}
+			if (superseded != null) {
+				notifySuperseded(superseded);
+			}
+			nextRequest(false);
+		});
 	}
 
 	@Override
-	final void cancelQueue() {
-		taskQueue.clear();
-		initQueue = null;
-		final BluetoothDevice device = this.bluetoothDevice;
-		if (device == null) {
-			return;
-		}
-		if (awaitingRequest != null) {
-			awaitingRequest.notifyFail(device, FailCallback.REASON_CANCELLED);
-		}
-		if (request != null && awaitingRequest != request) {
-			request.notifyFail(device, FailCallback.REASON_CANCELLED);
-			request = null;
-		}
-		awaitingRequest = null;
-		if (requestQueue != null) {
-			requestQueue.notifyFail(device, FailCallback.REASON_CANCELLED);
-			requestQueue = null;
-		}
-		if (connectRequest != null) {
-			connectRequest.notifyFail(device, FailCallback.REASON_CANCELLED);
-			connectRequest = null;
-			internalDisconnect(ConnectionObserver.REASON_CANCELLED);
-		} else {
-			nextRequest(true);
+	final void enqueueAll(@NonNull final Request[] requests) {
+		final long now = now();
+		for (final Request request : requests) {
+			request.enqueueTime = now;
+			notifyRequestEnqueued(request);
+			request.enqueued = true;
 		}
+		eventLoop.execute(() -> {
+			for (final Request request : requests) {
+				if (request.type == Request.Type.DISCONNECT) {
+					stopReconnecting();
+					break;
+				}
+			}
+			final Deque<Request> iq = initQueue;
+			List<WriteRequest> superseded = null;
+			if (iq != null) {
+				Collections.addAll(iq, requests);
+			} else {
+				superseded = taskQueue.addAll(requests);
+			}
+			if (superseded != null) {
+				for (final WriteRequest wr : superseded) {
+					notifySuperseded(wr);
+				}
+			}
+			nextRequest(false);
+		});
 	}
 
-	@Override
-	final void onRequestTimeout(@NonNull final TimeoutableRequest request) {
-		this.request = null;
-		awaitingRequest = null;
-		if (request.type == Request.Type.CONNECT) {
-			connectRequest = null;
-			internalDisconnect(ConnectionObserver.REASON_TIMEOUT);
-			// The method above will call mGattCallback.nextRequest(true) so we have to return here.
-			return;
-		}
-		if (request.type == Request.Type.DISCONNECT) {
-			close();
-			return;
-		}
-		nextRequest(true);
+	private void notifyRequestEnqueued(@NonNull final Request request) {
+		final RequestObserver observer = manager.requestObserver;
+		if (observer != null)
+			observer.onRequestEnqueued(bluetoothDevice, request, request.type.name(), uuidOf(request));
 	}
 
 	@Override
-	public void post(@NonNull final Runnable r) {
-		handler.post(r);
+	final void onRequestStarted(@NonNull final Request request,
+								@NonNull final BluetoothDevice device) {
+		metrics.onRequestStarted(request);
+		final RequestObserver observer = manager.requestObserver;
+		if (observer != null)
+			observer.onRequestStarted(device, request, request.type.name(), uuidOf(request));
 	}
 
 	@Override
-	public void postDelayed(@NonNull final Runnable r, final long delayMillis) {
-		handler.postDelayed(r, delayMillis);
+	final void onPacketSent(@NonNull final Request request,
+							@NonNull final BluetoothDevice device, final int bytes) {
+		countBulkTransferPacket(request, bytes);
+		final RequestObserver observer = manager.requestObserver;
+		if (observer != null)
+			observer.onPacketSent(device, request, request.type.name(), uuidOf(request), bytes);
 	}
 
 	@Override
-	public void removeCallbacks(@NonNull final Runnable r) {
-		handler.removeCallbacks(r);
+	final void onPacketReceived(@NonNull final Request request,
+								@NonNull final BluetoothDevice device, final int bytes) {
+		countBulkTransferPacket(request, bytes);
+		final RequestObserver observer = manager.requestObserver;
+		if (observer != null)
+			observer.onPacketReceived(device, request, request.type.name(), uuidOf(request), bytes);
 	}
 
-	// Helper methods
-	@Deprecated
-	private interface CallbackRunnable {
-		void run(@NonNull final BleManagerCallbacks callbacks);
+	private void countBulkTransferPacket(@NonNull final Request request, final int bytes) {
+		final RequestQueue rq = requestQueue;
+		if (rq instanceof BulkTransferRequest && rq != request)
+			((BulkTransferRequest) rq).onPacket(bytes);
 	}
 
-	@Deprecated
-	private void postCallback(@NonNull final CallbackRunnable r) {
-		final BleManagerCallbacks callbacks = manager.callbacks;
+	@Override
+	final void onRequestSucceeded(@NonNull final Request request,
+								  @NonNull final BluetoothDevice device) {
+		metrics.onRequestFinished(request, true);
+		taskQueue.onRequestFinished(request);
+		logSourceCloseFailure(request);
+		// Don't look up the address if adaptive timeouts are disabled.
+		if (request instanceof TimeoutableRequest && request.startTime > 0
+				&& adaptiveTimeout.isEnabled())
+			adaptiveTimeout.onSample(device.getAddress(), request.type,
+					(request.finishTime - request.startTime) / 1_000_000L);
+		final RequestObserver observer = manager.requestObserver;
+		if (observer != null)
+			observer.onRequestSucceeded(device, request, request.type.name(), uuidOf(request));
+	}
+
+	@Override
+	final void onRequestFailed(@NonNull final Request request,
+							   @Nullable final BluetoothDevice device, final int status) {
+		metrics.onRequestFinished(request, false);
+		taskQueue.onRequestFinished(request);
+		// Otherwise, the exception is the one of reading the source, which was already logged.
+		if (status != FailCallback.REASON_IO_ERROR)
+			logSourceCloseFailure(request);
+		if (status == FailCallback.REASON_TIMEOUT && device != null && adaptiveTimeout.isEnabled())
+			adaptiveTimeout.onTimeout(device.getAddress(), request.type);
+		final RequestObserver observer = manager.requestObserver;
+		if (observer == null)
+			return;
+		if (status == FailCallback.REASON_TIMEOUT && device != null)
+			observer.onRequestTimedOut(device, request, request.type.name(), uuidOf(request));
+		else
+			observer.onRequestFailed(device, request, request.type.name(), uuidOf(request), status);
+	}
+
+	/**
+	 * Logs the failure of closing the {@link DataSource} of a finished {@link WriteRequest}.
+	 */
+	private void logSourceCloseFailure(@NonNull final Request request) {
+		if (request instanceof WriteRequest) {
+			final IOException e = ((WriteRequest) request).getSourceException();
+			if (e != null)
+				log(Log.WARN, () -> "Closing data source failed: " + e.getMessage());
+		}
+	}
+
+	@Override
+	final long getAdaptiveTimeout(@NonNull final TimeoutableRequest request,
+								  @NonNull final BluetoothDevice device) {
+		if (!adaptiveTimeout.isEnabled())
+			return 0L;
+		return adaptiveTimeout.getTimeout(device.getAddress(), request);
+	}
+
+	/**
+	 * Enables adaptive timeouts for requests without a timeout set explicitly.
+	 *
+	 * @see BleManager#enableAdaptiveTimeouts(long, long)
+	 */
+	final void enableAdaptiveTimeouts(final long minTimeout, final long maxTimeout) {
+		adaptiveTimeout.enable(minTimeout, maxTimeout);
+	}
+
+	/**
+	 * Disables adaptive timeouts and forgets the observed latencies.
+	 */
+	final void disableAdaptiveTimeouts() {
+		adaptiveTimeout.disable();
+	}
+
+	@Nullable
+	private static UUID uuidOf(@NonNull final Request request) {
+		if (request.characteristic != null)
+			return request.characteristic.getUuid();
+		if (request.descriptor != null)
+			return request.descriptor.getUuid();
+		return null;
+	}
+
+	@Override
+	final void onCallbackDispatched(@NonNull final Request request) {
+		metrics.onCallbackDispatched(request);
+	}
+
+	/**
+	 * Returns a snapshot of request latency metrics.
+	 */
+	@NonNull
+	final RequestMetrics getMetrics() {
+		return metrics.getSnapshot();
+	}
+
+	/**
+	 * Clears all request latency metrics.
+	 */
+	final void resetMetrics() {
+		metrics.reset();
+	}
+
+	@Override
+	final boolean cancel(@NonNull final Request request) {
+		// The task queue does not allow withdrawing a request that has already been taken
+		// for execution, so the request can't be started while it is being cancelled.
+		if (!request.enqueued || request.started || request.finished
+				|| !taskQueue.withdraw(request)) {
+			return false;
+		}
+		eventLoop.execute(() -> {
+			log(Log.DEBUG, () -> "Request cancelled");
+			notifyRemoved(request, bluetoothDevice, FailCallback.REASON_CANCELLED);
+		});
+		return true;
+	}
+
+	/**
+	 * Sets the scheduler shared with other managers.
+	 *
+	 * @see BleManager#setRadioScheduler(RadioScheduler)
+	 */
+	final void setRadioScheduler(@Nullable final RadioScheduler scheduler) {
+		eventLoop.execute(() -> {
+			if (radioScheduler == scheduler)
+				return;
+			if (radioScheduler != null) {
+				cancelRadioSlot();
+				radioScheduler.unregister(radioClient);
+			}
+			radioScheduler = scheduler;
+			if (scheduler != null) {
+				scheduler.register(radioClient);
+			}
+			nextRequest(false);
+		});
+	}
+
+	/**
+	 * Sets the entry of the connection pool this manager belongs to.
+	 *
+	 * @see ConnectionPool#getManager(BluetoothDevice)
+	 */
+	final void setConnectionPoolEntry(@Nullable final ConnectionPool.Entry<?> entry) {
+		poolEntry = entry;
+	}
+
+	/**
+	 * Called by the connection pool when a connection was granted to this manager.
+	 */
+	final void onConnectionGranted() {
+		eventLoop.execute(() -> nextRequest(false));
+	}
+
+	/**
+	 * Returns whether the manager has no requests to execute.
+	 * The value is approximate, as the queue is changing concurrently.
+	 */
+	final boolean isIdle() {
+		return !operationInProgress && taskQueue.isEmpty();
+	}
+
+	/**
+	 * Asks the connection pool, if any, whether the next request from the task queue
+	 * may be executed, connecting to the device first if needed.
+	 *
+	 * @return True, if the request may be executed; false, if the manager has to wait.
+	 */
+	private boolean acquireConnection() {
+		if (reconnection != null && reconnection.isReconnecting()) {
+			// Pending requests will be executed when the device is ready again.
+			return false;
+		}
+		final ConnectionPool.Entry<?> entry = poolEntry;
+		if (entry == null || taskQueue.isEmpty()) {
+			return true;
+		}
+		switch (entry.onRequest(connected)) {
+			case ConnectionPool.CONNECT:
+				final ConnectRequest request = entry.newConnectRequest();
+				// The connection must be established before any other request is executed.
+				request.priority = Request.PRIORITY_CONTROL;
+				request.enqueueTime = now();
+				notifyRequestEnqueued(request);
+				taskQueue.addFirst(request);
+				request.enqueued = true;
+				return true;
+			case ConnectionPool.WAIT:
+				return false;
+			case ConnectionPool.FAIL:
+				// The requests were waiting for the connection that could not be established.
+				Request failed;
+				while ((failed = taskQueue.poll()) != null) {
+					failed.notifyFail(entry.device, FailCallback.REASON_DEVICE_DISCONNECTED);
+				}
+				return true;
+			default:
+				return true;
+		}
+	}
+
+	/**
+	 * Sets the cache of service support decisions.
+	 *
+	 * @see BleManager#setServiceCache(ServiceCache)
+	 */
+	final void setServiceCache(@Nullable final ServiceCache cache) {
+		serviceCache = cache;
+	}
+
+	/**
+	 * Removes the cached services of the device, as they have changed.
+	 */
+	private void invalidateServiceCache(@NonNull final BluetoothDevice device) {
+		final ServiceCache cache = serviceCache;
+		if (cache != null) {
+			cache.invalidate(device.getAddress());
+		}
+		serviceLayoutUnchanged = false;
+		// Characteristics will be discovered again.
+		valueCache.clear();
+	}
+
+	/**
+	 * Adds a characteristic to be read after initialization.
+	 *
+	 * @see BleManager#addPrefetch(UUID, UUID)
+	 */
+	final void addPrefetch(@NonNull final UUID serviceUuid, @NonNull final UUID characteristicUuid) {
+		prefetch.add(new UUID[] { serviceUuid, characteristicUuid });
+	}
+
+	final void clearPrefetch() {
+		prefetch.clear();
+	}
+
+	@NonNull
+	final ValueCache getValueCache() {
+		return valueCache;
+	}
+
+	/**
+	 * Sets the rate limiter of all characteristic writes.
+	 *
+	 * @see BleManager#setWriteRateLimiter(WriteRateLimiter)
+	 */
+	final void setWriteRateLimiter(@Nullable final WriteRateLimiter limiter) {
+		writeRateLimiter = limiter;
+	}
+
+	/**
+	 * Sets the rate limiter of writes to characteristics with the given UUID.
+	 *
+	 * @see BleManager#setWriteRateLimiter(UUID, WriteRateLimiter)
+	 */
+	final void setWriteRateLimiter(@NonNull final UUID characteristicUuid,
+								   @Nullable final WriteRateLimiter limiter) {
+		if (limiter != null)
+			characteristicWriteRateLimiters.put(characteristicUuid, limiter);
+		else
+			characteristicWriteRateLimiters.remove(characteristicUuid);
+	}
+
+	/**
+	 * Sets the policy switching the connection priority depending on the load.
+	 *
+	 * @see BleManager#setConnectionPriorityPolicy(ConnectionPriorityPolicy)
+	 */
+	final void setConnectionPriorityPolicy(@Nullable final ConnectionPriorityPolicy policy) {
+		eventLoop.execute(() -> {
+			priorityPolicy = policy;
+			if (policy != null && connected && !operationInProgress) {
+				nextRequest(false);
+			}
+		});
+	}
+
+	@Nullable
+	private WriteRateLimiter getWriteRateLimiter(@NonNull final BluetoothGattCharacteristic characteristic) {
+		final WriteRateLimiter limiter = characteristicWriteRateLimiters.get(characteristic.getUuid());
+		return limiter != null ? limiter : writeRateLimiter;
+	}
+
+	/**
+	 * Enqueues reads of prefetched characteristics at the end of the initialization queue.
+	 */
+	private void enqueuePrefetch(@NonNull final BluetoothGatt gatt) {
+		for (final UUID[] uuids : prefetch) {
+			final BluetoothGattService service = gatt.getService(uuids[0]);
+			final BluetoothGattCharacteristic characteristic =
+					service != null ? service.getCharacteristic(uuids[1]) : null;
+			if (characteristic == null
+					|| (characteristic.getProperties() & BluetoothGattCharacteristic.PROPERTY_READ) == 0)
+				continue;
+			valueCache.track(characteristic);
+			final ReadRequest request = Request.newReadRequest(characteristic);
+			request.prefetch = true;
+			enqueue(request.setRequestHandler(this));
+		}
+	}
+
+	/**
+	 * Starts service discovery, unless it has already been started.
+	 */
+	private void discoverServices(@NonNull final BluetoothGatt gatt) {
+		if (!connected || servicesDiscovered || serviceDiscoveryRequested)
+			return;
+		serviceDiscoveryRequested = true;
+		log(Log.VERBOSE, () -> "Discovering services...");
+		log(Log.DEBUG, () -> "gatt.discoverServices()");
+		gatt.discoverServices();
+	}
+
+	/**
+	 * Negotiates connection parameters requested using the connect request before services
+	 * are discovered.
+	 *
+	 * @param gatt           the GATT client.
+	 * @param connectRequest the connect request.
+	 * @return True, if the MTU was requested and the discovery should start when it's changed.
+	 */
+	private boolean negotiateBeforeDiscovery(@NonNull final BluetoothGatt gatt,
+											 @NonNull final ConnectRequest connectRequest) {
+		negotiatedBeforeDiscovery = true;
+		final int priority = connectRequest.getPreDiscoveryConnectionPriority();
+		if (priority >= 0 && Build.VERSION.SDK_INT >= Build.VERSION_CODES.LOLLIPOP) {
+			if (internalRequestConnectionPriority(priority) && reconnection != null) {
+				reconnection.onConnectionPriorityChanged(priority);
+			}
+		}
+		if (connectRequest.getPreDiscoveryTxPhy() != 0 && Build.VERSION.SDK_INT >= Build.VERSION_CODES.O) {
+			internalSetPreferredPhy(connectRequest.getPreDiscoveryTxPhy(),
+					connectRequest.getPreDiscoveryRxPhy(), connectRequest.getPreDiscoveryPhyOptions());
+		}
+		final int mtu = connectRequest.getPreDiscoveryMtu();
+		if (mtu > 23 && Build.VERSION.SDK_INT >= Build.VERSION_CODES.LOLLIPOP
+				&& internalRequestMtu(mtu)) {
+			mtuBeforeDiscoveryRequested = true;
+			final int connectionCount = this.connectionCount;
+			// Some phones don't report the MTU change. Don't wait for it forever.
+			postDelayedOnEventLoop(() -> {
+				if (connectionCount == this.connectionCount && mtuBeforeDiscoveryRequested) {
+					log(Log.WARN, () -> "MTU change not reported");
+					mtuBeforeDiscoveryRequested = false;
+					discoverServices(gatt);
+				}
+			}, MTU_BEFORE_DISCOVERY_TIMEOUT);
+			return true;
+		}
+		return false;
+	}
+
+	/**
+	 * Handles a link loss or a failed reconnection attempt when reconnection is enabled.
+	 * Requests that were not started are kept in the queue.
+	 *
+	 * @param device the device.
+	 * @param status the status of the disconnection.
+	 */
+	private void scheduleReconnection(@NonNull final BluetoothDevice device, final int status) {
+		final Reconnection reconnection = this.reconnection;
+		if (connected) {
+			// The following method resets the MTU and releases the callbacks.
+			reconnection.onLinkLoss(mtu, valueChangedCallbacks);
+			initQueue = null;
+			ready = false;
+			notifyDeviceDisconnected(device, mapDisconnectStatusToReason(status));
+			if (request != null) {
+				request.notifyFail(device, FailCallback.REASON_DEVICE_DISCONNECTED);
+				request = null;
+			}
+			if (awaitingRequest != null) {
+				awaitingRequest.notifyFail(device, FailCallback.REASON_DEVICE_DISCONNECTED);
+				awaitingRequest = null;
+			}
+		}
+		connectRequest = null;
+		operationInProgress = false;
+
+		final long delay = reconnection.nextDelay();
+		log(Log.DEBUG, () -> "wait(" + delay + ")");
+		postDelayedOnEventLoop(() -> {
+			// Disconnect or a new connection may have been requested in the meantime.
+			if (this.reconnection != reconnection || !reconnection.isReconnecting())
+				return;
+			log(Log.VERBOSE, () -> "Reconnecting...");
+			final ConnectRequest request = Request.connect(device).setRequestHandler(this);
+			reconnection.request = request;
+			connectRequest = request;
+			internalConnect(device, request);
+		}, delay);
+	}
+
+	/**
+	 * Stops reconnecting to the device, if reconnection is in progress.
+	 */
+	private void stopReconnecting() {
+		final Reconnection reconnection = this.reconnection;
+		if (reconnection != null && reconnection.isReconnecting()) {
+			log(Log.VERBOSE, () -> "Reconnection cancelled");
+			reconnection.cancel();
+		}
+	}
+
+	/**
+	 * Acquires a slot from the radio scheduler for the next request in the task queue.
+	 *
+	 * @return True, if the request may be executed; false, if the manager has to wait.
+	 */
+	private boolean acquireRadioSlot() {
+		final RadioScheduler scheduler = radioScheduler;
+		if (scheduler == null || radioSlotHeld) {
+			return true;
+		}
+		if (radioSlotGranted) {
+			radioSlotGranted = false;
+			radioSlotHeld = true;
+			return true;
+		}
+		final int priority = taskQueue.getHighestPriority();
+		if (priority < 0) {
+			// Nothing to execute.
+			return true;
+		}
+		if (!scheduler.acquire(radioClient, priority)) {
+			return false;
+		}
+		radioSlotHeld = true;
+		return true;
+	}
+
+	/**
+	 * Releases the slot acquired from the radio scheduler, if any.
+	 *
+	 * @param continued true to ask for the next slot right away, if there are more requests
+	 *                  in the task queue.
+	 */
+	private void releaseRadioSlot(final boolean continued) {
+		if (radioSlotHeld) {
+			radioSlotHeld = false;
+			final int priority = continued ? taskQueue.getHighestPriority() : -1;
+			if (radioScheduler.release(radioClient, priority)) {
+				radioSlotGranted = true;
+			}
+		}
+	}
+
+	/**
+	 * Releases the slot held or granted by the radio scheduler and stops waiting for one.
+	 */
+	private void cancelRadioSlot() {
+		final RadioScheduler scheduler = radioScheduler;
+		if (scheduler == null) {
+			return;
+		}
+		scheduler.cancel(radioClient);
+		if (radioSlotGranted) {
+			radioSlotGranted = false;
+			radioSlotHeld = true;
+		}
+		releaseRadioSlot(false);
+	}
+
+	/**
+	 * Returns whether the request uses the radio for a short time, so it should be scheduled
+	 * by the {@link RadioScheduler}.
+	 */
+	private static boolean isRadioOperation(@NonNull final Request request) {
+		switch (request.type) {
+			case CONNECT:
+			case DISCONNECT:
+			case CREATE_BOND:
+			case ENSURE_BOND:
+			case REMOVE_BOND:
+			case SET_VALUE:
+			case SET_DESCRIPTOR_VALUE:
+			case SLEEP:
+			case WAIT_FOR_CONDITION:
+				return false;
+			case WAIT_FOR_NOTIFICATION:
+			case WAIT_FOR_INDICATION:
+			case WAIT_FOR_READ:
+			case WAIT_FOR_WRITE:
+				return ((AwaitingRequest<?>) request).getTrigger() != null;
+			default:
+				return true;
+		}
+	}
+
+	/**
+	 * Returns the next request from the task queue. Requests that have missed their deadline
+	 * are failed and skipped.
+	 *
+	 * @return The next request to be executed, or null, if the queue is empty.
+	 */
+	@Nullable
+	private Request pollTaskQueue() {
+		Request request;
+		long now = 0;
+		while ((request = taskQueue.poll()) != null && request.deadline > 0) {
+			if (now == 0)
+				now = elapsedRealtime();
+			if (!request.isExpired(now) || !failExpired(request))
+				break;
+		}
+		return request;
+	}
+
+	/**
+	 * Fails the request that has missed its deadline.
+	 *
+	 * @param request the expired request.
+	 * @return True, if the request was failed; false if the target device is not known and
+	 * the request should be executed to report it as invalid.
+	 */
+	private boolean failExpired(@NonNull final Request request) {
+		final BluetoothDevice device = bluetoothDevice;
+		if (device == null)
+			return false;
+		log(Log.WARN, () -> "Deadline exceeded, skipping " + request.type + " request");
+		request.notifyFail(device, FailCallback.REASON_DEADLINE_EXCEEDED);
+		return true;
+	}
+
+	private void notifySuperseded(@NonNull final WriteRequest request) {
+		final BluetoothDevice device = bluetoothDevice;
+		if (device != null) {
+			log(Log.DEBUG, () -> "Write request superseded");
+			request.notifyFail(device, FailCallback.REASON_SUPERSEDED);
+		} else {
+			request.notifyInvalidRequest();
+		}
+	}
+
+	@Override
+	final void cancelQueue() {
+		eventLoop.execute(() -> {
+			stopReconnecting();
+			clearQueues(FailCallback.REASON_CANCELLED);
+			final BluetoothDevice device = this.bluetoothDevice;
+			if (device == null) {
+				return;
+			}
+			if (awaitingRequest != null) {
+				awaitingRequest.notifyFail(device, FailCallback.REASON_CANCELLED);
+			}
+			if (request != null && awaitingRequest != request) {
+				request.notifyFail(device, FailCallback.REASON_CANCELLED);
+				request = null;
+			}
+			awaitingRequest = null;
+			if (requestQueue != null) {
+				requestQueue.notifyFail(device, FailCallback.REASON_CANCELLED);
+				requestQueue = null;
+			}
+			if (connectRequest != null) {
+				connectRequest.notifyFail(device, FailCallback.REASON_CANCELLED);
+				connectRequest = null;
+				internalDisconnect(ConnectionObserver.REASON_CANCELLED);
+			} else {
+				nextRequest(true);
+			}
+		});
+	}
+
+	@NonNull
+	@Override
+	final Runnable scheduleTimeout(@NonNull final TimeoutableRequest request,
+								   @NonNull final BluetoothDevice device, final long delayMillis) {
+		return postDelayedOnEventLoop(() -> {
+			// This check makes sure that only the request that timed out will be notified,
+			// and the queue is not advanced if the request has already completed.
+			if (request.finished || (this.request != request && awaitingRequest != request
+					&& connectRequest != request)) {
+				return;
+			}
+			request.notifyFail(device, FailCallback.REASON_TIMEOUT);
+			this.request = null;
+			awaitingRequest = null;
+			if (request.type == Request.Type.CONNECT) {
+				connectRequest = null;
+				internalDisconnect(ConnectionObserver.REASON_TIMEOUT);
+				// The method above will call mGattCallback.nextRequest(true) so we have to return here.
+				return;
+			}
+			if (request.type == Request.Type.DISCONNECT) {
+				close();
+				return;
+			}
+			nextRequest(true);
+		}, delayMillis);
+	}
+
+	@Override
+	public void post(@NonNull final Runnable r) {
+		callbackExecutor.execute(r);
+	}
+
+	@Override
+	public void postDelayed(@NonNull final Runnable r, final long delayMillis) {
+		handler.postDelayed(r, delayMillis);
+	}
+
+	@Override
+	public void removeCallbacks(@NonNull final Runnable r) {
+		handler.removeCallbacks(r);
+	}
+
+	/**
+	 * Posts the task to the handler. The task will be executed on the event loop.
+	 */
+	private void postOnEventLoop(@NonNull final Runnable task) {
+		handler.post(() -> eventLoop.execute(task));
+	}
+
+	/**
+	 * Posts the task to the handler with a delay. The task will be executed on the event loop.
+	 *
+	 * @return The posted runnable, which may be removed with {@link #removeCallbacks(Runnable)}.
+	 */
+	@NonNull
+	private Runnable postDelayedOnEventLoop(@NonNull final Runnable task, final long delayMillis) {
+		final Runnable posted = () -> eventLoop.execute(task);
+		handler.postDelayed(posted, delayMillis);
+		return posted;
+	}
+
+	/**
+	 * Removes all requests from the task queue and the init queue. The requests that have
+	 * not been executed are failed with the given reason.
+	 *
+	 * @param reason the reason of the failure.
+	 */
+	private void clearQueues(final int reason) {
+		final List<Request> removed = taskQueue.clear();
+		final Deque<Request> iq = initQueue;
+		initQueue = null;
+		if (iq != null) {
+			for (final Request request : iq) {
+				if (taskQueue.withdraw(request))
+					removed.add(request);
+			}
+		}
+		final BluetoothDevice device = bluetoothDevice;
+		for (final Request request : removed) {
+			notifyRemoved(request, device, reason);
+		}
+	}
+
+	/**
+	 * Fails a request that was removed from the queue before being executed.
+	 * If the manager has not been connected yet, the device is not known and the request
+	 * is reported as invalid instead.
+	 *
+	 * @param request the removed request.
+	 * @param device  the target device, or null, if not known.
+	 * @param reason  the reason of the failure.
+	 */
+	private void notifyRemoved(@NonNull final Request request,
+							   @Nullable final BluetoothDevice device, final int reason) {
+		if (device != null) {
+			request.notifyFail(device, reason);
+		} else {
+			request.notifyInvalidRequest();
+		}
+	}
+
+	@Override
+	final long now() {
+		return metrics.now();
+	}
+
+	/**
+	 * Returns the milliseconds since boot, using the clock of the {@link MetricsRecorder},
+	 * so that all timestamps of the handler share the same time base.
+	 */
+	private long elapsedRealtime() {
+		return now() / 1_000_000;
+	}
+
+	// Helper methods
+	@Deprecated
+	private interface CallbackRunnable {
+		void run(@NonNull final BleManagerCallbacks callbacks);
+	}
+
+	@Deprecated
+	private void postCallback(@NonNull final CallbackRunnable r) {
+		final BleManagerCallbacks callbacks = manager.callbacks;
 		if (callbacks != null) {
 			post(() -> r.run(callbacks));
 		}
@@ -1455,6 +2549,21 @@ abstract class BleManagerHandler extends RequestHandler {
 	 */
 	protected abstract boolean isRequiredServiceSupported(@NonNull final BluetoothGatt gatt);
 
+	/**
+	 * Returns whether the services discovered on this connection are the same as services
+	 * discovered on a previous connection to the device. This method may be used in
+	 * {@link #isRequiredServiceSupported(BluetoothGatt)} and
+	 * {@link #isOptionalServiceSupported(BluetoothGatt)} to skip validation of characteristics,
+	 * e.g. checking their properties, which was already done before.
+	 *
+	 * @return True, if the services are known to be unchanged; false, if they have changed,
+	 * the device is connected for the first time or no {@link ServiceCache} is set.
+	 * @see BleManager#setServiceCache(ServiceCache)
+	 */
+	protected final boolean isServiceLayoutUnchanged() {
+		return serviceLayoutUnchanged;
+	}
+
 	/**
 	 * This method should return <code>true</code> when the gatt device supports the
 	 * optional services. The default implementation returns <code>false</code>.
@@ -1584,6 +2693,12 @@ abstract class BleManagerHandler extends RequestHandler {
 		connected = false;
 		servicesDiscovered = false;
 		serviceDiscoveryRequested = false;
+		mtuBeforeDiscoveryRequested = false;
+		valueCache.clear();
+		final ConnectionPriorityPolicy policy = priorityPolicy;
+		if (policy != null) {
+			policy.reset();
+		}
 		deviceNotSupported = false;
 		mtu = 23;
 		connectionState = BluetoothGatt.STATE_DISCONNECTED;
@@ -1625,6 +2740,10 @@ abstract class BleManagerHandler extends RequestHandler {
 			callback.notifyClosed();
 		}
 		valueChangedCallbacks.clear();
+		final ConnectionPool.Entry<?> entry = poolEntry;
+		if (entry != null) {
+			entry.onDisconnected(wasConnected);
+		}
 		onServicesInvalidated();
 		onDeviceDisconnected();
 	}
@@ -1780,271 +2899,316 @@ abstract class BleManagerHandler extends RequestHandler {
 		@Override
 		public void onConnectionStateChange(@NonNull final BluetoothGatt gatt,
 											final int status, final int newState) {
-			log(Log.DEBUG, () ->
-					"[Callback] Connection state changed with status: " + status +
-					" and new state: " + newState + " (" + ParserUtils.stateToString(newState) + ")");
-
-			if (status == BluetoothGatt.GATT_SUCCESS && newState == BluetoothProfile.STATE_CONNECTED) {
-				// Sometimes, when a notification/indication is received after the device got
-				// disconnected, the Android calls onConnectionStateChanged again, with state
-				// STATE_CONNECTED.
-				// See: https://github.com/NordicSemiconductor/Android-BLE-Library/issues/43
-				if (bluetoothDevice == null) {
-					Log.e(TAG, "Device received notification after disconnection.");
-					log(Log.DEBUG, () -> "gatt.close()");
-					try {
-						gatt.close();
-					} catch (final Throwable t) {
-						// ignore
+			eventLoop.execute(() -> {
+				log(Log.DEBUG, () ->
+						"[Callback] Connection state changed with status: " + status +
+						" and new state: " + newState + " (" + ParserUtils.stateToString(newState) + ")");
+
+				if (status == BluetoothGatt.GATT_SUCCESS && newState == BluetoothProfile.STATE_CONNECTED) {
+					// Sometimes, when a notification/indication is received after the device got
+					// disconnected, the Android calls onConnectionStateChanged again, with state
+					// STATE_CONNECTED.
+					// See: https://github.com/NordicSemiconductor/Android-BLE-Library/issues/43
+					if (bluetoothDevice == null) {
+						Log.e(TAG, "Device received notification after disconnection.");
+						log(Log.DEBUG, () -> "gatt.close()");
+						try {
+							gatt.close();
+						} catch (final Throwable t) {
+							// ignore
+						}
+						return;
 					}
-					return;
-				}
 
-				// Notify the parent activity/service.
-				log(Log.INFO, () -> "Connected to " + gatt.getDevice().getAddress());
-				connected = true;
-				connectionTime = 0L;
-				connectionState = BluetoothGatt.STATE_CONNECTED;
-				postCallback(c -> c.onDeviceConnected(gatt.getDevice()));
-				postConnectionStateChange(o -> o.onDeviceConnected(gatt.getDevice()));
-
-				if (!serviceDiscoveryRequested) {
-					final boolean bonded = gatt.getDevice().getBondState() == BluetoothDevice.BOND_BONDED;
-					final int delay = manager.getServiceDiscoveryDelay(bonded);
-					if (delay > 0)
-						log(Log.DEBUG, () -> "wait(" + delay + ")");
-
-					final int connectionCount = ++BleManagerHandler.this.connectionCount;
-					postDelayed(() -> {
-						if (connectionCount != BleManagerHandler.this.connectionCount) {
-							// Ensure that we will not try to discover services for a lost connection.
-							return;
-						}
-						// Some proximity tags (e.g. nRF PROXIMITY Pebble) initialize bonding
-						// automatically when connected. Wait with the discovery until bonding is
-						// complete. It will be initiated again in the bond state broadcast receiver
-						// on the top of this file.
-						if (connected && !servicesDiscovered && !serviceDiscoveryRequested &&
-								gatt.getDevice().getBondState() != BluetoothDevice.BOND_BONDING) {
-							serviceDiscoveryRequested = true;
-							log(Log.VERBOSE, () -> "Discovering services...");
-							log(Log.DEBUG, () -> "gatt.discoverServices()");
-							gatt.discoverServices();
-						}
-					}, delay);
-				}
-			} else {
-				if (newState == BluetoothProfile.STATE_DISCONNECTED) {
-					final long now = SystemClock.elapsedRealtime();
-					final boolean canTimeout = connectionTime > 0;
-					final boolean timeout = canTimeout && now > connectionTime + CONNECTION_TIMEOUT_THRESHOLD;
-
-					if (status != BluetoothGatt.GATT_SUCCESS)
-						log(Log.WARN, () ->
-								"Error: (0x" + Integer.toHexString(status) + "): " +
-								GattError.parseConnectionError(status));
-
-					// In case of a connection error, retry if required.
-					if (status != BluetoothGatt.GATT_SUCCESS && canTimeout && !timeout
-							&& connectRequest != null && connectRequest.canRetry()) {
-						final int delay = connectRequest.getRetryDelay();
+					// Notify the parent activity/service.
+					log(Log.INFO, () -> "Connected to " + gatt.getDevice().getAddress());
+					connected = true;
+					connectionTime = 0L;
+					connectedTime = now();
+					negotiatedBeforeDiscovery = false;
+					connectionState = BluetoothGatt.STATE_CONNECTED;
+					postCallback(c -> c.onDeviceConnected(gatt.getDevice()));
+					postConnectionStateChange(o -> o.onDeviceConnected(gatt.getDevice()));
+
+					if (!serviceDiscoveryRequested) {
+						final boolean bonded = gatt.getDevice().getBondState() == BluetoothDevice.BOND_BONDED;
+						final int delay = manager.getServiceDiscoveryDelay(bonded);
 						if (delay > 0)
 							log(Log.DEBUG, () -> "wait(" + delay + ")");
-						postDelayed(() -> internalConnect(gatt.getDevice(), connectRequest), delay);
-						return;
-					}
 
-					if (connectRequest != null && connectRequest.shouldAutoConnect() && initialConnection
-							&& gatt.getDevice().getBondState() == BluetoothDevice.BOND_BONDED) {
-						log(Log.DEBUG, () -> "autoConnect = false called failed; retrying with autoConnect = true");
-						post(() -> internalConnect(gatt.getDevice(), connectRequest));
-						return;
+						final int connectionCount = ++BleManagerHandler.this.connectionCount;
+						postDelayedOnEventLoop(() -> {
+							if (connectionCount != BleManagerHandler.this.connectionCount) {
+								// Ensure that we will not try to discover services for a lost connection.
+								return;
+							}
+							// Some proximity tags (e.g. nRF PROXIMITY Pebble) initialize bonding
+							// automatically when connected. Wait with the discovery until bonding is
+							// complete. It will be initiated again in the bond state broadcast receiver
+							// on the top of this file.
+							if (connected && !servicesDiscovered && !serviceDiscoveryRequested &&
+									gatt.getDevice().getBondState() != BluetoothDevice.BOND_BONDING) {
+								final ConnectRequest cr = connectRequest;
+								if (cr != null && !negotiatedBeforeDiscovery && cr.hasPreDiscoveryOptions()
+										&& negotiateBeforeDiscovery(gatt, cr)) {
+									// Services will be discovered when the MTU has changed.
+									return;
+								}
+								discoverServices(gatt);
+							}
+						}, delay);
 					}
+				} else {
+					if (newState == BluetoothProfile.STATE_DISCONNECTED) {
+						final long now = elapsedRealtime();
+						final boolean canTimeout = connectionTime > 0;
+						final boolean timeout = canTimeout && now > connectionTime + CONNECTION_TIMEOUT_THRESHOLD;
+
+						if (status != BluetoothGatt.GATT_SUCCESS)
+							log(Log.WARN, () ->
+									"Error: (0x" + Integer.toHexString(status) + "): " +
+									GattError.parseConnectionError(status));
+
+						// In case of a connection error, retry if required.
+						if (status != BluetoothGatt.GATT_SUCCESS && canTimeout && !timeout
+								&& connectRequest != null && connectRequest.canRetry()) {
+							final int delay = connectRequest.getRetryDelay();
+							if (delay > 0)
+								log(Log.DEBUG, () -> "wait(" + delay + ")");
+							postDelayedOnEventLoop(() -> internalConnect(gatt.getDevice(), connectRequest), delay);
+							return;
+						}
 
-					operationInProgress = true; // no more calls are possible
-					taskQueue.clear();
-					initQueue = null;
-					ready = false;
-
-					// Store the current value of the connected and deviceNotSupported flags...
-					final boolean wasConnected = connected;
-					final boolean notSupported = deviceNotSupported;
-					// ...because the next method sets them to false.
-					notifyDeviceDisconnected(gatt.getDevice(), // this may call close()
-							timeout ?
-								ConnectionObserver.REASON_TIMEOUT :
-									notSupported ?
-										ConnectionObserver.REASON_NOT_SUPPORTED :
-										mapDisconnectStatusToReason(status));
-
-					// Signal the current request, if any.
-					if (request != null) {
-						if (request.type != Request.Type.DISCONNECT && request.type != Request.Type.REMOVE_BOND) {
-							// The CONNECT request is notified below.
-							// The DISCONNECT request is notified below in
-							// notifyDeviceDisconnected(BluetoothDevice).
-							// The REMOVE_BOND request will be notified when the bond state changes
-							// to BOND_NONE in the broadcast received on the top of this file.
-							request.notifyFail(gatt.getDevice(),
-									status == BluetoothGatt.GATT_SUCCESS ?
-											FailCallback.REASON_DEVICE_DISCONNECTED : status);
-							request = null;
+						if (connectRequest != null && connectRequest.shouldAutoConnect() && initialConnection
+								&& gatt.getDevice().getBondState() == BluetoothDevice.BOND_BONDED) {
+							log(Log.DEBUG, () -> "autoConnect = false called failed; retrying with autoConnect = true");
+							postOnEventLoop(() -> internalConnect(gatt.getDevice(), connectRequest));
+							return;
+						}
+
+						final Reconnection reconnection = BleManagerHandler.this.reconnection;
+						if (reconnection != null && !userDisconnected
+								&& (ready || reconnection.isReconnecting())) {
+							if (reconnection.hasAttemptsLeft()) {
+								scheduleReconnection(gatt.getDevice(), status);
+								return;
+							}
+							log(Log.WARN, () -> "Reconnection failed");
+							reconnection.cancel();
+						}
+
+						operationInProgress = true; // no more calls are possible
+						clearQueues(FailCallback.REASON_DEVICE_DISCONNECTED);
+						ready = false;
+
+						// Store the current value of the connected and deviceNotSupported flags...
+						final boolean wasConnected = connected;
+						final boolean notSupported = deviceNotSupported;
+						// ...because the next method sets them to false.
+						notifyDeviceDisconnected(gatt.getDevice(), // this may call close()
+								timeout ?
+									ConnectionObserver.REASON_TIMEOUT :
+										notSupported ?
+											ConnectionObserver.REASON_NOT_SUPPORTED :
+											mapDisconnectStatusToReason(status));
+
+						// Signal the current request, if any.
+						if (request != null) {
+							if (request.type != Request.Type.DISCONNECT && request.type != Request.Type.REMOVE_BOND) {
+								// The CONNECT request is notified below.
+								// The DISCONNECT request is notified below in
+								// notifyDeviceDisconnected(BluetoothDevice).
+								// The REMOVE_BOND request will be notified when the bond state changes
+								// to BOND_NONE in the broadcast received on the top of this file.
+								request.notifyFail(gatt.getDevice(),
+										status == BluetoothGatt.GATT_SUCCESS ?
+												FailCallback.REASON_DEVICE_DISCONNECTED : status);
+								request = null;
+							}
+						}
+						if (awaitingRequest != null) {
+							awaitingRequest.notifyFail(gatt.getDevice(), FailCallback.REASON_DEVICE_DISCONNECTED);
+							awaitingRequest = null;
+						}
+						if (connectRequest != null) {
+							int reason;
+							if (notSupported)
+								reason = FailCallback.REASON_DEVICE_NOT_SUPPORTED;
+							else if (status == BluetoothGatt.GATT_SUCCESS)
+								reason = FailCallback.REASON_DEVICE_DISCONNECTED;
+							else if (status == GattError.GATT_ERROR && timeout)
+								reason = FailCallback.REASON_TIMEOUT;
+							else
+								reason = status;
+							connectRequest.notifyFail(gatt.getDevice(), reason);
+							connectRequest = null;
+						}
+
+						// Reset flag, so the next Connect could be enqueued.
+						operationInProgress = false;
+						// Try to reconnect if the initial connection was lost because of a link loss,
+						// and shouldAutoConnect() returned true during connection attempt.
+						// This time it will set the autoConnect flag to true (gatt.connect() forces
+						// autoConnect true).
+						if (wasConnected && initialConnection) {
+							internalConnect(gatt.getDevice(), null);
+						} else {
+							initialConnection = false;
+							nextRequest(false);
 						}
-					}
-					if (awaitingRequest != null) {
-						awaitingRequest.notifyFail(gatt.getDevice(), FailCallback.REASON_DEVICE_DISCONNECTED);
-						awaitingRequest = null;
-					}
-					if (connectRequest != null) {
-						int reason;
-						if (notSupported)
-							reason = FailCallback.REASON_DEVICE_NOT_SUPPORTED;
-						else if (status == BluetoothGatt.GATT_SUCCESS)
-							reason = FailCallback.REASON_DEVICE_DISCONNECTED;
-						else if (status == GattError.GATT_ERROR && timeout)
-							reason = FailCallback.REASON_TIMEOUT;
-						else
-							reason = status;
-						connectRequest.notifyFail(gatt.getDevice(), reason);
-						connectRequest = null;
-					}
 
-					// Reset flag, so the next Connect could be enqueued.
-					operationInProgress = false;
-					// Try to reconnect if the initial connection was lost because of a link loss,
-					// and shouldAutoConnect() returned true during connection attempt.
-					// This time it will set the autoConnect flag to true (gatt.connect() forces
-					// autoConnect true).
-					if (wasConnected && initialConnection) {
-						internalConnect(gatt.getDevice(), null);
+						if (wasConnected || status == BluetoothGatt.GATT_SUCCESS)
+							return;
 					} else {
-						initialConnection = false;
-						nextRequest(false);
+						if (status != BluetoothGatt.GATT_SUCCESS)
+							log(Log.ERROR, () ->
+									"Error (0x" + Integer.toHexString(status) + "): " +
+									GattError.parseConnectionError(status));
 					}
-
-					if (wasConnected || status == BluetoothGatt.GATT_SUCCESS)
-						return;
-				} else {
-					if (status != BluetoothGatt.GATT_SUCCESS)
-						log(Log.ERROR, () ->
-								"Error (0x" + Integer.toHexString(status) + "): " +
-								GattError.parseConnectionError(status));
+					postCallback(c -> c.onError(gatt.getDevice(), ERROR_CONNECTION_STATE_CHANGE, status));
 				}
-				postCallback(c -> c.onError(gatt.getDevice(), ERROR_CONNECTION_STATE_CHANGE, status));
-			}
+			});
 		}
 
 		@Override
 		public void onServicesDiscovered(@NonNull final BluetoothGatt gatt, final int status) {
-			if (!serviceDiscoveryRequested)
-				return;
-			serviceDiscoveryRequested = false;
-			if (status == BluetoothGatt.GATT_SUCCESS) {
-				log(Log.INFO, () -> "Services discovered");
-				servicesDiscovered = true;
-				if (isRequiredServiceSupported(gatt)) {
-					log(Log.VERBOSE, () -> "Primary service found");
-					deviceNotSupported = false;
-					final boolean optionalServicesFound = isOptionalServiceSupported(gatt);
-					if (optionalServicesFound)
-						log(Log.VERBOSE, () -> "Secondary service found");
-
-					// Notify the parent activity.
-					postCallback(c -> c.onServicesDiscovered(gatt.getDevice(), optionalServicesFound));
-
-					// Initialize server attributes.
-					if (serverManager != null) {
-						final BluetoothGattServer server = serverManager.getServer();
-						if (server != null) {
-							for (final BluetoothGattService service: server.getServices()) {
-								for (final BluetoothGattCharacteristic characteristic: service.getCharacteristics()) {
-									if (!serverManager.isShared(characteristic)) {
-										if (characteristicValues == null)
-											characteristicValues = new HashMap<>();
-										characteristicValues.put(characteristic, characteristic.getValue());
-									}
-									for (final BluetoothGattDescriptor descriptor: characteristic.getDescriptors()) {
-										if (!serverManager.isShared(descriptor)) {
-											if (descriptorValues == null)
-												descriptorValues = new HashMap<>();
-											descriptorValues.put(descriptor, descriptor.getValue());
+			eventLoop.execute(() -> {
+				if (!serviceDiscoveryRequested)
+					return;
+				serviceDiscoveryRequested = false;
+				if (status == BluetoothGatt.GATT_SUCCESS) {
+					log(Log.INFO, () -> "Services discovered");
+					servicesDiscovered = true;
+					final ServiceCache cache = serviceCache;
+					final String cacheKey = cache != null ?
+							ServiceCache.keyOf(manager.getClass(), gatt.getDevice().getAddress()) : null;
+					final long fingerprint = cache != null ?
+							ServiceCache.fingerprintOf(gatt.getServices()) : 0L;
+					final ServiceCache.Entry cached = cache != null ? cache.get(cacheKey, fingerprint) : null;
+					serviceLayoutUnchanged = cached != null;
+					// A device known to be not supported is rejected right away.
+					final boolean supported = (cached == null || cached.supported)
+							&& isRequiredServiceSupported(gatt);
+					if (cache != null && (cached == null || cached.supported != supported)) {
+						cache.put(cacheKey, fingerprint, supported);
+					}
+					if (supported) {
+						log(Log.VERBOSE, () -> "Primary service found");
+						deviceNotSupported = false;
+						final boolean optionalServicesFound = isOptionalServiceSupported(gatt);
+						if (optionalServicesFound)
+							log(Log.VERBOSE, () -> "Secondary service found");
+
+						// Notify the parent activity.
+						postCallback(c -> c.onServicesDiscovered(gatt.getDevice(), optionalServicesFound));
+
+						// Initialize server attributes.
+						if (serverManager != null) {
+							final BluetoothGattServer server = serverManager.getServer();
+							if (server != null) {
+								for (final BluetoothGattService service: server.getServices()) {
+									for (final BluetoothGattCharacteristic characteristic: service.getCharacteristics()) {
+										if (!serverManager.isShared(characteristic)) {
+											if (characteristicValues == null)
+												characteristicValues = new HashMap<>();
+											characteristicValues.put(characteristic, characteristic.getValue());
+										}
+										for (final BluetoothGattDescriptor descriptor: characteristic.getDescriptors()) {
+											if (!serverManager.isShared(descriptor)) {
+												if (descriptorValues == null)
+													descriptorValues = new HashMap<>();
+												descriptorValues.put(descriptor, descriptor.getValue());
+											}
 										}
 									}
 								}
+								onServerReady(server);
 							}
-							onServerReady(server);
 						}
-					}
 
-					// Obtain the queue of initialization requests.
-					// First, let's call the deprecated initGatt(...).
-					operationInProgress = true;
-					initQueue = initGatt(gatt);
+						// Obtain the queue of initialization requests.
+						// First, let's call the deprecated initGatt(...).
+						operationInProgress = true;
+						initQueue = initGatt(gatt);
 
-					final boolean deprecatedApiUsed = initQueue != null;
-					if (deprecatedApiUsed) {
-						for (final Request request : initQueue) {
-							request.setRequestHandler(BleManagerHandler.this);
-							request.enqueued = true;
+						final boolean deprecatedApiUsed = initQueue != null;
+						if (deprecatedApiUsed) {
+							for (final Request request : initQueue) {
+								request.setRequestHandler(BleManagerHandler.this);
+								request.enqueued = true;
+							}
 						}
-					}
 
-					if (initQueue == null)
-						initQueue = new LinkedBlockingDeque<>();
-
-					// Before we start executing the initialization queue some other tasks
-					// need to be done.
-					// Note, that operations are added in reverse order to the front of the queue.
-
-					// 1. On devices running Android 4.3-5.x, 8.x and 9.0 the Service Changed
-					//    characteristic needs to be enabled by the app (for bonded devices).
-					//    The request will be ignored if there is no Service Changed characteristic.
-					// This "fix" broke this in Android 8:
-					// https://android-review.googlesource.com/c/platform/system/bt/+/239970
-					if (Build.VERSION.SDK_INT < Build.VERSION_CODES.M
-							|| Build.VERSION.SDK_INT == Build.VERSION_CODES.O
-							|| Build.VERSION.SDK_INT == Build.VERSION_CODES.O_MR1
-							|| Build.VERSION.SDK_INT == Build.VERSION_CODES.P) {
-						enqueueFirst(Request.newEnableServiceChangedIndicationsRequest()
-								.setRequestHandler(BleManagerHandler.this));
-						// The above enqueueFirst sets this flag to false.
-						operationInProgress = true;
-					}
+						if (initQueue == null)
+							initQueue = new LinkedBlockingDeque<>();
+
+						// Before we start executing the initialization queue some other tasks
+						// need to be done.
+						// Note, that operations are added in reverse order to the front of the queue.
+
+						// 1. On devices running Android 4.3-5.x, 8.x and 9.0 the Service Changed
+						//    characteristic needs to be enabled by the app (for bonded devices).
+						//    The request will be ignored if there is no Service Changed characteristic.
+						// This "fix" broke this in Android 8:
+						// https://android-review.googlesource.com/c/platform/system/bt/+/239970
+						if (Build.VERSION.SDK_INT < Build.VERSION_CODES.M
+								|| Build.VERSION.SDK_INT == Build.VERSION_CODES.O
+								|| Build.VERSION.SDK_INT == Build.VERSION_CODES.O_MR1
+								|| Build.VERSION.SDK_INT == Build.VERSION_CODES.P) {
+							enqueueFirst(Request.newEnableServiceChangedIndicationsRequest()
+									.setRequestHandler(BleManagerHandler.this));
+							// The above enqueueFirst sets this flag to false.
+							operationInProgress = true;
+						}
 
-					// Deprecated:
-					if (deprecatedApiUsed) {
-						// All Battery Service handling will be removed from BleManager in the future.
-						// If you want to read/enable notifications on Battery Level characteristic
-						// do this in initialize(...).
-
-						// 2. Read Battery Level characteristic (if such does not exist, this will
-						//    be skipped)
-						manager.readBatteryLevel();
-						// 3. Enable Battery Level notifications if required (if this char. does not
-						//    exist, this operation will be skipped)
-						if (manager.callbacks != null &&
-							manager.callbacks.shouldEnableBatteryLevelNotifications(gatt.getDevice()))
-							manager.enableBatteryLevelNotifications();
-					}
-					// End
+						// Deprecated:
+						if (deprecatedApiUsed) {
+							// All Battery Service handling will be removed from BleManager in the future.
+							// If you want to read/enable notifications on Battery Level characteristic
+							// do this in initialize(...).
+
+							// 2. Read Battery Level characteristic (if such does not exist, this will
+							//    be skipped)
+							manager.readBatteryLevel();
+							// 3. Enable Battery Level notifications if required (if this char. does not
+							//    exist, this operation will be skipped)
+							if (manager.callbacks != null &&
+								manager.callbacks.shouldEnableBatteryLevelNotifications(gatt.getDevice()))
+								manager.enableBatteryLevelNotifications();
+						}
+						// End
 
-					initialize();
-					nextRequest(true);
+						final boolean restoring = reconnection != null && reconnection.isReconnecting();
+						if (restoring) {
+							// Callbacks set again in initialize() replace the saved ones.
+							reconnection.restoreCallbacks(gatt, valueChangedCallbacks);
+						}
+						initialize();
+						if (restoring) {
+							log(Log.VERBOSE, () -> "Restoring state...");
+							// Requests enqueued by initialize() have been added to the init queue.
+							for (final Request request : reconnection.restore(gatt, initQueue)) {
+								enqueue(request.setRequestHandler(BleManagerHandler.this));
+							}
+						}
+						enqueuePrefetch(gatt);
+						nextRequest(true);
+					} else {
+						log(Log.WARN, () -> "Device is not supported");
+						deviceNotSupported = true;
+						postCallback(c -> c.onDeviceNotSupported(gatt.getDevice()));
+						internalDisconnect(ConnectionObserver.REASON_NOT_SUPPORTED);
+					}
 				} else {
-					log(Log.WARN, () -> "Device is not supported");
-					deviceNotSupported = true;
-					postCallback(c -> c.onDeviceNotSupported(gatt.getDevice()));
-					internalDisconnect(ConnectionObserver.REASON_NOT_SUPPORTED);
-				}
-			} else {
-				Log.e(TAG, "onServicesDiscovered error " + status);
-				onError(gatt.getDevice(), ERROR_DISCOVERY_SERVICE, status);
-				if (connectRequest != null) {
-					connectRequest.notifyFail(gatt.getDevice(), FailCallback.REASON_REQUEST_FAILED);
-					connectRequest = null;
+					Log.e(TAG, "onServicesDiscovered error " + status);
+					onError(gatt.getDevice(), ERROR_DISCOVERY_SERVICE, status);
+					if (connectRequest != null) {
+						connectRequest.notifyFail(gatt.getDevice(), FailCallback.REASON_REQUEST_FAILED);
+						connectRequest = null;
+					}
+					internalDisconnect(ConnectionObserver.REASON_UNKNOWN);
 				}
-				internalDisconnect(ConnectionObserver.REASON_UNKNOWN);
-			}
+			});
 		}
 
 		// @Override
@@ -2057,69 +3221,79 @@ abstract class BleManagerHandler extends RequestHandler {
 		 */
 		@Keep
 		public void onServiceChanged(@NonNull final BluetoothGatt gatt) {
-			log(Log.INFO, () -> "Service changed, invalidating services");
-
-			// Forbid enqueuing more operations.
-			operationInProgress = true;
-			// Invalidate all services and characteristics
-			onServicesInvalidated();
-			onDeviceDisconnected();
-			// Clear queues, services are no longer valid.
-			taskQueue.clear();
-			initQueue = null;
-			// And discover services again
-			serviceDiscoveryRequested = true;
-			servicesDiscovered = false;
-			log(Log.VERBOSE, () -> "Discovering Services...");
-			log(Log.DEBUG, () -> "gatt.discoverServices()");
-			bluetoothGatt.discoverServices();
+			eventLoop.execute(() -> {
+				log(Log.INFO, () -> "Service changed, invalidating services");
+				invalidateServiceCache(gatt.getDevice());
+
+				// Forbid enqueuing more operations.
+				operationInProgress = true;
+				// Invalidate all services and characteristics
+				onServicesInvalidated();
+				onDeviceDisconnected();
+				// Clear queues, services are no longer valid.
+				clearQueues(FailCallback.REASON_CANCELLED);
+				// And discover services again
+				serviceDiscoveryRequested = true;
+				servicesDiscovered = false;
+				log(Log.VERBOSE, () -> "Discovering Services...");
+				log(Log.DEBUG, () -> "gatt.discoverServices()");
+				bluetoothGatt.discoverServices();
+			});
 		}
 
 		@Override
 		public void onCharacteristicRead(final BluetoothGatt gatt,
 										 final BluetoothGattCharacteristic characteristic,
 										 final int status) {
+			// Read the value on the calling thread, as it may be overwritten by another
+			// operation or notification before the event is processed.
 			final byte[] data = characteristic.getValue();
-
-			if (status == BluetoothGatt.GATT_SUCCESS) {
-				log(Log.INFO, () ->
-						"Read Response received from " + characteristic.getUuid() +
-						", value: " + ParserUtils.parse(data));
-
-				BleManagerHandler.this.onCharacteristicRead(gatt, characteristic);
-				if (request instanceof ReadRequest) {
-					final ReadRequest rr = (ReadRequest) request;
-					final boolean matches = rr.matches(data);
-					if (matches) {
-						rr.notifyValueChanged(gatt.getDevice(), data);
+			eventLoop.execute(() -> {
+				if (status == BluetoothGatt.GATT_SUCCESS) {
+					log(Log.INFO, () ->
+							"Read Response received from " + characteristic.getUuid() +
+							", value: " + ParserUtils.parse(data));
+
+					BleManagerHandler.this.onCharacteristicRead(gatt, characteristic);
+					valueCache.put(characteristic, data,
+							request instanceof ReadRequest && request.characteristic == characteristic
+									&& ((ReadRequest) request).isCacheEligible(),
+							elapsedRealtime());
+					if (request instanceof ReadRequest) {
+						final BluetoothDevice device = bluetoothDevice != null ? bluetoothDevice : gatt.getDevice();
+						final ReadRequest rr = (ReadRequest) request;
+						final boolean matches = rr.matches(data);
+						if (matches) {
+							rr.notifyValueChanged(device, data);
+						}
+						if (!matches || rr.hasMore()) {
+							enqueueFirst(rr);
+						} else {
+							rr.notifySuccess(device);
+						}
 					}
-					if (!matches || rr.hasMore()) {
-						enqueueFirst(rr);
-					} else {
-						rr.notifySuccess(gatt.getDevice());
+				} else if (status == BluetoothGatt.GATT_INSUFFICIENT_AUTHENTICATION
+						|| status == 8 /* GATT INSUF AUTHORIZATION */
+						|| status == 137 /* GATT AUTH FAIL */) {
+					log(Log.WARN, () -> "Authentication required (" + status + ")");
+					if (gatt.getDevice().getBondState() != BluetoothDevice.BOND_NONE) {
+						// This should never happen but it used to: http://stackoverflow.com/a/20093695/2115352
+						Log.w(TAG, ERROR_AUTH_ERROR_WHILE_BONDED);
+						postCallback(c -> c.onError(gatt.getDevice(), ERROR_AUTH_ERROR_WHILE_BONDED, status));
 					}
+					// The request will be repeated when the bond state changes to BONDED.
+					return;
+				} else {
+					Log.e(TAG, "onCharacteristicRead error " + status);
+					if (request instanceof ReadRequest) {
+						request.notifyFail(gatt.getDevice(), status);
+					}
+					awaitingRequest = null;
+					onError(gatt.getDevice(), ERROR_READ_CHARACTERISTIC, status);
 				}
-			} else if (status == BluetoothGatt.GATT_INSUFFICIENT_AUTHENTICATION
-					|| status == 8 /* GATT INSUF AUTHORIZATION */
-					|| status == 137 /* GATT AUTH FAIL */) {
-				log(Log.WARN, () -> "Authentication required (" + status + ")");
-				if (gatt.getDevice().getBondState() != BluetoothDevice.BOND_NONE) {
-					// This should never happen but it used to: http://stackoverflow.com/a/20093695/2115352
-					Log.w(TAG, ERROR_AUTH_ERROR_WHILE_BONDED);
-					postCallback(c -> c.onError(gatt.getDevice(), ERROR_AUTH_ERROR_WHILE_BONDED, status));
-				}
-				// The request will be repeated when the bond state changes to BONDED.
-				return;
-			} else {
-				Log.e(TAG, "onCharacteristicRead error " + status);
-				if (request instanceof ReadRequest) {
-					request.notifyFail(gatt.getDevice(), status);
-				}
-				awaitingRequest = null;
-				onError(gatt.getDevice(), ERROR_READ_CHARACTERISTIC, status);
-			}
-			checkCondition();
-			nextRequest(true);
+				checkCondition();
+				nextRequest(true);
+			});
 		}
 
 		@Override
@@ -2127,113 +3301,130 @@ abstract class BleManagerHandler extends RequestHandler {
 										  final BluetoothGattCharacteristic characteristic,
 										  final int status) {
 			final byte[] data = characteristic.getValue();
-
-			if (status == BluetoothGatt.GATT_SUCCESS) {
-				log(Log.INFO, () ->
-						"Data written to " + characteristic.getUuid() +
-						", value: " + ParserUtils.parse(data));
-
-				BleManagerHandler.this.onCharacteristicWrite(gatt, characteristic);
-				if (request instanceof WriteRequest) {
-					final WriteRequest wr = (WriteRequest) request;
-					final boolean valid = wr.notifyPacketSent(gatt.getDevice(), data);
-					if (!valid && requestQueue instanceof ReliableWriteRequest) {
-						wr.notifyFail(gatt.getDevice(), FailCallback.REASON_VALIDATION);
-						requestQueue.cancelQueue();
-					} else if (wr.hasMore()) {
-						enqueueFirst(wr);
-					} else {
-						wr.notifySuccess(gatt.getDevice());
+			eventLoop.execute(() -> {
+				if (status == BluetoothGatt.GATT_SUCCESS) {
+					log(Log.INFO, () ->
+							"Data written to " + characteristic.getUuid() +
+							", value: " + ParserUtils.parse(data));
+
+					BleManagerHandler.this.onCharacteristicWrite(gatt, characteristic);
+					valueCache.invalidate(characteristic);
+					if (request instanceof WriteRequest) {
+						final BluetoothDevice device = bluetoothDevice != null ? bluetoothDevice : gatt.getDevice();
+						final WriteRequest wr = (WriteRequest) request;
+						final boolean valid = wr.notifyPacketSent(device, data);
+						if (!valid && requestQueue instanceof ReliableWriteRequest) {
+							wr.notifyFail(device, FailCallback.REASON_VALIDATION);
+							requestQueue.cancelQueue();
+						} else if (wr.hasMore()) {
+							// In pipelined mode the next packet is sent right away, without
+							// going through the queue. The request is still in progress.
+							// If the next streamed packet is still being read, the request goes
+							// through the queue and waits for it there.
+							if (!(requestQueue instanceof ReliableWriteRequest)
+									&& wr.isDataReady()
+									&& wr.canPipelineNextPacket()
+									&& internalWritePipelinedPacket(wr, getNextPacket(wr), 0)) {
+								checkCondition();
+								return;
+							}
+							enqueueFirst(wr);
+						} else {
+							wr.notifySuccess(device);
+						}
 					}
+				} else if (status == BluetoothGatt.GATT_INSUFFICIENT_AUTHENTICATION
+						|| status == 8 /* GATT INSUF AUTHORIZATION */
+						|| status == 137 /* GATT AUTH FAIL */) {
+					log(Log.WARN, () -> "Authentication required (" + status + ")");
+					if (gatt.getDevice().getBondState() != BluetoothDevice.BOND_NONE) {
+						// This should never happen but it used to: http://stackoverflow.com/a/20093695/2115352
+						Log.w(TAG, ERROR_AUTH_ERROR_WHILE_BONDED);
+						postCallback(c -> c.onError(gatt.getDevice(), ERROR_AUTH_ERROR_WHILE_BONDED, status));
+					}
+					// The request will be repeated when the bond state changes to BONDED.
+					return;
+				} else {
+					Log.e(TAG, "onCharacteristicWrite error " + status);
+					if (request instanceof WriteRequest) {
+						request.notifyFail(gatt.getDevice(), status);
+						// Automatically abort Reliable Write when write error happen
+						if (requestQueue instanceof ReliableWriteRequest)
+							requestQueue.cancelQueue();
+					}
+					awaitingRequest = null;
+					onError(gatt.getDevice(), ERROR_WRITE_CHARACTERISTIC, status);
 				}
-			} else if (status == BluetoothGatt.GATT_INSUFFICIENT_AUTHENTICATION
-					|| status == 8 /* GATT INSUF AUTHORIZATION */
-					|| status == 137 /* GATT AUTH FAIL */) {
-				log(Log.WARN, () -> "Authentication required (" + status + ")");
-				if (gatt.getDevice().getBondState() != BluetoothDevice.BOND_NONE) {
-					// This should never happen but it used to: http://stackoverflow.com/a/20093695/2115352
-					Log.w(TAG, ERROR_AUTH_ERROR_WHILE_BONDED);
-					postCallback(c -> c.onError(gatt.getDevice(), ERROR_AUTH_ERROR_WHILE_BONDED, status));
-				}
-				// The request will be repeated when the bond state changes to BONDED.
-				return;
-			} else {
-				Log.e(TAG, "onCharacteristicWrite error " + status);
-				if (request instanceof WriteRequest) {
-					request.notifyFail(gatt.getDevice(), status);
-					// Automatically abort Reliable Write when write error happen
-					if (requestQueue instanceof ReliableWriteRequest)
-						requestQueue.cancelQueue();
-				}
-				awaitingRequest = null;
-				onError(gatt.getDevice(), ERROR_WRITE_CHARACTERISTIC, status);
-			}
-			checkCondition();
-			nextRequest(true);
+				checkCondition();
+				nextRequest(true);
+			});
 		}
 
 		@Override
 		public void onReliableWriteCompleted(@NonNull final BluetoothGatt gatt,
 											 final int status) {
-			final boolean execute = request.type == Request.Type.EXECUTE_RELIABLE_WRITE;
-			reliableWriteInProgress = false;
-			if (status == BluetoothGatt.GATT_SUCCESS) {
-				if (execute) {
-					log(Log.INFO, () -> "Reliable Write executed");
-					request.notifySuccess(gatt.getDevice());
+			eventLoop.execute(() -> {
+				final boolean execute = request.type == Request.Type.EXECUTE_RELIABLE_WRITE;
+				reliableWriteInProgress = false;
+				if (status == BluetoothGatt.GATT_SUCCESS) {
+					if (execute) {
+						log(Log.INFO, () -> "Reliable Write executed");
+						request.notifySuccess(gatt.getDevice());
+					} else {
+						log(Log.WARN, () -> "Reliable Write aborted");
+						request.notifySuccess(gatt.getDevice());
+						requestQueue.notifyFail(gatt.getDevice(), FailCallback.REASON_REQUEST_FAILED);
+					}
 				} else {
-					log(Log.WARN, () -> "Reliable Write aborted");
-					request.notifySuccess(gatt.getDevice());
-					requestQueue.notifyFail(gatt.getDevice(), FailCallback.REASON_REQUEST_FAILED);
+					Log.e(TAG, "onReliableWriteCompleted execute " + execute + ", error " + status);
+					request.notifyFail(gatt.getDevice(), status);
+					onError(gatt.getDevice(), ERROR_RELIABLE_WRITE, status);
 				}
-			} else {
-				Log.e(TAG, "onReliableWriteCompleted execute " + execute + ", error " + status);
-				request.notifyFail(gatt.getDevice(), status);
-				onError(gatt.getDevice(), ERROR_RELIABLE_WRITE, status);
-			}
-			checkCondition();
-			nextRequest(true);
+				checkCondition();
+				nextRequest(true);
+			});
 		}
 
 		@Override
 		public void onDescriptorRead(final BluetoothGatt gatt, final BluetoothGattDescriptor descriptor, final int status) {
 			final byte[] data = descriptor.getValue();
-
-			if (status == BluetoothGatt.GATT_SUCCESS) {
-				log(Log.INFO, () -> "Read Response received from descr. " + descriptor.getUuid() +
-						", value: " + ParserUtils.parse(data));
-
-				BleManagerHandler.this.onDescriptorRead(gatt, descriptor);
-				if (request instanceof ReadRequest) {
-					final ReadRequest request = (ReadRequest) BleManagerHandler.this.request;
-					request.notifyValueChanged(gatt.getDevice(), data);
-					if (request.hasMore()) {
-						enqueueFirst(request);
-					} else {
-						request.notifySuccess(gatt.getDevice());
+			eventLoop.execute(() -> {
+				if (status == BluetoothGatt.GATT_SUCCESS) {
+					log(Log.INFO, () -> "Read Response received from descr. " + descriptor.getUuid() +
+							", value: " + ParserUtils.parse(data));
+
+					BleManagerHandler.this.onDescriptorRead(gatt, descriptor);
+					if (request instanceof ReadRequest) {
+						final ReadRequest request = (ReadRequest) BleManagerHandler.this.request;
+						request.notifyValueChanged(gatt.getDevice(), data);
+						if (request.hasMore()) {
+							enqueueFirst(request);
+						} else {
+							request.notifySuccess(gatt.getDevice());
+						}
 					}
+				} else if (status == BluetoothGatt.GATT_INSUFFICIENT_AUTHENTICATION
+						|| status == 8 /* GATT INSUF AUTHORIZATION */
+						|| status == 137 /* GATT AUTH FAIL */) {
+					log(Log.WARN, () -> "Authentication required (" + status + ")");
+					if (gatt.getDevice().getBondState() != BluetoothDevice.BOND_NONE) {
+						// This should never happen but it used to: http://stackoverflow.com/a/20093695/2115352
+						Log.w(TAG, ERROR_AUTH_ERROR_WHILE_BONDED);
+						postCallback(c -> c.onError(gatt.getDevice(), ERROR_AUTH_ERROR_WHILE_BONDED, status));
+					}
+					// The request will be repeated when the bond state changes to BONDED.
+					return;
+				} else {
+					Log.e(TAG, "onDescriptorRead error " + status);
+					if (request instanceof ReadRequest) {
+						request.notifyFail(gatt.getDevice(), status);
+					}
+					awaitingRequest = null;
+					onError(gatt.getDevice(), ERROR_READ_DESCRIPTOR, status);
 				}
-			} else if (status == BluetoothGatt.GATT_INSUFFICIENT_AUTHENTICATION
-					|| status == 8 /* GATT INSUF AUTHORIZATION */
-					|| status == 137 /* GATT AUTH FAIL */) {
-				log(Log.WARN, () -> "Authentication required (" + status + ")");
-				if (gatt.getDevice().getBondState() != BluetoothDevice.BOND_NONE) {
-					// This should never happen but it used to: http://stackoverflow.com/a/20093695/2115352
-					Log.w(TAG, ERROR_AUTH_ERROR_WHILE_BONDED);
-					postCallback(c -> c.onError(gatt.getDevice(), ERROR_AUTH_ERROR_WHILE_BONDED, status));
-				}
-				// The request will be repeated when the bond state changes to BONDED.
-				return;
-			} else {
-				Log.e(TAG, "onDescriptorRead error " + status);
-				if (request instanceof ReadRequest) {
-					request.notifyFail(gatt.getDevice(), status);
-				}
-				awaitingRequest = null;
-				onError(gatt.getDevice(), ERROR_READ_DESCRIPTOR, status);
-			}
-			checkCondition();
-			nextRequest(true);
+				checkCondition();
+				nextRequest(true);
+			});
 		}
 
 		@Override
@@ -2241,148 +3432,159 @@ abstract class BleManagerHandler extends RequestHandler {
 									  final BluetoothGattDescriptor descriptor,
 									  final int status) {
 			final byte[] data = descriptor.getValue();
-
-			if (status == BluetoothGatt.GATT_SUCCESS) {
-				log(Log.INFO, () -> "Data written to descr. " + descriptor.getUuid() +
-						", value: " + ParserUtils.parse(data));
-
-				if (isServiceChangedCCCD(descriptor)) {
-					log(Log.INFO, () -> "Service Changed notifications enabled");
-				} else if (isCCCD(descriptor)) {
-					if (data != null && data.length == 2 && data[1] == 0x00) {
-						switch (data[0]) {
-							case 0x00:
-								log(Log.INFO, () -> "Notifications and indications disabled");
-								break;
-							case 0x01:
-								log(Log.INFO, () -> "Notifications enabled");
-								break;
-							case 0x02:
-								log(Log.INFO, () -> "Indications enabled");
-								break;
+			eventLoop.execute(() -> {
+				if (status == BluetoothGatt.GATT_SUCCESS) {
+					log(Log.INFO, () -> "Data written to descr. " + descriptor.getUuid() +
+							", value: " + ParserUtils.parse(data));
+
+					if (isServiceChangedCCCD(descriptor)) {
+						log(Log.INFO, () -> "Service Changed notifications enabled");
+					} else if (isCCCD(descriptor)) {
+						if (data != null && data.length == 2 && data[1] == 0x00) {
+							switch (data[0]) {
+								case 0x00:
+									log(Log.INFO, () -> "Notifications and indications disabled");
+									break;
+								case 0x01:
+									log(Log.INFO, () -> "Notifications enabled");
+									break;
+								case 0x02:
+									log(Log.INFO, () -> "Indications enabled");
+									break;
+							}
+							if (reconnection != null) {
+								reconnection.onSubscriptionChanged(descriptor.getCharacteristic(), data[0]);
+							}
+							BleManagerHandler.this.onDescriptorWrite(gatt, descriptor);
 						}
+					} else {
 						BleManagerHandler.this.onDescriptorWrite(gatt, descriptor);
 					}
+					if (request instanceof WriteRequest) {
+						final WriteRequest wr = (WriteRequest) request;
+						final boolean valid = wr.notifyPacketSent(gatt.getDevice(), data);
+						if (!valid && requestQueue instanceof ReliableWriteRequest) {
+							wr.notifyFail(gatt.getDevice(), FailCallback.REASON_VALIDATION);
+							requestQueue.cancelQueue();
+						} else if (wr.hasMore()) {
+							enqueueFirst(wr);
+						} else {
+							wr.notifySuccess(gatt.getDevice());
+						}
+					}
+				} else if (status == BluetoothGatt.GATT_INSUFFICIENT_AUTHENTICATION
+						|| status == 8 /* GATT INSUF AUTHORIZATION */
+						|| status == 137 /* GATT AUTH FAIL */) {
+					log(Log.WARN, () -> "Authentication required (" + status + ")");
+					if (gatt.getDevice().getBondState() != BluetoothDevice.BOND_NONE) {
+						// This should never happen but it used to: http://stackoverflow.com/a/20093695/2115352
+						Log.w(TAG, ERROR_AUTH_ERROR_WHILE_BONDED);
+						postCallback(c -> c.onError(gatt.getDevice(), ERROR_AUTH_ERROR_WHILE_BONDED, status));
+					}
+					// The request will be repeated when the bond state changes to BONDED.
+					return;
 				} else {
-					BleManagerHandler.this.onDescriptorWrite(gatt, descriptor);
-				}
-				if (request instanceof WriteRequest) {
-					final WriteRequest wr = (WriteRequest) request;
-					final boolean valid = wr.notifyPacketSent(gatt.getDevice(), data);
-					if (!valid && requestQueue instanceof ReliableWriteRequest) {
-						wr.notifyFail(gatt.getDevice(), FailCallback.REASON_VALIDATION);
-						requestQueue.cancelQueue();
-					} else if (wr.hasMore()) {
-						enqueueFirst(wr);
-					} else {
-						wr.notifySuccess(gatt.getDevice());
+					Log.e(TAG, "onDescriptorWrite error " + status);
+					if (request instanceof WriteRequest) {
+						request.notifyFail(gatt.getDevice(), status);
+						// Automatically abort Reliable Write when write error happen
+						if (requestQueue instanceof ReliableWriteRequest)
+							requestQueue.cancelQueue();
 					}
+					awaitingRequest = null;
+					onError(gatt.getDevice(), ERROR_WRITE_DESCRIPTOR, status);
 				}
-			} else if (status == BluetoothGatt.GATT_INSUFFICIENT_AUTHENTICATION
-					|| status == 8 /* GATT INSUF AUTHORIZATION */
-					|| status == 137 /* GATT AUTH FAIL */) {
-				log(Log.WARN, () -> "Authentication required (" + status + ")");
-				if (gatt.getDevice().getBondState() != BluetoothDevice.BOND_NONE) {
-					// This should never happen but it used to: http://stackoverflow.com/a/20093695/2115352
-					Log.w(TAG, ERROR_AUTH_ERROR_WHILE_BONDED);
-					postCallback(c -> c.onError(gatt.getDevice(), ERROR_AUTH_ERROR_WHILE_BONDED, status));
-				}
-				// The request will be repeated when the bond state changes to BONDED.
-				return;
-			} else {
-				Log.e(TAG, "onDescriptorWrite error " + status);
-				if (request instanceof WriteRequest) {
-					request.notifyFail(gatt.getDevice(), status);
-					// Automatically abort Reliable Write when write error happen
-					if (requestQueue instanceof ReliableWriteRequest)
-						requestQueue.cancelQueue();
-				}
-				awaitingRequest = null;
-				onError(gatt.getDevice(), ERROR_WRITE_DESCRIPTOR, status);
-			}
-			checkCondition();
-			nextRequest(true);
+				checkCondition();
+				nextRequest(true);
+			});
 		}
 
 		@Override
 		public void onCharacteristicChanged(final BluetoothGatt gatt,
 											final BluetoothGattCharacteristic characteristic) {
 			final byte[] data = characteristic.getValue();
-
-			if (isServiceChangedCharacteristic(characteristic)) {
-				// Android S added onServiceChanged() callback, which should be called in this
-				// situation. Again, this has not been tested.
-				if (Build.VERSION.SDK_INT <= Build.VERSION_CODES.R) {
-					log(Log.INFO, () -> "Service Changed indication received");
-					// For older APIs, trigger service discovery.
-					// TODO this should be tested. Should services be invalidated?
-					// Forbid enqueuing more operations.
-					operationInProgress = true;
-					// Invalidate all services and characteristics
-					onServicesInvalidated();
-					onDeviceDisconnected();
-					// Clear queues, services are no longer valid.
-					taskQueue.clear();
-					initQueue = null;
-					serviceDiscoveryRequested = true;
-					log(Log.VERBOSE, () -> "Discovering Services...");
-					log(Log.DEBUG, () -> "gatt.discoverServices()");
-					gatt.discoverServices();
+			eventLoop.execute(() -> {
+				if (isServiceChangedCharacteristic(characteristic)) {
+					// Android S added onServiceChanged() callback, which should be called in this
+					// situation. Again, this has not been tested.
+					if (Build.VERSION.SDK_INT <= Build.VERSION_CODES.R) {
+						log(Log.INFO, () -> "Service Changed indication received");
+						invalidateServiceCache(gatt.getDevice());
+						// For older APIs, trigger service discovery.
+						// TODO this should be tested. Should services be invalidated?
+						// Forbid enqueuing more operations.
+						operationInProgress = true;
+						// Invalidate all services and characteristics
+						onServicesInvalidated();
+						onDeviceDisconnected();
+						// Clear queues, services are no longer valid.
+						clearQueues(FailCallback.REASON_CANCELLED);
+						serviceDiscoveryRequested = true;
+						log(Log.VERBOSE, () -> "Discovering Services...");
+						log(Log.DEBUG, () -> "gatt.discoverServices()");
+						gatt.discoverServices();
+					}
+					return;
 				}
-				return;
-			}
 
-			final BluetoothGattDescriptor cccd =
-					characteristic.getDescriptor(BleManager.CLIENT_CHARACTERISTIC_CONFIG_DESCRIPTOR_UUID);
-			final boolean notifications = cccd == null || cccd.getValue() == null ||
-					cccd.getValue().length != 2 || cccd.getValue()[0] == 0x01;
-
-			if (notifications) {
-				log(Log.INFO, () -> "Notification received from " +
-						characteristic.getUuid() + ", value: " + ParserUtils.parse(data));
-				onCharacteristicNotified(gatt, characteristic);
-			} else { // indications
-				log(Log.INFO, () -> "Indication received from " +
-						characteristic.getUuid() + ", value: " + ParserUtils.parse(data));
-				onCharacteristicIndicated(gatt, characteristic);
-			}
-			if (batteryLevelNotificationCallback != null && isBatteryLevelCharacteristic(characteristic)) {
-				batteryLevelNotificationCallback.notifyValueChanged(gatt.getDevice(), data);
-			}
-			// Notify the notification registered listener, if set
-			final ValueChangedCallback request = valueChangedCallbacks.get(characteristic);
-			if (request != null && request.matches(data)) {
-				request.notifyValueChanged(gatt.getDevice(), data);
-			}
-			// If there is a value change request,
-			if (awaitingRequest instanceof WaitForValueChangedRequest
-					// registered for this characteristic
-					&& awaitingRequest.characteristic == characteristic
-					// and didn't have a trigger, or the trigger was started
-					// (not necessarily completed)
-					&& !awaitingRequest.isTriggerPending()) {
-				final WaitForValueChangedRequest valueChangedRequest = (WaitForValueChangedRequest) awaitingRequest;
-				if (valueChangedRequest.matches(data)) {
-					// notify that new data was received.
-					valueChangedRequest.notifyValueChanged(gatt.getDevice(), data);
-
-					// If no more data are expected
-					if (valueChangedRequest.isComplete()) {
-						// notify success,
-						valueChangedRequest.notifySuccess(gatt.getDevice());
-						// and proceed to the next request only if the trigger has completed.
-						// Otherwise, the next request will be started when the request's callback
-						// will be received.
-						awaitingRequest = null;
-						if (valueChangedRequest.isTriggerCompleteOrNull()) {
-							nextRequest(true);
+				final BluetoothGattDescriptor cccd =
+						characteristic.getDescriptor(BleManager.CLIENT_CHARACTERISTIC_CONFIG_DESCRIPTOR_UUID);
+				final boolean notifications = cccd == null || cccd.getValue() == null ||
+						cccd.getValue().length != 2 || cccd.getValue()[0] == 0x01;
+
+				if (notifications) {
+					log(Log.INFO, () -> "Notification received from " +
+							characteristic.getUuid() + ", value: " + ParserUtils.parse(data));
+					onCharacteristicNotified(gatt, characteristic);
+				} else { // indications
+					log(Log.INFO, () -> "Indication received from " +
+							characteristic.getUuid() + ", value: " + ParserUtils.parse(data));
+					onCharacteristicIndicated(gatt, characteristic);
+				}
+				valueCache.put(characteristic, data, false, elapsedRealtime());
+				final ConnectionPriorityPolicy policy = priorityPolicy;
+				if (policy != null) {
+					policy.onNotification(elapsedRealtime());
+					onConnectionLoadChanged();
+				}
+				if (batteryLevelNotificationCallback != null && isBatteryLevelCharacteristic(characteristic)) {
+					batteryLevelNotificationCallback.notifyValueChanged(gatt.getDevice(), data);
+				}
+				// Notify the notification registered listener, if set
+				final ValueChangedCallback request = valueChangedCallbacks.get(characteristic);
+				if (request != null && request.matches(data)) {
+					request.notifyValueChanged(gatt.getDevice(), data);
+				}
+				// If there is a value change request,
+				if (awaitingRequest instanceof WaitForValueChangedRequest
+						// registered for this characteristic
+						&& awaitingRequest.characteristic == characteristic
+						// and didn't have a trigger, or the trigger was started
+						// (not necessarily completed)
+						&& !awaitingRequest.isTriggerPending()) {
+					final WaitForValueChangedRequest valueChangedRequest = (WaitForValueChangedRequest) awaitingRequest;
+					if (valueChangedRequest.matches(data)) {
+						// notify that new data was received.
+						valueChangedRequest.notifyValueChanged(gatt.getDevice(), data);
+
+						// If no more data are expected
+						if (valueChangedRequest.isComplete()) {
+							// notify success,
+							valueChangedRequest.notifySuccess(gatt.getDevice());
+							// and proceed to the next request only if the trigger has completed.
+							// Otherwise, the next request will be started when the request's callback
+							// will be received.
+							awaitingRequest = null;
+							if (valueChangedRequest.isTriggerCompleteOrNull()) {
+								nextRequest(true);
+							}
 						}
 					}
 				}
-			}
-			if (checkCondition()) {
-				nextRequest(true);
-			}
+				if (checkCondition()) {
+					nextRequest(true);
+				}
+			});
 		}
 
 		@RequiresApi(api = Build.VERSION_CODES.LOLLIPOP)
@@ -2390,31 +3592,37 @@ abstract class BleManagerHandler extends RequestHandler {
 		public void onMtuChanged(@NonNull final BluetoothGatt gatt,
 								 @IntRange(from = 23, to = 517) final int mtu,
 								 final int status) {
-			if (status == BluetoothGatt.GATT_SUCCESS) {
-				log(Log.INFO, () -> "MTU changed to: " + mtu);
-				BleManagerHandler.this.mtu = mtu;
-				BleManagerHandler.this.onMtuChanged(gatt, mtu);
-				if (request instanceof MtuRequest) {
-					((MtuRequest) request).notifyMtuChanged(gatt.getDevice(), mtu);
-					request.notifySuccess(gatt.getDevice());
+			eventLoop.execute(() -> {
+				if (status == BluetoothGatt.GATT_SUCCESS) {
+					log(Log.INFO, () -> "MTU changed to: " + mtu);
+					BleManagerHandler.this.mtu = mtu;
+					BleManagerHandler.this.onMtuChanged(gatt, mtu);
+					if (request instanceof MtuRequest) {
+						((MtuRequest) request).notifyMtuChanged(gatt.getDevice(), mtu);
+						request.notifySuccess(gatt.getDevice());
+					}
+				} else {
+					Log.e(TAG, "onMtuChanged error: " + status + ", mtu: " + mtu);
+					if (request instanceof MtuRequest) {
+						request.notifyFail(gatt.getDevice(), status);
+						awaitingRequest = null;
+					}
+					onError(gatt.getDevice(), ERROR_MTU_REQUEST, status);
 				}
-			} else {
-				Log.e(TAG, "onMtuChanged error: " + status + ", mtu: " + mtu);
-				if (request instanceof MtuRequest) {
-					request.notifyFail(gatt.getDevice(), status);
-					awaitingRequest = null;
+				if (mtuBeforeDiscoveryRequested) {
+					mtuBeforeDiscoveryRequested = false;
+					discoverServices(gatt);
 				}
-				onError(gatt.getDevice(), ERROR_MTU_REQUEST, status);
-			}
-			checkCondition();
-			// If the device was already connected using another client (BluetoothGatt object),
-			// which had requested MTU change, just after connection this new MTU may be reported
-			// to this client. This happens even before service discovery, effectively reporting
-			// the device ready (as init queue is still null at this time).
-			// This check should help.
-			if (servicesDiscovered) {
-				nextRequest(true);
-			}
+				checkCondition();
+				// If the device was already connected using another client (BluetoothGatt object),
+				// which had requested MTU change, just after connection this new MTU may be reported
+				// to this client. This happens even before service discovery, effectively reporting
+				// the device ready (as init queue is still null at this time).
+				// This check should help.
+				if (servicesDiscovered) {
+					nextRequest(true);
+				}
+			});
 		}
 
 		/**
@@ -2437,52 +3645,58 @@ abstract class BleManagerHandler extends RequestHandler {
 										@IntRange(from = 0, to = 499) final int latency,
 										@IntRange(from = 10, to = 3200) final int timeout,
 										final int status) {
-			if (status == BluetoothGatt.GATT_SUCCESS) {
-				log(Log.INFO, () ->
-						"Connection parameters updated " +
-						"(interval: " + (interval * 1.25) + "ms," +
-						" latency: " + latency + ", timeout: " + (timeout * 10) + "ms)");
-				BleManagerHandler.this.onConnectionUpdated(gatt, interval, latency, timeout);
-
-				// This callback may be called af any time, also when some other request is executed
-				if (request instanceof ConnectionPriorityRequest) {
-					((ConnectionPriorityRequest) request)
-							.notifyConnectionPriorityChanged(gatt.getDevice(), interval, latency, timeout);
-					request.notifySuccess(gatt.getDevice());
-				}
-			} else if (status == 0x3b) { // HCI_ERR_UNACCEPT_CONN_INTERVAL
-				Log.e(TAG, "onConnectionUpdated received status: Unacceptable connection interval, " +
-						"interval: " + interval + ", latency: " + latency + ", timeout: " + timeout);
-				log(Log.WARN, () ->
-						"Connection parameters update failed with status: " +
-						"UNACCEPT CONN INTERVAL (0x3b) (interval: " + (interval * 1.25) + "ms, " +
-						"latency: " + latency + ", timeout: " + (timeout * 10) + "ms)");
-
-				// This callback may be called af any time, also when some other request is executed
-				if (request instanceof ConnectionPriorityRequest) {
-					request.notifyFail(gatt.getDevice(), status);
-					awaitingRequest = null;
+			eventLoop.execute(() -> {
+				if (status == BluetoothGatt.GATT_SUCCESS) {
+					log(Log.INFO, () ->
+							"Connection parameters updated " +
+							"(interval: " + (interval * 1.25) + "ms," +
+							" latency: " + latency + ", timeout: " + (timeout * 10) + "ms)");
+					BleManagerHandler.this.onConnectionUpdated(gatt, interval, latency, timeout);
+					final ConnectionPriorityPolicy policy = priorityPolicy;
+					if (policy != null && !policy.onConnectionUpdated(interval)) {
+						log(Log.WARN, () -> "Connection interval does not match the requested priority");
+					}
+
+					// This callback may be called af any time, also when some other request is executed
+					if (request instanceof ConnectionPriorityRequest) {
+						((ConnectionPriorityRequest) request)
+								.notifyConnectionPriorityChanged(gatt.getDevice(), interval, latency, timeout);
+						request.notifySuccess(gatt.getDevice());
+					}
+				} else if (status == 0x3b) { // HCI_ERR_UNACCEPT_CONN_INTERVAL
+					Log.e(TAG, "onConnectionUpdated received status: Unacceptable connection interval, " +
+							"interval: " + interval + ", latency: " + latency + ", timeout: " + timeout);
+					log(Log.WARN, () ->
+							"Connection parameters update failed with status: " +
+							"UNACCEPT CONN INTERVAL (0x3b) (interval: " + (interval * 1.25) + "ms, " +
+							"latency: " + latency + ", timeout: " + (timeout * 10) + "ms)");
+
+					// This callback may be called af any time, also when some other request is executed
+					if (request instanceof ConnectionPriorityRequest) {
+						request.notifyFail(gatt.getDevice(), status);
+						awaitingRequest = null;
+					}
+				} else {
+					Log.e(TAG, "onConnectionUpdated received status: " + status + ", " +
+							"interval: " + interval + ", latency: " + latency + ", timeout: " + timeout);
+					log(Log.WARN, () ->
+							"Connection parameters update failed with " +
+							"status " + status + " (interval: " + (interval * 1.25) + "ms, " +
+							"latency: " + latency + ", timeout: " + (timeout * 10) + "ms)");
+
+					// This callback may be called af any time, also when some other request is executed
+					if (request instanceof ConnectionPriorityRequest) {
+						request.notifyFail(gatt.getDevice(), status);
+						awaitingRequest = null;
+					}
+					postCallback(c -> c.onError(gatt.getDevice(), ERROR_CONNECTION_PRIORITY_REQUEST, status));
 				}
-			} else {
-				Log.e(TAG, "onConnectionUpdated received status: " + status + ", " +
-						"interval: " + interval + ", latency: " + latency + ", timeout: " + timeout);
-				log(Log.WARN, () ->
-						"Connection parameters update failed with " +
-						"status " + status + " (interval: " + (interval * 1.25) + "ms, " +
-						"latency: " + latency + ", timeout: " + (timeout * 10) + "ms)");
-
-				// This callback may be called af any time, also when some other request is executed
-				if (request instanceof ConnectionPriorityRequest) {
-					request.notifyFail(gatt.getDevice(), status);
-					awaitingRequest = null;
+				if (connectionPriorityOperationInProgress) {
+					connectionPriorityOperationInProgress = false;
+					checkCondition();
+					nextRequest(true);
 				}
-				postCallback(c -> c.onError(gatt.getDevice(), ERROR_CONNECTION_PRIORITY_REQUEST, status));
-			}
-			if (connectionPriorityOperationInProgress) {
-				connectionPriorityOperationInProgress = false;
-				checkCondition();
-				nextRequest(true);
-			}
+			});
 		}
 
 		@RequiresApi(api = Build.VERSION_CODES.O)
@@ -2490,27 +3704,32 @@ abstract class BleManagerHandler extends RequestHandler {
 		public void onPhyUpdate(@NonNull final BluetoothGatt gatt,
 								@PhyValue final int txPhy, @PhyValue final int rxPhy,
 								final int status) {
-			if (status == BluetoothGatt.GATT_SUCCESS) {
-				log(Log.INFO, () ->
-						"PHY updated (TX: " + ParserUtils.phyToString(txPhy) +
-						", RX: " + ParserUtils.phyToString(rxPhy) + ")");
-				if (request instanceof PhyRequest) {
-					((PhyRequest) request).notifyPhyChanged(gatt.getDevice(), txPhy, rxPhy);
-					request.notifySuccess(gatt.getDevice());
+			eventLoop.execute(() -> {
+				if (status == BluetoothGatt.GATT_SUCCESS) {
+					log(Log.INFO, () ->
+							"PHY updated (TX: " + ParserUtils.phyToString(txPhy) +
+							", RX: " + ParserUtils.phyToString(rxPhy) + ")");
+					if (reconnection != null) {
+						reconnection.onPhyChanged(txPhy, rxPhy);
+					}
+					if (request instanceof PhyRequest) {
+						((PhyRequest) request).notifyPhyChanged(gatt.getDevice(), txPhy, rxPhy);
+						request.notifySuccess(gatt.getDevice());
+					}
+				} else {
+					log(Log.WARN, () -> "PHY updated failed with status " + status);
+					if (request instanceof PhyRequest) {
+						request.notifyFail(gatt.getDevice(), status);
+						awaitingRequest = null;
+					}
+					postCallback(c -> c.onError(gatt.getDevice(), ERROR_PHY_UPDATE, status));
 				}
-			} else {
-				log(Log.WARN, () -> "PHY updated failed with status " + status);
-				if (request instanceof PhyRequest) {
-					request.notifyFail(gatt.getDevice(), status);
-					awaitingRequest = null;
+				// PHY update may be requested by the other side, or the Android, without explicitly
+				// requesting it. Proceed with the queue only when update was requested.
+				if (checkCondition() || request instanceof PhyRequest) {
+					nextRequest(true);
 				}
-				postCallback(c -> c.onError(gatt.getDevice(), ERROR_PHY_UPDATE, status));
-			}
-			// PHY update may be requested by the other side, or the Android, without explicitly
-			// requesting it. Proceed with the queue only when update was requested.
-			if (checkCondition() || request instanceof PhyRequest) {
-				nextRequest(true);
-			}
+			});
 		}
 
 		@RequiresApi(api = Build.VERSION_CODES.O)
@@ -2518,46 +3737,50 @@ abstract class BleManagerHandler extends RequestHandler {
 		public void onPhyRead(@NonNull final BluetoothGatt gatt,
 							  @PhyValue final int txPhy, @PhyValue final int rxPhy,
 							  final int status) {
-			if (status == BluetoothGatt.GATT_SUCCESS) {
-				log(Log.INFO, () ->
-						"PHY read (TX: " + ParserUtils.phyToString(txPhy) +
-						", RX: " + ParserUtils.phyToString(rxPhy) + ")");
-				if (request instanceof PhyRequest) {
-					((PhyRequest) request).notifyPhyChanged(gatt.getDevice(), txPhy, rxPhy);
-					request.notifySuccess(gatt.getDevice());
-				}
-			} else {
-				log(Log.WARN, () -> "PHY read failed with status " + status);
-				if (request instanceof PhyRequest) {
-					request.notifyFail(gatt.getDevice(), status);
+			eventLoop.execute(() -> {
+				if (status == BluetoothGatt.GATT_SUCCESS) {
+					log(Log.INFO, () ->
+							"PHY read (TX: " + ParserUtils.phyToString(txPhy) +
+							", RX: " + ParserUtils.phyToString(rxPhy) + ")");
+					if (request instanceof PhyRequest) {
+						((PhyRequest) request).notifyPhyChanged(gatt.getDevice(), txPhy, rxPhy);
+						request.notifySuccess(gatt.getDevice());
+					}
+				} else {
+					log(Log.WARN, () -> "PHY read failed with status " + status);
+					if (request instanceof PhyRequest) {
+						request.notifyFail(gatt.getDevice(), status);
+					}
+					awaitingRequest = null;
+					postCallback(c -> c.onError(gatt.getDevice(), ERROR_READ_PHY, status));
 				}
-				awaitingRequest = null;
-				postCallback(c -> c.onError(gatt.getDevice(), ERROR_READ_PHY, status));
-			}
-			checkCondition();
-			nextRequest(true);
+				checkCondition();
+				nextRequest(true);
+			});
 		}
 
 		@Override
 		public void onReadRemoteRssi(@NonNull final BluetoothGatt gatt,
 									 @IntRange(from = -128, to = 20) final int rssi,
 									 final int status) {
-			if (status == BluetoothGatt.GATT_SUCCESS) {
-				log(Log.INFO, () -> "Remote RSSI received: " + rssi + " dBm");
-				if (request instanceof ReadRssiRequest) {
-					((ReadRssiRequest) request).notifyRssiRead(gatt.getDevice(), rssi);
-					request.notifySuccess(gatt.getDevice());
-				}
-			} else {
-				log(Log.WARN, () -> "Reading remote RSSI failed with status " + status);
-				if (request instanceof ReadRssiRequest) {
-					request.notifyFail(gatt.getDevice(), status);
+			eventLoop.execute(() -> {
+				if (status == BluetoothGatt.GATT_SUCCESS) {
+					log(Log.INFO, () -> "Remote RSSI received: " + rssi + " dBm");
+					if (request instanceof ReadRssiRequest) {
+						((ReadRssiRequest) request).notifyRssiRead(gatt.getDevice(), rssi);
+						request.notifySuccess(gatt.getDevice());
+					}
+				} else {
+					log(Log.WARN, () -> "Reading remote RSSI failed with status " + status);
+					if (request instanceof ReadRssiRequest) {
+						request.notifyFail(gatt.getDevice(), status);
+					}
+					awaitingRequest = null;
+					postCallback(c -> c.onError(gatt.getDevice(), ERROR_READ_RSSI, status));
 				}
-				awaitingRequest = null;
-				postCallback(c -> c.onError(gatt.getDevice(), ERROR_READ_RSSI, status));
-			}
-			checkCondition();
-			nextRequest(true);
+				checkCondition();
+				nextRequest(true);
+			});
 		}
 	};
 
@@ -2580,45 +3803,47 @@ abstract class BleManagerHandler extends RequestHandler {
 										   @NonNull final BluetoothDevice device,
 										   final int requestId, final int offset,
 										   @NonNull final BluetoothGattCharacteristic characteristic) {
-		log(Log.DEBUG, () -> "[Server callback] Read request for characteristic " + characteristic.getUuid()
-				+ " (requestId=" + requestId + ", offset: " + offset + ")");
-		if (offset == 0)
-			log(Log.INFO, () -> "[Server] READ request for characteristic " + characteristic.getUuid() + " received");
-
-		byte[] data = characteristicValues == null || !characteristicValues.containsKey(characteristic)
-				? characteristic.getValue() : characteristicValues.get(characteristic);
-
-		WaitForReadRequest waitForReadRequest = null;
-		// First, try to get the data from the WaitForReadRequest if the request awaits,
-		if (awaitingRequest instanceof WaitForReadRequest
-				// is registered for this characteristic
-				&& awaitingRequest.characteristic == characteristic
-				// and didn't have a trigger, or the trigger was started
-				// (not necessarily completed)
-				&& !awaitingRequest.isTriggerPending()) {
-			waitForReadRequest = (WaitForReadRequest) awaitingRequest;
-			waitForReadRequest.setDataIfNull(data);
-			data = waitForReadRequest.getData(mtu);
-		}
-		// If data are longer than MTU - 1, cut the array. Only ATT_MTU - 1 bytes can be sent in Long Read.
-		if (data != null && data.length > mtu - 1) {
-			data = Bytes.copy(data, offset, mtu - 1);
-		}
+		eventLoop.execute(() -> {
+			log(Log.DEBUG, () -> "[Server callback] Read request for characteristic " + characteristic.getUuid()
+					+ " (requestId=" + requestId + ", offset: " + offset + ")");
+			if (offset == 0)
+				log(Log.INFO, () -> "[Server] READ request for characteristic " + characteristic.getUuid() + " received");
+
+			byte[] data = characteristicValues == null || !characteristicValues.containsKey(characteristic)
+					? characteristic.getValue() : characteristicValues.get(characteristic);
+
+			WaitForReadRequest waitForReadRequest = null;
+			// First, try to get the data from the WaitForReadRequest if the request awaits,
+			if (awaitingRequest instanceof WaitForReadRequest
+					// is registered for this characteristic
+					&& awaitingRequest.characteristic == characteristic
+					// and didn't have a trigger, or the trigger was started
+					// (not necessarily completed)
+					&& !awaitingRequest.isTriggerPending()) {
+				waitForReadRequest = (WaitForReadRequest) awaitingRequest;
+				waitForReadRequest.setDataIfNull(data);
+				data = waitForReadRequest.getData(mtu);
+			}
+			// If data are longer than MTU - 1, cut the array. Only ATT_MTU - 1 bytes can be sent in Long Read.
+			if (data != null && data.length > mtu - 1) {
+				data = Bytes.copy(data, offset, mtu - 1);
+			}
 
-		sendResponse(server, device, BluetoothGatt.GATT_SUCCESS, requestId, offset, data);
+			sendResponse(server, device, BluetoothGatt.GATT_SUCCESS, requestId, offset, data);
 
-		if (waitForReadRequest != null) {
-			waitForReadRequest.notifyPacketRead(device, data);
+			if (waitForReadRequest != null) {
+				waitForReadRequest.notifyPacketRead(device, data);
 
-			// If the request is complete, start next one.
-			if (!waitForReadRequest.hasMore() && (data == null || data.length < mtu - 1)) {
-				waitForReadRequest.notifySuccess(device);
-				awaitingRequest = null;
+				// If the request is complete, start next one.
+				if (!waitForReadRequest.hasMore() && (data == null || data.length < mtu - 1)) {
+					waitForReadRequest.notifySuccess(device);
+					awaitingRequest = null;
+					nextRequest(true);
+				}
+			} else if (checkCondition()) {
 				nextRequest(true);
 			}
-		} else if (checkCondition()) {
-			nextRequest(true);
-		}
+		});
 	}
 
 	final void onCharacteristicWriteRequest(@NonNull final BluetoothGattServer server,
@@ -2626,94 +3851,98 @@ abstract class BleManagerHandler extends RequestHandler {
 											@NonNull final BluetoothGattCharacteristic characteristic,
 											final boolean preparedWrite, final boolean responseNeeded,
 											final int offset, @NonNull final byte[] value) {
-		log(Log.DEBUG, () ->
-				"[Server callback] Write " + (responseNeeded ? "request" : "command")
-				+ " to characteristic " + characteristic.getUuid()
-				+ " (requestId=" + requestId + ", prepareWrite=" + preparedWrite + ", responseNeeded="
-				+ responseNeeded + ", offset: " + offset + ", value=" + ParserUtils.parseDebug(value) + ")");
-		if (offset == 0) {
-			log(Log.INFO, () -> {
-				final String type = responseNeeded ? "WRITE REQUEST" : "WRITE COMMAND";
-				final String option = preparedWrite ? "Prepare " : "";
-				return "[Server] " + option + type + " for characteristic " + characteristic.getUuid()
-						+ " received, value: " + ParserUtils.parse(value);
-			});
-		}
-
-		if (responseNeeded) {
-			sendResponse(server, device, BluetoothGatt.GATT_SUCCESS, requestId, offset, value);
-		}
+		eventLoop.execute(() -> {
+			log(Log.DEBUG, () ->
+					"[Server callback] Write " + (responseNeeded ? "request" : "command")
+					+ " to characteristic " + characteristic.getUuid()
+					+ " (requestId=" + requestId + ", prepareWrite=" + preparedWrite + ", responseNeeded="
+					+ responseNeeded + ", offset: " + offset + ", value=" + ParserUtils.parseDebug(value) + ")");
+			if (offset == 0) {
+				log(Log.INFO, () -> {
+					final String type = responseNeeded ? "WRITE REQUEST" : "WRITE COMMAND";
+					final String option = preparedWrite ? "Prepare " : "";
+					return "[Server] " + option + type + " for characteristic " + characteristic.getUuid()
+							+ " received, value: " + ParserUtils.parse(value);
+				});
+			}
 
-		// If Prepare Write or Long Write is sent, store the data in a temporary queue until it's executed.
-		if (preparedWrite) {
-			if (preparedValues == null) {
-				preparedValues = new LinkedList<>();
+			if (responseNeeded) {
+				sendResponse(server, device, BluetoothGatt.GATT_SUCCESS, requestId, offset, value);
 			}
-			if (offset == 0) {
-				// Add new value to the operations.
-				preparedValues.offer(new Pair<>(characteristic, value));
-			} else {
-				// Concatenate the value to the end of previous value, if the previous request was
-				// also for the same characteristic.
-				final Pair<Object, byte[]> last = preparedValues.peekLast();
-				if (last != null && characteristic.equals(last.first)) {
-					preparedValues.pollLast();
-					preparedValues.offer(new Pair<>(characteristic, Bytes.concat(last.second, value, offset)));
+
+			// If Prepare Write or Long Write is sent, store the data in a temporary queue until it's executed.
+			if (preparedWrite) {
+				if (preparedValues == null) {
+					preparedValues = new LinkedList<>();
+				}
+				if (offset == 0) {
+					// Add new value to the operations.
+					preparedValues.offer(new Pair<>(characteristic, value));
 				} else {
-					prepareError = BluetoothGatt.GATT_INVALID_OFFSET;
+					// Concatenate the value to the end of previous value, if the previous request was
+					// also for the same characteristic.
+					final Pair<Object, byte[]> last = preparedValues.peekLast();
+					if (last != null && characteristic.equals(last.first)) {
+						preparedValues.pollLast();
+						preparedValues.offer(new Pair<>(characteristic, Bytes.concat(last.second, value, offset)));
+					} else {
+						prepareError = BluetoothGatt.GATT_INVALID_OFFSET;
+					}
+				}
+			} else {
+				// Otherwise, save the data immediately.
+				if (assignAndNotify(device, characteristic, value) || checkCondition()) {
+					nextRequest(true);
 				}
 			}
-		} else {
-			// Otherwise, save the data immediately.
-			if (assignAndNotify(device, characteristic, value) || checkCondition()) {
-				nextRequest(true);
-			}
-		}
+		});
 	}
 
 	final void onDescriptorReadRequest(@NonNull final BluetoothGattServer server,
 									   @NonNull final BluetoothDevice device, final int requestId, final int offset,
 									   @NonNull final BluetoothGattDescriptor descriptor) {
-		log(Log.DEBUG, () ->
-				"[Server callback] Read request for descriptor " + descriptor.getUuid() +
-				" (requestId=" + requestId + ", offset: " + offset + ")");
-		if (offset == 0)
-			log(Log.INFO, () -> "[Server] READ request for descriptor " + descriptor.getUuid() + " received");
-
-		byte[] data = descriptorValues == null || !descriptorValues.containsKey(descriptor)
-				? descriptor.getValue() : descriptorValues.get(descriptor);
-
-		WaitForReadRequest waitForReadRequest = null;
-		// First, try to get the data from the WaitForReadRequest if the request awaits,
-		if (awaitingRequest instanceof WaitForReadRequest
-				// is registered for this descriptor
-				&& awaitingRequest.descriptor == descriptor
-				// and didn't have a trigger, or the trigger was started
-				// (not necessarily completed)
-				&& !awaitingRequest.isTriggerPending()) {
-			waitForReadRequest = (WaitForReadRequest) awaitingRequest;
-			waitForReadRequest.setDataIfNull(data);
-			data = waitForReadRequest.getData(mtu);
-		}
-		// If data are longer than MTU - 1, cut the array. Only ATT_MTU - 1 bytes can be sent in Long Read.
-		if (data != null && data.length > mtu - 1) {
-			data = Bytes.copy(data, offset, mtu - 1);
-		}
+		eventLoop.execute(() -> {
+			log(Log.DEBUG, () ->
+					"[Server callback] Read request for descriptor " + descriptor.getUuid() +
+					" (requestId=" + requestId + ", offset: " + offset + ")");
+			if (offset == 0)
+				log(Log.INFO, () -> "[Server] READ request for descriptor " + descriptor.getUuid() + " received");
+
+			byte[] data = descriptorValues == null || !descriptorValues.containsKey(descriptor)
+					? descriptor.getValue() : descriptorValues.get(descriptor);
+
+			WaitForReadRequest waitForReadRequest = null;
+			// First, try to get the data from the WaitForReadRequest if the request awaits,
+			if (awaitingRequest instanceof WaitForReadRequest
+					// is registered for this descriptor
+					&& awaitingRequest.descriptor == descriptor
+					// and didn't have a trigger, or the trigger was started
+					// (not necessarily completed)
+					&& !awaitingRequest.isTriggerPending()) {
+				waitForReadRequest = (WaitForReadRequest) awaitingRequest;
+				waitForReadRequest.setDataIfNull(data);
+				data = waitForReadRequest.getData(mtu);
+			}
+			// If data are longer than MTU - 1, cut the array. Only ATT_MTU - 1 bytes can be sent in Long Read.
+			if (data != null && data.length > mtu - 1) {
+				data = Bytes.copy(data, offset, mtu - 1);
+			}
 
-		sendResponse(server, device, BluetoothGatt.GATT_SUCCESS, requestId, offset, data);
+			sendResponse(server, device, BluetoothGatt.GATT_SUCCESS, requestId, offset, data);
 
-		if (waitForReadRequest != null) {
-			waitForReadRequest.notifyPacketRead(device, data);
+			if (waitForReadRequest != null) {
+				waitForReadRequest.notifyPacketRead(device, data);
 
-			// If the request is complete, start next one.
-			if (!waitForReadRequest.hasMore() && (data == null || data.length < mtu - 1)) {
-				waitForReadRequest.notifySuccess(device);
-				awaitingRequest = null;
+				// If the request is complete, start next one.
+				if (!waitForReadRequest.hasMore() && (data == null || data.length < mtu - 1)) {
+					waitForReadRequest.notifySuccess(device);
+					awaitingRequest = null;
+					nextRequest(true);
+				}
+			} else if (checkCondition()) {
 				nextRequest(true);
 			}
-		} else if (checkCondition()) {
-			nextRequest(true);
-		}
+		});
 	}
 
 	final void onDescriptorWriteRequest(@NonNull final BluetoothGattServer server,
@@ -2721,115 +3950,123 @@ abstract class BleManagerHandler extends RequestHandler {
 										@NonNull final BluetoothGattDescriptor descriptor,
 										final boolean preparedWrite, final boolean responseNeeded,
 										final int offset, @NonNull final byte[] value) {
-		log(Log.DEBUG, () ->
-				"[Server callback] Write " + (responseNeeded ? "request" : "command")
-				+ " to descriptor " + descriptor.getUuid()
-				+ " (requestId=" + requestId + ", prepareWrite=" + preparedWrite + ", responseNeeded="
-				+ responseNeeded + ", offset: " + offset + ", value=" + ParserUtils.parseDebug(value) + ")");
-		if (offset == 0) {
-			log(Log.INFO, () -> {
-				final String type = responseNeeded ? "WRITE REQUEST" : "WRITE COMMAND";
-				final String option = preparedWrite ? "Prepare " : "";
-				return "[Server] " + option + type + " request for descriptor " + descriptor.getUuid()
-						+ " received, value: " + ParserUtils.parse(value);
-			});
-		}
-
-		if (responseNeeded) {
-			sendResponse(server, device, BluetoothGatt.GATT_SUCCESS, requestId, offset, value);
-		}
+		eventLoop.execute(() -> {
+			log(Log.DEBUG, () ->
+					"[Server callback] Write " + (responseNeeded ? "request" : "command")
+					+ " to descriptor " + descriptor.getUuid()
+					+ " (requestId=" + requestId + ", prepareWrite=" + preparedWrite + ", responseNeeded="
+					+ responseNeeded + ", offset: " + offset + ", value=" + ParserUtils.parseDebug(value) + ")");
+			if (offset == 0) {
+				log(Log.INFO, () -> {
+					final String type = responseNeeded ? "WRITE REQUEST" : "WRITE COMMAND";
+					final String option = preparedWrite ? "Prepare " : "";
+					return "[Server] " + option + type + " request for descriptor " + descriptor.getUuid()
+							+ " received, value: " + ParserUtils.parse(value);
+				});
+			}
 
-		// If Prepare Write or Long Write is sent, store the data in a temporary queue until it's executed.
-		if (preparedWrite) {
-			if (preparedValues == null) {
-				preparedValues = new LinkedList<>();
+			if (responseNeeded) {
+				sendResponse(server, device, BluetoothGatt.GATT_SUCCESS, requestId, offset, value);
 			}
-			if (offset == 0) {
-				// Add new value to the operations.
-				preparedValues.offer(new Pair<>(descriptor, value));
-			} else {
-				// Concatenate the value to the end of previous value, if the previous request was
-				// also for the same descriptor.
-				final Pair<Object, byte[]> last = preparedValues.peekLast();
-				if (last != null && descriptor.equals(last.first)) {
-					preparedValues.pollLast();
-					preparedValues.offer(new Pair<>(descriptor, Bytes.concat(last.second, value, offset)));
+
+			// If Prepare Write or Long Write is sent, store the data in a temporary queue until it's executed.
+			if (preparedWrite) {
+				if (preparedValues == null) {
+					preparedValues = new LinkedList<>();
+				}
+				if (offset == 0) {
+					// Add new value to the operations.
+					preparedValues.offer(new Pair<>(descriptor, value));
 				} else {
-					prepareError = BluetoothGatt.GATT_INVALID_OFFSET;
+					// Concatenate the value to the end of previous value, if the previous request was
+					// also for the same descriptor.
+					final Pair<Object, byte[]> last = preparedValues.peekLast();
+					if (last != null && descriptor.equals(last.first)) {
+						preparedValues.pollLast();
+						preparedValues.offer(new Pair<>(descriptor, Bytes.concat(last.second, value, offset)));
+					} else {
+						prepareError = BluetoothGatt.GATT_INVALID_OFFSET;
+					}
+				}
+			} else {
+				// Otherwise, save the data immediately.
+				if (assignAndNotify(device, descriptor, value) || checkCondition()) {
+					nextRequest(true);
 				}
 			}
-		} else {
-			// Otherwise, save the data immediately.
-			if (assignAndNotify(device, descriptor, value) || checkCondition()) {
-				nextRequest(true);
-			}
-		}
+		});
 	}
 
 	final void onExecuteWrite(@NonNull final BluetoothGattServer server,
 							  @NonNull final BluetoothDevice device, final int requestId,
 							  final boolean execute) {
-		log(Log.DEBUG, () ->
-				"[Server callback] Execute write request (requestId=" + requestId + ", execute=" + execute + ")");
-		if (execute) {
-			final Deque<Pair<Object, byte[]>> values = preparedValues;
-			log(Log.INFO, () -> "[Server] Execute write request received");
-			preparedValues = null;
-			if (prepareError != 0) {
-				sendResponse(server, device, prepareError, requestId, 0, null);
-				prepareError = 0;
-				return;
-			}
-			sendResponse(server, device, BluetoothGatt.GATT_SUCCESS, requestId, 0, null);
+		eventLoop.execute(() -> {
+			log(Log.DEBUG, () ->
+					"[Server callback] Execute write request (requestId=" + requestId + ", execute=" + execute + ")");
+			if (execute) {
+				final Deque<Pair<Object, byte[]>> values = preparedValues;
+				log(Log.INFO, () -> "[Server] Execute write request received");
+				preparedValues = null;
+				if (prepareError != 0) {
+					sendResponse(server, device, prepareError, requestId, 0, null);
+					prepareError = 0;
+					return;
+				}
+				sendResponse(server, device, BluetoothGatt.GATT_SUCCESS, requestId, 0, null);
 
-			if (values == null || values.isEmpty()) {
-				return;
-			}
-			boolean startNextRequest = false;
-			for (final Pair<Object, byte[]> value: values) {
-				if (value.first instanceof BluetoothGattCharacteristic) {
-					final BluetoothGattCharacteristic characteristic = (BluetoothGattCharacteristic) value.first;
-					startNextRequest = assignAndNotify(device, characteristic, value.second) || startNextRequest;
-				} else if (value.first instanceof BluetoothGattDescriptor){
-					final BluetoothGattDescriptor descriptor = (BluetoothGattDescriptor) value.first;
-					startNextRequest = assignAndNotify(device, descriptor, value.second) || startNextRequest;
+				if (values == null || values.isEmpty()) {
+					return;
 				}
+				boolean startNextRequest = false;
+				for (final Pair<Object, byte[]> value: values) {
+					if (value.first instanceof BluetoothGattCharacteristic) {
+						final BluetoothGattCharacteristic characteristic = (BluetoothGattCharacteristic) value.first;
+						startNextRequest = assignAndNotify(device, characteristic, value.second) || startNextRequest;
+					} else if (value.first instanceof BluetoothGattDescriptor){
+						final BluetoothGattDescriptor descriptor = (BluetoothGattDescriptor) value.first;
+						startNextRequest = assignAndNotify(device, descriptor, value.second) || startNextRequest;
+					}
+				}
+				if (checkCondition() || startNextRequest) {
+					nextRequest(true);
+				}
+			} else {
+				log(Log.INFO, () -> "[Server] Cancel write request received");
+				preparedValues = null;
+				sendResponse(server, device, BluetoothGatt.GATT_SUCCESS, requestId, 0, null);
 			}
-			if (checkCondition() || startNextRequest) {
-				nextRequest(true);
-			}
-		} else {
-			log(Log.INFO, () -> "[Server] Cancel write request received");
-			preparedValues = null;
-			sendResponse(server, device, BluetoothGatt.GATT_SUCCESS, requestId, 0, null);
-		}
+		});
 	}
 
 	final void onNotificationSent(@NonNull final BluetoothGattServer server,
 								  @NonNull final BluetoothDevice device, final int status) {
-		log(Log.DEBUG, () -> "[Server callback] Notification sent (status=" + status + ")");
-		if (status == BluetoothGatt.GATT_SUCCESS) {
-			notifyNotificationSent(device);
-		} else {
-			Log.e(TAG, "onNotificationSent error " + status);
-			if (request instanceof WriteRequest) {
-				request.notifyFail(device, status);
+		eventLoop.execute(() -> {
+			log(Log.DEBUG, () -> "[Server callback] Notification sent (status=" + status + ")");
+			if (status == BluetoothGatt.GATT_SUCCESS) {
+				notifyNotificationSent(device);
+			} else {
+				Log.e(TAG, "onNotificationSent error " + status);
+				if (request instanceof WriteRequest) {
+					request.notifyFail(device, status);
+				}
+				awaitingRequest = null;
+				onError(device, ERROR_NOTIFY, status);
 			}
-			awaitingRequest = null;
-			onError(device, ERROR_NOTIFY, status);
-		}
-		checkCondition();
-		nextRequest(true);
+			checkCondition();
+			nextRequest(true);
+		});
 	}
 
 	@RequiresApi(api = Build.VERSION_CODES.LOLLIPOP_MR1)
 	final void onMtuChanged(@NonNull final BluetoothGattServer server,
 							@NonNull final BluetoothDevice device,
 							final int mtu) {
-		log(Log.INFO, () -> "[Server] MTU changed to: " + mtu);
-		BleManagerHandler.this.mtu = mtu;
-		checkCondition();
-		nextRequest(false);
+		eventLoop.execute(() -> {
+			log(Log.INFO, () -> "[Server] MTU changed to: " + mtu);
+			BleManagerHandler.this.mtu = mtu;
+			checkCondition();
+			nextRequest(false);
+		});
 	}
 
 	private void notifyNotificationSent(@NonNull final BluetoothDevice device) {
@@ -2972,7 +4209,7 @@ abstract class BleManagerHandler extends RequestHandler {
 	 * been executed the {@link #onDeviceReady()} callback is called.
 	 */
 	@SuppressLint("MissingPermission")
-	private synchronized void nextRequest(final boolean force) {
+	private void nextRequest(final boolean force) {
 		if (force && operationInProgress) {
 			operationInProgress = awaitingRequest != null;
 		}
@@ -2980,6 +4217,11 @@ abstract class BleManagerHandler extends RequestHandler {
 		if (operationInProgress) {
 			return;
 		}
+		// The previous operation has completed. Requests in a request queue are executed
+		// using the slot of the queue.
+		if (requestQueue == null) {
+			releaseRadioSlot(true);
+		}
 		final BluetoothDevice bluetoothDevice = this.bluetoothDevice;
 
 		// Get the first request from the init queue
@@ -3008,6 +4250,14 @@ abstract class BleManagerHandler extends RequestHandler {
 			request = null;
 		}
 
+		// Skip requests cancelled while waiting in the init queue or a request queue.
+		// Cancelled requests from the task queue are skipped by the queue itself.
+		if (request != null && (!taskQueue.take(request)
+				|| (request.isExpired(elapsedRealtime()) && failExpired(request)))) {
+			nextRequest(force);
+			return;
+		}
+
 		// Are we done with initializing?
 		if (request == null) {
 			if (initQueue != null) {
@@ -3017,6 +4267,17 @@ abstract class BleManagerHandler extends RequestHandler {
 				// will not start new nextRequest() call.
 				operationInProgress = true;
 				ready = true;
+				if (connectedTime > 0) {
+					metrics.onDeviceReady(now() - connectedTime, negotiatedBeforeDiscovery);
+					connectedTime = 0;
+				}
+				if (reconnection != null) {
+					reconnection.onReady();
+				}
+				final ConnectionPool.Entry<?> entry = poolEntry;
+				if (entry != null) {
+					entry.onReady();
+				}
 				onDeviceReady();
 				if (bluetoothDevice != null) {
 					postCallback(c -> c.onDeviceReady(bluetoothDevice));
@@ -3028,15 +4289,37 @@ abstract class BleManagerHandler extends RequestHandler {
 				}
 			}
 			// If so, we can continue with the task queue
-			try {
-				request = taskQueue.remove();
-			} catch (final Exception e) {
+			if (!acquireConnection()) {
+				// The connection pool will call nextRequest() when a connection is available.
+				// Don't keep the radio slot that may have been granted in the meantime.
+				cancelRadioSlot();
+				operationInProgress = false;
+				this.request = null;
+				return;
+			}
+			if (!acquireRadioSlot()) {
+				// The scheduler will call nextRequest() when it's our turn.
+				operationInProgress = false;
+				this.request = null;
+				return;
+			}
+			adjustConnectionPriority();
+			request = pollTaskQueue();
+			if (request == null) {
 				// No more tasks to perform
+				releaseRadioSlot(false);
 				operationInProgress = false;
 				this.request = null;
+				final ConnectionPool.Entry<?> entry = poolEntry;
+				if (entry != null) {
+					entry.onIdle();
+				}
 				onManagerReady();
 				return;
 			}
+			if (!isRadioOperation(request)) {
+				releaseRadioSlot(false);
+			}
 		}
 
 		boolean result = false;
@@ -3143,18 +4426,27 @@ abstract class BleManagerHandler extends RequestHandler {
 				return;
 			}
 			case READ: {
+				//noinspection ConstantConditions
+				final ReadRequest rr = (ReadRequest) request;
+				final byte[] cached = !rr.prefetch && rr.characteristic != null ?
+						valueCache.get(rr.characteristic, rr.isCacheEligible(),
+								elapsedRealtime()) : null;
+				if (cached != null && rr.isSatisfiedBy(cached)) {
+					log(Log.INFO, () -> "Cached value of " + rr.characteristic.getUuid() +
+							": " + ParserUtils.parse(cached));
+					result = true;
+					rr.notifyValueChanged(bluetoothDevice, cached);
+					rr.notifySuccess(bluetoothDevice);
+					nextRequest(true);
+					break;
+				}
 				result = internalReadCharacteristic(request.characteristic);
 				break;
 			}
 			case WRITE: {
 				//noinspection ConstantConditions
 				final WriteRequest wr = (WriteRequest) request;
-				final BluetoothGattCharacteristic characteristic = request.characteristic;
-				if (characteristic != null) {
-					characteristic.setValue(wr.getData(mtu));
-					characteristic.setWriteType(wr.getWriteType());
-				}
-				result = internalWriteCharacteristic(characteristic);
+				result = internalWriteRequest(wr);
 				break;
 			}
 			case READ_DESCRIPTOR: {
@@ -3286,6 +4578,9 @@ abstract class BleManagerHandler extends RequestHandler {
 				connectionPriorityOperationInProgress = Build.VERSION.SDK_INT >= Build.VERSION_CODES.O;
 				if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.LOLLIPOP) {
 					result = internalRequestConnectionPriority(cpr.getRequiredPriority());
+					if (result && reconnection != null) {
+						reconnection.onConnectionPriorityChanged(cpr.getRequiredPriority());
+					}
 
 					// There is no callback for requestConnectionPriority(...) before Android Oreo.
 					// Let's give it some time to finish as the request is an asynchronous operation.
@@ -3294,7 +4589,7 @@ abstract class BleManagerHandler extends RequestHandler {
 					// some Android 8+ phones don't call this callback. Let's make sure it will be
 					// called in any case.
 					if (result) {
-						postDelayed(() -> {
+						postDelayedOnEventLoop(() -> {
 							if (cpr.notifySuccess(bluetoothDevice)) {
 								connectionPriorityOperationInProgress = false;
 								nextRequest(true);
@@ -3343,7 +4638,7 @@ abstract class BleManagerHandler extends RequestHandler {
 				final Request r = request;
 				result = internalReadRssi();
 				if (result) {
-					postDelayed(() -> {
+					postDelayedOnEventLoop(() -> {
 						// This check makes sure that only the failed request will be notified,
 						// not some subsequent one.
 						if (this.request == r) {
@@ -3358,7 +4653,7 @@ abstract class BleManagerHandler extends RequestHandler {
 				final Request r = request;
 				result = internalRefreshDeviceCache();
 				if (result) {
-					postDelayed(() -> {
+					postDelayedOnEventLoop(() -> {
 						log(Log.INFO, () -> "Cache refreshed");
 						r.notifySuccess(bluetoothDevice);
 						this.request = null;
@@ -3366,8 +4661,7 @@ abstract class BleManagerHandler extends RequestHandler {
 							awaitingRequest.notifyFail(bluetoothDevice, FailCallback.REASON_NULL_ATTRIBUTE);
 							awaitingRequest = null;
 						}
-						taskQueue.clear();
-						initQueue = null;
+						clearQueues(FailCallback.REASON_CANCELLED);
 						if (connected) {
 							// Invalidate all services and characteristics
 							onServicesInvalidated();
@@ -3387,7 +4681,7 @@ abstract class BleManagerHandler extends RequestHandler {
 				//noinspection ConstantConditions
 				final SleepRequest sr = (SleepRequest) request;
 				log(Log.DEBUG, () -> "sleep(" + sr.getDelay() + ")");
-				postDelayed(() -> {
+				postDelayedOnEventLoop(() -> {
 					sr.notifySuccess(bluetoothDevice);
 					nextRequest(true);
 				}, sr.getDelay());
@@ -3479,4 +4773,28 @@ abstract class BleManagerHandler extends RequestHandler {
 			manager.log(priority, message.log());
 		}
 	}
+
+	// The methods below are used only by tests, which can't connect to a real device.
+
+	/**
+	 * Sets the state of the handler as if the given GATT client has connected to the device,
+	 * without discovering services.
+	 */
+	@VisibleForTesting(otherwise = VisibleForTesting.NONE)
+	void setConnectedGatt(@NonNull final BluetoothDevice device, @NonNull final BluetoothGatt gatt) {
+		eventLoop.execute(() -> {
+			bluetoothDevice = device;
+			bluetoothGatt = gatt;
+			connected = true;
+		});
+	}
+
+	/**
+	 * Returns the callback given to the GATT client, to report completed operations.
+	 */
+	@NonNull
+	@VisibleForTesting(otherwise = VisibleForTesting.NONE)
+	BluetoothGattCallback getBluetoothGattCallback() {
+		return gattCallback;
+	}
 }
@@ -0,0 +1,304 @@
+/*
+ * Copyright (c) 2018, Nordic Semiconductor
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its contributors may be used to endorse or promote products derived from this
+ * software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE
+ * USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package no.nordicsemi.android.ble;
+
+import android.bluetooth.BluetoothDevice;
+import android.os.Handler;
+
+import androidx.annotation.IntRange;
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import no.nordicsemi.android.ble.annotation.ConnectionPriority;
+import no.nordicsemi.android.ble.annotation.RequestPriority;
+import no.nordicsemi.android.ble.callback.AfterCallback;
+import no.nordicsemi.android.ble.callback.BeforeCallback;
+import no.nordicsemi.android.ble.callback.FailCallback;
+import no.nordicsemi.android.ble.callback.InvalidRequestCallback;
+import no.nordicsemi.android.ble.callback.SuccessCallback;
+import no.nordicsemi.android.ble.callback.PhyCallback;
+
+/**
+ * A queue of requests executed with link parameters tuned for throughput.
+ * <p>
+ * Before the requests added to the queue are executed, the highest MTU, the LE 2M PHY and
+ * the high connection priority are requested. Each of these steps may fail, e.g. if not
+ * supported by the phone or the device, without failing the transfer. The parameters actually
+ * negotiated are recorded. When the transfer is complete, or has failed, a power-friendly
+ * connection priority is restored. The MTU can't be lowered, and the LE 2M PHY is kept,
+ * as it reduces the radio on-time.
+ * <p>
+ * The request completes when the connection priority has been restored. It fails if any
+ * of the added requests has failed, in which case the remaining ones are skipped.
+ * Statistics, including the effective throughput, are available in the
+ * {@link #done(SuccessCallback)} callback.
+ *
+ * @see BleManager#beginBulkTransfer()
+ */
+@SuppressWarnings("unused")
+public final class BulkTransferRequest extends RequestQueue {
+	/** The highest MTU supported by Android. */
+	static final int MAX_MTU = 517;
+
+	private static final int STEP_MTU = 0;
+	private static final int STEP_PHY = 1;
+	private static final int STEP_PRIORITY = 2;
+	private static final int STEP_TRANSFER = 3;
+	private static final int STEP_DONE = 4;
+
+	private int step = STEP_MTU;
+	private int restorePriority = ConnectionPriorityRequest.CONNECTION_PRIORITY_BALANCED;
+	private boolean transferFailed;
+	/** The status of the failed request of the transfer. */
+	private int transferStatus;
+
+	// Negotiated parameters, recorded on the event loop when the steps complete.
+	private volatile int mtu = 23;
+	private volatile int txPhy = PhyCallback.PHY_LE_1M;
+	private volatile int rxPhy = PhyCallback.PHY_LE_1M;
+	private volatile int connectionInterval = 0;
+
+	// Statistics, updated on the event loop before the request completes.
+	private volatile long bytesTransferred;
+	private volatile long transferStartTime;
+	private volatile long transferEndTime;
+	/** The clock measuring the transfer, the one of the request handler, if set. */
+	@NonNull
+	MetricsRecorder.Clock clock = MetricsRecorder.SYSTEM_CLOCK;
+
+	@NonNull
+	@Override
+	BulkTransferRequest setRequestHandler(@NonNull final RequestHandler requestHandler) {
+		super.setRequestHandler(requestHandler);
+		clock = requestHandler::now;
+		return this;
+	}
+
+	@NonNull
+	@Override
+	public BulkTransferRequest setHandler(@Nullable final Handler handler) {
+		super.setHandler(handler);
+		return this;
+	}
+
+	@Override
+	@NonNull
+	public BulkTransferRequest done(@NonNull final SuccessCallback callback) {
+		super.done(callback);
+		return this;
+	}
+
+	@Override
+	@NonNull
+	public BulkTransferRequest fail(@NonNull final FailCallback callback) {
+		super.fail(callback);
+		return this;
+	}
+
+	@NonNull
+	@Override
+	public BulkTransferRequest invalid(@NonNull final InvalidRequestCallback callback) {
+		super.invalid(callback);
+		return this;
+	}
+
+	@Override
+	@NonNull
+	public BulkTransferRequest before(@NonNull final BeforeCallback callback) {
+		super.before(callback);
+		return this;
+	}
+
+	@NonNull
+	@Override
+	public BulkTransferRequest then(@NonNull final AfterCallback callback) {
+		super.then(callback);
+		return this;
+	}
+
+	@NonNull
+	@Override
+	public BulkTransferRequest deadline(@IntRange(from = 0) final long elapsedRealtime) {
+		super.deadline(elapsedRealtime);
+		return this;
+	}
+
+	@NonNull
+	@Override
+	public BulkTransferRequest priority(@RequestPriority final int priority) {
+		super.priority(priority);
+		return this;
+	}
+
+	@NonNull
+	@Override
+	public BulkTransferRequest add(@NonNull final Operation operation) {
+		super.add(operation);
+		// A failed request must not skip restoring the connection priority.
+		((Request) operation).internalFail(this::onTransferFailed);
+		return this;
+	}
+
+	/**
+	 * Sets the connection priority requested when the transfer is complete.
+	 *
+	 * @param priority the connection priority, by default
+	 *                 {@link ConnectionPriorityRequest#CONNECTION_PRIORITY_BALANCED}.
+	 * @return The request.
+	 */
+	@NonNull
+	public BulkTransferRequest restoreConnectionPriority(@ConnectionPriority final int priority) {
+		this.restorePriority = priority;
+		return this;
+	}
+
+	/**
+	 * Returns the MTU negotiated for the transfer.
+	 */
+	public int getMtu() {
+		return mtu;
+	}
+
+	/**
+	 * Returns the transmitter PHY used for the transfer, one of {@link PhyCallback#PHY_LE_1M},
+	 * {@link PhyCallback#PHY_LE_2M} or {@link PhyCallback#PHY_LE_CODED}.
+	 */
+	public int getTxPhy() {
+		return txPhy;
+	}
+
+	/**
+	 * Returns the receiver PHY used for the transfer, one of {@link PhyCallback#PHY_LE_1M},
+	 * {@link PhyCallback#PHY_LE_2M} or {@link PhyCallback#PHY_LE_CODED}.
+	 */
+	public int getRxPhy() {
+		return rxPhy;
+	}
+
+	/**
+	 * Returns the connection interval used for the transfer, in 1.25 ms units,
+	 * or 0 if unknown. The interval is reported on Android Oreo or newer.
+	 */
+	public int getConnectionInterval() {
+		return connectionInterval;
+	}
+
+	/**
+	 * Returns the number of bytes sent and received by the added requests.
+	 */
+	public long getBytesTransferred() {
+		return bytesTransferred;
+	}
+
+	/**
+	 * Returns the effective throughput of the transfer, in bytes per second,
+	 * or 0 if the transfer hasn't completed.
+	 */
+	public double getBytesPerSecond() {
+		final long duration = transferEndTime - transferStartTime;
+		if (transferEndTime == 0 || duration <= 0)
+			return 0;
+		return bytesTransferred * 1_000_000_000.0 / duration;
+	}
+
+	@Override
+	public int size() {
+		// Add the negotiation steps and restoring the connection priority.
+		int size = super.size();
+		if (step < STEP_DONE)
+			size += STEP_DONE - step;
+		return size;
+	}
+
+	/**
+	 * Called when a packet of an added request was sent or received.
+	 */
+	void onPacket(final int bytes) {
+		if (step == STEP_TRANSFER)
+			bytesTransferred += bytes;
+	}
+
+	private void onTransferFailed(@NonNull final BluetoothDevice device,
+								  final int status) {
+		transferFailed = true;
+		transferStatus = status;
+		super.cancelQueue();
+	}
+
+	@SuppressWarnings("deprecation")
+	@Override
+	Request getNext() {
+		switch (step) {
+			case STEP_MTU: {
+				step = STEP_PHY;
+				final MtuRequest request = Request.newMtuRequest(MAX_MTU);
+				request.internalWith((device, value) -> mtu = value);
+				return request;
+			}
+			case STEP_PHY: {
+				step = STEP_PRIORITY;
+				final PhyRequest request = Request.newSetPreferredPhyRequest(PhyRequest.PHY_LE_2M_MASK,
+						PhyRequest.PHY_LE_2M_MASK, PhyRequest.PHY_OPTION_NO_PREFERRED);
+				request.internalWith((device, tx, rx) -> {
+					txPhy = tx;
+					rxPhy = rx;
+				});
+				return request;
+			}
+			case STEP_PRIORITY: {
+				step = STEP_TRANSFER;
+				final ConnectionPriorityRequest request = Request.newConnectionPriorityRequest(
+						ConnectionPriorityRequest.CONNECTION_PRIORITY_HIGH);
+				request.internalWith((device, interval, latency, timeout) -> connectionInterval = interval);
+				return request;
+			}
+			case STEP_TRANSFER:
+				if (transferStartTime == 0)
+					transferStartTime = clock.nanoTime();
+				if (!super.isEmpty()) {
+					final Request request = super.getNext();
+					if (request != null)
+						return request;
+				}
+				transferEndTime = clock.nanoTime();
+				step = STEP_DONE;
+				return Request.newConnectionPriorityRequest(restorePriority);
+			default:
+				return null;
+		}
+	}
+
+	@Override
+	boolean hasMore() {
+		return !finished && step < STEP_DONE;
+	}
+
+	@Override
+	boolean notifySuccess(@NonNull final BluetoothDevice device) {
+		if (transferFailed) {
+			notifyFail(device, transferStatus);
+			return false;
+		}
+		return super.notifySuccess(device);
+	}
+}
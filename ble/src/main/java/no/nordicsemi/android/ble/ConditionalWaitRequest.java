@@ -3,8 +3,10 @@ package no.nordicsemi.android.ble;
 import android.os.Handler;
 import android.util.Log;
 
+import androidx.annotation.IntRange;
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
+import no.nordicsemi.android.ble.annotation.RequestPriority;
 import no.nordicsemi.android.ble.callback.AfterCallback;
 import no.nordicsemi.android.ble.callback.BeforeCallback;
 import no.nordicsemi.android.ble.callback.FailCallback;
@@ -84,6 +86,20 @@ public final class ConditionalWaitRequest<T> extends AwaitingRequest<T> implemen
 		return this;
 	}
 
+	@NonNull
+	@Override
+	public ConditionalWaitRequest<T> deadline(@IntRange(from = 0) final long elapsedRealtime) {
+		super.deadline(elapsedRealtime);
+		return this;
+	}
+
+	@NonNull
+	@Override
+	public ConditionalWaitRequest<T> priority(@RequestPriority final int priority) {
+		super.priority(priority);
+		return this;
+	}
+
 	/**
 	 * Negates the expected value of the predicate.
 	 *
@@ -32,7 +32,10 @@ import android.os.Handler;
 import androidx.annotation.IntRange;
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
+import no.nordicsemi.android.ble.annotation.ConnectionPriority;
 import no.nordicsemi.android.ble.annotation.PhyMask;
+import no.nordicsemi.android.ble.annotation.PhyOption;
+import no.nordicsemi.android.ble.annotation.RequestPriority;
 import no.nordicsemi.android.ble.callback.AfterCallback;
 import no.nordicsemi.android.ble.callback.BeforeCallback;
 import no.nordicsemi.android.ble.callback.FailCallback;
@@ -59,6 +62,17 @@ public class ConnectRequest extends TimeoutableRequest {
 	@IntRange(from = 0)
 	private int delay = 0;
 	private boolean autoConnect = false;
+	@IntRange(from = 0)
+	private int reconnectAttempts = 0;
+	@IntRange(from = 0)
+	private int reconnectDelay = 0, reconnectMaxDelay = 0;
+	@IntRange(from = 0, to = 517)
+	private int preDiscoveryMtu = 0;
+	@PhyMask
+	private int preDiscoveryTxPhy = 0, preDiscoveryRxPhy = 0;
+	@PhyOption
+	private int preDiscoveryPhyOptions = PhyRequest.PHY_OPTION_NO_PREFERRED;
+	private int preDiscoveryPriority = -1;
 
 	ConnectRequest(@NonNull final Type type, @NonNull final BluetoothDevice device) {
 		super(type);
@@ -136,6 +150,20 @@ public class ConnectRequest extends TimeoutableRequest {
 		return this;
 	}
 
+	@NonNull
+	@Override
+	public ConnectRequest deadline(@IntRange(from = 0) final long elapsedRealtime) {
+		super.deadline(elapsedRealtime);
+		return this;
+	}
+
+	@NonNull
+	@Override
+	public ConnectRequest priority(@RequestPriority final int priority) {
+		super.priority(priority);
+		return this;
+	}
+
 	/**
 	 * Sets an optional retry count. The BleManager will do that many attempts to connect to the
 	 * device in case of an error. The library will NOT retry if the device is not reachable,
@@ -209,6 +237,93 @@ public class ConnectRequest extends TimeoutableRequest {
 		return this;
 	}
 
+	/**
+	 * Enables reconnecting to the device when the connection is lost after the device became
+	 * ready. As after any connection, {@link BleManager.BleManagerGattCallback#initialize()}
+	 * is called again. Afterwards, the manager restores the state of the connection that
+	 * the initialization did not set again: the MTU, the PHY and the connection priority,
+	 * and enables notifications and indications that were enabled before. Callbacks set for
+	 * them are kept, unless new ones are set. Requests that were enqueued, but not started, are
+	 * executed when the device is ready again. Requests enqueued while reconnecting wait
+	 * until then.
+	 * <p>
+	 * Attempts are delayed using exponential backoff with jitter: the delay before each attempt
+	 * is random, between 0 and the backoff, which doubles after every failed attempt.
+	 * <p>
+	 * The {@link BleManagerCallbacks#onLinkLossOccurred(BluetoothDevice)} callback is called
+	 * when the connection is lost. Calling {@link BleManager#disconnect()} stops reconnecting.
+	 * This option is ignored when {@link #useAutoConnect(boolean) autoConnect} is used.
+	 *
+	 * @param attempts     the maximum number of attempts after a link loss.
+	 * @param initialDelay the backoff before the first attempt, in milliseconds.
+	 * @param maxDelay     the maximum backoff, in milliseconds.
+	 * @return The request.
+	 */
+	public ConnectRequest reconnectOnLinkLoss(@IntRange(from = 0) final int attempts,
+											  @IntRange(from = 0) final int initialDelay,
+											  @IntRange(from = 0) final int maxDelay) {
+		this.reconnectAttempts = attempts;
+		this.reconnectDelay = initialDelay;
+		this.reconnectMaxDelay = Math.max(initialDelay, maxDelay);
+		return this;
+	}
+
+	/**
+	 * Requests the given MTU as soon as the device gets connected, before the services are
+	 * discovered. With a larger MTU service discovery of devices with many attributes
+	 * takes less time. The MTU is changed only on Android 5+.
+	 * <p>
+	 * Some devices can't handle the MTU exchange before discovery, use with care.
+	 * Service discovery starts when the MTU is changed, or after 1 second, if the phone
+	 * does not report the change.
+	 *
+	 * @param mtu the MTU to request, from 23 to 517.
+	 * @return The request.
+	 * @see RequestMetrics#getTimeToReady(boolean)
+	 */
+	public ConnectRequest requestMtuBeforeDiscovery(@IntRange(from = 23, to = 517) final int mtu) {
+		this.preDiscoveryMtu = Math.max(23, Math.min(517, mtu));
+		return this;
+	}
+
+	/**
+	 * Sets the preferred PHY as soon as the device gets connected, before the services are
+	 * discovered. This works only on Android 8+.
+	 *
+	 * @param txPhy      preferred transmitter PHY. Bitwise OR of any of
+	 *                   {@link PhyRequest#PHY_LE_1M_MASK}, {@link PhyRequest#PHY_LE_2M_MASK},
+	 *                   and {@link PhyRequest#PHY_LE_CODED_MASK}.
+	 * @param rxPhy      preferred receiver PHY. Bitwise OR of any of
+	 *                   {@link PhyRequest#PHY_LE_1M_MASK}, {@link PhyRequest#PHY_LE_2M_MASK},
+	 *                   and {@link PhyRequest#PHY_LE_CODED_MASK}.
+	 * @param phyOptions preferred coding to use when transmitting on the LE Coded PHY.
+	 * @return The request.
+	 */
+	public ConnectRequest setPreferredPhyBeforeDiscovery(@PhyMask final int txPhy,
+														 @PhyMask final int rxPhy,
+														 @PhyOption final int phyOptions) {
+		this.preDiscoveryTxPhy = txPhy;
+		this.preDiscoveryRxPhy = rxPhy;
+		this.preDiscoveryPhyOptions = phyOptions;
+		return this;
+	}
+
+	/**
+	 * Requests the given connection priority as soon as the device gets connected, before
+	 * the services are discovered. {@link ConnectionPriorityRequest#CONNECTION_PRIORITY_HIGH}
+	 * shortens the connection interval, so service discovery and initialization take
+	 * less time. This works only on Android 5+.
+	 *
+	 * @param priority one of: {@link ConnectionPriorityRequest#CONNECTION_PRIORITY_HIGH},
+	 *                 {@link ConnectionPriorityRequest#CONNECTION_PRIORITY_BALANCED},
+	 *                 {@link ConnectionPriorityRequest#CONNECTION_PRIORITY_LOW_POWER}.
+	 * @return The request.
+	 */
+	public ConnectRequest requestConnectionPriorityBeforeDiscovery(@ConnectionPriority final int priority) {
+		this.preDiscoveryPriority = priority;
+		return this;
+	}
+
 	/**
 	 * Sets the preferred PHY used for connection. The value should be a bitmask composed of
 	 * {@link PhyRequest#PHY_LE_1M_MASK}, {@link PhyRequest#PHY_LE_2M_MASK} or
@@ -273,4 +388,47 @@ public class ConnectRequest extends TimeoutableRequest {
 	boolean shouldAutoConnect() {
 		return autoConnect;
 	}
+
+	boolean hasPreDiscoveryOptions() {
+		return preDiscoveryMtu > 0 || preDiscoveryTxPhy != 0 || preDiscoveryPriority >= 0;
+	}
+
+	@IntRange(from = 0, to = 517)
+	int getPreDiscoveryMtu() {
+		return preDiscoveryMtu;
+	}
+
+	@PhyMask
+	int getPreDiscoveryTxPhy() {
+		return preDiscoveryTxPhy;
+	}
+
+	@PhyMask
+	int getPreDiscoveryRxPhy() {
+		return preDiscoveryRxPhy;
+	}
+
+	@PhyOption
+	int getPreDiscoveryPhyOptions() {
+		return preDiscoveryPhyOptions;
+	}
+
+	int getPreDiscoveryConnectionPriority() {
+		return preDiscoveryPriority;
+	}
+
+	@IntRange(from = 0)
+	int getReconnectAttempts() {
+		return reconnectAttempts;
+	}
+
+	@IntRange(from = 0)
+	int getReconnectDelay() {
+		return reconnectDelay;
+	}
+
+	@IntRange(from = 0)
+	int getReconnectMaxDelay() {
+		return reconnectMaxDelay;
+	}
 }
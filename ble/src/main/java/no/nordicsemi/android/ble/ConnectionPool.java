@@ -0,0 +1,508 @@
+/*
+ * Copyright (c) 2018, Nordic Semiconductor
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its contributors may be used to endorse or promote products derived from this
+ * software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE
+ * USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package no.nordicsemi.android.ble;
+
+import android.bluetooth.BluetoothDevice;
+
+import androidx.annotation.IntRange;
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A pool of managers, one per device, that keeps at most a given number of devices connected.
+ * <p>
+ * Managers obtained using {@link #getManager(BluetoothDevice)} connect on demand: when a request
+ * is about to be executed and the device is not connected, the pool connects to it first.
+ * If the limit of connections is reached, the least recently used connection that has no
+ * requests to execute is closed. If all connections are busy, the request waits until one
+ * of them becomes idle or disconnects.
+ * <p>
+ * Pooled managers should not be connected or disconnected directly. Use
+ * {@link #remove(BluetoothDevice)} to close the connection and remove the manager from the pool.
+ * If the connection attempt fails, requests waiting for the connection fail with
+ * {@link no.nordicsemi.android.ble.callback.FailCallback#REASON_DEVICE_DISCONNECTED}.
+ *
+ * @param <M> the type of the managers.
+ */
+public class ConnectionPool<M extends BleManager> {
+	/** The request may be executed. */
+	static final int ADMITTED = 0;
+	/** A connect request has to be executed first. */
+	static final int CONNECT = 1;
+	/** The manager has to wait until the pool grants it a connection. */
+	static final int WAIT = 2;
+	/** The connection attempt has failed. The waiting requests have to fail. */
+	static final int FAIL = 3;
+
+	/**
+	 * The factory creating managers for the pool.
+	 *
+	 * @param <M> the type of the managers.
+	 */
+	public interface ManagerFactory<M extends BleManager> {
+		/**
+		 * Creates a new manager for the given device.
+		 *
+		 * @param device the device the manager will connect to.
+		 * @return A new manager.
+		 */
+		@NonNull
+		M createManager(@NonNull final BluetoothDevice device);
+	}
+
+	/**
+	 * A pooled manager with its connection state.
+	 */
+	static final class Entry<M extends BleManager> {
+		private static final int STATE_DISCONNECTED = 0;
+		/** Waiting for a free connection. */
+		private static final int STATE_PENDING = 1;
+		/** A connection was granted, but the connect request was not executed yet. */
+		private static final int STATE_GRANTED = 2;
+		private static final int STATE_CONNECTING = 3;
+		private static final int STATE_CONNECTED = 4;
+		/** The connection was closed by the pool. */
+		private static final int STATE_DISCONNECTING = 5;
+		/** The last connection attempt failed. Reset when the queue gets empty. */
+		private static final int STATE_FAILED = 6;
+
+		@NonNull
+		private final ConnectionPool<M> pool;
+		@NonNull
+		final M manager;
+		@NonNull
+		final BluetoothDevice device;
+		@NonNull
+		private final String address;
+		private int state = STATE_DISCONNECTED;
+		private long connectStartTime;
+
+		private Entry(@NonNull final ConnectionPool<M> pool, @NonNull final M manager,
+					  @NonNull final BluetoothDevice device, @NonNull final String address) {
+			this.pool = pool;
+			this.manager = manager;
+			this.device = device;
+			this.address = address;
+		}
+
+		/**
+		 * Called before a request from the task queue is executed.
+		 *
+		 * @param connected whether the device is connected.
+		 * @return {@link #ADMITTED}, {@link #CONNECT}, {@link #WAIT} or {@link #FAIL}.
+		 */
+		int onRequest(final boolean connected) {
+			return pool.onRequest(this, connected);
+		}
+
+		/**
+		 * Returns a new connect request, to be executed when {@link #onRequest(boolean)}
+		 * returned {@link #CONNECT}.
+		 */
+		@NonNull
+		ConnectRequest newConnectRequest() {
+			final ConnectRequest request = pool.createConnectRequest(manager, device);
+			// The attempt may fail without a disconnection, e.g. when Bluetooth is disabled.
+			request.internalFail((device, status) -> pool.onConnectFailed(this));
+			return request;
+		}
+
+		/** Called when the device became ready. */
+		void onReady() {
+			pool.onReady(this);
+		}
+
+		/** Called when the task queue got empty. */
+		void onIdle() {
+			pool.onIdle(this);
+		}
+
+		/**
+		 * Called when the device has disconnected.
+		 *
+		 * @param wasConnected false, if the connection attempt has failed.
+		 */
+		void onDisconnected(final boolean wasConnected) {
+			pool.onDisconnected(this, wasConnected);
+		}
+	}
+
+	private final int maxConnections;
+	@NonNull
+	private final ManagerFactory<M> factory;
+	/** All managers in the pool, by device address. */
+	private final Map<String, Entry<M>> entries = new HashMap<>();
+	/** Connections in use, by device address, in access order. The eldest is evicted first. */
+	private final LinkedHashMap<String, Entry<M>> live = new LinkedHashMap<>(16, 0.75f, true);
+	/** Managers waiting for a free connection. */
+	private final Deque<Entry<M>> pending = new ArrayDeque<>();
+	/** The number of connections being closed by the pool. */
+	private int disconnecting;
+	private long hits;
+	private long misses;
+	private long evictions;
+	@NonNull
+	private LatencyHistogram connectLatency = new LatencyHistogram();
+
+	/**
+	 * Creates the pool.
+	 *
+	 * @param maxConnections the maximum number of connected devices. Most Android phones
+	 *                       support up to 7 connections at the same time, some less.
+	 * @param factory        the factory creating managers for devices.
+	 */
+	public ConnectionPool(@IntRange(from = 1) final int maxConnections,
+						  @NonNull final ManagerFactory<M> factory) {
+		if (maxConnections < 1)
+			throw new IllegalArgumentException("At least one connection must be allowed");
+		this.maxConnections = maxConnections;
+		this.factory = factory;
+	}
+
+	/**
+	 * Returns the manager for the given device, creating one if needed.
+	 * The manager will connect to the device when a request is enqueued.
+	 *
+	 * @param device the device.
+	 * @return The manager for the device.
+	 */
+	@NonNull
+	public M getManager(@NonNull final BluetoothDevice device) {
+		return getEntry(device, device.getAddress()).manager;
+	}
+
+	/**
+	 * Returns the entry of the device with the given address, creating one if needed.
+	 */
+	@NonNull
+	synchronized Entry<M> getEntry(@NonNull final BluetoothDevice device,
+								   @NonNull final String address) {
+		Entry<M> entry = entries.get(address);
+		if (entry == null) {
+			final M manager = factory.createManager(device);
+			entry = new Entry<>(this, manager, device, address);
+			entries.put(address, entry);
+			manager.requestHandler.setConnectionPoolEntry(entry);
+		}
+		return entry;
+	}
+
+	/**
+	 * Disconnects from the device and removes its manager from the pool.
+	 * The manager is closed and should not be used anymore.
+	 *
+	 * @param device the device.
+	 */
+	public void remove(@NonNull final BluetoothDevice device) {
+		List<Runnable> actions = null;
+		synchronized (this) {
+			final Entry<M> entry = entries.remove(device.getAddress());
+			if (entry != null) {
+				actions = promote(release(entry, null));
+			}
+		}
+		run(actions);
+	}
+
+	/**
+	 * Disconnects from all devices and closes all managers.
+	 */
+	public void close() {
+		List<Runnable> actions = null;
+		synchronized (this) {
+			for (final Entry<M> entry : entries.values())
+				actions = release(entry, actions);
+			entries.clear();
+			pending.clear();
+		}
+		run(actions);
+	}
+
+	/**
+	 * Returns the maximum number of connected devices.
+	 */
+	public int getMaxConnections() {
+		return maxConnections;
+	}
+
+	/**
+	 * Returns the number of connections in use, including connections being established
+	 * or closed.
+	 */
+	public synchronized int getConnectionCount() {
+		return live.size();
+	}
+
+	/**
+	 * Returns the number of managers waiting for a free connection.
+	 */
+	public synchronized int getWaitingManagers() {
+		return pending.size();
+	}
+
+	/**
+	 * Returns the number of requests that were executed on an existing connection.
+	 */
+	public synchronized long getHitCount() {
+		return hits;
+	}
+
+	/**
+	 * Returns the number of times a connection had to be established before a request
+	 * could be executed.
+	 */
+	public synchronized long getMissCount() {
+		return misses;
+	}
+
+	/**
+	 * Returns the number of idle connections closed to make room for other devices.
+	 */
+	public synchronized long getEvictionCount() {
+		return evictions;
+	}
+
+	/**
+	 * Returns a snapshot of the time from starting a connection until the device became ready,
+	 * including service discovery and initialization, in microseconds.
+	 */
+	@NonNull
+	public synchronized LatencyHistogram getConnectLatency() {
+		return connectLatency.copy();
+	}
+
+	/**
+	 * Clears the hit, miss and eviction counters and the connection latency.
+	 */
+	public synchronized void resetStatistics() {
+		hits = misses = evictions = 0;
+		connectLatency = new LatencyHistogram();
+	}
+
+	/**
+	 * Creates the request used to connect to a device. The completion callbacks
+	 * of the request should not be set.
+	 * <p>
+	 * By default the request uses direct connection, see
+	 * {@link ConnectRequest#useAutoConnect(boolean)}, and retries 3 times.
+	 *
+	 * @param manager the manager of the device.
+	 * @param device  the device to connect to.
+	 * @return The connect request.
+	 */
+	@NonNull
+	protected ConnectRequest createConnectRequest(@NonNull final M manager,
+												  @NonNull final BluetoothDevice device) {
+		return manager.connect(device)
+				.useAutoConnect(false)
+				.retry(3, 100);
+	}
+
+	int onRequest(@NonNull final Entry<M> entry, final boolean connected) {
+		List<Runnable> actions = null;
+		final int result;
+		synchronized (this) {
+			if (connected) {
+				hits++;
+				// Mark the connection as recently used.
+				live.get(entry.address);
+				return ADMITTED;
+			}
+			if (entry.state == Entry.STATE_DISCONNECTED) {
+				misses++;
+				if (live.size() < maxConnections) {
+					grant(entry);
+				} else {
+					entry.state = Entry.STATE_PENDING;
+					pending.add(entry);
+					actions = promote(null);
+				}
+			}
+			switch (entry.state) {
+				case Entry.STATE_PENDING:
+					result = WAIT;
+					break;
+				case Entry.STATE_GRANTED:
+					entry.state = Entry.STATE_CONNECTING;
+					entry.connectStartTime = entry.manager.requestHandler.now();
+					result = CONNECT;
+					break;
+				case Entry.STATE_FAILED:
+					result = FAIL;
+					break;
+				default:
+					// The connection is being established or closed.
+					result = ADMITTED;
+					break;
+			}
+		}
+		run(actions);
+		return result;
+	}
+
+	synchronized void onReady(@NonNull final Entry<M> entry) {
+		if (entry.state == Entry.STATE_CONNECTING) {
+			connectLatency.record((entry.manager.requestHandler.now() - entry.connectStartTime) / 1000);
+		}
+		entry.state = Entry.STATE_CONNECTED;
+		live.put(entry.address, entry);
+	}
+
+	void onIdle(@NonNull final Entry<M> entry) {
+		final List<Runnable> actions;
+		synchronized (this) {
+			switch (entry.state) {
+				case Entry.STATE_GRANTED:
+					// The queue was cleared before the connection was used.
+					live.remove(entry.address);
+					// fall through
+				case Entry.STATE_FAILED:
+					entry.state = Entry.STATE_DISCONNECTED;
+					break;
+			}
+			actions = promote(null);
+		}
+		run(actions);
+	}
+
+	void onConnectFailed(@NonNull final Entry<M> entry) {
+		List<Runnable> actions = null;
+		synchronized (this) {
+			if (entry.state == Entry.STATE_CONNECTING) {
+				entry.state = Entry.STATE_FAILED;
+				live.remove(entry.address);
+				actions = promote(null);
+			}
+		}
+		run(actions);
+	}
+
+	void onDisconnected(@NonNull final Entry<M> entry, final boolean wasConnected) {
+		final List<Runnable> actions;
+		synchronized (this) {
+			if (entry.state == Entry.STATE_DISCONNECTING) {
+				disconnecting--;
+			}
+			if (live.remove(entry.address) != null) {
+				entry.state = !wasConnected && entry.state == Entry.STATE_CONNECTING ?
+						Entry.STATE_FAILED : Entry.STATE_DISCONNECTED;
+			}
+			actions = promote(null);
+		}
+		run(actions);
+	}
+
+	private void grant(@NonNull final Entry<M> entry) {
+		entry.state = Entry.STATE_GRANTED;
+		live.put(entry.address, entry);
+	}
+
+	/**
+	 * Grants free connections to waiting managers, closing idle connections if needed.
+	 * The managers are notified by the returned actions, which have to be run without
+	 * the lock held.
+	 *
+	 * @param actions the actions to add to, or null.
+	 * @return The actions to run, or null.
+	 */
+	@Nullable
+	private List<Runnable> promote(@Nullable List<Runnable> actions) {
+		while (!pending.isEmpty()) {
+			if (live.size() < maxConnections) {
+				final Entry<M> entry = pending.poll();
+				grant(entry);
+				actions = add(actions, entry.manager.requestHandler::onConnectionGranted);
+				continue;
+			}
+			// Enough connections may already be closing.
+			if (disconnecting >= pending.size())
+				break;
+			final Entry<M> victim = findIdle();
+			if (victim == null)
+				break;
+			evictions++;
+			victim.state = Entry.STATE_DISCONNECTING;
+			disconnecting++;
+			actions = add(actions, () -> victim.manager.disconnect().enqueue());
+		}
+		return actions;
+	}
+
+	/**
+	 * Returns the least recently used connection that has no requests to execute.
+	 */
+	private Entry<M> findIdle() {
+		for (final Entry<M> entry : live.values()) {
+			if (entry.state == Entry.STATE_CONNECTED && entry.manager.requestHandler.isIdle())
+				return entry;
+		}
+		return null;
+	}
+
+	/**
+	 * Removes the entry from the pool. The manager is disconnected and closed by the
+	 * returned actions.
+	 */
+	@NonNull
+	private List<Runnable> release(@NonNull final Entry<M> entry,
+								   @Nullable final List<Runnable> actions) {
+		pending.remove(entry);
+		if (entry.state == Entry.STATE_DISCONNECTING) {
+			disconnecting--;
+		}
+		live.remove(entry.address);
+		entry.state = Entry.STATE_DISCONNECTED;
+		final M manager = entry.manager;
+		manager.requestHandler.setConnectionPoolEntry(null);
+		// The manager may be closed only after the disconnect request has been executed.
+		return add(actions, () -> manager.disconnect()
+				.done(device -> manager.close())
+				.fail((device, status) -> manager.close())
+				.invalid(manager::close)
+				.enqueue());
+	}
+
+	@NonNull
+	private static List<Runnable> add(@Nullable List<Runnable> actions,
+									  @NonNull final Runnable action) {
+		if (actions == null)
+			actions = new ArrayList<>(2);
+		actions.add(action);
+		return actions;
+	}
+
+	private static void run(@Nullable final List<Runnable> actions) {
+		if (actions != null) {
+			for (final Runnable action : actions)
+				action.run();
+		}
+	}
+}
@@ -0,0 +1,283 @@
+/*
+ * Copyright (c) 2018, Nordic Semiconductor
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its contributors may be used to endorse or promote products derived from this
+ * software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE
+ * USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package no.nordicsemi.android.ble;
+
+import androidx.annotation.IntRange;
+
+import no.nordicsemi.android.ble.annotation.ConnectionPriority;
+
+/**
+ * A policy switching the connection priority depending on the load of the connection.
+ * <p>
+ * The high connection priority is requested when the number of requests waiting in the queue
+ * of the manager, or the rate of received notifications and indications, reaches a threshold.
+ * When neither of them was reached for the idle period, the idle priority, balanced or low
+ * power, is requested. This way latency follows the load instead of being kept at its
+ * minimum, which drains the battery of the peripheral.
+ * <p>
+ * On Android Oreo and newer the connection interval reported after each change is compared
+ * with the range expected for the requested priority, see {@link #getConfirmedCount()}.
+ * A change which was not confirmed, e.g. because the peripheral requested other parameters,
+ * is not repeated until the load changes.
+ * <p>
+ * The policy should not be used together with
+ * {@link BleManager#requestConnectionPriority(int)}, as it would override the priority
+ * requested by the application when the load changes.
+ *
+ * @see BleManager#setConnectionPriorityPolicy(ConnectionPriorityPolicy)
+ */
+public final class ConnectionPriorityPolicy {
+	/** The default number of waiting requests which triggers the high priority. */
+	public static final int DEFAULT_QUEUE_DEPTH = 3;
+	/** The default number of notifications per second which triggers the high priority. */
+	public static final int DEFAULT_NOTIFICATION_RATE = 20;
+	/** The default idle period, in milliseconds. */
+	public static final long DEFAULT_IDLE_PERIOD = 2000;
+
+	/** Returned by {@link #getPriorityToRequest(long)} if no change is needed. */
+	static final int NONE = -1;
+	private static final long WINDOW = 1000;
+
+	private final int queueDepthThreshold;
+	private final long idlePeriod;
+	private final int idlePriority;
+	/** Times of the last received notifications, a ring buffer. */
+	private final long[] notifications;
+	private int notificationCount;
+	private int notificationIndex;
+
+	/** The time the load was last above a threshold, valid if {@link #busy} is set. */
+	private long lastBusyTime;
+	private boolean busy;
+	private int currentPriority = ConnectionPriorityRequest.CONNECTION_PRIORITY_BALANCED;
+	/** The priority rejected by the system, not requested again until the load changes. */
+	private int rejectedPriority = NONE;
+	private int lastInterval;
+
+	// Statistics
+	private long switchCount;
+	private long confirmedCount;
+	private long unconfirmedCount;
+
+	/**
+	 * Creates the policy with default thresholds, falling back to the balanced priority.
+	 */
+	public ConnectionPriorityPolicy() {
+		this(DEFAULT_QUEUE_DEPTH, DEFAULT_NOTIFICATION_RATE, DEFAULT_IDLE_PERIOD,
+				ConnectionPriorityRequest.CONNECTION_PRIORITY_BALANCED);
+	}
+
+	/**
+	 * Creates the policy.
+	 *
+	 * @param queueDepth        the number of requests waiting in the queue which triggers
+	 *                          the high priority.
+	 * @param notificationRate  the number of notifications and indications received within
+	 *                          a second which triggers the high priority, or 0 to ignore them.
+	 * @param idlePeriodMillis  the time without load after which the idle priority is requested,
+	 *                          in milliseconds.
+	 * @param idlePriority      the idle priority, either
+	 *                          {@link ConnectionPriorityRequest#CONNECTION_PRIORITY_BALANCED} or
+	 *                          {@link ConnectionPriorityRequest#CONNECTION_PRIORITY_LOW_POWER}.
+	 */
+	public ConnectionPriorityPolicy(@IntRange(from = 1) final int queueDepth,
+									@IntRange(from = 0) final int notificationRate,
+									@IntRange(from = 0) final long idlePeriodMillis,
+									@ConnectionPriority final int idlePriority) {
+		if (queueDepth < 1)
+			throw new IllegalArgumentException("Queue depth must be positive");
+		if (notificationRate < 0 || idlePeriodMillis < 0)
+			throw new IllegalArgumentException("Rate and idle period must not be negative");
+		if (idlePriority == ConnectionPriorityRequest.CONNECTION_PRIORITY_HIGH)
+			throw new IllegalArgumentException("Idle priority must be balanced or low power");
+		this.queueDepthThreshold = queueDepth;
+		this.notifications = new long[notificationRate];
+		this.idlePeriod = idlePeriodMillis;
+		this.idlePriority = idlePriority;
+	}
+
+	/**
+	 * Returns the last requested connection priority.
+	 */
+	@ConnectionPriority
+	public synchronized int getCurrentPriority() {
+		return currentPriority;
+	}
+
+	/**
+	 * Returns the last connection interval reported by the system, in 1.25 ms units,
+	 * or 0 if unknown.
+	 */
+	public synchronized int getLastInterval() {
+		return lastInterval;
+	}
+
+	/**
+	 * Returns the number of times a priority different from the current one was requested.
+	 */
+	public synchronized long getSwitchCount() {
+		return switchCount;
+	}
+
+	/**
+	 * Returns the number of connection updates with an interval matching the requested priority.
+	 */
+	public synchronized long getConfirmedCount() {
+		return confirmedCount;
+	}
+
+	/**
+	 * Returns the number of connection updates with an interval not matching
+	 * the requested priority.
+	 */
+	public synchronized long getUnconfirmedCount() {
+		return unconfirmedCount;
+	}
+
+	/**
+	 * Clears the counters.
+	 */
+	public synchronized void resetStatistics() {
+		switchCount = confirmedCount = unconfirmedCount = 0;
+	}
+
+	/**
+	 * Updates the load with the number of requests waiting in the queue.
+	 */
+	synchronized void onQueueDepth(final int depth, final long now) {
+		if (depth >= queueDepthThreshold) {
+			busy = true;
+			lastBusyTime = now;
+		}
+	}
+
+	/**
+	 * Updates the load with a received notification or indication.
+	 */
+	synchronized void onNotification(final long now) {
+		final int capacity = notifications.length;
+		if (capacity == 0)
+			return;
+		notifications[notificationIndex] = now;
+		notificationIndex = (notificationIndex + 1) % capacity;
+		if (notificationCount < capacity)
+			notificationCount++;
+		// The oldest of the last 'capacity' notifications was received within the window.
+		if (notificationCount == capacity && now - notifications[notificationIndex] < WINDOW) {
+			busy = true;
+			lastBusyTime = now;
+		}
+	}
+
+	/**
+	 * Returns the priority which should be requested now.
+	 *
+	 * @param now the current time, in milliseconds.
+	 * @return The priority, or {@link #NONE} if the current one is right.
+	 */
+	synchronized int getPriorityToRequest(final long now) {
+		final int priority = busy && now - lastBusyTime < idlePeriod ?
+				ConnectionPriorityRequest.CONNECTION_PRIORITY_HIGH : idlePriority;
+		if (priority == rejectedPriority)
+			return NONE;
+		rejectedPriority = NONE;
+		return priority != currentPriority ? priority : NONE;
+	}
+
+	/**
+	 * Returns the time after which the idle priority should be requested.
+	 *
+	 * @param now the current time, in milliseconds.
+	 * @return The delay in milliseconds, or {@link #NONE} if the high priority isn't used.
+	 */
+	synchronized long getIdleDelay(final long now) {
+		if (currentPriority != ConnectionPriorityRequest.CONNECTION_PRIORITY_HIGH || !busy)
+			return NONE;
+		return Math.max(0, lastBusyTime + idlePeriod - now);
+	}
+
+	/**
+	 * Called when a connection priority was requested, also by the application.
+	 *
+	 * @param priority the requested priority.
+	 */
+	synchronized void onPriorityRequested(@ConnectionPriority final int priority) {
+		if (priority != currentPriority)
+			switchCount++;
+		currentPriority = priority;
+		rejectedPriority = NONE;
+	}
+
+	/**
+	 * Called when the system refused to request the connection priority. The priority
+	 * is not requested again until the load changes, so that it isn't retried in a loop.
+	 *
+	 * @param priority the rejected priority.
+	 */
+	synchronized void onPriorityRejected(@ConnectionPriority final int priority) {
+		rejectedPriority = priority;
+	}
+
+	/**
+	 * Called when the system reported new connection parameters.
+	 *
+	 * @param interval the connection interval, in 1.25 ms units.
+	 * @return True if the interval matches the current priority.
+	 */
+	synchronized boolean onConnectionUpdated(final int interval) {
+		lastInterval = interval;
+		final boolean confirmed = matches(currentPriority, interval);
+		if (confirmed)
+			confirmedCount++;
+		else
+			unconfirmedCount++;
+		return confirmed;
+	}
+
+	/**
+	 * Resets the load and the priority to the one used by a new connection.
+	 */
+	synchronized void reset() {
+		busy = false;
+		notificationCount = notificationIndex = 0;
+		currentPriority = ConnectionPriorityRequest.CONNECTION_PRIORITY_BALANCED;
+		rejectedPriority = NONE;
+		lastInterval = 0;
+	}
+
+	/**
+	 * Returns whether the interval is in the range Android uses for the priority:
+	 * 11.25-15 ms for high, 30-50 ms for balanced and 100-125 ms for low power.
+	 * Some phones use 7.5 ms for the high priority.
+	 */
+	private static boolean matches(final int priority, final int interval) {
+		switch (priority) {
+			case ConnectionPriorityRequest.CONNECTION_PRIORITY_HIGH:
+				return interval <= 12;
+			case ConnectionPriorityRequest.CONNECTION_PRIORITY_LOW_POWER:
+				return interval >= 80 && interval <= 100;
+			default:
+				return interval >= 24 && interval <= 40;
+		}
+	}
+}
@@ -31,6 +31,7 @@ import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
 import androidx.annotation.RequiresApi;
 import no.nordicsemi.android.ble.annotation.ConnectionPriority;
+import no.nordicsemi.android.ble.annotation.RequestPriority;
 import no.nordicsemi.android.ble.callback.AfterCallback;
 import no.nordicsemi.android.ble.callback.BeforeCallback;
 import no.nordicsemi.android.ble.callback.ConnectionPriorityCallback;
@@ -81,6 +82,7 @@ public final class ConnectionPriorityRequest extends SimpleValueRequest<Connecti
 	public static final int CONNECTION_PRIORITY_LOW_POWER = 2;
 
 	private final int value;
+	private ConnectionPriorityCallback internalValueCallback;
 
 	ConnectionPriorityRequest(@NonNull final Type type, @ConnectionPriority int priority) {
 		super(type);
@@ -138,6 +140,20 @@ public final class ConnectionPriorityRequest extends SimpleValueRequest<Connecti
 		return this;
 	}
 
+	@NonNull
+	@Override
+	public ConnectionPriorityRequest deadline(@IntRange(from = 0) final long elapsedRealtime) {
+		super.deadline(elapsedRealtime);
+		return this;
+	}
+
+	@NonNull
+	@Override
+	public ConnectionPriorityRequest priority(@RequestPriority final int priority) {
+		super.priority(priority);
+		return this;
+	}
+
 	@RequiresApi(value = Build.VERSION_CODES.O)
 	@Override
 	@NonNull
@@ -147,6 +163,16 @@ public final class ConnectionPriorityRequest extends SimpleValueRequest<Connecti
 		return this;
 	}
 
+	/**
+	 * Used to set internal value callback. It is invoked on the thread processing the request,
+	 * before the value callback.
+	 *
+	 * @param callback the callback.
+	 */
+	void internalWith(@NonNull final ConnectionPriorityCallback callback) {
+		this.internalValueCallback = callback;
+	}
+
 	@RequiresApi(value = Build.VERSION_CODES.O)
 	@NonNull
 	@Override
@@ -172,6 +198,8 @@ public final class ConnectionPriorityRequest extends SimpleValueRequest<Connecti
 										 @IntRange(from = 6, to = 3200) final int interval,
 										 @IntRange(from = 0, to = 499) final int latency,
 										 @IntRange(from = 10, to = 3200) final int timeout) {
+		if (internalValueCallback != null)
+			internalValueCallback.onConnectionUpdated(device, interval, latency, timeout);
 		if (valueCallback != null)
 			valueCallback.onConnectionUpdated(device, interval, latency, timeout);
 	}
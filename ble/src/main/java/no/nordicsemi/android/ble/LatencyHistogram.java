@@ -0,0 +1,152 @@
+/*
+ * Copyright (c) 2018, Nordic Semiconductor
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its contributors may be used to endorse or promote products derived from this
+ * software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE
+ * USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package no.nordicsemi.android.ble;
+
+import androidx.annotation.FloatRange;
+import androidx.annotation.NonNull;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A histogram of latencies, in microseconds, with logarithmic buckets.
+ * <p>
+ * Each power of 2 is divided into 4 buckets, so percentiles are reported with a relative
+ * error of at most 12.5%. Recording a value is lock-free and does not allocate memory.
+ */
+@SuppressWarnings({"unused", "WeakerAccess"})
+public final class LatencyHistogram {
+	private static final int SUB_BUCKET_BITS = 2;
+	private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+	/** Values up to 2^40 us (about 12 days) are recorded in separate buckets. */
+	private static final int BUCKETS = (40 - SUB_BUCKET_BITS + 2) * SUB_BUCKETS;
+
+	@NonNull
+	private final AtomicLongArray buckets;
+
+	LatencyHistogram() {
+		buckets = new AtomicLongArray(BUCKETS);
+	}
+
+	private LatencyHistogram(@NonNull final LatencyHistogram other) {
+		final long[] counts = new long[BUCKETS];
+		for (int i = 0; i < BUCKETS; i++)
+			counts[i] = other.buckets.get(i);
+		buckets = new AtomicLongArray(counts);
+	}
+
+	/**
+	 * Records a latency.
+	 *
+	 * @param micros the latency in microseconds. Negative values are ignored.
+	 */
+	void record(final long micros) {
+		if (micros < 0)
+			return;
+		buckets.incrementAndGet(indexOf(micros));
+	}
+
+	/**
+	 * Returns a copy of this histogram.
+	 */
+	@NonNull
+	LatencyHistogram copy() {
+		return new LatencyHistogram(this);
+	}
+
+	/**
+	 * Returns the number of recorded values.
+	 *
+	 * @return The number of values.
+	 */
+	public long getCount() {
+		long count = 0;
+		for (int i = 0; i < BUCKETS; i++)
+			count += buckets.get(i);
+		return count;
+	}
+
+	/**
+	 * Returns the latency below which the given percentage of the recorded values fall.
+	 *
+	 * @param percentile the percentile, from 0 to 100.
+	 * @return The latency in microseconds, or 0 if no values were recorded.
+	 */
+	public long getPercentile(@FloatRange(from = 0.0, to = 100.0) final double percentile) {
+		final long count = getCount();
+		if (count == 0)
+			return 0;
+		final long rank = Math.max(1, (long) Math.ceil(percentile / 100.0 * count));
+		long seen = 0;
+		for (int i = 0; i < BUCKETS; i++) {
+			seen += buckets.get(i);
+			if (seen >= rank)
+				return valueOf(i);
+		}
+		return valueOf(BUCKETS - 1);
+	}
+
+	/**
+	 * Returns the median latency, in microseconds.
+	 */
+	public long getP50() {
+		return getPercentile(50.0);
+	}
+
+	/**
+	 * Returns the 95th percentile of the latency, in microseconds.
+	 */
+	public long getP95() {
+		return getPercentile(95.0);
+	}
+
+	/**
+	 * Returns the 99th percentile of the latency, in microseconds.
+	 */
+	public long getP99() {
+		return getPercentile(99.0);
+	}
+
+	/**
+	 * Returns the index of the bucket for the given value.
+	 */
+	static int indexOf(final long value) {
+		if (value < 2 * SUB_BUCKETS)
+			return (int) value;
+		final int exponent = 63 - Long.numberOfLeadingZeros(value);
+		final int subBucket = (int) (value >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+		return Math.min(BUCKETS - 1, (exponent - SUB_BUCKET_BITS + 1) * SUB_BUCKETS + subBucket);
+	}
+
+	/**
+	 * Returns the middle of the range of values counted in the given bucket.
+	 */
+	static long valueOf(final int index) {
+		if (index < 2 * SUB_BUCKETS)
+			return index;
+		final int exponent = index / SUB_BUCKETS + SUB_BUCKET_BITS - 1;
+		final int subBucket = index % SUB_BUCKETS;
+		final long lowerBound = (long) (SUB_BUCKETS + subBucket) << (exponent - SUB_BUCKET_BITS);
+		final long width = 1L << (exponent - SUB_BUCKET_BITS);
+		return lowerBound + width / 2;
+	}
+}
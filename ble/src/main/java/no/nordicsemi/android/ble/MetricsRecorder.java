@@ -0,0 +1,164 @@
+/*
+ * Copyright (c) 2018, Nordic Semiconductor
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its contributors may be used to endorse or promote products derived from this
+ * software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE
+ * USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package no.nordicsemi.android.ble;
+
+import android.os.SystemClock;
+
+import androidx.annotation.NonNull;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Records latencies of requests for {@link RequestMetrics}.
+ * <p>
+ * Recording is lock-free and does not allocate memory, except for the first request of
+ * each type.
+ */
+final class MetricsRecorder {
+
+	private static final class TypeRecorder {
+		final AtomicLong succeeded = new AtomicLong();
+		final AtomicLong failed = new AtomicLong();
+		final LatencyHistogram queueWait = new LatencyHistogram();
+		final LatencyHistogram execution = new LatencyHistogram();
+		final LatencyHistogram callbackDispatch = new LatencyHistogram();
+	}
+
+	private static final Request.Type[] TYPES = Request.Type.values();
+
+	private final AtomicReferenceArray<TypeRecorder> recorders =
+			new AtomicReferenceArray<>(TYPES.length);
+	/** Time to ready, without and with connection parameters negotiated before discovery. */
+	private volatile LatencyHistogram timeToReady = new LatencyHistogram();
+	private volatile LatencyHistogram timeToReadyPreDiscovery = new LatencyHistogram();
+
+	/**
+	 * A source of monotonic time, in nanoseconds.
+	 */
+	interface Clock {
+		long nanoTime();
+	}
+
+	/** The clock of the system, counting time since boot, including deep sleep. */
+	static final Clock SYSTEM_CLOCK = SystemClock::elapsedRealtimeNanos;
+
+	@NonNull
+	private final Clock clock;
+
+	MetricsRecorder() {
+		this(SYSTEM_CLOCK);
+	}
+
+	/**
+	 * Creates the recorder.
+	 *
+	 * @param clock the clock used for all timestamps of requests. JVM tests, where
+	 *              {@link SystemClock} is not available, use {@link System#nanoTime()}.
+	 */
+	MetricsRecorder(@NonNull final Clock clock) {
+		this.clock = clock;
+	}
+
+	/**
+	 * Returns the current time in the time base used by the recorder.
+	 */
+	long now() {
+		return clock.nanoTime();
+	}
+
+	void onRequestStarted(@NonNull final Request request) {
+		if (request.enqueueTime > 0)
+			recorder(request.type).queueWait.record(toMicros(request.startTime - request.enqueueTime));
+	}
+
+	void onRequestFinished(@NonNull final Request request, final boolean success) {
+		final TypeRecorder recorder = recorder(request.type);
+		if (success)
+			recorder.succeeded.incrementAndGet();
+		else
+			recorder.failed.incrementAndGet();
+		if (request.startTime > 0)
+			recorder.execution.record(toMicros(request.finishTime - request.startTime));
+	}
+
+	void onCallbackDispatched(@NonNull final Request request) {
+		if (request.finishTime > 0)
+			recorder(request.type).callbackDispatch.record(toMicros(now() - request.finishTime));
+	}
+
+	/**
+	 * Records the time from establishing a connection until the device became ready.
+	 *
+	 * @param nanos        the time, in nanoseconds.
+	 * @param preDiscovery whether connection parameters were negotiated before discovery.
+	 */
+	void onDeviceReady(final long nanos, final boolean preDiscovery) {
+		(preDiscovery ? timeToReadyPreDiscovery : timeToReady).record(toMicros(nanos));
+	}
+
+	@NonNull
+	RequestMetrics getSnapshot() {
+		final Map<String, RequestMetrics.Entry> entries = new LinkedHashMap<>();
+		for (int i = 0; i < TYPES.length; i++) {
+			final TypeRecorder recorder = recorders.get(i);
+			if (recorder == null)
+				continue;
+			final String type = TYPES[i].name();
+			entries.put(type, new RequestMetrics.Entry(type,
+					recorder.succeeded.get(), recorder.failed.get(),
+					recorder.queueWait.copy(), recorder.execution.copy(),
+					recorder.callbackDispatch.copy()));
+		}
+		return new RequestMetrics(entries, timeToReady.copy(), timeToReadyPreDiscovery.copy());
+	}
+
+	void reset() {
+		for (int i = 0; i < TYPES.length; i++)
+			recorders.set(i, null);
+		timeToReady = new LatencyHistogram();
+		timeToReadyPreDiscovery = new LatencyHistogram();
+	}
+
+	@NonNull
+	private TypeRecorder recorder(@NonNull final Request.Type type) {
+		final int index = type.ordinal();
+		TypeRecorder recorder = recorders.get(index);
+		if (recorder == null) {
+			recorder = new TypeRecorder();
+			if (!recorders.compareAndSet(index, null, recorder)) {
+				// Another thread was faster.
+				final TypeRecorder other = recorders.get(index);
+				if (other != null)
+					recorder = other;
+			}
+		}
+		return recorder;
+	}
+
+	private static long toMicros(final long nanos) {
+		return nanos / 1000L;
+	}
+}
@@ -29,6 +29,7 @@ import android.util.Log;
 import androidx.annotation.IntRange;
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
+import no.nordicsemi.android.ble.annotation.RequestPriority;
 import no.nordicsemi.android.ble.callback.AfterCallback;
 import no.nordicsemi.android.ble.callback.BeforeCallback;
 import no.nordicsemi.android.ble.callback.FailCallback;
@@ -38,6 +39,7 @@ import no.nordicsemi.android.ble.callback.SuccessCallback;
 
 public final class MtuRequest extends SimpleValueRequest<MtuCallback> implements Operation {
 	private final int value;
+	private MtuCallback internalValueCallback;
 
 	MtuRequest(@NonNull final Type type, @IntRange(from = 23, to = 517) int mtu) {
 		super(type);
@@ -97,6 +99,20 @@ public final class MtuRequest extends SimpleValueRequest<MtuCallback> implements
 		return this;
 	}
 
+	@NonNull
+	@Override
+	public MtuRequest deadline(@IntRange(from = 0) final long elapsedRealtime) {
+		super.deadline(elapsedRealtime);
+		return this;
+	}
+
+	@NonNull
+	@Override
+	public MtuRequest priority(@RequestPriority final int priority) {
+		super.priority(priority);
+		return this;
+	}
+
 	@Override
 	@NonNull
 	public MtuRequest with(@NonNull final MtuCallback callback) {
@@ -104,8 +120,20 @@ public final class MtuRequest extends SimpleValueRequest<MtuCallback> implements
 		return this;
 	}
 
+	/**
+	 * Used to set internal value callback. Unlike the value callback, it is invoked on the
+	 * thread processing the request, before the value callback is posted.
+	 *
+	 * @param callback the callback.
+	 */
+	void internalWith(@NonNull final MtuCallback callback) {
+		this.internalValueCallback = callback;
+	}
+
 	void notifyMtuChanged(@NonNull final BluetoothDevice device,
 						  @IntRange(from = 23, to = 517) final int mtu) {
+		if (internalValueCallback != null)
+			internalValueCallback.onMtuChanged(device, mtu);
 		handler.post(() -> {
 			if (valueCallback != null) {
 				try {
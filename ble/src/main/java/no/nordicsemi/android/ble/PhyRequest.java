@@ -26,11 +26,13 @@ import android.bluetooth.BluetoothDevice;
 import android.os.Handler;
 import android.util.Log;
 
+import androidx.annotation.IntRange;
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
 import no.nordicsemi.android.ble.annotation.PhyMask;
 import no.nordicsemi.android.ble.annotation.PhyOption;
 import no.nordicsemi.android.ble.annotation.PhyValue;
+import no.nordicsemi.android.ble.annotation.RequestPriority;
 import no.nordicsemi.android.ble.callback.AfterCallback;
 import no.nordicsemi.android.ble.callback.BeforeCallback;
 import no.nordicsemi.android.ble.callback.FailCallback;
@@ -77,6 +79,7 @@ public final class PhyRequest extends SimpleValueRequest<PhyCallback> implements
 	private final int txPhy;
 	private final int rxPhy;
 	private final int phyOptions;
+	private PhyCallback internalValueCallback;
 
 	PhyRequest(@NonNull final Type type) {
 		super(type);
@@ -148,6 +151,20 @@ public final class PhyRequest extends SimpleValueRequest<PhyCallback> implements
 		return this;
 	}
 
+	@NonNull
+	@Override
+	public PhyRequest deadline(@IntRange(from = 0) final long elapsedRealtime) {
+		super.deadline(elapsedRealtime);
+		return this;
+	}
+
+	@NonNull
+	@Override
+	public PhyRequest priority(@RequestPriority final int priority) {
+		super.priority(priority);
+		return this;
+	}
+
 	@Override
 	@NonNull
 	public PhyRequest with(@NonNull final PhyCallback callback) {
@@ -155,8 +172,20 @@ public final class PhyRequest extends SimpleValueRequest<PhyCallback> implements
 		return this;
 	}
 
+	/**
+	 * Used to set internal value callback. Unlike the value callback, it is invoked on the
+	 * thread processing the request, before the value callback is posted.
+	 *
+	 * @param callback the callback.
+	 */
+	void internalWith(@NonNull final PhyCallback callback) {
+		this.internalValueCallback = callback;
+	}
+
 	void notifyPhyChanged(@NonNull final BluetoothDevice device,
 						  @PhyValue final int txPhy, @PhyValue final int rxPhy) {
+		if (internalValueCallback != null)
+			internalValueCallback.onPhyChanged(device, txPhy, rxPhy);
 		handler.post(() -> {
 			if (valueCallback != null) {
 				try {
@@ -169,6 +198,8 @@ public final class PhyRequest extends SimpleValueRequest<PhyCallback> implements
 	}
 
 	void notifyLegacyPhy(@NonNull final BluetoothDevice device) {
+		if (internalValueCallback != null)
+			internalValueCallback.onPhyChanged(device, PhyCallback.PHY_LE_1M, PhyCallback.PHY_LE_1M);
 		handler.post(() -> {
 			if (valueCallback != null)
 				try {
@@ -0,0 +1,260 @@
+/*
+ * Copyright (c) 2018, Nordic Semiconductor
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its contributors may be used to endorse or promote products derived from this
+ * software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE
+ * USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package no.nordicsemi.android.ble;
+
+import androidx.annotation.IntRange;
+import androidx.annotation.NonNull;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * A scheduler that coordinates GATT operations of many {@link BleManager} instances.
+ * <p>
+ * Many Android Bluetooth stacks handle concurrent GATT operations on different connections
+ * poorly. The scheduler limits the number of operations in flight across all managers using it.
+ * When the limit is reached, managers wait for their turn, which is given using Deficit Round
+ * Robin: each waiting manager gets a quantum of operations per round, weighted by the
+ * highest priority of the requests in its queue (see {@link Request#priority(int)}). This way
+ * bulk transfers to a few devices can't starve other devices.
+ * <p>
+ * Only operations that use the radio are scheduled. Connecting, bonding, sleeping or waiting
+ * for a notification without a trigger don't hold a slot. Requests executed during
+ * initialization, see {@link BleManager.BleManagerGattCallback#initialize()}, are not
+ * scheduled either, so that a newly connected device becomes ready quickly.
+ * <p>
+ * Usually a single instance is shared by all managers in the process.
+ *
+ * @see BleManager#setRadioScheduler(RadioScheduler)
+ */
+public final class RadioScheduler {
+	/** The cost of a single operation, in the same unit as the quantum. */
+	private static final int COST = 1;
+
+	/**
+	 * A participant of the scheduling, one per manager.
+	 */
+	static abstract class Client {
+		/** Operations the client may still execute in the current round. */
+		private int deficit;
+		private int priority;
+		private boolean waiting;
+
+		/**
+		 * Called when a slot has been granted to the client that was waiting for it.
+		 * This method is called without any lock held.
+		 *
+		 * @param scheduler the scheduler that granted the slot. The slot must be released to it,
+		 *                  even if the client has moved to another scheduler in the meantime.
+		 */
+		abstract void onSlotGranted(@NonNull final RadioScheduler scheduler);
+
+		/**
+		 * Returns the number of requests waiting in the client's queue.
+		 */
+		abstract int getQueueDepth();
+	}
+
+	private final int maxOperationsInFlight;
+	/** Clients waiting for a slot. The head is served first. */
+	private final Deque<Client> waiting = new ArrayDeque<>();
+	private final List<Client> clients = new CopyOnWriteArrayList<>();
+	private int operationsInFlight;
+
+	/**
+	 * Creates the scheduler.
+	 *
+	 * @param maxOperationsInFlight the maximum number of GATT operations executed at the same
+	 *                              time across all managers. Use 1 for stacks that can't handle
+	 *                              concurrent operations at all.
+	 */
+	public RadioScheduler(@IntRange(from = 1) final int maxOperationsInFlight) {
+		if (maxOperationsInFlight < 1)
+			throw new IllegalArgumentException("At least one operation must be allowed");
+		this.maxOperationsInFlight = maxOperationsInFlight;
+	}
+
+	/**
+	 * Returns the maximum number of operations in flight.
+	 */
+	public int getMaxOperationsInFlight() {
+		return maxOperationsInFlight;
+	}
+
+	/**
+	 * Returns the number of operations currently in flight.
+	 */
+	public synchronized int getOperationsInFlight() {
+		return operationsInFlight;
+	}
+
+	/**
+	 * Returns the number of managers waiting for their turn.
+	 */
+	public synchronized int getWaitingManagers() {
+		return waiting.size();
+	}
+
+	/**
+	 * Returns the total number of requests waiting in the queues of all managers using this
+	 * scheduler. The value is approximate, as the queues are changing concurrently.
+	 */
+	public int getQueueDepth() {
+		int depth = 0;
+		for (final Client client : clients)
+			depth += client.getQueueDepth();
+		return depth;
+	}
+
+	void register(@NonNull final Client client) {
+		clients.add(client);
+	}
+
+	void unregister(@NonNull final Client client) {
+		clients.remove(client);
+		cancel(client);
+	}
+
+	/**
+	 * Removes the client from the waiting clients.
+	 *
+	 * @param client the client.
+	 */
+	synchronized void cancel(@NonNull final Client client) {
+		if (client.waiting) {
+			client.waiting = false;
+			waiting.remove(client);
+		}
+		client.deficit = 0;
+	}
+
+	/**
+	 * Tries to acquire a slot for an operation. If no slot is available, the client is queued
+	 * and {@link Client#onSlotGranted(RadioScheduler)} will be called when it gets one.
+	 *
+	 * @param client   the client.
+	 * @param priority the highest priority of requests in client's queue.
+	 * @return True, if the slot has been acquired; false, if the client has to wait.
+	 */
+	boolean acquire(@NonNull final Client client, final int priority) {
+		final List<Client> granted;
+		synchronized (this) {
+			if (client.waiting) {
+				client.priority = priority;
+				return false;
+			}
+			if (operationsInFlight < maxOperationsInFlight && waiting.isEmpty()) {
+				operationsInFlight++;
+				return true;
+			}
+			enqueue(client, priority);
+			granted = dispatch();
+		}
+		grant(granted);
+		return false;
+	}
+
+	/**
+	 * Releases the slot after the operation has completed.
+	 * <p>
+	 * If the client has more requests to execute, it is queued for the next slot in the same
+	 * step, so that it may continue its turn if it has not used its quantum.
+	 *
+	 * @param client       the client.
+	 * @param nextPriority the highest priority of the remaining requests in client's queue,
+	 *                     or -1 if the queue is empty.
+	 * @return True, if the client got the next slot right away; false otherwise.
+	 */
+	boolean release(@NonNull final Client client, final int nextPriority) {
+		final List<Client> granted;
+		boolean continued = false;
+		synchronized (this) {
+			operationsInFlight--;
+			if (nextPriority < 0) {
+				client.deficit = 0;
+			} else if (!client.waiting) {
+				enqueue(client, nextPriority);
+			}
+			granted = dispatch();
+			if (granted != null && granted.remove(client))
+				continued = true;
+		}
+		grant(granted);
+		return continued;
+	}
+
+	private void enqueue(@NonNull final Client client, final int priority) {
+		client.priority = priority;
+		client.waiting = true;
+		// A client that has not used its quantum continues its turn.
+		if (client.deficit >= COST)
+			waiting.addFirst(client);
+		else
+			waiting.addLast(client);
+	}
+
+	/**
+	 * Assigns free slots to waiting clients.
+	 *
+	 * @return The clients that got a slot, or null.
+	 */
+	private List<Client> dispatch() {
+		List<Client> granted = null;
+		while (operationsInFlight < maxOperationsInFlight && !waiting.isEmpty()) {
+			final Client client = waiting.peekFirst();
+			if (client.deficit < COST) {
+				// Start a new turn of the client.
+				client.deficit += quantum(client.priority);
+				if (client.deficit < COST) {
+					waiting.addLast(waiting.pollFirst());
+					continue;
+				}
+			}
+			client.deficit -= COST;
+			client.waiting = false;
+			waiting.pollFirst();
+			operationsInFlight++;
+			if (granted == null)
+				granted = new ArrayList<>(2);
+			granted.add(client);
+		}
+		return granted;
+	}
+
+	private void grant(final List<Client> granted) {
+		if (granted != null) {
+			for (final Client client : granted)
+				client.onSlotGranted(this);
+		}
+	}
+
+	/**
+	 * Returns the number of operations a client may execute in one round.
+	 */
+	static int quantum(final int priority) {
+		return 1 << Math.max(0, priority);
+	}
+}
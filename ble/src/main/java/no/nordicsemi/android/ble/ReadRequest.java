@@ -29,8 +29,13 @@ import android.bluetooth.BluetoothGattDescriptor;
 import android.os.Handler;
 import android.util.Log;
 
+import java.util.ArrayList;
+import java.util.List;
+
+import androidx.annotation.IntRange;
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
+import no.nordicsemi.android.ble.annotation.RequestPriority;
 import no.nordicsemi.android.ble.callback.AfterCallback;
 import no.nordicsemi.android.ble.callback.BeforeCallback;
 import no.nordicsemi.android.ble.callback.DataReceivedCallback;
@@ -59,6 +64,16 @@ public final class ReadRequest extends SimpleValueRequest<DataReceivedCallback>
 	private PacketFilter packetFilter;
 	private int count = 0;
 	private boolean complete = false;
+	private boolean shared = false;
+	private boolean useCache = false;
+	/** Requests attached to this one, guarded by this. */
+	private List<ReadRequest> followers;
+	/** Set when the result is known and no more requests may be attached, guarded by this. */
+	private boolean followersClosed = false;
+	/** The request this one is attached to, or null, guarded by the {@link TaskQueue}. */
+	ReadRequest leader;
+	/** Set for reads filling the {@link ValueCache}, which must not complete from it. */
+	boolean prefetch = false;
 
 	ReadRequest(@NonNull final Type type) {
 		super(type);
@@ -121,6 +136,20 @@ public final class ReadRequest extends SimpleValueRequest<DataReceivedCallback>
 		return this;
 	}
 
+	@NonNull
+	@Override
+	public ReadRequest deadline(@IntRange(from = 0) final long elapsedRealtime) {
+		super.deadline(elapsedRealtime);
+		return this;
+	}
+
+	@NonNull
+	@Override
+	public ReadRequest priority(@RequestPriority final int priority) {
+		super.priority(priority);
+		return this;
+	}
+
 	@Override
 	@NonNull
 	public ReadRequest with(@NonNull final DataReceivedCallback callback) {
@@ -128,6 +157,46 @@ public final class ReadRequest extends SimpleValueRequest<DataReceivedCallback>
 		return this;
 	}
 
+	/**
+	 * Allows to share the result of this read with other shared reads of the same characteristic.
+	 * <p>
+	 * When a shared read request is enqueued while another shared read of the same
+	 * characteristic is waiting in the queue or is being executed, no new read operation
+	 * is performed. Instead, the request will complete with the same value and status as the
+	 * pending one. The {@link #before(BeforeCallback)} callback is then invoked just before
+	 * the value callback and the timeout of the attached request is ignored.
+	 * <p>
+	 * Sharing is disabled for requests with a filter or a data merger set, for reads of
+	 * descriptors, and for requests added to a {@link RequestQueue} or enqueued during
+	 * initialization.
+	 *
+	 * @return The request.
+	 */
+	@NonNull
+	public ReadRequest share() {
+		this.shared = true;
+		return this;
+	}
+
+	/**
+	 * Allows to complete the request with a value from the {@link ValueCache}, without
+	 * reading the characteristic, if the cached value is younger than its time to live.
+	 * Otherwise the characteristic is read and the value is stored in the cache.
+	 * <p>
+	 * Times to live are set using {@link ValueCache#setTimeToLive(java.util.UUID, long)}
+	 * or {@link ValueCache#setDefaultTimeToLive(long)}. A request with a filter, a packet
+	 * filter or a data merger set completes from the cache only if the cached value
+	 * satisfies them.
+	 *
+	 * @return The request.
+	 * @see BleManager#getValueCache()
+	 */
+	@NonNull
+	public ReadRequest useCache() {
+		this.useCache = true;
+		return this;
+	}
+
 	/**
 	 * Sets a filter which allows to skip some incoming data.
 	 * <p>
@@ -255,11 +324,112 @@ public final class ReadRequest extends SimpleValueRequest<DataReceivedCallback>
 		return response;
 	}
 
+	/**
+	 * Returns whether the result of this request may be shared with other requests.
+	 *
+	 * @see #share()
+	 */
+	boolean isShared() {
+		return shared && type == Type.READ && characteristic != null
+				&& filter == null && packetFilter == null && dataMerger == null;
+	}
+
+	/**
+	 * Attaches the given request to this one, so that it completes with the same result.
+	 *
+	 * @param follower the request to be attached.
+	 * @return True, if the request was attached, false if the result of this request is
+	 * already known.
+	 */
+	synchronized boolean attach(@NonNull final ReadRequest follower) {
+		if (followersClosed || finished)
+			return false;
+		if (followers == null)
+			followers = new ArrayList<>(2);
+		followers.add(follower);
+		follower.leader = this;
+		return true;
+	}
+
+	/**
+	 * Detaches the given request from this one, so that it does not complete with the result.
+	 *
+	 * @param follower the attached request.
+	 * @return True, if the request was detached, false if the result of this request is
+	 * already being delivered to it.
+	 */
+	synchronized boolean detach(@NonNull final ReadRequest follower) {
+		if (followersClosed)
+			return false;
+		if (followers != null)
+			followers.remove(follower);
+		follower.leader = null;
+		return true;
+	}
+
+	/**
+	 * Detaches and returns all requests attached to this one. No more requests may be
+	 * attached afterwards. This is used when this request is cancelled before it has started.
+	 */
+	@Nullable
+	synchronized List<ReadRequest> detachAll() {
+		followersClosed = true;
+		final List<ReadRequest> followers = this.followers;
+		this.followers = null;
+		if (followers != null) {
+			for (final ReadRequest follower : followers)
+				follower.leader = null;
+		}
+		return followers;
+	}
+
+	/**
+	 * Prevents attaching more requests and returns those attached so far.
+	 * The returned list is not modified afterwards.
+	 */
+	@Nullable
+	private synchronized List<ReadRequest> closeFollowers() {
+		followersClosed = true;
+		return followers;
+	}
+
+	/**
+	 * Returns whether the request may complete with a value from the {@link ValueCache}
+	 * which is not tracked.
+	 */
+	boolean isCacheEligible() {
+		return useCache && type == Type.READ;
+	}
+
 	boolean matches(final byte[] packet) {
 		return filter == null || filter.filter(packet);
 	}
 
+	/**
+	 * Returns whether the request would complete after receiving the given value
+	 * in a single packet.
+	 */
+	boolean isSatisfiedBy(@NonNull final byte[] value) {
+		return matches(value) && dataMerger == null
+				&& (packetFilter == null || packetFilter.filter(value));
+	}
+
 	void notifyValueChanged(@NonNull final BluetoothDevice device, @Nullable final byte[] value) {
+		if (requestHandler != null)
+			requestHandler.onPacketReceived(this, device, value != null ? value.length : 0);
+		if (shared) {
+			final List<ReadRequest> followers = closeFollowers();
+			if (followers != null) {
+				for (final ReadRequest follower : followers) {
+					// Skip cancelled requests.
+					if (follower.finished)
+						continue;
+					follower.notifyStarted(device);
+					follower.notifyValueChanged(device, value);
+				}
+			}
+		}
+
 		// Keep a reference to the value callback, as it may change during execution
 		final DataReceivedCallback valueCallback = this.valueCallback;
 
@@ -281,15 +451,17 @@ public final class ReadRequest extends SimpleValueRequest<DataReceivedCallback>
 				}
 			});
 		} else {
-			handler.post(() -> {
-				if (progressCallback != null) {
-					try {
-						progressCallback.onPacketReceived(device, value, count);
-					} catch (final Throwable t) {
-						Log.e(TAG, "Exception in Progress callback", t);
+			if (progressCallback != null) {
+				handler.post(() -> {
+					if (progressCallback != null) {
+						try {
+							progressCallback.onPacketReceived(device, value, count);
+						} catch (final Throwable t) {
+							Log.e(TAG, "Exception in Progress callback", t);
+						}
 					}
-				}
-			});
+				});
+			}
 			if (buffer == null)
 				buffer = new DataStream();
 			if (dataMerger.merge(buffer, value, count++)) {
@@ -312,6 +484,42 @@ public final class ReadRequest extends SimpleValueRequest<DataReceivedCallback>
 		}
 	}
 
+	@Override
+	boolean notifySuccess(@NonNull final BluetoothDevice device) {
+		if (shared) {
+			final List<ReadRequest> followers = closeFollowers();
+			if (followers != null) {
+				for (final ReadRequest follower : followers)
+					follower.notifySuccess(device);
+			}
+		}
+		return super.notifySuccess(device);
+	}
+
+	@Override
+	void notifyFail(@NonNull final BluetoothDevice device, final int status) {
+		if (shared) {
+			final List<ReadRequest> followers = closeFollowers();
+			if (followers != null) {
+				for (final ReadRequest follower : followers)
+					follower.notifyFail(device, status);
+			}
+		}
+		super.notifyFail(device, status);
+	}
+
+	@Override
+	void notifyInvalidRequest() {
+		if (shared) {
+			final List<ReadRequest> followers = closeFollowers();
+			if (followers != null) {
+				for (final ReadRequest follower : followers)
+					follower.notifyInvalidRequest();
+			}
+		}
+		super.notifyInvalidRequest();
+	}
+
 	@SuppressWarnings("BooleanMethodIsAlwaysInverted")
 	boolean hasMore() {
 		return !complete;
@@ -0,0 +1,268 @@
+/*
+ * Copyright (c) 2018, Nordic Semiconductor
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its contributors may be used to endorse or promote products derived from this
+ * software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE
+ * USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package no.nordicsemi.android.ble;
+
+import android.bluetooth.BluetoothGatt;
+import android.bluetooth.BluetoothGattCharacteristic;
+import android.bluetooth.BluetoothGattService;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+/**
+ * Reconnects to a device after a link loss and restores the state of the connection that
+ * the initialization does not set again: the MTU, the PHY, the connection priority and
+ * enabled notifications and indications.
+ * <p>
+ * Attempts are delayed using exponential backoff with full jitter: the delay is random,
+ * between 0 and the backoff, so that many devices lost at the same time, e.g. when the phone
+ * was out of range, don't reconnect all at once.
+ */
+final class Reconnection {
+	private static final int MAX_BACKOFF_SHIFT = 20;
+	private static final byte NOTIFICATIONS = 0x01;
+	private static final byte INDICATIONS = 0x02;
+
+	private final int maxAttempts;
+	private final long initialDelay;
+	private final long maxDelay;
+	@NonNull
+	private final Random random;
+	private int attempt;
+	private boolean reconnecting;
+	/** The request used for the current attempt, or null. */
+	@Nullable
+	ConnectRequest request;
+
+	private int mtu = 23;
+	/** The PHY mask to be restored, or 0 if the PHY was not changed. */
+	private int txPhyMask, rxPhyMask;
+	/** The connection priority to be restored, or -1 if it was not requested. */
+	private int connectionPriority = -1;
+	/** Values written to CCCDs, by characteristic key. */
+	private final Map<String, Byte> subscriptions = new LinkedHashMap<>();
+	/** Callbacks of notifications and indications saved on link loss, by characteristic key. */
+	private final Map<String, ValueChangedCallback> callbacks = new HashMap<>();
+
+	/**
+	 * Creates the reconnection policy.
+	 *
+	 * @param maxAttempts  the maximum number of attempts after a link loss.
+	 * @param initialDelay the backoff before the first attempt, in milliseconds.
+	 *                     It doubles with every failed attempt.
+	 * @param maxDelay     the maximum backoff, in milliseconds.
+	 * @param random       the source of the jitter.
+	 */
+	Reconnection(final int maxAttempts, final long initialDelay, final long maxDelay,
+				 @NonNull final Random random) {
+		this.maxAttempts = maxAttempts;
+		this.initialDelay = initialDelay;
+		this.maxDelay = maxDelay;
+		this.random = random;
+	}
+
+	/**
+	 * Returns whether the device is being reconnected.
+	 */
+	boolean isReconnecting() {
+		return reconnecting;
+	}
+
+	boolean hasAttemptsLeft() {
+		return attempt < maxAttempts;
+	}
+
+	/**
+	 * Returns the delay before the next attempt and counts the attempt.
+	 *
+	 * @return The delay in milliseconds.
+	 */
+	long nextDelay() {
+		final long backoff = Math.min(maxDelay, initialDelay << Math.min(attempt, MAX_BACKOFF_SHIFT));
+		attempt++;
+		return (long) (random.nextDouble() * (backoff + 1));
+	}
+
+	/**
+	 * Called on link loss. Saves the current MTU and moves callbacks of notifications and
+	 * indications out of the given map, so they survive the disconnection.
+	 *
+	 * @param mtu       the current MTU.
+	 * @param callbacks the callbacks of the manager.
+	 */
+	void onLinkLoss(final int mtu, @NonNull final Map<Object, ValueChangedCallback> callbacks) {
+		this.mtu = mtu;
+		this.reconnecting = true;
+		final Iterator<Map.Entry<Object, ValueChangedCallback>> iterator = callbacks.entrySet().iterator();
+		while (iterator.hasNext()) {
+			final Map.Entry<Object, ValueChangedCallback> entry = iterator.next();
+			if (entry.getKey() instanceof BluetoothGattCharacteristic) {
+				this.callbacks.put(keyOf((BluetoothGattCharacteristic) entry.getKey()), entry.getValue());
+				iterator.remove();
+			}
+		}
+	}
+
+	/**
+	 * Called when the device is ready again. Resets the backoff.
+	 */
+	void onReady() {
+		reconnecting = false;
+		attempt = 0;
+		request = null;
+	}
+
+	/**
+	 * Stops reconnecting and releases saved callbacks.
+	 */
+	void cancel() {
+		reconnecting = false;
+		request = null;
+		for (final ValueChangedCallback callback : callbacks.values())
+			callback.notifyClosed();
+		callbacks.clear();
+	}
+
+	void onSubscriptionChanged(@Nullable final BluetoothGattCharacteristic characteristic,
+							   final byte value) {
+		if (characteristic == null)
+			return;
+		if (value == NOTIFICATIONS || value == INDICATIONS)
+			subscriptions.put(keyOf(characteristic), value);
+		else
+			subscriptions.remove(keyOf(characteristic));
+	}
+
+	void onPhyChanged(final int txPhy, final int rxPhy) {
+		// PHY values start from 1, the masks are 1 << (phy - 1).
+		txPhyMask = 1 << (txPhy - 1);
+		rxPhyMask = 1 << (rxPhy - 1);
+	}
+
+	void onConnectionPriorityChanged(final int priority) {
+		connectionPriority = priority;
+	}
+
+	/**
+	 * Assigns saved callbacks to the characteristics found in the newly discovered services.
+	 * This is called before the initialization, so that callbacks set again for the same
+	 * characteristics replace the saved ones. Callbacks of characteristics that are gone
+	 * are closed.
+	 *
+	 * @param gatt      the GATT client with services discovered.
+	 * @param callbacks the map to put the saved callbacks to.
+	 */
+	void restoreCallbacks(@NonNull final BluetoothGatt gatt,
+						  @NonNull final Map<Object, ValueChangedCallback> callbacks) {
+		if (this.callbacks.isEmpty())
+			return;
+		for (final BluetoothGattService service : gatt.getServices()) {
+			for (final BluetoothGattCharacteristic characteristic : service.getCharacteristics()) {
+				final ValueChangedCallback callback = this.callbacks.remove(keyOf(characteristic));
+				if (callback != null)
+					callbacks.put(characteristic, callback);
+			}
+		}
+		// Characteristics that are gone.
+		for (final ValueChangedCallback callback : this.callbacks.values())
+			callback.notifyClosed();
+		this.callbacks.clear();
+	}
+
+	/**
+	 * Returns requests that restore the state of the connection, to be executed after the
+	 * initialization. State that the initialization requests set again is not restored.
+	 *
+	 * @param gatt         the GATT client with services discovered.
+	 * @param initRequests the requests enqueued by the initialization.
+	 * @return The requests.
+	 */
+	@NonNull
+	List<Request> restore(@NonNull final BluetoothGatt gatt,
+						  @NonNull final Collection<Request> initRequests) {
+		boolean mtuRequested = false, phyRequested = false, priorityRequested = false;
+		final Set<String> subscribed = new HashSet<>();
+		for (final Request request : initRequests) {
+			switch (request.type) {
+				case REQUEST_MTU:
+					mtuRequested = true;
+					break;
+				case SET_PREFERRED_PHY:
+					phyRequested = true;
+					break;
+				case REQUEST_CONNECTION_PRIORITY:
+					priorityRequested = true;
+					break;
+				case ENABLE_NOTIFICATIONS:
+				case ENABLE_INDICATIONS:
+				case DISABLE_NOTIFICATIONS:
+				case DISABLE_INDICATIONS:
+					if (request.characteristic != null)
+						subscribed.add(keyOf(request.characteristic));
+					break;
+			}
+		}
+
+		final List<Request> requests = new ArrayList<>();
+		if (mtu > 23 && !mtuRequested)
+			requests.add(Request.newMtuRequest(mtu));
+		if (txPhyMask != 0 && !phyRequested)
+			requests.add(Request.newSetPreferredPhyRequest(txPhyMask, rxPhyMask,
+					PhyRequest.PHY_OPTION_NO_PREFERRED));
+		if (connectionPriority >= 0 && !priorityRequested)
+			requests.add(Request.newConnectionPriorityRequest(connectionPriority));
+		if (subscriptions.isEmpty())
+			return requests;
+		for (final BluetoothGattService service : gatt.getServices()) {
+			for (final BluetoothGattCharacteristic characteristic : service.getCharacteristics()) {
+				final String key = keyOf(characteristic);
+				final Byte value = subscriptions.get(key);
+				if (value == null || subscribed.contains(key))
+					continue;
+				requests.add(value == NOTIFICATIONS ?
+						Request.newEnableNotificationsRequest(characteristic) :
+						Request.newEnableIndicationsRequest(characteristic));
+			}
+		}
+		return requests;
+	}
+
+	@NonNull
+	private static String keyOf(@NonNull final BluetoothGattCharacteristic characteristic) {
+		final BluetoothGattService service = characteristic.getService();
+		final String serviceKey = service != null ?
+				service.getUuid() + ":" + service.getInstanceId() : "";
+		return serviceKey + "/" + characteristic.getUuid() + ":" + characteristic.getInstanceId();
+	}
+}
@@ -24,8 +24,10 @@ package no.nordicsemi.android.ble;
 
 import android.os.Handler;
 
+import androidx.annotation.IntRange;
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
+import no.nordicsemi.android.ble.annotation.RequestPriority;
 import no.nordicsemi.android.ble.callback.AfterCallback;
 import no.nordicsemi.android.ble.callback.BeforeCallback;
 import no.nordicsemi.android.ble.callback.FailCallback;
@@ -87,6 +89,20 @@ public final class ReliableWriteRequest extends RequestQueue {
 		return this;
 	}
 
+	@NonNull
+	@Override
+	public ReliableWriteRequest deadline(@IntRange(from = 0) final long elapsedRealtime) {
+		super.deadline(elapsedRealtime);
+		return this;
+	}
+
+	@NonNull
+	@Override
+	public ReliableWriteRequest priority(@RequestPriority final int priority) {
+		super.priority(priority);
+		return this;
+	}
+
 	@NonNull
 	@Override
 	public ReliableWriteRequest add(@NonNull final Operation operation) {
@@ -38,6 +38,7 @@ import androidx.annotation.Nullable;
 import no.nordicsemi.android.ble.annotation.ConnectionPriority;
 import no.nordicsemi.android.ble.annotation.PhyMask;
 import no.nordicsemi.android.ble.annotation.PhyOption;
+import no.nordicsemi.android.ble.annotation.RequestPriority;
 import no.nordicsemi.android.ble.annotation.WriteType;
 import no.nordicsemi.android.ble.callback.AfterCallback;
 import no.nordicsemi.android.ble.callback.BeforeCallback;
@@ -45,6 +46,7 @@ import no.nordicsemi.android.ble.callback.FailCallback;
 import no.nordicsemi.android.ble.callback.InvalidRequestCallback;
 import no.nordicsemi.android.ble.callback.SuccessCallback;
 import no.nordicsemi.android.ble.data.Data;
+import no.nordicsemi.android.ble.data.DataSource;
 
 /**
  * On Android, when multiple BLE operations needs to be done, it is required to wait for a proper
@@ -57,6 +59,22 @@ import no.nordicsemi.android.ble.data.Data;
 public abstract class Request {
 	protected static final String TAG = Request.class.getSimpleName();
 
+	/**
+	 * Priority of long transfers, for example firmware or log uploads. Bulk requests are
+	 * executed only when there are no other requests waiting in the queue, but will not be
+	 * starved by them indefinitely.
+	 */
+	public static final int PRIORITY_BULK = 0;
+	/**
+	 * The default priority.
+	 */
+	public static final int PRIORITY_INTERACTIVE = 1;
+	/**
+	 * Priority of time-critical requests, for example control point writes. Control requests
+	 * are executed before any other pending requests.
+	 */
+	public static final int PRIORITY_CONTROL = 2;
+
 	enum Type {
 		SET,
 		CONNECT,
@@ -103,7 +121,10 @@ public abstract class Request {
 	protected RequestHandler requestHandler;
 	protected CallbackHandler handler;
 
-	final ConditionVariable syncLock;
+	/**
+	 * The lock used by synchronous calls. It is created only when the request is awaited.
+	 */
+	ConditionVariable syncLock;
 	final Type type;
 	final BluetoothGattCharacteristic characteristic;
 	final BluetoothGattDescriptor descriptor;
@@ -115,28 +136,40 @@ public abstract class Request {
 	BeforeCallback internalBeforeCallback;
 	SuccessCallback internalSuccessCallback;
 	FailCallback internalFailCallback;
+	RequestFuture<?> future;
+	@RequestPriority
+	int priority = PRIORITY_INTERACTIVE;
+	long deadline;
+	/**
+	 * Timestamps in {@link MetricsRecorder#now()} time base, 0 if not set.
+	 * They are taken only when the request is attached to a {@link RequestHandler}.
+	 */
+	long enqueueTime, startTime, finishTime;
 	boolean enqueued;
+	/** Set when the request was removed from the task queue before it was started. */
+	boolean withdrawn;
+	/** Set when the request was taken from a queue for execution. It can't be withdrawn then. */
+	boolean taken;
+	/** Set while the request is waiting in the task queue and counts to its size. */
+	boolean queued;
 	boolean started, finished;
 
 	Request(@NonNull final Type type) {
 		this.type = type;
 		this.characteristic = null;
 		this.descriptor = null;
-		this.syncLock = new ConditionVariable(true);
 	}
 
 	Request(@NonNull final Type type, @Nullable final BluetoothGattCharacteristic characteristic) {
 		this.type = type;
 		this.characteristic = characteristic;
 		this.descriptor = null;
-		this.syncLock = new ConditionVariable(true);
 	}
 
 	Request(@NonNull final Type type, @Nullable final BluetoothGattDescriptor descriptor) {
 		this.type = type;
 		this.characteristic = null;
 		this.descriptor = descriptor;
-		this.syncLock = new ConditionVariable(true);
 	}
 
 	/**
@@ -430,6 +463,25 @@ public abstract class Request {
 		return new WriteRequest(Type.WRITE_DESCRIPTOR, descriptor, value, offset, length);
 	}
 
+	/**
+	 * Creates new Write Characteristic request streaming data from the given source.
+	 * The request will not be executed if given characteristic is null or does not have
+	 * WRITE property.
+	 *
+	 * @param characteristic characteristic to be written.
+	 * @param source         the source of data to be written.
+	 * @param writeType      write type to be used, one of
+	 *                       {@link BluetoothGattCharacteristic#WRITE_TYPE_DEFAULT},
+	 *                       {@link BluetoothGattCharacteristic#WRITE_TYPE_NO_RESPONSE}.
+	 * @return The new request.
+	 */
+	@NonNull
+	static WriteRequest newWriteRequest(
+			@Nullable final BluetoothGattCharacteristic characteristic,
+			@NonNull final DataSource source, @WriteType final int writeType) {
+		return new WriteRequest(Type.WRITE, characteristic, source, writeType);
+	}
+
 	/**
 	 * Creates new Reliable Write request. All operations that need to be executed
 	 * reliably should be enqueued inside the returned request before enqueuing it in the
@@ -442,6 +494,17 @@ public abstract class Request {
 		return new ReliableWriteRequest();
 	}
 
+	/**
+	 * Creates new Bulk Transfer request. Operations of the transfer should be enqueued
+	 * inside the returned request before enqueuing it in the BleManager.
+	 *
+	 * @return The new request.
+	 */
+	@NonNull
+	static BulkTransferRequest newBulkTransferRequest() {
+		return new BulkTransferRequest();
+	}
+
 	/**
 	 * Creates new Begin Reliable Write request.
 	 *
@@ -1202,6 +1265,59 @@ public abstract class Request {
 		return this;
 	}
 
+	/**
+	 * Sets the priority class of the request. Requests enqueued using {@link #enqueue()} are
+	 * executed starting from the highest non-empty class, in the order they were enqueued.
+	 * To prevent starvation, a {@link #PRIORITY_BULK} request is executed from time to time
+	 * even if requests with higher priority are waiting.
+	 * <p>
+	 * The priority is ignored for requests added to a {@link RequestQueue} and during
+	 * device initialization, which are always executed in order.
+	 * <p>
+	 * A request that was split into multiple operations, e.g. a {@link WriteRequest} with
+	 * {@link WriteRequest#split() split()}, allows requests with higher priority to be executed
+	 * between its packets.
+	 *
+	 * @param priority one of {@link #PRIORITY_BULK}, {@link #PRIORITY_INTERACTIVE} (default)
+	 *                 or {@link #PRIORITY_CONTROL}.
+	 * @return The request.
+	 */
+	@NonNull
+	public Request priority(@RequestPriority final int priority) {
+		if (priority < PRIORITY_BULK || priority > PRIORITY_CONTROL)
+			throw new IllegalArgumentException("Invalid priority: " + priority);
+		this.priority = priority;
+		return this;
+	}
+
+	/**
+	 * Sets an absolute deadline for starting the request. If the request is still waiting in
+	 * the queue when the deadline passes, it will not be executed and will fail with
+	 * {@link FailCallback#REASON_DEADLINE_EXCEEDED}, without any radio time spent on it.
+	 * <p>
+	 * Unlike a timeout, the deadline is not checked once the request has started.
+	 *
+	 * @param elapsedRealtime the deadline, in milliseconds since boot, as returned by
+	 *                        {@link android.os.SystemClock#elapsedRealtime()}, or 0 to disable.
+	 * @return The request.
+	 */
+	@NonNull
+	public Request deadline(@IntRange(from = 0) final long elapsedRealtime) {
+		this.deadline = elapsedRealtime;
+		return this;
+	}
+
+	/**
+	 * Returns whether the request has missed its deadline and should not be started.
+	 *
+	 * @param now the current time, as returned by {@link android.os.SystemClock#elapsedRealtime()}.
+	 * @return True, if the deadline has passed.
+	 * @see #deadline(long)
+	 */
+	boolean isExpired(final long now) {
+		return deadline > 0 && !started && now > deadline;
+	}
+
 	/**
 	 * Enqueues the request for asynchronous execution.
 	 */
@@ -1209,12 +1325,71 @@ public abstract class Request {
 		requestHandler.enqueue(this);
 	}
 
+	/**
+	 * Cancels the request if it is waiting in the queue. The request will not be executed and
+	 * will fail with {@link FailCallback#REASON_CANCELLED}. Requests which have already
+	 * started can't be cancelled this way, use {@link BleManager#cancelQueue()} instead.
+	 * <p>
+	 * Cancelling a request that is a part of a {@link RequestQueue} will also fail the queue.
+	 * When a shared read (see {@link ReadRequest#share()}) is cancelled, the first request
+	 * that has attached to it takes its place in the queue and the other ones complete
+	 * with its result.
+	 * <p>
+	 * This method does not scan the queue; cancelled requests are skipped when reached.
+	 * The fail callback is invoked asynchronously. If the manager has never been connected,
+	 * the device is not known, so the invalid request callback is invoked instead, see
+	 * {@link #invalid(InvalidRequestCallback)}.
+	 *
+	 * @return True, if the request was cancelled; false if it was not enqueued, has already
+	 * started or finished.
+	 */
+	public boolean cancel() {
+		return requestHandler != null && requestHandler.cancel(this);
+	}
+
+	/**
+	 * Enqueues the request for asynchronous execution and returns a future, which will be
+	 * completed when the request finishes. Unlike <code>await()</code>, this method does not
+	 * block the calling thread.
+	 * <p>
+	 * Callbacks set using {@link #done(SuccessCallback)}, {@link #fail(FailCallback)} and
+	 * other methods will be called as if the request was enqueued using {@link #enqueue()}.
+	 *
+	 * @return The future.
+	 */
+	@NonNull
+	public RequestFuture<Void> toFuture() {
+		return enqueueForFuture(null);
+	}
+
+	/**
+	 * Enqueues the request and returns a future, that will return the given response object
+	 * on success.
+	 *
+	 * @param response the response object, or null.
+	 * @return The future.
+	 */
+	@NonNull
+	<R> RequestFuture<R> enqueueForFuture(@Nullable final R response) {
+		final RequestFuture<R> future = new RequestFuture<>(this, response);
+		this.future = future;
+		enqueue();
+		return future;
+	}
+
 	void notifyStarted(@NonNull final BluetoothDevice device) {
 		if (!started) {
 			started = true;
+			if (requestHandler != null) {
+				startTime = requestHandler.now();
+				requestHandler.onRequestStarted(this, device);
+			}
 
 			if (internalBeforeCallback != null)
 				internalBeforeCallback.onRequestStarted(device);
+			// Avoid posting (and allocating) a callback if there's nothing to call.
+			if (beforeCallback == null)
+				return;
 			handler.post(() -> {
 				if (beforeCallback != null) {
 					try {
@@ -1230,10 +1405,18 @@ public abstract class Request {
 	boolean notifySuccess(@NonNull final BluetoothDevice device) {
 		if (!finished) {
 			finished = true;
+			if (requestHandler != null) {
+				finishTime = requestHandler.now();
+				requestHandler.onRequestSucceeded(this, device);
+			}
 
 			if (internalSuccessCallback != null)
 				internalSuccessCallback.onRequestCompleted(device);
+			if (successCallback == null && afterCallback == null && future == null)
+				return true;
 			handler.post(() -> {
+				if (requestHandler != null)
+					requestHandler.onCallbackDispatched(this);
 				if (successCallback != null) {
 					try {
 						successCallback.onRequestCompleted(device);
@@ -1248,6 +1431,10 @@ public abstract class Request {
 						Log.e(TAG, "Exception in After callback", t);
 					}
 				}
+				// The future is completed after the value callbacks, posted before, have filled
+				// the response.
+				if (future != null)
+					future.onRequestCompleted();
 			});
 			return true;
 		}
@@ -1257,10 +1444,18 @@ public abstract class Request {
 	void notifyFail(@NonNull final BluetoothDevice device, final int status) {
 		if (!finished) {
 			finished = true;
+			if (requestHandler != null) {
+				finishTime = requestHandler.now();
+				requestHandler.onRequestFailed(this, device, status);
+			}
 
 			if (internalFailCallback != null)
 				internalFailCallback.onRequestFailed(device, status);
+			if (failCallback == null && afterCallback == null && future == null)
+				return;
 			handler.post(() -> {
+				if (requestHandler != null)
+					requestHandler.onCallbackDispatched(this);
 				if (failCallback != null) {
 					try {
 						failCallback.onRequestFailed(device, status);
@@ -1275,6 +1470,9 @@ public abstract class Request {
 						Log.e(TAG, "Exception in After callback", t);
 					}
 				}
+				// As on success, the future is completed after the callbacks.
+				if (future != null)
+					future.onRequestFailed(status);
 			});
 		}
 	}
@@ -1282,7 +1480,13 @@ public abstract class Request {
 	void notifyInvalidRequest() {
 		if (!finished) {
 			finished = true;
+			if (requestHandler != null) {
+				finishTime = requestHandler.now();
+				requestHandler.onRequestFailed(this, null, FailCallback.REASON_REQUEST_FAILED);
+			}
 
+			if (invalidRequestCallback == null && future == null)
+				return;
 			handler.post(() -> {
 				if (invalidRequestCallback != null) {
 					try {
@@ -1291,10 +1495,32 @@ public abstract class Request {
 						Log.e(TAG, "Exception in Invalid Request callback", t);
 					}
 				}
+				if (future != null)
+					future.onInvalidRequest();
 			});
 		}
 	}
 
+	/**
+	 * Creates a new instance of the response class using its default constructor.
+	 *
+	 * @throws IllegalArgumentException thrown when the response class could not be instantiated.
+	 */
+	@NonNull
+	static <E> E newResponse(@NonNull final Class<E> responseClass) {
+		try {
+			return responseClass.newInstance();
+		} catch (IllegalAccessException e) {
+			throw new IllegalArgumentException("Couldn't instantiate "
+					+ responseClass.getCanonicalName()
+					+ " class. Is the default constructor accessible?");
+		} catch (InstantiationException e) {
+			throw new IllegalArgumentException("Couldn't instantiate "
+					+ responseClass.getCanonicalName()
+					+ " class. Does it have a default constructor with no arguments?");
+		}
+	}
+
 	/**
 	 * Asserts that the synchronous method was not called from the UI thread.
 	 *
@@ -0,0 +1,243 @@
+/*
+ * Copyright (c) 2018, Nordic Semiconductor
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its contributors may be used to endorse or promote products derived from this
+ * software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE
+ * USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package no.nordicsemi.android.ble;
+
+import android.os.Build;
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.annotation.RequiresApi;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import no.nordicsemi.android.ble.callback.FailCallback;
+import no.nordicsemi.android.ble.callback.ResultCallback;
+import no.nordicsemi.android.ble.exception.BluetoothDisabledException;
+import no.nordicsemi.android.ble.exception.DeviceDisconnectedException;
+import no.nordicsemi.android.ble.exception.InvalidRequestException;
+import no.nordicsemi.android.ble.exception.RequestFailedException;
+
+/**
+ * A future representing the result of an asynchronously executed {@link Request}.
+ * <p>
+ * Use {@link #whenComplete(ResultCallback)} to get the result without blocking any thread.
+ * The callbacks are invoked using the handler set for the request, the same as the
+ * {@link Request#done(no.nordicsemi.android.ble.callback.SuccessCallback) done(...)} callback.
+ * The future completes after the callbacks of the request, both on success and on failure.
+ * <p>
+ * On failure, the error is one of {@link RequestFailedException},
+ * {@link DeviceDisconnectedException}, {@link BluetoothDisabledException} or
+ * {@link InvalidRequestException}. The blocking {@link #get()} methods throw it wrapped in an
+ * {@link ExecutionException}. A cancelled future completes with a {@link CancellationException}.
+ *
+ * @param <T> type of the result, or {@link Void} if the request does not return any value.
+ * @see Request#toFuture()
+ */
+@SuppressWarnings({"unused", "WeakerAccess"})
+public final class RequestFuture<T> implements Future<T> {
+	private static final String TAG = RequestFuture.class.getSimpleName();
+
+	@NonNull
+	private final Request request;
+	@Nullable
+	private final T response;
+	private boolean done;
+	private boolean cancelled;
+	@Nullable
+	private Exception error;
+	@Nullable
+	private List<ResultCallback<? super T>> callbacks;
+
+	RequestFuture(@NonNull final Request request, @Nullable final T response) {
+		this.request = request;
+		this.response = response;
+	}
+
+	/**
+	 * Registers a callback that will be invoked when the request finishes. If it has already
+	 * finished, the callback will be invoked immediately, using the request's handler.
+	 *
+	 * @param callback the callback.
+	 * @return The future.
+	 */
+	@NonNull
+	public RequestFuture<T> whenComplete(@NonNull final ResultCallback<? super T> callback) {
+		synchronized (this) {
+			if (!done) {
+				if (callbacks == null)
+					callbacks = new ArrayList<>(1);
+				callbacks.add(callback);
+				return this;
+			}
+		}
+		dispatch(callback);
+		return this;
+	}
+
+	/**
+	 * Returns a {@link CompletableFuture} that will be completed when this future is.
+	 *
+	 * @return The completable future.
+	 */
+	@RequiresApi(api = Build.VERSION_CODES.N)
+	@NonNull
+	public CompletableFuture<T> toCompletableFuture() {
+		final CompletableFuture<T> future = new CompletableFuture<>();
+		whenComplete((result, error) -> {
+			if (error != null)
+				future.completeExceptionally(error);
+			else
+				future.complete(result);
+		});
+		return future;
+	}
+
+	/**
+	 * Cancels the future and withdraws the request if it hasn't been started yet,
+	 * see {@link Request#cancel()}. A request that has already started will complete,
+	 * but its result will be ignored.
+	 * <p>
+	 * The callbacks registered with {@link #whenComplete(ResultCallback)} are invoked with
+	 * a {@link CancellationException}.
+	 *
+	 * @param mayInterruptIfRunning ignored, requests that have started can't be interrupted.
+	 * @return True, if the future was cancelled; false, if it had completed before.
+	 */
+	@Override
+	public boolean cancel(final boolean mayInterruptIfRunning) {
+		// The future is completed first, so that the failure reported by the withdrawn
+		// request is ignored.
+		if (!complete(new CancellationException(), true))
+			return false;
+		request.cancel();
+		return true;
+	}
+
+	@Override
+	public synchronized boolean isCancelled() {
+		return cancelled;
+	}
+
+	@Override
+	public synchronized boolean isDone() {
+		return done;
+	}
+
+	/**
+	 * Waits until the request is done and returns its result.
+	 * <p>
+	 * This method may not be called from the thread on which the request is executed, as it
+	 * would block it.
+	 */
+	@Override
+	public synchronized T get() throws InterruptedException, ExecutionException {
+		while (!done)
+			wait();
+		return report();
+	}
+
+	@Override
+	public synchronized T get(final long timeout, @NonNull final TimeUnit unit)
+			throws InterruptedException, ExecutionException, TimeoutException {
+		long remaining = unit.toNanos(timeout);
+		final long deadline = System.nanoTime() + remaining;
+		while (!done) {
+			if (remaining <= 0)
+				throw new TimeoutException();
+			TimeUnit.NANOSECONDS.timedWait(this, remaining);
+			remaining = deadline - System.nanoTime();
+		}
+		return report();
+	}
+
+	void onRequestCompleted() {
+		complete(null, false);
+	}
+
+	void onRequestFailed(final int status) {
+		switch (status) {
+			case FailCallback.REASON_DEVICE_DISCONNECTED:
+				complete(new DeviceDisconnectedException(), false);
+				break;
+			case FailCallback.REASON_BLUETOOTH_DISABLED:
+				complete(new BluetoothDisabledException(), false);
+				break;
+			default:
+				complete(new RequestFailedException(request, status), false);
+				break;
+		}
+	}
+
+	void onInvalidRequest() {
+		complete(new InvalidRequestException(request), false);
+	}
+
+	private boolean complete(@Nullable final Exception error, final boolean cancelled) {
+		final List<ResultCallback<? super T>> callbacks;
+		synchronized (this) {
+			if (done)
+				return false;
+			this.done = true;
+			this.cancelled = cancelled;
+			this.error = error;
+			callbacks = this.callbacks;
+			this.callbacks = null;
+			notifyAll();
+		}
+		if (callbacks != null) {
+			for (final ResultCallback<? super T> callback : callbacks)
+				dispatch(callback);
+		}
+		return true;
+	}
+
+	private T report() throws ExecutionException {
+		if (cancelled)
+			throw new CancellationException();
+		if (error != null)
+			throw new ExecutionException(error);
+		return response;
+	}
+
+	private void dispatch(@NonNull final ResultCallback<? super T> callback) {
+		final Exception error;
+		synchronized (this) {
+			error = this.error;
+		}
+		request.handler.post(() -> {
+			try {
+				callback.onResult(error == null ? response : null, error);
+			} catch (final Throwable t) {
+				Log.e(TAG, "Exception in Result callback", t);
+			}
+		});
+	}
+}
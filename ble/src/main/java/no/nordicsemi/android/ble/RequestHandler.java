@@ -1,6 +1,9 @@
 package no.nordicsemi.android.ble;
 
+import android.bluetooth.BluetoothDevice;
+
 import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
 
 abstract class RequestHandler implements CallbackHandler {
 	/**
@@ -14,15 +17,114 @@ abstract class RequestHandler implements CallbackHandler {
 	 */
 	abstract void enqueue(@NonNull final Request request);
 
+	/**
+	 * Enqueues the given requests, in order, at the end of the init or task queue, depending
+	 * on whether the initialization is in progress, or not.
+	 *
+	 * This method will automatically try to execute the next request, once for all requests.
+	 *
+	 * @param requests the requests to be added.
+	 */
+	abstract void enqueueAll(@NonNull final Request[] requests);
+
 	/**
 	 * Removes all enqueued requests from the queue.
 	 */
 	abstract void cancelQueue();
 
 	/**
-	 * Method called when the request timed out.
+	 * Withdraws the given request from the queue, if it hasn't been started yet.
+	 * The request will fail with {@link no.nordicsemi.android.ble.callback.FailCallback#REASON_CANCELLED}.
+	 *
+	 * @param request the request to be cancelled.
+	 * @return True, if the request was cancelled; false if it has already started or finished.
+	 */
+	abstract boolean cancel(@NonNull final Request request);
+
+	/**
+	 * Method called when the request has started.
+	 *
+	 * @param request the request.
+	 * @param device  the target device.
+	 */
+	abstract void onRequestStarted(@NonNull final Request request,
+								   @NonNull final BluetoothDevice device);
+
+	/**
+	 * Method called when a packet of the request has been sent.
+	 *
+	 * @param request the request.
+	 * @param device  the target device.
+	 * @param bytes   the number of bytes sent.
+	 */
+	abstract void onPacketSent(@NonNull final Request request,
+							   @NonNull final BluetoothDevice device, final int bytes);
+
+	/**
+	 * Method called when a packet for the request has been received.
+	 *
+	 * @param request the request.
+	 * @param device  the target device.
+	 * @param bytes   the number of bytes received.
+	 */
+	abstract void onPacketReceived(@NonNull final Request request,
+								   @NonNull final BluetoothDevice device, final int bytes);
+
+	/**
+	 * Method called when the request has completed successfully.
+	 *
+	 * @param request the request.
+	 * @param device  the target device.
+	 */
+	abstract void onRequestSucceeded(@NonNull final Request request,
+									 @NonNull final BluetoothDevice device);
+
+	/**
+	 * Method called when the request has failed.
+	 *
+	 * @param request the request.
+	 * @param device  the target device, or null if the request was invalid or cancelled
+	 *                before the manager was connected.
+	 * @param status  the reason of the failure.
+	 */
+	abstract void onRequestFailed(@NonNull final Request request,
+								  @Nullable final BluetoothDevice device, final int status);
+
+	/**
+	 * Method called just before the success or fail callback of the request is invoked.
+	 *
+	 * @param request the request.
+	 */
+	abstract void onCallbackDispatched(@NonNull final Request request);
+
+	/**
+	 * Returns the current time, in nanoseconds, in the time base of request metrics.
+	 */
+	abstract long now();
+
+	/**
+	 * Returns the timeout for the given request if it doesn't have one set explicitly.
+	 *
+	 * @param request the request.
+	 * @param device  the target device.
+	 * @return The timeout in milliseconds, or 0 if adaptive timeouts are disabled or not
+	 * applicable for this request.
+	 */
+	abstract long getAdaptiveTimeout(@NonNull final TimeoutableRequest request,
+									 @NonNull final BluetoothDevice device);
+
+	/**
+	 * Schedules the timeout of the given request. When the timeout elapses, the request is
+	 * failed on the event loop, unless it has completed in the meantime.
 	 *
-	 * @param request the request that timed out.
+	 * @param request     the request.
+	 * @param device      the target device.
+	 * @param delayMillis the timeout in milliseconds.
+	 * @return The scheduled task, to be removed with {@link #removeCallbacks(Runnable)}
+	 * when the request completes.
 	 */
-	abstract void onRequestTimeout(@NonNull final TimeoutableRequest request);
+	@NonNull
+	abstract Runnable scheduleTimeout(@NonNull final TimeoutableRequest request,
+									  @NonNull final BluetoothDevice device,
+									  final long delayMillis);
 }
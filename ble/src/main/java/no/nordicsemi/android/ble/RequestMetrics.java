@@ -0,0 +1,171 @@
+/*
+ * Copyright (c) 2018, Nordic Semiconductor
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its contributors may be used to endorse or promote products derived from this
+ * software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE
+ * USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package no.nordicsemi.android.ble;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.util.Collections;
+import java.util.Map;
+
+/**
+ * A snapshot of latency metrics of requests executed by a {@link BleManager}.
+ * <p>
+ * The metrics are grouped by request type, e.g. "WRITE" or "READ". For each type,
+ * the number of successful and failed requests is given, together with histograms of:
+ * <ul>
+ *     <li>queue wait - time between enqueueing the request and starting it,</li>
+ *     <li>execution - time between starting the request and its completion,</li>
+ *     <li>callback dispatch - time between completion of the request and invoking the
+ *     success or fail callback on the callback handler.</li>
+ * </ul>
+ *
+ * @see BleManager#getMetrics()
+ */
+@SuppressWarnings({"unused", "WeakerAccess"})
+public final class RequestMetrics {
+
+	/**
+	 * Metrics of a single request type.
+	 */
+	public static final class Entry {
+		@NonNull
+		private final String type;
+		private final long successCount;
+		private final long failureCount;
+		@NonNull
+		private final LatencyHistogram queueWait;
+		@NonNull
+		private final LatencyHistogram execution;
+		@NonNull
+		private final LatencyHistogram callbackDispatch;
+
+		Entry(@NonNull final String type,
+			  final long successCount, final long failureCount,
+			  @NonNull final LatencyHistogram queueWait,
+			  @NonNull final LatencyHistogram execution,
+			  @NonNull final LatencyHistogram callbackDispatch) {
+			this.type = type;
+			this.successCount = successCount;
+			this.failureCount = failureCount;
+			this.queueWait = queueWait;
+			this.execution = execution;
+			this.callbackDispatch = callbackDispatch;
+		}
+
+		/**
+		 * Returns the request type, e.g. "WRITE".
+		 */
+		@NonNull
+		public String getType() {
+			return type;
+		}
+
+		/**
+		 * Returns the number of requests which completed successfully.
+		 */
+		public long getSuccessCount() {
+			return successCount;
+		}
+
+		/**
+		 * Returns the number of requests which failed, timed out, were cancelled or invalid.
+		 */
+		public long getFailureCount() {
+			return failureCount;
+		}
+
+		/**
+		 * Returns the histogram of times spent in the queue before the request was started.
+		 */
+		@NonNull
+		public LatencyHistogram getQueueWait() {
+			return queueWait;
+		}
+
+		/**
+		 * Returns the histogram of times between starting and finishing the request.
+		 */
+		@NonNull
+		public LatencyHistogram getExecution() {
+			return execution;
+		}
+
+		/**
+		 * Returns the histogram of delays between finishing the request and invoking
+		 * its callbacks.
+		 */
+		@NonNull
+		public LatencyHistogram getCallbackDispatch() {
+			return callbackDispatch;
+		}
+	}
+
+	@NonNull
+	private final Map<String, Entry> entries;
+	@NonNull
+	private final LatencyHistogram timeToReady;
+	@NonNull
+	private final LatencyHistogram timeToReadyPreDiscovery;
+
+	RequestMetrics(@NonNull final Map<String, Entry> entries,
+				   @NonNull final LatencyHistogram timeToReady,
+				   @NonNull final LatencyHistogram timeToReadyPreDiscovery) {
+		this.entries = Collections.unmodifiableMap(entries);
+		this.timeToReady = timeToReady;
+		this.timeToReadyPreDiscovery = timeToReadyPreDiscovery;
+	}
+
+	/**
+	 * Returns metrics of all request types which were executed at least once, by type.
+	 */
+	@NonNull
+	public Map<String, Entry> getEntries() {
+		return entries;
+	}
+
+	/**
+	 * Returns metrics of the given request type.
+	 *
+	 * @param type the request type, e.g. "WRITE".
+	 * @return The metrics, or null, if no request of this type was executed.
+	 */
+	@Nullable
+	public Entry get(@NonNull final String type) {
+		return entries.get(type);
+	}
+
+	/**
+	 * Returns the histogram of times between establishing a connection and the device becoming
+	 * ready, that is discovering services and executing the initialization queue.
+	 *
+	 * @param preDiscovery true to get times of connections which negotiated the MTU, PHY or
+	 *                     connection priority before service discovery, false for the others.
+	 * @return The histogram.
+	 * @see ConnectRequest#requestMtuBeforeDiscovery(int)
+	 */
+	@NonNull
+	public LatencyHistogram getTimeToReady(final boolean preDiscovery) {
+		return preDiscovery ? timeToReadyPreDiscovery : timeToReady;
+	}
+}
@@ -23,6 +23,7 @@
 package no.nordicsemi.android.ble;
 
 import android.bluetooth.BluetoothGatt;
+import android.os.ConditionVariable;
 import android.os.Handler;
 
 import androidx.annotation.IntRange;
@@ -32,6 +33,7 @@ import androidx.annotation.Nullable;
 import java.util.Deque;
 import java.util.LinkedList;
 
+import no.nordicsemi.android.ble.annotation.RequestPriority;
 import no.nordicsemi.android.ble.callback.AfterCallback;
 import no.nordicsemi.android.ble.callback.BeforeCallback;
 import no.nordicsemi.android.ble.callback.FailCallback;
@@ -104,6 +106,20 @@ public class RequestQueue extends Request {
 		return this;
 	}
 
+	@NonNull
+	@Override
+	public RequestQueue deadline(@IntRange(from = 0) final long elapsedRealtime) {
+		super.deadline(elapsedRealtime);
+		return this;
+	}
+
+	@NonNull
+	@Override
+	public RequestQueue priority(@RequestPriority final int priority) {
+		super.priority(priority);
+		return this;
+	}
+
 	/**
 	 * Enqueues a new operation. All operations will be executed sequentially in order they were
 	 * added.
@@ -198,7 +214,7 @@ public class RequestQueue extends Request {
 		final SuccessCallback sc = successCallback;
 		final FailCallback fc = failCallback;
 		try {
-			syncLock.close();
+			final ConditionVariable syncLock = this.syncLock = new ConditionVariable();
 			final RequestCallback callback = new RequestCallback();
 			beforeCallback = null;
 			done(callback).fail(callback).invalid(callback).enqueue();
@@ -0,0 +1,141 @@
+/*
+ * Copyright (c) 2018, Nordic Semiconductor
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its contributors may be used to endorse or promote products derived from this
+ * software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE
+ * USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package no.nordicsemi.android.ble;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * An executor that runs tasks one at a time, in the order they were submitted.
+ * <p>
+ * Without a target executor, the executor has no thread of its own. The thread that submits
+ * a task while the executor is idle runs it, together with all tasks submitted by other threads
+ * in the meantime. Other threads only add their tasks to the queue and return immediately,
+ * so no thread ever blocks waiting for another. The time spent by the submitting thread is not
+ * bounded, as other threads may keep adding tasks. With a target executor, tasks are always
+ * run by the target, e.g. on a dedicated thread.
+ * <p>
+ * A task submitted from a task that is currently being executed is run immediately,
+ * as a nested call.
+ * <p>
+ * All state modified only by tasks of the same executor is safely published between them.
+ * <p>
+ * An exception thrown by a task is reported to the exception handler given in the constructor,
+ * if any, and the next task is run. Without an exception handler, the exception is propagated
+ * to the thread running the task, like it would be if the task was run directly. The remaining
+ * tasks are then run by the target executor, or by the next thread submitting a task.
+ */
+final class SerialExecutor implements Executor {
+	private final Queue<Runnable> tasks = new ConcurrentLinkedQueue<>();
+	/** The thread running the tasks, or null if idle. */
+	private final AtomicReference<Thread> owner = new AtomicReference<>();
+	/** Set when the target executor has been asked to run the tasks. */
+	private final AtomicBoolean scheduled = new AtomicBoolean();
+	@Nullable
+	private final Executor target;
+	@Nullable
+	private final Thread.UncaughtExceptionHandler exceptionHandler;
+	private final Runnable drainTask = () -> {
+		scheduled.set(false);
+		drain(Thread.currentThread());
+	};
+
+	/**
+	 * Creates an executor running tasks on threads that submit them.
+	 */
+	SerialExecutor() {
+		this(null, null);
+	}
+
+	/**
+	 * Creates an executor running tasks using the given target executor.
+	 *
+	 * @param target the executor to run tasks, or null to run them on the submitting threads.
+	 */
+	SerialExecutor(@Nullable final Executor target) {
+		this(target, null);
+	}
+
+	/**
+	 * Creates an executor running tasks using the given target executor.
+	 *
+	 * @param target           the executor to run tasks, or null to run them on the submitting
+	 *                         threads.
+	 * @param exceptionHandler the handler notified about exceptions thrown by tasks, or null
+	 *                         to propagate them to the thread running the tasks.
+	 */
+	SerialExecutor(@Nullable final Executor target,
+				   @Nullable final Thread.UncaughtExceptionHandler exceptionHandler) {
+		this.target = target;
+		this.exceptionHandler = exceptionHandler;
+	}
+
+	@Override
+	public void execute(@NonNull final Runnable task) {
+		final Thread current = Thread.currentThread();
+		if (owner.get() == current) {
+			task.run();
+			return;
+		}
+		tasks.offer(task);
+		if (target == null) {
+			drain(current);
+		} else if (scheduled.compareAndSet(false, true)) {
+			target.execute(drainTask);
+		}
+	}
+
+	private void drain(@NonNull final Thread current) {
+		// If another thread is running tasks, it will run this one as well. The queue is
+		// checked again after releasing the ownership, so that no task is left behind.
+		while (!tasks.isEmpty() && owner.compareAndSet(null, current)) {
+			boolean thrown = true;
+			try {
+				Runnable next;
+				while ((next = tasks.poll()) != null) {
+					if (exceptionHandler == null) {
+						next.run();
+						continue;
+					}
+					try {
+						next.run();
+					} catch (final Throwable t) {
+						exceptionHandler.uncaughtException(current, t);
+					}
+				}
+				thrown = false;
+			} finally {
+				owner.set(null);
+				// If a task has thrown, the remaining ones must not wait for the next submission.
+				if (thrown && target != null && scheduled.compareAndSet(false, true))
+					target.execute(drainTask);
+			}
+		}
+	}
+}
@@ -0,0 +1,202 @@
+/*
+ * Copyright (c) 2018, Nordic Semiconductor
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its contributors may be used to endorse or promote products derived from this
+ * software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE
+ * USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package no.nordicsemi.android.ble;
+
+import android.bluetooth.BluetoothDevice;
+import android.bluetooth.BluetoothGattCharacteristic;
+import android.bluetooth.BluetoothGattDescriptor;
+import android.bluetooth.BluetoothGattService;
+
+import androidx.annotation.IntRange;
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * A cache of decisions whether devices are supported, made by
+ * {@link BleManager.BleManagerGattCallback#isRequiredServiceSupported(android.bluetooth.BluetoothGatt)}.
+ * <p>
+ * Decisions are stored per manager class and device address, together with a fingerprint of
+ * the GATT database: UUIDs, instance IDs and properties of all services, characteristics and
+ * descriptors. When the services discovered on the next connection have the same fingerprint,
+ * a device that was not supported is rejected without calling the method again, and
+ * {@link BleManager.BleManagerGattCallback#isServiceLayoutUnchanged()} returns true, so that
+ * the manager may bind characteristics without validating them again.
+ * <p>
+ * The entry of a device is removed when the Service Changed indication is received.
+ * The least recently used entries are removed when the cache is full.
+ * A single instance may be shared by all managers.
+ *
+ * @see BleManager#setServiceCache(ServiceCache)
+ */
+public final class ServiceCache {
+	private static final long FNV_OFFSET = 0xcbf29ce484222325L;
+	private static final long FNV_PRIME = 0x100000001b3L;
+
+	private final int maxDevices;
+	/** Cached decisions, by key, in access order. */
+	private final Map<String, Entry> entries;
+	private long hits;
+	private long misses;
+
+	static final class Entry {
+		final long fingerprint;
+		final boolean supported;
+
+		Entry(final long fingerprint, final boolean supported) {
+			this.fingerprint = fingerprint;
+			this.supported = supported;
+		}
+	}
+
+	/**
+	 * Creates the cache.
+	 *
+	 * @param maxDevices the maximum number of cached decisions.
+	 */
+	public ServiceCache(@IntRange(from = 1) final int maxDevices) {
+		if (maxDevices < 1)
+			throw new IllegalArgumentException("At least one device must be cached");
+		this.maxDevices = maxDevices;
+		this.entries = new LinkedHashMap<String, Entry>(16, 0.75f, true) {
+			@Override
+			protected boolean removeEldestEntry(final Map.Entry<String, Entry> eldest) {
+				return size() > ServiceCache.this.maxDevices;
+			}
+		};
+	}
+
+	/**
+	 * Removes cached decisions of the given device.
+	 *
+	 * @param device the device.
+	 */
+	public synchronized void invalidate(@NonNull final BluetoothDevice device) {
+		invalidate(device.getAddress());
+	}
+
+	/**
+	 * Removes all cached decisions.
+	 */
+	public synchronized void clear() {
+		entries.clear();
+	}
+
+	/**
+	 * Returns the number of cached decisions.
+	 */
+	public synchronized int size() {
+		return entries.size();
+	}
+
+	/**
+	 * Returns the number of connections where the discovered services matched the cached ones.
+	 */
+	public synchronized long getHitCount() {
+		return hits;
+	}
+
+	/**
+	 * Returns the number of connections where the device was not cached, or its services
+	 * have changed.
+	 */
+	public synchronized long getMissCount() {
+		return misses;
+	}
+
+	synchronized void invalidate(@NonNull final String address) {
+		final Iterator<String> iterator = entries.keySet().iterator();
+		while (iterator.hasNext()) {
+			if (iterator.next().endsWith("/" + address))
+				iterator.remove();
+		}
+	}
+
+	/**
+	 * Returns the cached decision, if the fingerprint matches.
+	 *
+	 * @param key         the key, see {@link #keyOf(Class, String)}.
+	 * @param fingerprint the fingerprint of the discovered services.
+	 * @return The cached decision, or null.
+	 */
+	@Nullable
+	synchronized Entry get(@NonNull final String key, final long fingerprint) {
+		final Entry entry = entries.get(key);
+		if (entry != null && entry.fingerprint == fingerprint) {
+			hits++;
+			return entry;
+		}
+		misses++;
+		return null;
+	}
+
+	synchronized void put(@NonNull final String key, final long fingerprint, final boolean supported) {
+		entries.put(key, new Entry(fingerprint, supported));
+	}
+
+	@NonNull
+	static String keyOf(@NonNull final Class<?> managerClass, @NonNull final String address) {
+		return managerClass.getName() + "/" + address;
+	}
+
+	/**
+	 * Returns the fingerprint of the GATT database.
+	 *
+	 * @param services the discovered services.
+	 * @return The 64-bit FNV-1a hash of the database.
+	 */
+	static long fingerprintOf(@NonNull final List<BluetoothGattService> services) {
+		long hash = FNV_OFFSET;
+		for (final BluetoothGattService service : services) {
+			hash = mix(hash, service.getUuid());
+			hash = mix(hash, service.getInstanceId());
+			hash = mix(hash, service.getType());
+			for (final BluetoothGattCharacteristic characteristic : service.getCharacteristics()) {
+				hash = mix(hash, characteristic.getUuid());
+				hash = mix(hash, characteristic.getInstanceId());
+				hash = mix(hash, characteristic.getProperties());
+				for (final BluetoothGattDescriptor descriptor : characteristic.getDescriptors()) {
+					hash = mix(hash, descriptor.getUuid());
+				}
+			}
+		}
+		return hash;
+	}
+
+	private static long mix(final long hash, @NonNull final UUID uuid) {
+		return mix(mix(hash, uuid.getMostSignificantBits()), uuid.getLeastSignificantBits());
+	}
+
+	static long mix(long hash, final long value) {
+		for (int i = 0; i < 64; i += 8) {
+			hash ^= (value >>> i) & 0xFF;
+			hash *= FNV_PRIME;
+		}
+		return hash;
+	}
+}
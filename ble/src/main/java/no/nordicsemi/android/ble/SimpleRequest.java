@@ -25,6 +25,7 @@ package no.nordicsemi.android.ble;
 import android.bluetooth.BluetoothGatt;
 import android.bluetooth.BluetoothGattCharacteristic;
 import android.bluetooth.BluetoothGattDescriptor;
+import android.os.ConditionVariable;
 
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
@@ -83,7 +84,7 @@ public class SimpleRequest extends Request {
 		final SuccessCallback sc = successCallback;
 		final FailCallback fc = failCallback;
 		try {
-			syncLock.close();
+			final ConditionVariable syncLock = this.syncLock = new ConditionVariable();
 			final RequestCallback callback = new RequestCallback();
 			beforeCallback = null;
 			done(callback).fail(callback).invalid(callback).enqueue();
@@ -136,18 +136,41 @@ public abstract class SimpleValueRequest<T> extends SimpleRequest {
 			throws RequestFailedException, DeviceDisconnectedException, BluetoothDisabledException,
 			InvalidRequestException {
 		assertNotMainThread();
+		return await(newResponse(responseClass));
+	}
 
-		try {
-			final E response = responseClass.newInstance();
-			return await(response);
-		} catch (IllegalAccessException e) {
-			throw new IllegalArgumentException("Couldn't instantiate "
-					+ responseClass.getCanonicalName()
-					+ " class. Is the default constructor accessible?");
-		} catch (InstantiationException e) {
-			throw new IllegalArgumentException("Couldn't instantiate "
-					+ responseClass.getCanonicalName()
-					+ " class. Does it have a default constructor with no arguments?");
-		}
+	/**
+	 * Enqueues the request for asynchronous execution and returns a future, which will return
+	 * the given response object when the request completes successfully.
+	 * <p>
+	 * The value callback set with {@link #with(Object)} will be ignored.
+	 *
+	 * @param response the response object.
+	 * @param <E>      a response class.
+	 * @return The future.
+	 * @see #toFuture()
+	 */
+	@NonNull
+	public <E extends T> RequestFuture<E> toFuture(@NonNull final E response) {
+		with(response);
+		return enqueueForFuture(response);
+	}
+
+	/**
+	 * Enqueues the request for asynchronous execution and returns a future, which will return
+	 * a new instance of the given response class when the request completes successfully.
+	 * <p>
+	 * The value callback set with {@link #with(Object)} will be ignored.
+	 *
+	 * @param responseClass the response class. This class will be instantiate, therefore it has
+	 *                      to have a default constructor.
+	 * @param <E>           a response class.
+	 * @return The future.
+	 * @throws IllegalArgumentException thrown when the response class could not be instantiated.
+	 * @see #toFuture(Object)
+	 */
+	@NonNull
+	public <E extends T> RequestFuture<E> toFuture(@NonNull final Class<E> responseClass) {
+		return toFuture(newResponse(responseClass));
 	}
 }
@@ -0,0 +1,373 @@
+/*
+ * Copyright (c) 2018, Nordic Semiconductor
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its contributors may be used to endorse or promote products derived from this
+ * software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE
+ * USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package no.nordicsemi.android.ble;
+
+import android.bluetooth.BluetoothGattCharacteristic;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The task queue used by {@link BleManagerHandler}. Requests are kept in separate FIFO queues,
+ * one for each priority class (see {@link Request#priority(int)}). Requests are taken from the
+ * highest non-empty class, so a control command does not have to wait until a long bulk
+ * transfer is complete.
+ * <p>
+ * To prevent starvation, a bulk request is served after {@link #MAX_BULK_SKIPS} requests of a
+ * higher priority were taken while bulk requests were waiting.
+ * <p>
+ * Requests withdrawn from the queue, for example superseded {@link WriteRequest}s, are not
+ * removed from the underlying queues immediately. Instead, they are skipped when reached.
+ * <p>
+ * All methods are thread safe.
+ */
+final class TaskQueue {
+	/**
+	 * Maximum number of requests with higher priority that may be taken from the queue
+	 * while a bulk request is waiting.
+	 */
+	static final int MAX_BULK_SKIPS = 8;
+
+	@SuppressWarnings("unchecked")
+	private final Deque<Request>[] queues = new Deque[] {
+			new ArrayDeque<Request>(), // Request.PRIORITY_BULK
+			new ArrayDeque<Request>(), // Request.PRIORITY_INTERACTIVE
+			new ArrayDeque<Request>(), // Request.PRIORITY_CONTROL
+	};
+	/**
+	 * Pending write requests with "latest value wins" policy, by target characteristic.
+	 */
+	private final Map<BluetoothGattCharacteristic, WriteRequest> coalescingWrites = new HashMap<>();
+	/**
+	 * Last shared read requests, pending or in progress, by target characteristic.
+	 */
+	private final Map<BluetoothGattCharacteristic, ReadRequest> sharedReads = new HashMap<>();
+	/** The number of requests waiting in the queue, not counting withdrawn ones. */
+	private int size;
+	private int bulkSkips;
+
+	/**
+	 * Adds the request at the end of its priority class.
+	 * <p>
+	 * If the request is a coalescing {@link WriteRequest} (see {@link WriteRequest#coalesce()})
+	 * and another one for the same characteristic is still waiting in the queue, the older one
+	 * is removed from the queue and returned. The caller should notify it about the failure.
+	 * <p>
+	 * A shared {@link ReadRequest} is attached to a pending shared read of the same
+	 * characteristic, if there is one, instead of being added.
+	 * <p>
+	 * A request withdrawn before it was added, e.g. cancelled right after being enqueued,
+	 * is ignored.
+	 *
+	 * @param request the request to be added.
+	 * @return The superseded request, or null.
+	 */
+	@Nullable
+	synchronized WriteRequest add(@NonNull final Request request) {
+		if (request.withdrawn)
+			return null;
+		if (request instanceof ReadRequest && ((ReadRequest) request).isShared()
+				&& share((ReadRequest) request)) {
+			// The request will complete together with an already enqueued read.
+			return null;
+		}
+		queues[request.priority].addLast(request);
+		enqueued(request);
+
+		if (request instanceof WriteRequest && request.characteristic != null) {
+			final WriteRequest wr = (WriteRequest) request;
+			if (wr.isCoalescing()) {
+				final WriteRequest superseded = coalescingWrites.put(wr.characteristic, wr);
+				// The superseded request will be skipped when reached.
+				if (superseded != null && withdraw(superseded))
+					return superseded;
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Adds all given requests at the end of their priority classes, in order.
+	 *
+	 * @param requests the requests to be added.
+	 * @return The list of superseded requests, or null if none were superseded.
+	 * @see #add(Request)
+	 */
+	@Nullable
+	synchronized List<WriteRequest> addAll(@NonNull final Request[] requests) {
+		List<WriteRequest> superseded = null;
+		for (final Request request : requests) {
+			final WriteRequest wr = add(request);
+			if (wr != null) {
+				if (superseded == null)
+					superseded = new ArrayList<>(2);
+				superseded.add(wr);
+			}
+		}
+		return superseded;
+	}
+
+	/**
+	 * Attaches the given shared read request to a pending or in-progress shared read of the
+	 * same characteristic (see {@link ReadRequest#share()}). If there is no such request,
+	 * the given one is registered, so that the following reads may attach to it.
+	 *
+	 * @param request the shared read request.
+	 * @return True, if the request was attached and must not be added to the queue;
+	 * false otherwise.
+	 */
+	private boolean share(@NonNull final ReadRequest request) {
+		final ReadRequest leader = sharedReads.get(request.characteristic);
+		if (leader != null && leader.attach(request))
+			return true;
+		sharedReads.put(request.characteristic, request);
+		return false;
+	}
+
+	/**
+	 * Marks the request as withdrawn. Withdrawn requests are skipped when reached.
+	 * This method may also be used for requests waiting in other queues.
+	 *
+	 * @param request the request to be withdrawn.
+	 * @return True, if the request was withdrawn; false, if it had been withdrawn or taken
+	 * for execution before.
+	 */
+	synchronized boolean withdraw(@NonNull final Request request) {
+		if (request.withdrawn || request.taken)
+			return false;
+		if (request instanceof ReadRequest) {
+			final ReadRequest rr = (ReadRequest) request;
+			// A request attached to a shared read can't be withdrawn once the result
+			// is being delivered.
+			if (rr.leader != null && !rr.leader.detach(rr))
+				return false;
+			if (rr.characteristic != null && sharedReads.get(rr.characteristic) == rr) {
+				sharedReads.remove(rr.characteristic);
+				promote(rr);
+			}
+		}
+		request.withdrawn = true;
+		dequeued(request);
+		return true;
+	}
+
+	/**
+	 * Replaces the withdrawn shared read in the queue with the first request attached to it.
+	 * The other attached requests are attached to the new one.
+	 *
+	 * @param leader the withdrawn shared read request.
+	 */
+	private void promote(@NonNull final ReadRequest leader) {
+		final List<ReadRequest> followers = leader.detachAll();
+		if (followers == null || followers.isEmpty())
+			return;
+		final ReadRequest next = followers.get(0);
+		for (int i = 1; i < followers.size(); i++)
+			next.attach(followers.get(i));
+		sharedReads.put(next.characteristic, next);
+
+		// Keep the position of the withdrawn request.
+		final Deque<Request> queue = queues[leader.priority];
+		for (int i = queue.size(); i > 0; i--) {
+			final Request request = queue.pollFirst();
+			queue.addLast(request == leader ? next : request);
+		}
+		enqueued(next);
+	}
+
+	/**
+	 * Marks the request as taken for execution, unless it was withdrawn before.
+	 * This method is used for requests taken from other queues. Requests returned by
+	 * {@link #poll()} are marked as taken already.
+	 *
+	 * @param request the request to be executed.
+	 * @return True, if the request may be executed; false, if it was withdrawn.
+	 */
+	synchronized boolean take(@NonNull final Request request) {
+		if (request.withdrawn)
+			return false;
+		request.taken = true;
+		dequeued(request);
+		return true;
+	}
+
+	/**
+	 * Removes the finished request from the registry of shared reads, so that it is not
+	 * kept until the next read of the same characteristic. Requests attached to it
+	 * afterwards would not be completed anyway.
+	 *
+	 * @param request the finished request.
+	 */
+	synchronized void onRequestFinished(@NonNull final Request request) {
+		if (request instanceof ReadRequest && request.characteristic != null
+				&& sharedReads.get(request.characteristic) == request) {
+			sharedReads.remove(request.characteristic);
+		}
+	}
+
+	/**
+	 * Adds the request at the front of its priority class. This is used to continue
+	 * an operation that requires more than one step, e.g. a split {@link WriteRequest}.
+	 * Requests with higher priority will still be taken before it.
+	 *
+	 * @param request the request to be added.
+	 */
+	synchronized void addFirst(@NonNull final Request request) {
+		queues[request.priority].addFirst(request);
+		enqueued(request);
+	}
+
+	/**
+	 * Returns and removes the next request to be executed, or null, if the queue is empty.
+	 * The returned request is marked as taken, so it can no longer be withdrawn.
+	 */
+	@Nullable
+	synchronized Request poll() {
+		final boolean bulkWaiting = peek(Request.PRIORITY_BULK) != null;
+		Deque<Request> queue = queues[Request.PRIORITY_BULK];
+		if (!bulkWaiting || bulkSkips < MAX_BULK_SKIPS) {
+			if (peek(Request.PRIORITY_CONTROL) != null) {
+				queue = queues[Request.PRIORITY_CONTROL];
+			} else if (peek(Request.PRIORITY_INTERACTIVE) != null) {
+				queue = queues[Request.PRIORITY_INTERACTIVE];
+			}
+		}
+		if (queue == queues[Request.PRIORITY_BULK]) {
+			bulkSkips = 0;
+		} else if (bulkWaiting) {
+			bulkSkips++;
+		}
+
+		final Request request = queue.pollFirst();
+		if (request != null) {
+			request.taken = true;
+			dequeued(request);
+		}
+		if (request != null && request.characteristic != null
+				&& coalescingWrites.get(request.characteristic) == request) {
+			// The request is about to start, it can't be superseded anymore.
+			coalescingWrites.remove(request.characteristic);
+		}
+		return request;
+	}
+
+	/**
+	 * Returns true if there are no requests waiting in the queue.
+	 */
+	synchronized boolean isEmpty() {
+		for (int priority = Request.PRIORITY_BULK; priority <= Request.PRIORITY_CONTROL; priority++) {
+			if (peek(priority) != null)
+				return false;
+		}
+		return true;
+	}
+
+	/**
+	 * Returns the highest priority of the waiting requests, or -1 if the queue is empty.
+	 */
+	synchronized int getHighestPriority() {
+		for (int priority = Request.PRIORITY_CONTROL; priority >= Request.PRIORITY_BULK; priority--) {
+			if (peek(priority) != null)
+				return priority;
+		}
+		return -1;
+	}
+
+	/**
+	 * Returns the number of requests waiting in the queue. Withdrawn requests, which are
+	 * removed only when reached, are not counted.
+	 */
+	synchronized int size() {
+		return size;
+	}
+
+	/**
+	 * Removes all requests from the queue.
+	 *
+	 * @return The removed requests that were not withdrawn, including the requests attached
+	 * to shared reads. The caller should notify them about the failure.
+	 */
+	@NonNull
+	synchronized List<Request> clear() {
+		final List<Request> removed = new ArrayList<>();
+		for (final Deque<Request> queue : queues) {
+			for (final Request request : queue) {
+				// Requests continued in multiple steps were taken before, but are not
+				// executed anymore either.
+				request.queued = false;
+				if (request.withdrawn || request.finished)
+					continue;
+				request.withdrawn = true;
+				removed.add(request);
+				if (request instanceof ReadRequest) {
+					final List<ReadRequest> followers = ((ReadRequest) request).detachAll();
+					if (followers != null) {
+						for (final ReadRequest follower : followers) {
+							follower.withdrawn = true;
+							removed.add(follower);
+						}
+					}
+				}
+			}
+			queue.clear();
+		}
+		coalescingWrites.clear();
+		sharedReads.clear();
+		size = 0;
+		bulkSkips = 0;
+		return removed;
+	}
+
+	private void enqueued(@NonNull final Request request) {
+		request.queued = true;
+		size++;
+	}
+
+	private void dequeued(@NonNull final Request request) {
+		if (request.queued) {
+			request.queued = false;
+			size--;
+		}
+	}
+
+	/**
+	 * Returns the first request in the given priority class that was not withdrawn, removing
+	 * all withdrawn requests from its head.
+	 */
+	@Nullable
+	private Request peek(final int priority) {
+		final Deque<Request> queue = queues[priority];
+		Request request;
+		while ((request = queue.peekFirst()) != null && request.withdrawn) {
+			queue.pollFirst();
+		}
+		return request;
+	}
+}
@@ -4,6 +4,7 @@ import android.bluetooth.BluetoothDevice;
 import android.bluetooth.BluetoothGatt;
 import android.bluetooth.BluetoothGattCharacteristic;
 import android.bluetooth.BluetoothGattDescriptor;
+import android.os.ConditionVariable;
 import android.os.Handler;
 
 import androidx.annotation.IntRange;
@@ -19,6 +20,8 @@ import no.nordicsemi.android.ble.exception.RequestFailedException;
 public abstract class TimeoutableRequest extends Request {
 	private Runnable timeoutCallback;
 	protected long timeout;
+	/** Whether the timeout was set using {@link #timeout(long)}. */
+	private boolean timeoutSet;
 
 	TimeoutableRequest(@NonNull final Type type) {
 		super(type);
@@ -49,6 +52,9 @@ public abstract class TimeoutableRequest extends Request {
 	/**
 	 * Sets the operation timeout.
 	 * When the timeout occurs, the request will fail with {@link FailCallback#REASON_TIMEOUT}.
+	 * <p>
+	 * A timeout set explicitly, including 0, overrides the adaptive timeout enabled with
+	 * {@link BleManager#enableAdaptiveTimeouts(long, long)}.
 	 *
 	 * @param timeout the request timeout in milliseconds, 0 to disable timeout.
 	 * @return the callback.
@@ -61,6 +67,7 @@ public abstract class TimeoutableRequest extends Request {
 		if (timeoutCallback != null)
 			throw new IllegalStateException("Request already started");
 		this.timeout = timeout;
+		this.timeoutSet = true;
 		return this;
 	}
 
@@ -122,7 +129,7 @@ public abstract class TimeoutableRequest extends Request {
 		final SuccessCallback sc = successCallback;
 		final FailCallback fc = failCallback;
 		try {
-			syncLock.close();
+			final ConditionVariable syncLock = this.syncLock = new ConditionVariable();
 			final RequestCallback callback = new RequestCallback();
 			done(callback).fail(callback).invalid(callback).enqueue();
 
@@ -182,23 +189,22 @@ public abstract class TimeoutableRequest extends Request {
 
 	@Override
 	void notifyStarted(@NonNull final BluetoothDevice device) {
-		if (timeout > 0L) {
-			timeoutCallback = () -> {
-				timeoutCallback = null;
-				if (!finished) {
-					notifyFail(device, FailCallback.REASON_TIMEOUT);
-					requestHandler.onRequestTimeout(this);
-				}
-			};
-			handler.postDelayed(timeoutCallback, timeout);
+		long timeout = this.timeout;
+		if (!timeoutSet && requestHandler != null) {
+			final long adaptiveTimeout = requestHandler.getAdaptiveTimeout(this, device);
+			if (adaptiveTimeout > 0L)
+				timeout = adaptiveTimeout;
+		}
+		if (timeout > 0L && requestHandler != null) {
+			timeoutCallback = requestHandler.scheduleTimeout(this, device, timeout);
 		}
 		super.notifyStarted(device);
 	}
 
 	@Override
 	boolean notifySuccess(@NonNull final BluetoothDevice device) {
-		if (!finished) {
-			handler.removeCallbacks(timeoutCallback);
+		if (!finished && timeoutCallback != null) {
+			requestHandler.removeCallbacks(timeoutCallback);
 			timeoutCallback = null;
 		}
 		return super.notifySuccess(device);
@@ -206,8 +212,8 @@ public abstract class TimeoutableRequest extends Request {
 
 	@Override
 	void notifyFail(@NonNull final BluetoothDevice device, final int status) {
-		if (!finished) {
-			handler.removeCallbacks(timeoutCallback);
+		if (!finished && timeoutCallback != null) {
+			requestHandler.removeCallbacks(timeoutCallback);
 			timeoutCallback = null;
 		}
 		super.notifyFail(device, status);
@@ -215,8 +221,8 @@ public abstract class TimeoutableRequest extends Request {
 
 	@Override
 	void notifyInvalidRequest() {
-		if (!finished) {
-			handler.removeCallbacks(timeoutCallback);
+		if (!finished && timeoutCallback != null) {
+			requestHandler.removeCallbacks(timeoutCallback);
 			timeoutCallback = null;
 		}
 		super.notifyInvalidRequest();
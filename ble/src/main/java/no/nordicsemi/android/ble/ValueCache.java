@@ -0,0 +1,311 @@
+/*
+ * Copyright (c) 2018, Nordic Semiconductor
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its contributors may be used to endorse or promote products derived from this
+ * software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE
+ * USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package no.nordicsemi.android.ble;
+
+import android.bluetooth.BluetoothGattCharacteristic;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * A cache of characteristic values of the connected device.
+ * <p>
+ * The cache is opt-in. Values are stored for:
+ * <ul>
+ *     <li>characteristics prefetched using {@link BleManager#addPrefetch(UUID, UUID)},
+ *     which complete every read of the characteristic for their time to live or, if none
+ *     was set, only the first read,</li>
+ *     <li>characteristics with a time to live set using {@link #setTimeToLive(UUID, long)},</li>
+ *     <li>characteristics read using a request marked with {@link ReadRequest#useCache()}.</li>
+ * </ul>
+ * A value is stored when the characteristic is read, and refreshed when a notification or
+ * indication is received. A read marked with {@link ReadRequest#useCache()} completes with
+ * the cached value without a GATT operation, as long as the value is younger than its time
+ * to live. Changing a time to live applies also to values already cached. Writing to
+ * a characteristic removes its value. The cache is cleared when the device disconnects.
+ * <p>
+ * The total size of cached values is limited, see {@link #setMaxBytes(int)}. When the limit
+ * is exceeded, the least recently used values are evicted.
+ *
+ * @see BleManager#getValueCache()
+ */
+public final class ValueCache {
+	/** The time to live of values which never expire. */
+	public static final long FOREVER = Long.MAX_VALUE;
+	/** The default limit of the total size of cached values, in bytes. */
+	public static final int DEFAULT_MAX_BYTES = 64 * 1024;
+
+	private static final class Entry {
+		/** The cached value, or null if the value is unknown. */
+		@Nullable
+		byte[] value;
+		/** The time the value was stored, in milliseconds. */
+		long timestamp;
+		/** Whether the value completes all reads, not only those marked to use the cache. */
+		boolean tracked;
+	}
+
+	/** Cached entries, in access order. */
+	private final LinkedHashMap<BluetoothGattCharacteristic, Entry> entries =
+			new LinkedHashMap<>(16, 0.75f, true);
+	/** Times to live set by the user, by characteristic UUID. */
+	private final Map<UUID, Long> timesToLive = new HashMap<>();
+	private long defaultTimeToLive = 0;
+	private int maxBytes = DEFAULT_MAX_BYTES;
+	private int bytes;
+	private long hits;
+	private long misses;
+	private long evictions;
+
+	/**
+	 * Enables caching values of characteristics with the given UUID. A cached value will be
+	 * used to complete reads marked with {@link ReadRequest#useCache()} for the given time.
+	 * Notifications and indications refresh the value.
+	 *
+	 * @param characteristicUuid the characteristic UUID.
+	 * @param ttlMillis the time to live of the value in milliseconds, or {@link #FOREVER}.
+	 *                  0 disables caching of the characteristic.
+	 */
+	public synchronized void setTimeToLive(@NonNull final UUID characteristicUuid,
+										   final long ttlMillis) {
+		if (ttlMillis < 0)
+			throw new IllegalArgumentException("Time to live must not be negative");
+		if (ttlMillis > 0)
+			timesToLive.put(characteristicUuid, ttlMillis);
+		else
+			timesToLive.remove(characteristicUuid);
+	}
+
+	/**
+	 * Sets the time to live of values of characteristics for which no time to live was set
+	 * using {@link #setTimeToLive(UUID, long)}, read using a request marked with
+	 * {@link ReadRequest#useCache()}. By default it is 0, that is such values are not cached.
+	 *
+	 * @param ttlMillis the time to live of the value in milliseconds, or {@link #FOREVER}.
+	 */
+	public synchronized void setDefaultTimeToLive(final long ttlMillis) {
+		if (ttlMillis < 0)
+			throw new IllegalArgumentException("Time to live must not be negative");
+		defaultTimeToLive = ttlMillis;
+	}
+
+	/**
+	 * Sets the limit of the total size of cached values. The least recently used values
+	 * are evicted when the limit is exceeded. Values larger than the limit are not cached.
+	 *
+	 * @param maxBytes the limit, in bytes. Defaults to {@link #DEFAULT_MAX_BYTES}.
+	 */
+	public synchronized void setMaxBytes(final int maxBytes) {
+		if (maxBytes < 0)
+			throw new IllegalArgumentException("Limit must not be negative");
+		this.maxBytes = maxBytes;
+		trim();
+	}
+
+	/**
+	 * Returns the number of reads completed with a cached value.
+	 */
+	public synchronized long getHitCount() {
+		return hits;
+	}
+
+	/**
+	 * Returns the number of reads which could have used the cache, but had no fresh value.
+	 */
+	public synchronized long getMissCount() {
+		return misses;
+	}
+
+	/**
+	 * Returns the number of values evicted to keep the cache within its size limit.
+	 */
+	public synchronized long getEvictionCount() {
+		return evictions;
+	}
+
+	/**
+	 * Returns the number of cached values.
+	 */
+	public synchronized int size() {
+		int size = 0;
+		for (final Entry entry : entries.values())
+			if (entry.value != null)
+				size++;
+		return size;
+	}
+
+	/**
+	 * Returns the total size of cached values, in bytes.
+	 */
+	public synchronized int getByteCount() {
+		return bytes;
+	}
+
+	/**
+	 * Clears the hit, miss and eviction counters.
+	 */
+	public synchronized void resetStatistics() {
+		hits = misses = evictions = 0;
+	}
+
+	/**
+	 * Starts tracking the given characteristic. Its value completes all reads of the
+	 * characteristic for its time to live. Without a time to live, the value completes only
+	 * the first read, after which the characteristic is no longer tracked.
+	 */
+	synchronized void track(@NonNull final BluetoothGattCharacteristic characteristic) {
+		Entry entry = entries.get(characteristic);
+		if (entry == null) {
+			entry = new Entry();
+			entries.put(characteristic, entry);
+		}
+		entry.tracked = true;
+	}
+
+	/**
+	 * Returns the cached value of the characteristic, if it may complete the read.
+	 *
+	 * @param characteristic the characteristic.
+	 * @param useCache whether the read was marked with {@link ReadRequest#useCache()}.
+	 * @param now the current time, in milliseconds.
+	 * @return The value, or null if the read should be performed.
+	 */
+	@Nullable
+	synchronized byte[] get(@NonNull final BluetoothGattCharacteristic characteristic,
+							final boolean useCache, final long now) {
+		final Entry entry = entries.get(characteristic);
+		if (entry == null || !(entry.tracked || useCache)) {
+			if (useCache)
+				misses++;
+			return null;
+		}
+		if (entry.value == null) {
+			misses++;
+			return null;
+		}
+		final long ttl = getTimeToLive(characteristic);
+		if (ttl == 0 && entry.tracked) {
+			// A prefetched value without a time to live completes only the first read.
+			final byte[] value = entry.value;
+			bytes -= value.length;
+			entries.remove(characteristic);
+			hits++;
+			return value;
+		}
+		if (now - entry.timestamp >= ttl) {
+			misses++;
+			return null;
+		}
+		hits++;
+		return entry.value;
+	}
+
+	/**
+	 * Stores the value of the characteristic, if it is cached.
+	 *
+	 * @param characteristic the characteristic.
+	 * @param value the value read or notified.
+	 * @param useCache whether the value was read using a request marked with
+	 *                 {@link ReadRequest#useCache()}.
+	 * @param now the current time, in milliseconds.
+	 */
+	synchronized void put(@NonNull final BluetoothGattCharacteristic characteristic,
+						  @Nullable final byte[] value, final boolean useCache, final long now) {
+		if (value == null)
+			return;
+		Entry entry = entries.get(characteristic);
+		if (entry == null) {
+			final Long ttl = timesToLive.get(characteristic.getUuid());
+			final long timeToLive = ttl != null ? ttl : useCache ? defaultTimeToLive : 0;
+			if (timeToLive == 0)
+				return;
+			entry = new Entry();
+			entries.put(characteristic, entry);
+		}
+		if (value.length > maxBytes) {
+			invalidate(characteristic);
+			return;
+		}
+		if (entry.value != null)
+			bytes -= entry.value.length;
+		entry.value = value.clone();
+		entry.timestamp = now;
+		bytes += value.length;
+		trim();
+	}
+
+	/**
+	 * Removes the value of the characteristic. A tracked characteristic is still tracked.
+	 */
+	synchronized void invalidate(@NonNull final BluetoothGattCharacteristic characteristic) {
+		final Entry entry = entries.get(characteristic);
+		if (entry == null)
+			return;
+		if (entry.value != null)
+			bytes -= entry.value.length;
+		entry.value = null;
+		if (!entry.tracked)
+			entries.remove(characteristic);
+	}
+
+	/**
+	 * Removes all values and stops tracking all characteristics.
+	 * Times to live and the size limit are kept.
+	 */
+	synchronized void clear() {
+		entries.clear();
+		bytes = 0;
+	}
+
+	/**
+	 * Returns the time to live currently set for values of the characteristic, in milliseconds.
+	 */
+	private long getTimeToLive(@NonNull final BluetoothGattCharacteristic characteristic) {
+		final Long ttl = timesToLive.get(characteristic.getUuid());
+		return ttl != null ? ttl : defaultTimeToLive;
+	}
+
+	/**
+	 * Evicts the least recently used values until the cache is within its size limit.
+	 * Tracked characteristics lose only their values and are still tracked.
+	 */
+	private void trim() {
+		final Iterator<Entry> iterator = entries.values().iterator();
+		while (bytes > maxBytes && iterator.hasNext()) {
+			final Entry entry = iterator.next();
+			if (entry.value == null)
+				continue;
+			bytes -= entry.value.length;
+			evictions++;
+			entry.value = null;
+			if (!entry.tracked)
+				iterator.remove();
+		}
+	}
+}
@@ -9,6 +9,7 @@ import android.util.Log;
 import androidx.annotation.IntRange;
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
+import no.nordicsemi.android.ble.annotation.RequestPriority;
 import no.nordicsemi.android.ble.callback.AfterCallback;
 import no.nordicsemi.android.ble.callback.BeforeCallback;
 import no.nordicsemi.android.ble.callback.DataSentCallback;
@@ -115,6 +116,20 @@ public final class WaitForReadRequest extends AwaitingRequest<DataSentCallback>
 		return this;
 	}
 
+	@NonNull
+	@Override
+	public WaitForReadRequest deadline(@IntRange(from = 0) final long elapsedRealtime) {
+		super.deadline(elapsedRealtime);
+		return this;
+	}
+
+	@NonNull
+	@Override
+	public WaitForReadRequest priority(@RequestPriority final int priority) {
+		super.priority(priority);
+		return this;
+	}
+
 	@Override
 	@NonNull
 	public WaitForReadRequest with(@NonNull final DataSentCallback callback) {
@@ -235,6 +250,8 @@ public final class WaitForReadRequest extends AwaitingRequest<DataSentCallback>
 	 *               {@link android.bluetooth.BluetoothGattServerCallback#onDescriptorReadRequest(BluetoothDevice, int, int, BluetoothGattDescriptor)}
 	 */
 	void notifyPacketRead(@NonNull final BluetoothDevice device, @Nullable final byte[] data) {
+		if (requestHandler != null)
+			requestHandler.onPacketSent(this, device, data != null ? data.length : 0);
 		handler.post(() -> {
 			if (progressCallback != null) {
 				try {
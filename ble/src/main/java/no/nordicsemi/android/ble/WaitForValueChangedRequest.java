@@ -31,6 +31,7 @@ import android.util.Log;
 import androidx.annotation.IntRange;
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
+import no.nordicsemi.android.ble.annotation.RequestPriority;
 import no.nordicsemi.android.ble.callback.AfterCallback;
 import no.nordicsemi.android.ble.callback.BeforeCallback;
 import no.nordicsemi.android.ble.callback.DataReceivedCallback;
@@ -128,6 +129,20 @@ public final class WaitForValueChangedRequest extends AwaitingRequest<DataReceiv
 		return this;
 	}
 
+	@NonNull
+	@Override
+	public WaitForValueChangedRequest deadline(@IntRange(from = 0) final long elapsedRealtime) {
+		super.deadline(elapsedRealtime);
+		return this;
+	}
+
+	@NonNull
+	@Override
+	public WaitForValueChangedRequest priority(@RequestPriority final int priority) {
+		super.priority(priority);
+		return this;
+	}
+
 	@NonNull
 	@Override
 	public WaitForValueChangedRequest with(@NonNull final DataReceivedCallback callback) {
@@ -345,6 +360,8 @@ public final class WaitForValueChangedRequest extends AwaitingRequest<DataReceiv
 	}
 
 	void notifyValueChanged(final BluetoothDevice device, final byte[] value) {
+		if (requestHandler != null)
+			requestHandler.onPacketReceived(this, device, value != null ? value.length : 0);
 		// Keep a reference to the value callback, as it may change during execution
 		final DataReceivedCallback valueCallback = this.valueCallback;
 
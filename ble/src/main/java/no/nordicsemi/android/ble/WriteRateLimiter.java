@@ -0,0 +1,219 @@
+/*
+ * Copyright (c) 2018, Nordic Semiconductor
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its contributors may be used to endorse or promote products derived from this
+ * software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE
+ * USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package no.nordicsemi.android.ble;
+
+import androidx.annotation.IntRange;
+
+/**
+ * A token bucket limiting the rate of outgoing characteristic writes.
+ * <p>
+ * The limiter paces packets of {@link WriteRequest}s, including packets of split and
+ * pipelined writes, so that neither the given number of bytes per second nor the given number
+ * of packets per second is exceeded. This helps peripherals which can't drain incoming data
+ * fast enough, e.g. UART bridges, without the need of adding {@link SleepRequest}s between
+ * packets.
+ * <p>
+ * A packet is sent when both buckets are not empty. Its size is then taken from the buckets,
+ * which may go into debt, so packets larger than the bucket size are also allowed.
+ * The bucket size is given as a burst duration. The default burst of a few milliseconds
+ * absorbs delays of the timer without causing noticeable bursts.
+ * <p>
+ * The limiter also measures the actual rate, which may be compared to the target rate.
+ *
+ * @see BleManager#setWriteRateLimiter(WriteRateLimiter)
+ * @see BleManager#setWriteRateLimiter(java.util.UUID, WriteRateLimiter)
+ */
+public final class WriteRateLimiter {
+	/** The default burst duration, in milliseconds. */
+	public static final long DEFAULT_BURST = 10;
+	private static final double NANOS_PER_SECOND = 1_000_000_000.0;
+
+	private final long bytesPerSecond;
+	private final int packetsPerSecond;
+	private final double byteCapacity;
+	private final double packetCapacity;
+
+	private double byteTokens;
+	private double packetTokens;
+	/** The time the buckets were last refilled, in nanoseconds. */
+	private long refillTime;
+	private boolean started;
+
+	// Statistics
+	private long bytesSent;
+	private long packetsSent;
+	private long lastPacketSize;
+	private long firstPacketTime;
+	private long lastPacketTime;
+	private long throttledCount;
+
+	/**
+	 * Creates the limiter with the {@link #DEFAULT_BURST default burst}.
+	 *
+	 * @param bytesPerSecond   the maximum number of bytes sent per second, or 0 for no limit.
+	 * @param packetsPerSecond the maximum number of packets sent per second, or 0 for no limit.
+	 */
+	public WriteRateLimiter(@IntRange(from = 0) final long bytesPerSecond,
+							@IntRange(from = 0) final int packetsPerSecond) {
+		this(bytesPerSecond, packetsPerSecond, DEFAULT_BURST);
+	}
+
+	/**
+	 * Creates the limiter.
+	 *
+	 * @param bytesPerSecond   the maximum number of bytes sent per second, or 0 for no limit.
+	 * @param packetsPerSecond the maximum number of packets sent per second, or 0 for no limit.
+	 * @param burstMillis      the time for which the limiter may accumulate unused tokens,
+	 *                         in milliseconds. Packets worth this time may be sent at once
+	 *                         in addition to the current one. With 0, packets are evenly
+	 *                         spaced.
+	 */
+	public WriteRateLimiter(@IntRange(from = 0) final long bytesPerSecond,
+							@IntRange(from = 0) final int packetsPerSecond,
+							@IntRange(from = 0) final long burstMillis) {
+		if (bytesPerSecond < 0 || packetsPerSecond < 0 || burstMillis < 0)
+			throw new IllegalArgumentException("Rates and burst must not be negative");
+		if (bytesPerSecond == 0 && packetsPerSecond == 0)
+			throw new IllegalArgumentException("At least one rate must be limited");
+		this.bytesPerSecond = bytesPerSecond;
+		this.packetsPerSecond = packetsPerSecond;
+		this.byteCapacity = bytesPerSecond * burstMillis / 1000.0;
+		this.packetCapacity = packetsPerSecond * burstMillis / 1000.0;
+	}
+
+	/**
+	 * Returns the target number of bytes per second, or 0 if not limited.
+	 */
+	public long getTargetBytesPerSecond() {
+		return bytesPerSecond;
+	}
+
+	/**
+	 * Returns the target number of packets per second, or 0 if not limited.
+	 */
+	public int getTargetPacketsPerSecond() {
+		return packetsPerSecond;
+	}
+
+	/**
+	 * Returns the measured number of bytes sent per second, or 0 if fewer than 2 packets
+	 * were sent since the statistics were reset.
+	 */
+	public synchronized double getActualBytesPerSecond() {
+		final long elapsed = lastPacketTime - firstPacketTime;
+		if (packetsSent < 2 || elapsed <= 0)
+			return 0;
+		// The last packet was sent at the end of the measured period.
+		return (bytesSent - lastPacketSize) * NANOS_PER_SECOND / elapsed;
+	}
+
+	/**
+	 * Returns the measured number of packets sent per second, or 0 if fewer than 2 packets
+	 * were sent since the statistics were reset.
+	 */
+	public synchronized double getActualPacketsPerSecond() {
+		final long elapsed = lastPacketTime - firstPacketTime;
+		if (packetsSent < 2 || elapsed <= 0)
+			return 0;
+		return (packetsSent - 1) * NANOS_PER_SECOND / elapsed;
+	}
+
+	/**
+	 * Returns the number of bytes sent since the statistics were reset.
+	 */
+	public synchronized long getBytesSent() {
+		return bytesSent;
+	}
+
+	/**
+	 * Returns the number of packets sent since the statistics were reset.
+	 */
+	public synchronized long getPacketsSent() {
+		return packetsSent;
+	}
+
+	/**
+	 * Returns the number of packets which had to wait for tokens.
+	 */
+	public synchronized long getThrottledCount() {
+		return throttledCount;
+	}
+
+	/**
+	 * Clears the measured rates and counters.
+	 */
+	public synchronized void resetStatistics() {
+		bytesSent = packetsSent = lastPacketSize = throttledCount = 0;
+		firstPacketTime = lastPacketTime = 0;
+	}
+
+	/**
+	 * Returns the time after which the next packet may be sent.
+	 *
+	 * @param now the current time, in nanoseconds.
+	 * @return The delay in nanoseconds, or 0 if the packet may be sent now.
+	 */
+	synchronized long getDelay(final long now) {
+		refill(now);
+		double delay = 0;
+		if (bytesPerSecond > 0 && byteTokens < 0)
+			delay = -byteTokens * NANOS_PER_SECOND / bytesPerSecond;
+		if (packetsPerSecond > 0 && packetTokens < 0)
+			delay = Math.max(delay, -packetTokens * NANOS_PER_SECOND / packetsPerSecond);
+		if (delay > 0)
+			throttledCount++;
+		return (long) Math.ceil(delay);
+	}
+
+	/**
+	 * Takes the tokens of a packet that was sent.
+	 *
+	 * @param size the size of the packet, in bytes.
+	 * @param now  the current time, in nanoseconds.
+	 */
+	synchronized void onPacketSent(final int size, final long now) {
+		refill(now);
+		byteTokens -= size;
+		packetTokens -= 1;
+
+		if (packetsSent == 0)
+			firstPacketTime = now;
+		lastPacketTime = now;
+		lastPacketSize = size;
+		bytesSent += size;
+		packetsSent++;
+	}
+
+	private void refill(final long now) {
+		if (!started) {
+			byteTokens = byteCapacity;
+			packetTokens = packetCapacity;
+			started = true;
+		} else {
+			final double elapsed = (now - refillTime) / NANOS_PER_SECOND;
+			byteTokens = Math.min(byteCapacity, byteTokens + elapsed * bytesPerSecond);
+			packetTokens = Math.min(packetCapacity, packetTokens + elapsed * packetsPerSecond);
+		}
+		refillTime = now;
+	}
+}
@@ -29,34 +29,70 @@ import android.bluetooth.BluetoothGattDescriptor;
 import android.os.Handler;
 import android.util.Log;
 
+import java.io.IOException;
+import java.util.ArrayDeque;
 import java.util.Arrays;
+import java.util.concurrent.Executor;
 
 import androidx.annotation.IntRange;
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
+import no.nordicsemi.android.ble.annotation.RequestPriority;
 import no.nordicsemi.android.ble.annotation.WriteType;
 import no.nordicsemi.android.ble.callback.AfterCallback;
 import no.nordicsemi.android.ble.callback.BeforeCallback;
 import no.nordicsemi.android.ble.callback.DataSentCallback;
 import no.nordicsemi.android.ble.callback.FailCallback;
 import no.nordicsemi.android.ble.callback.InvalidRequestCallback;
+import no.nordicsemi.android.ble.callback.StreamProgressCallback;
 import no.nordicsemi.android.ble.callback.SuccessCallback;
 import no.nordicsemi.android.ble.callback.WriteProgressCallback;
 import no.nordicsemi.android.ble.data.Data;
+import no.nordicsemi.android.ble.data.DataSource;
 import no.nordicsemi.android.ble.data.DataSplitter;
 import no.nordicsemi.android.ble.data.DefaultMtuSplitter;
 
 @SuppressWarnings({"unused", "WeakerAccess"})
 public final class WriteRequest extends SimpleValueRequest<DataSentCallback> implements Operation {
 	private final static DataSplitter MTU_SPLITTER = new DefaultMtuSplitter();
+	/**
+	 * The number of streamed packets read ahead: the one to be sent and the following one,
+	 * which tells whether the request is complete.
+	 */
+	private final static int READ_AHEAD = 2;
 
 	private WriteProgressCallback progressCallback;
 	private DataSplitter dataSplitter;
 	private final byte[] data;
+	/** The source of streamed data, or null. */
+	@Nullable
+	private final DataSource source;
+	private StreamProgressCallback streamProgressCallback;
+	/** The number of streamed bytes sent. */
+	private long offset = 0;
+	/** The exception thrown when reading the data source, or null. */
+	@Nullable
+	private IOException sourceException;
+	private boolean sourceClosed = false;
+	/** Packets of streamed data already read from the source, or null if data aren't streamed. */
+	@Nullable
+	private final ArrayDeque<byte[]> packets;
+	/** Set when the source has no more bytes. */
+	private boolean sourceEnd = false;
+	/** Set while packets are read ahead by another thread. */
+	private boolean reading = false;
+	/** Set when the source should be closed as soon as the pending read has finished. */
+	private boolean closeAfterRead = false;
+	/** The callback invoked when the pending read has finished, or null. */
+	@Nullable
+	private Runnable onPacketsRead;
 	private final int writeType;
 	private byte[] currentChunk;
 	private byte[] nextChunk;
 	private int count = 0;
+	private int pipelineWindow = 1;
+	private int pipelinedPackets = 0;
+	private boolean coalesce = false;
 	private boolean complete = false;
 
 	WriteRequest(@NonNull final Type type) {
@@ -67,6 +103,8 @@ public final class WriteRequest extends SimpleValueRequest<DataSentCallback> imp
 		super(type, characteristic);
 		// not used:
 		this.data = null;
+		this.source = null;
+		this.packets = null;
 		this.writeType = 0;
 		// getData(int) isn't called on enabling and disabling notifications/indications.
 		this.complete = true;
@@ -78,6 +116,17 @@ public final class WriteRequest extends SimpleValueRequest<DataSentCallback> imp
 				 @WriteType final int writeType) {
 		super(type, characteristic);
 		this.data = Bytes.copy(data, offset, length);
+		this.source = null;
+		this.packets = null;
+		this.writeType = writeType;
+	}
+
+	WriteRequest(@NonNull final Type type, @Nullable final BluetoothGattCharacteristic characteristic,
+				 @NonNull final DataSource source, @WriteType final int writeType) {
+		super(type, characteristic);
+		this.data = null;
+		this.source = source;
+		this.packets = new ArrayDeque<>(READ_AHEAD);
 		this.writeType = writeType;
 	}
 
@@ -86,6 +135,8 @@ public final class WriteRequest extends SimpleValueRequest<DataSentCallback> imp
 				 @IntRange(from = 0) final int offset, @IntRange(from = 0) final int length) {
 		super(type, characteristic);
 		this.data = Bytes.copy(data, offset, length);
+		this.source = null;
+		this.packets = null;
 		this.writeType = 0;
 	}
 
@@ -94,6 +145,8 @@ public final class WriteRequest extends SimpleValueRequest<DataSentCallback> imp
 				 @IntRange(from = 0) final int offset, @IntRange(from = 0) final int length) {
 		super(type, descriptor);
 		this.data = Bytes.copy(data, offset, length);
+		this.source = null;
+		this.packets = null;
 		this.writeType = BluetoothGattCharacteristic.WRITE_TYPE_DEFAULT;
 	}
 
@@ -146,6 +199,20 @@ public final class WriteRequest extends SimpleValueRequest<DataSentCallback> imp
 		return this;
 	}
 
+	@NonNull
+	@Override
+	public WriteRequest deadline(@IntRange(from = 0) final long elapsedRealtime) {
+		super.deadline(elapsedRealtime);
+		return this;
+	}
+
+	@NonNull
+	@Override
+	public WriteRequest priority(@RequestPriority final int priority) {
+		super.priority(priority);
+		return this;
+	}
+
 	@Override
 	@NonNull
 	public WriteRequest with(@NonNull final DataSentCallback callback) {
@@ -214,6 +281,69 @@ public final class WriteRequest extends SimpleValueRequest<DataSentCallback> imp
 		return this;
 	}
 
+	/**
+	 * Enables pipelined sending of packets when the data are split into multiple packets and
+	 * {@link BluetoothGattCharacteristic#WRITE_TYPE_NO_RESPONSE} is used.
+	 * <p>
+	 * Normally, after each packet is sent the request is put back to the front of the queue and
+	 * the next packet is sent when the request is taken from the queue again. In pipelined mode
+	 * the next packet is sent directly from the write callback, without going through the queue.
+	 * Packets are still sent one at a time: each one only after the
+	 * {@link android.bluetooth.BluetoothGattCallback#onCharacteristicWrite onCharacteristicWrite}
+	 * callback of the previous one. The window limits how many packets in a row are sent from
+	 * the callback; then the request goes through the queue once, so that other requests may
+	 * be executed in between. If the outgoing buffer is full, sending the next packet is retried
+	 * after a short delay.
+	 * <p>
+	 * The order of {@link WriteProgressCallback} and {@link DataSentCallback} calls is not
+	 * affected. For other write types this option is ignored.
+	 *
+	 * @param window the number of packets sent in a row, of which all but the first are sent
+	 *               from the write callback, 1 to disable pipelining (default).
+	 * @return The request.
+	 * @see #split()
+	 */
+	@NonNull
+	public WriteRequest pipeline(@IntRange(from = 1) final int window) {
+		if (window < 1)
+			throw new IllegalArgumentException("Window must be at least 1");
+		this.pipelineWindow = window;
+		return this;
+	}
+
+	/**
+	 * Enables the "latest value wins" policy for this request.
+	 * <p>
+	 * When such request is enqueued while another request with this policy, targeting the same
+	 * characteristic, is waiting in the queue and has not yet been started, the older request
+	 * is removed from the queue and fails with {@link FailCallback#REASON_SUPERSEDED}.
+	 * The new request is enqueued at the end of the queue, as usual.
+	 * <p>
+	 * This is useful when the value is updated faster than it can be sent, and only the last
+	 * one matters, e.g. a position of a slider. Requests added to a {@link RequestQueue} or
+	 * enqueued during initialization are never superseded.
+	 *
+	 * @return The request.
+	 */
+	@NonNull
+	public WriteRequest coalesce() {
+		this.coalesce = true;
+		return this;
+	}
+
+	/**
+	 * Sets a callback notified with the offset of streamed data each time a packet was sent.
+	 * This applies only to requests writing data from a {@link DataSource}.
+	 *
+	 * @param callback the progress callback.
+	 * @return The request.
+	 */
+	@NonNull
+	public WriteRequest progress(@NonNull final StreamProgressCallback callback) {
+		this.streamProgressCallback = callback;
+		return this;
+	}
+
 	/**
 	 * This method makes sure the data sent will be split to at-most MTU-3 bytes long packets.
 	 * This is because Long Write does not work with Reliable Write.
@@ -234,6 +364,9 @@ public final class WriteRequest extends SimpleValueRequest<DataSentCallback> imp
 	 */
 	@NonNull
 	byte[] getData(@IntRange(from = 23, to = 517) final int mtu) {
+		if (source != null) {
+			return getStreamData(mtu);
+		}
 		if (dataSplitter == null || data == null) {
 			complete = true;
 			currentChunk = data;
@@ -262,6 +395,188 @@ public final class WriteRequest extends SimpleValueRequest<DataSentCallback> imp
 		return chunk != null ? chunk : new byte[] {};
 	}
 
+	/**
+	 * Returns the next packet of streamed data. Streamed data are always split into
+	 * at-most MTU-3 bytes long packets. The next packet is read ahead to know whether
+	 * the request is complete, so at most 2 packets are kept in memory.
+	 * <p>
+	 * If the packets have not been read ahead using
+	 * {@link #readAhead(int, Executor, Executor, Runnable)}, the source is read on the calling
+	 * thread.
+	 */
+	@NonNull
+	private byte[] getStreamData(final int mtu) {
+		//noinspection ConstantConditions
+		if (!reading && !isDataReady()) {
+			final int maxLength = getMaxLength(mtu);
+			try {
+				while (!sourceEnd && packets.size() < READ_AHEAD) {
+					//noinspection ConstantConditions
+					final byte[] packet = source.read(maxLength);
+					if (packet == null)
+						sourceEnd = true;
+					else
+						packets.add(packet);
+				}
+			} catch (final IOException e) {
+				sourceException = e;
+			}
+		}
+		if (sourceException != null) {
+			complete = true;
+			currentChunk = null;
+			//noinspection ConstantConditions
+			packets.clear();
+			return new byte[] {};
+		}
+		//noinspection ConstantConditions
+		final byte[] chunk = packets.poll();
+		if (packets.isEmpty() && sourceEnd) {
+			complete = true;
+		}
+		currentChunk = chunk;
+		return chunk != null ? chunk : new byte[] {};
+	}
+
+	/**
+	 * Returns whether the next packet can be returned by {@link #getData(int)} without
+	 * reading the {@link DataSource}. This is always true if data aren't streamed.
+	 */
+	boolean isDataReady() {
+		//noinspection ConstantConditions
+		return source == null || complete || sourceException != null || sourceEnd
+				|| packets.size() >= READ_AHEAD;
+	}
+
+	/**
+	 * Reads the following packets of streamed data on the given reader, so that the thread
+	 * sending them does not wait for the {@link DataSource}. The packets are handed over
+	 * to the request on the event loop, which then invokes the given callback.
+	 * Only one read is pending at a time. This method does nothing if data aren't streamed,
+	 * or if the packets have already been read, in which case the callback is invoked immediately.
+	 *
+	 * @param mtu       the current MTU.
+	 * @param reader    the executor reading the source.
+	 * @param eventLoop the executor the request is used on.
+	 * @param onRead    the callback invoked on the event loop when the packets have been read,
+	 *                  or null.
+	 */
+	void readAhead(final int mtu, @NonNull final Executor reader, @NonNull final Executor eventLoop,
+				   @Nullable final Runnable onRead) {
+		if (onRead != null)
+			onPacketsRead = onRead;
+		if (reading)
+			return;
+		if (isDataReady() || sourceClosed) {
+			onPacketsRead = null;
+			if (onRead != null)
+				onRead.run();
+			return;
+		}
+		final DataSource source = this.source;
+		final int maxLength = getMaxLength(mtu);
+		//noinspection ConstantConditions
+		final int count = READ_AHEAD - packets.size();
+		reading = true;
+		reader.execute(() -> {
+			// A null packet marks the end of data.
+			final byte[][] read = new byte[count][];
+			IOException error = null;
+			try {
+				for (int i = 0; i < count; i++) {
+					//noinspection ConstantConditions
+					read[i] = source.read(maxLength);
+					if (read[i] == null)
+						break;
+				}
+			} catch (final IOException e) {
+				error = e;
+			}
+			final IOException readError = error;
+			eventLoop.execute(() -> onPacketsRead(read, readError));
+		});
+	}
+
+	private void onPacketsRead(@NonNull final byte[][] read, @Nullable final IOException error) {
+		reading = false;
+		if (error != null) {
+			if (sourceException == null)
+				sourceException = error;
+		} else {
+			for (final byte[] packet : read) {
+				if (packet == null) {
+					sourceEnd = true;
+					break;
+				}
+				//noinspection ConstantConditions
+				packets.add(packet);
+			}
+		}
+		if (closeAfterRead) {
+			closeAfterRead = false;
+			closeSource();
+		}
+		final Runnable onRead = onPacketsRead;
+		onPacketsRead = null;
+		if (onRead != null)
+			onRead.run();
+	}
+
+	private int getMaxLength(final int mtu) {
+		// Write Request and Write Command require 3 bytes for handler and op code.
+		// Write Signed requires 12 bytes, as the signature is sent.
+		return writeType != BluetoothGattCharacteristic.WRITE_TYPE_SIGNED ? mtu - 3 : mtu - 12;
+	}
+
+	/**
+	 * Returns the exception thrown when reading the {@link DataSource}, or null. If set, the
+	 * request should fail with {@link FailCallback#REASON_IO_ERROR}. After the request has
+	 * finished, this may also be the exception thrown when closing the source.
+	 */
+	@Nullable
+	IOException getSourceException() {
+		return sourceException;
+	}
+
+	private void closeSource() {
+		if (reading) {
+			// The source is being read by another thread.
+			closeAfterRead = true;
+			return;
+		}
+		if (source != null && !sourceClosed) {
+			sourceClosed = true;
+			//noinspection ConstantConditions
+			packets.clear();
+			try {
+				source.close();
+			} catch (final IOException e) {
+				// The request has finished, the error of closing is only reported by the manager.
+				// An error of reading the source, which has failed the request, is kept instead.
+				if (sourceException == null)
+					sourceException = e;
+			}
+		}
+	}
+
+	@Override
+	boolean notifySuccess(@NonNull final BluetoothDevice device) {
+		closeSource();
+		return super.notifySuccess(device);
+	}
+
+	@Override
+	void notifyFail(@NonNull final BluetoothDevice device, final int status) {
+		closeSource();
+		super.notifyFail(device, status);
+	}
+
+	@Override
+	void notifyInvalidRequest() {
+		closeSource();
+		super.notifyInvalidRequest();
+	}
+
 	/**
 	 * Method called when packet has been sent and confirmed (when Write With Response was used),
 	 * or added to local outgoing buffer (when Write Without Response was used).
@@ -272,17 +587,37 @@ public final class WriteRequest extends SimpleValueRequest<DataSentCallback> imp
 	 * @return True, if the data received are equal to data sent.
 	 */
 	boolean notifyPacketSent(@NonNull final BluetoothDevice device, @Nullable final byte[] data) {
-		handler.post(() -> {
-			if (progressCallback != null) {
-				try {
-					progressCallback.onPacketSent(device, data, count);
-				} catch (final Throwable t) {
-					Log.e(TAG, "Exception in Progress callback", t);
+		if (requestHandler != null)
+			requestHandler.onPacketSent(this, device, data != null ? data.length : 0);
+		if (progressCallback != null) {
+			handler.post(() -> {
+				if (progressCallback != null) {
+					try {
+						progressCallback.onPacketSent(device, data, count);
+					} catch (final Throwable t) {
+						Log.e(TAG, "Exception in Progress callback", t);
+					}
 				}
-			}
-		});
+			});
+		}
 		count++;
-		if (complete) {
+		if (source != null && data != null) {
+			offset += data.length;
+			final long offset = this.offset;
+			if (streamProgressCallback != null) {
+				handler.post(() -> {
+					if (streamProgressCallback != null) {
+						try {
+							streamProgressCallback.onProgress(device, offset, source.size());
+						} catch (final Throwable t) {
+							Log.e(TAG, "Exception in Progress callback", t);
+						}
+					}
+				});
+			}
+		}
+		// The whole streamed payload is not kept in memory.
+		if (complete && valueCallback != null && source == null) {
 			handler.post(() -> {
 				if (valueCallback != null) {
 					try {
@@ -305,6 +640,33 @@ public final class WriteRequest extends SimpleValueRequest<DataSentCallback> imp
 		return !complete;
 	}
 
+	/**
+	 * Returns whether the next packet may be sent directly from the write callback.
+	 * Each call counts as one pipelined packet; when the window is exhausted this method
+	 * returns false once, so that the request goes through the queue again.
+	 *
+	 * @return True if the next packet may be sent immediately, false otherwise.
+	 */
+	boolean canPipelineNextPacket() {
+		if (pipelineWindow <= 1 || complete
+				|| writeType != BluetoothGattCharacteristic.WRITE_TYPE_NO_RESPONSE)
+			return false;
+		if (++pipelinedPackets < pipelineWindow)
+			return true;
+		pipelinedPackets = 0;
+		return false;
+	}
+
+	/**
+	 * Returns whether this request may be superseded by a newer one.
+	 *
+	 * @return True, if {@link #coalesce()} was called.
+	 * @see #coalesce()
+	 */
+	boolean isCoalescing() {
+		return coalesce;
+	}
+
 	/**
 	 * Returns the write type that should be used to send the data.
 	 *
@@ -0,0 +1,43 @@
+/*
+ * Copyright (c) 2018, Nordic Semiconductor
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its contributors may be used to endorse or promote products derived from this
+ * software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE
+ * USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package no.nordicsemi.android.ble.callback;
+
+import androidx.annotation.Nullable;
+
+@FunctionalInterface
+public interface ResultCallback<T> {
+
+	/**
+	 * A callback invoked when the request, executed using
+	 * {@link no.nordicsemi.android.ble.Request#toFuture() toFuture()}, has finished.
+	 *
+	 * @param result the result of the request, or null if the request has failed or
+	 *               does not return any value.
+	 * @param error  null, if the request completed successfully, otherwise one of
+	 *               {@link no.nordicsemi.android.ble.exception.RequestFailedException},
+	 *               {@link no.nordicsemi.android.ble.exception.DeviceDisconnectedException},
+	 *               {@link no.nordicsemi.android.ble.exception.BluetoothDisabledException} or
+	 *               {@link no.nordicsemi.android.ble.exception.InvalidRequestException}.
+	 */
+	void onResult(@Nullable final T result, @Nullable final Exception error);
+}
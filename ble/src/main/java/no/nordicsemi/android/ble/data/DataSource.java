@@ -0,0 +1,172 @@
+/*
+ * Copyright (c) 2018, Nordic Semiconductor
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its contributors may be used to endorse or promote products derived from this
+ * software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE
+ * USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package no.nordicsemi.android.ble.data;
+
+import androidx.annotation.IntRange;
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.util.Arrays;
+
+/**
+ * A source of data streamed by a {@link no.nordicsemi.android.ble.WriteRequest}.
+ * <p>
+ * Data are pulled one packet at a time, shortly before the packet is sent, so the whole
+ * payload, e.g. a firmware image or a log file, doesn't have to be kept on the heap.
+ * The manager reads the source on a background thread, one read at a time, so
+ * {@link #read(int)} may block. The source is closed when the request finishes.
+ *
+ * @see no.nordicsemi.android.ble.BleManager#writeCharacteristic(android.bluetooth.BluetoothGattCharacteristic, DataSource, int)
+ */
+public abstract class DataSource implements Closeable {
+
+	/**
+	 * Returns the next packet of data.
+	 *
+	 * @param maxLength maximum length of the returned packet. Equals to MTU-3.
+	 * @return The packet, shorter than maxLength only at the end of data,
+	 * or null if no bytes are left.
+	 * @throws IOException if reading the data failed.
+	 */
+	@Nullable
+	public abstract byte[] read(@IntRange(from = 1) final int maxLength) throws IOException;
+
+	/**
+	 * Returns the number of bytes of the whole payload, or -1 if unknown.
+	 */
+	public long size() {
+		return -1;
+	}
+
+	@Override
+	public void close() throws IOException {
+		// empty
+	}
+
+	/**
+	 * Creates a source reading from the given stream. The stream is closed when the
+	 * request finishes.
+	 *
+	 * @param stream the stream.
+	 * @return The source.
+	 */
+	@NonNull
+	public static DataSource from(@NonNull final InputStream stream) {
+		return new DataSource() {
+			@Nullable
+			@Override
+			public byte[] read(final int maxLength) throws IOException {
+				final byte[] packet = new byte[maxLength];
+				int length = 0;
+				while (length < maxLength) {
+					final int read = stream.read(packet, length, maxLength - length);
+					if (read < 0)
+						break;
+					length += read;
+				}
+				return trim(packet, length);
+			}
+
+			@Override
+			public void close() throws IOException {
+				stream.close();
+			}
+		};
+	}
+
+	/**
+	 * Creates a source reading from the given channel. The channel is closed when the
+	 * request finishes.
+	 *
+	 * @param channel the channel, in blocking mode.
+	 * @return The source.
+	 */
+	@NonNull
+	public static DataSource from(@NonNull final ReadableByteChannel channel) {
+		return new DataSource() {
+			@Nullable
+			@Override
+			public byte[] read(final int maxLength) throws IOException {
+				final ByteBuffer packet = ByteBuffer.allocate(maxLength);
+				while (packet.hasRemaining()) {
+					if (channel.read(packet) < 0)
+						break;
+				}
+				return trim(packet.array(), packet.position());
+			}
+
+			@Override
+			public void close() throws IOException {
+				channel.close();
+			}
+		};
+	}
+
+	/**
+	 * Creates a source reading a region of the file mapped into memory. The mapping is kept
+	 * outside of the heap, and the channel may be closed when this method returns.
+	 *
+	 * @param channel  the file channel, opened for reading.
+	 * @param position the position of the region in the file.
+	 * @param size     the size of the region, in bytes.
+	 * @return The source.
+	 * @throws IOException if mapping the file failed.
+	 */
+	@NonNull
+	public static DataSource map(@NonNull final FileChannel channel,
+								 @IntRange(from = 0) final long position,
+								 @IntRange(from = 0) final long size) throws IOException {
+		final MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, position, size);
+		return new DataSource() {
+			@Nullable
+			@Override
+			public byte[] read(final int maxLength) {
+				final int length = Math.min(maxLength, buffer.remaining());
+				if (length == 0)
+					return null;
+				final byte[] packet = new byte[length];
+				buffer.get(packet);
+				return packet;
+			}
+
+			@Override
+			public long size() {
+				return size;
+			}
+		};
+	}
+
+	@Nullable
+	private static byte[] trim(@NonNull final byte[] packet, final int length) {
+		if (length == 0)
+			return null;
+		return length < packet.length ? Arrays.copyOf(packet, length) : packet;
+	}
+}
@@ -0,0 +1,157 @@
+/*
+ * Copyright (c) 2018, Nordic Semiconductor
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its contributors may be used to endorse or promote products derived from this
+ * software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE
+ * USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package no.nordicsemi.android.ble.observer;
+
+import android.bluetooth.BluetoothDevice;
+
+import java.util.UUID;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import no.nordicsemi.android.ble.Request;
+import no.nordicsemi.android.ble.callback.FailCallback;
+
+/**
+ * The request observer receives events from the whole life cycle of every request executed
+ * by a {@link no.nordicsemi.android.ble.BleManager}. It may be used to feed requests into
+ * a tracing or logging backend.
+ * <p>
+ * Unlike other observers, the methods are called synchronously, on the thread on which the
+ * transition happened, which usually is the binder thread of the GATT callback. They
+ * must return quickly and must not throw. All methods have empty default implementations.
+ * When no observer is set no events are created.
+ * <p>
+ * Each method gets the request instance, which may be used to correlate events, the request
+ * type (the name of the internal request type, e.g. "WRITE" or "READ") and the UUID of the
+ * target characteristic or descriptor, or null if the request has no target attribute.
+ */
+@SuppressWarnings("unused")
+public interface RequestObserver {
+
+	/**
+	 * Called when the request has been added to the queue.
+	 *
+	 * @param device  the target device, or null if the device is not yet known.
+	 * @param request the request.
+	 * @param type    the request type.
+	 * @param uuid    the UUID of the target attribute.
+	 */
+	default void onRequestEnqueued(@Nullable final BluetoothDevice device,
+								   @NonNull final Request request,
+								   @NonNull final String type, @Nullable final UUID uuid) {
+		// empty
+	}
+
+	/**
+	 * Called when the request is about to be executed.
+	 *
+	 * @param device  the target device.
+	 * @param request the request.
+	 * @param type    the request type.
+	 * @param uuid    the UUID of the target attribute.
+	 */
+	default void onRequestStarted(@NonNull final BluetoothDevice device,
+								  @NonNull final Request request,
+								  @NonNull final String type, @Nullable final UUID uuid) {
+		// empty
+	}
+
+	/**
+	 * Called when a packet has been sent. For long writes this is called for each chunk.
+	 *
+	 * @param device  the target device.
+	 * @param request the request.
+	 * @param type    the request type.
+	 * @param uuid    the UUID of the target attribute.
+	 * @param bytes   the number of bytes sent.
+	 */
+	default void onPacketSent(@NonNull final BluetoothDevice device,
+							  @NonNull final Request request,
+							  @NonNull final String type, @Nullable final UUID uuid,
+							  final int bytes) {
+		// empty
+	}
+
+	/**
+	 * Called when a packet has been received, either as a response to a read request, or as
+	 * a notification or indication awaited by a request.
+	 *
+	 * @param device  the target device.
+	 * @param request the request.
+	 * @param type    the request type.
+	 * @param uuid    the UUID of the target attribute.
+	 * @param bytes   the number of bytes received.
+	 */
+	default void onPacketReceived(@NonNull final BluetoothDevice device,
+								  @NonNull final Request request,
+								  @NonNull final String type, @Nullable final UUID uuid,
+								  final int bytes) {
+		// empty
+	}
+
+	/**
+	 * Called when the request has completed successfully.
+	 *
+	 * @param device  the target device.
+	 * @param request the request.
+	 * @param type    the request type.
+	 * @param uuid    the UUID of the target attribute.
+	 */
+	default void onRequestSucceeded(@NonNull final BluetoothDevice device,
+									@NonNull final Request request,
+									@NonNull final String type, @Nullable final UUID uuid) {
+		// empty
+	}
+
+	/**
+	 * Called when the request has failed for a reason other than a timeout.
+	 *
+	 * @param device  the target device, or null if the request was invalid.
+	 * @param request the request.
+	 * @param type    the request type.
+	 * @param uuid    the UUID of the target attribute.
+	 * @param status  the reason, one of the REASON_* constants from {@link FailCallback},
+	 *                a GATT error, or {@link FailCallback#REASON_REQUEST_FAILED} if the
+	 *                request was invalid.
+	 */
+	default void onRequestFailed(@Nullable final BluetoothDevice device,
+								 @NonNull final Request request,
+								 @NonNull final String type, @Nullable final UUID uuid,
+								 final int status) {
+		// empty
+	}
+
+	/**
+	 * Called when the request has timed out.
+	 *
+	 * @param device  the target device.
+	 * @param request the request.
+	 * @param type    the request type.
+	 * @param uuid    the UUID of the target attribute.
+	 */
+	default void onRequestTimedOut(@NonNull final BluetoothDevice device,
+								   @NonNull final Request request,
+								   @NonNull final String type, @Nullable final UUID uuid) {
+		// empty
+	}
+}
@@ -0,0 +1,82 @@
+/*
+ * Copyright (c) 2018, Nordic Semiconductor
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its contributors may be used to endorse or promote products derived from this
+ * software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE
+ * USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package no.nordicsemi.android.ble;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class AdaptiveTimeoutTest {
+	private static final String ADDRESS = "00:11:22:33:44:55";
+
+	@Test
+	public void disabled_noTimeout() {
+		final AdaptiveTimeout timeout = new AdaptiveTimeout();
+		timeout.onSample(ADDRESS, Request.Type.CONNECT, 100);
+		assertEquals(0, timeout.getTimeout(ADDRESS, Request.Type.CONNECT));
+	}
+
+	@Test
+	public void noSamples_maxTimeout() {
+		final AdaptiveTimeout timeout = new AdaptiveTimeout();
+		timeout.enable(100, 10_000);
+		assertEquals(10_000, timeout.getTimeout(ADDRESS, Request.Type.CONNECT));
+	}
+
+	@SuppressWarnings("ConstantConditions")
+	@Test
+	public void notApplicable_noTimeout() {
+		final AdaptiveTimeout timeout = new AdaptiveTimeout();
+		timeout.enable(100, 10_000);
+		assertEquals(10_000, timeout.getTimeout(ADDRESS, Request.connect(null)));
+		assertEquals(0, timeout.getTimeout(ADDRESS, Request.connect(null).useAutoConnect(true)));
+		assertEquals(0, timeout.getTimeout(ADDRESS, Request.newWaitForNotificationRequest(null)));
+	}
+
+	@Test
+	public void stableLatency_converges() {
+		final AdaptiveTimeout timeout = new AdaptiveTimeout();
+		timeout.enable(10, 10_000);
+		for (int i = 0; i < 100; i++)
+			timeout.onSample(ADDRESS, Request.Type.CONNECT, 200);
+		final long value = timeout.getTimeout(ADDRESS, Request.Type.CONNECT);
+		assertTrue(value > 200 && value < 300);
+		// Other types and devices are not affected.
+		assertEquals(10_000, timeout.getTimeout(ADDRESS, Request.Type.DISCONNECT));
+		assertEquals(10_000, timeout.getTimeout("AA:BB:CC:DD:EE:FF", Request.Type.CONNECT));
+	}
+
+	@Test
+	public void timeout_backsOff() {
+		final AdaptiveTimeout timeout = new AdaptiveTimeout();
+		timeout.enable(10, 10_000);
+		for (int i = 0; i < 100; i++)
+			timeout.onSample(ADDRESS, Request.Type.CONNECT, 200);
+		final long value = timeout.getTimeout(ADDRESS, Request.Type.CONNECT);
+		timeout.onTimeout(ADDRESS, Request.Type.CONNECT);
+		assertEquals(2 * value, timeout.getTimeout(ADDRESS, Request.Type.CONNECT));
+		timeout.onSample(ADDRESS, Request.Type.CONNECT, 200);
+		assertEquals(value, timeout.getTimeout(ADDRESS, Request.Type.CONNECT));
+	}
+}
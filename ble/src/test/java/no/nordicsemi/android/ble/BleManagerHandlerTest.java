@@ -0,0 +1,195 @@
+/*
+ * Copyright (c) 2018, Nordic Semiconductor
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its contributors may be used to endorse or promote products derived from this
+ * software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE
+ * USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package no.nordicsemi.android.ble;
+
+import android.bluetooth.BluetoothDevice;
+import android.bluetooth.BluetoothGatt;
+import android.bluetooth.BluetoothGattCallback;
+import android.bluetooth.BluetoothGattCharacteristic;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import no.nordicsemi.android.ble.observer.RequestObserver;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+
+/**
+ * Requests are executed by the handler of a connected manager. The GATT client is replaced
+ * with a fake one, which reports completed operations on a separate thread.
+ */
+public class BleManagerHandlerTest {
+	private static final int THREADS = 4;
+	private static final int REQUESTS_PER_THREAD = 250;
+
+	/** Operations sent to the fake GATT client, waiting to be reported as completed. */
+	private final BlockingQueue<BluetoothGattCharacteristic> operations = new LinkedBlockingQueue<>();
+	private final AtomicInteger inFlight = new AtomicInteger();
+	private final AtomicInteger maxInFlight = new AtomicInteger();
+	private final Map<Request, AtomicInteger> completions = new ConcurrentHashMap<>();
+	private final CountDownLatch completed = new CountDownLatch(THREADS * REQUESTS_PER_THREAD);
+	private final RequestObserver observer = new RequestObserver() {
+		@Override
+		public void onRequestSucceeded(@NonNull final BluetoothDevice device,
+									   @NonNull final Request request,
+									   @NonNull final String type, @Nullable final UUID uuid) {
+			onCompleted(request);
+		}
+
+		@Override
+		public void onRequestFailed(@Nullable final BluetoothDevice device,
+									@NonNull final Request request,
+									@NonNull final String type, @Nullable final UUID uuid,
+									final int status) {
+			onCompleted(request);
+		}
+	};
+	private final TestManager manager = new TestManager() {
+		@NonNull
+		@Override
+		protected BleManagerGattCallback getGattCallback() {
+			return new BleManagerGattCallback() {
+				@Override
+				protected boolean isRequiredServiceSupported(@NonNull final BluetoothGatt gatt) {
+					return true;
+				}
+
+				@Override
+				protected void onServicesInvalidated() {
+					// do nothing
+				}
+
+				@Override
+				boolean gattReadCharacteristic(@NonNull final BluetoothGatt gatt,
+											   @NonNull final BluetoothGattCharacteristic characteristic) {
+					characteristic.setValue(new byte[] { 1 });
+					return send(characteristic);
+				}
+
+				@Override
+				boolean gattWriteCharacteristic(@NonNull final BluetoothGatt gatt,
+												@NonNull final BluetoothGattCharacteristic characteristic) {
+					return send(characteristic);
+				}
+			};
+		}
+	};
+	private final TestCharacteristic readCharacteristic =
+			new TestCharacteristic(BluetoothGattCharacteristic.PROPERTY_READ);
+	private final TestCharacteristic writeCharacteristic =
+			new TestCharacteristic(BluetoothGattCharacteristic.PROPERTY_WRITE);
+	private BluetoothGatt gatt;
+
+	@Before
+	public void setUp() {
+		manager.setRequestObserver(observer);
+
+		gatt = mock(BluetoothGatt.class);
+		manager.requestHandler.setConnectedGatt(mock(BluetoothDevice.class), gatt);
+	}
+
+	@Test
+	public void enqueue_racingWithGattCallbacks() throws Exception {
+		final BluetoothGattCallback callback = manager.requestHandler.getBluetoothGattCallback();
+		final Thread stack = new Thread(() -> {
+			try {
+				while (completed.getCount() > 0) {
+					final BluetoothGattCharacteristic characteristic =
+							operations.poll(10, TimeUnit.MILLISECONDS);
+					if (characteristic == null)
+						continue;
+					// The next operation may be started from the callback.
+					inFlight.decrementAndGet();
+					if (characteristic == writeCharacteristic) {
+						callback.onCharacteristicWrite(gatt, characteristic, BluetoothGatt.GATT_SUCCESS);
+					} else {
+						callback.onCharacteristicRead(gatt, characteristic, BluetoothGatt.GATT_SUCCESS);
+					}
+				}
+			} catch (final InterruptedException e) {
+				// stop
+			}
+		});
+		stack.start();
+
+		final List<Request> requests = new ArrayList<>();
+		final List<Thread> threads = new ArrayList<>();
+		for (int t = 0; t < THREADS; t++) {
+			final Request[] batch = new Request[REQUESTS_PER_THREAD];
+			for (int i = 0; i < REQUESTS_PER_THREAD; i++) {
+				batch[i] = i % 2 == 0
+						? manager.readCharacteristic(readCharacteristic)
+						: manager.writeCharacteristic(writeCharacteristic, new byte[] { (byte) i },
+								BluetoothGattCharacteristic.WRITE_TYPE_DEFAULT);
+			}
+			Collections.addAll(requests, batch);
+			threads.add(new Thread(() -> {
+				for (final Request request : batch)
+					request.enqueue();
+			}));
+		}
+		for (final Thread thread : threads)
+			thread.start();
+		for (final Thread thread : threads)
+			thread.join();
+
+		assertTrue(completed.await(10, TimeUnit.SECONDS));
+		stack.join();
+
+		// Each request completed exactly once, and operations were executed one at a time.
+		assertEquals(requests.size(), completions.size());
+		for (final Request request : requests)
+			assertEquals(1, completions.get(request).get());
+		assertEquals(1, maxInFlight.get());
+		assertEquals(0, inFlight.get());
+		assertTrue(operations.isEmpty());
+	}
+
+	private boolean send(@NonNull final BluetoothGattCharacteristic characteristic) {
+		final int count = inFlight.incrementAndGet();
+		maxInFlight.accumulateAndGet(count, Math::max);
+		operations.add(characteristic);
+		return true;
+	}
+
+	private void onCompleted(@NonNull final Request request) {
+		completions.computeIfAbsent(request, r -> new AtomicInteger()).incrementAndGet();
+		completed.countDown();
+	}
+}
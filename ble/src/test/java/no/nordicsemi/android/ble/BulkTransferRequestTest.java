@@ -0,0 +1,139 @@
+/*
+ * Copyright (c) 2018, Nordic Semiconductor
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its contributors may be used to endorse or promote products derived from this
+ * software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE
+ * USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package no.nordicsemi.android.ble;
+
+import android.bluetooth.BluetoothGattCharacteristic;
+
+import org.junit.Test;
+
+import java.util.UUID;
+
+import no.nordicsemi.android.ble.callback.PhyCallback;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+@SuppressWarnings("ConstantConditions")
+public class BulkTransferRequestTest {
+	private final CallbackHandler handler = new SynchronousHandler();
+	private final BluetoothGattCharacteristic characteristic =
+			new BluetoothGattCharacteristic(UUID.randomUUID(),
+					BluetoothGattCharacteristic.PROPERTY_WRITE,
+					BluetoothGattCharacteristic.PERMISSION_WRITE);
+	private long now;
+
+	@Test
+	public void steps_negotiateTransferAndRestore() {
+		final WriteRequest write = newWriteRequest();
+		final BulkTransferRequest bulk = Request.newBulkTransferRequest()
+				.restoreConnectionPriority(ConnectionPriorityRequest.CONNECTION_PRIORITY_LOW_POWER);
+		bulk.add(write);
+		assertEquals(5, bulk.size());
+
+		final MtuRequest mtu = (MtuRequest) next(bulk);
+		assertEquals(BulkTransferRequest.MAX_MTU, mtu.getRequiredMtu());
+		mtu.notifyMtuChanged(null, 247);
+		assertEquals(247, bulk.getMtu());
+		assertEquals(4, bulk.size());
+
+		final PhyRequest phy = (PhyRequest) next(bulk);
+		assertEquals(PhyRequest.PHY_LE_2M_MASK, phy.getPreferredTxPhy());
+		phy.notifyPhyChanged(null, PhyCallback.PHY_LE_2M, PhyCallback.PHY_LE_1M);
+		assertEquals(PhyCallback.PHY_LE_2M, bulk.getTxPhy());
+		assertEquals(PhyCallback.PHY_LE_1M, bulk.getRxPhy());
+
+		final ConnectionPriorityRequest high = (ConnectionPriorityRequest) next(bulk);
+		assertEquals(ConnectionPriorityRequest.CONNECTION_PRIORITY_HIGH, high.getRequiredPriority());
+		high.notifyConnectionPriorityChanged(null, 12, 0, 500);
+		assertEquals(12, bulk.getConnectionInterval());
+		assertEquals(2, bulk.size());
+
+		// Only packets of the added requests are counted, during 2 seconds.
+		now = 1_000_000_000L;
+		assertSame(write, next(bulk));
+		bulk.onPacket(244);
+		bulk.onPacket(6);
+		assertEquals(250, bulk.getBytesTransferred());
+		assertEquals(0, bulk.getBytesPerSecond(), 0);
+		now = 3_000_000_000L;
+
+		final ConnectionPriorityRequest restore = (ConnectionPriorityRequest) next(bulk);
+		assertEquals(ConnectionPriorityRequest.CONNECTION_PRIORITY_LOW_POWER,
+				restore.getRequiredPriority());
+		bulk.onPacket(20);
+		assertEquals(250, bulk.getBytesTransferred());
+		assertEquals(125, bulk.getBytesPerSecond(), 0.001);
+		assertEquals(0, bulk.size());
+		assertFalse(bulk.hasMore());
+		assertNull(bulk.getNext());
+
+		final boolean[] succeeded = new boolean[1];
+		bulk.done(device -> succeeded[0] = true);
+		assertTrue(bulk.notifySuccess(null));
+		assertTrue(succeeded[0]);
+	}
+
+	@Test
+	public void transferFailed_priorityRestored() {
+		final WriteRequest first = newWriteRequest();
+		final WriteRequest second = newWriteRequest();
+		final BulkTransferRequest bulk = Request.newBulkTransferRequest();
+		bulk.add(first).add(second);
+		for (int i = 0; i < 3; i++)
+			next(bulk);
+
+		assertSame(first, next(bulk));
+		first.notifyFail(null, 0x85);
+
+		// The remaining request is skipped, but the connection priority is still restored.
+		assertEquals(1, bulk.size());
+		final ConnectionPriorityRequest restore = (ConnectionPriorityRequest) next(bulk);
+		assertEquals(ConnectionPriorityRequest.CONNECTION_PRIORITY_BALANCED,
+				restore.getRequiredPriority());
+		assertFalse(bulk.hasMore());
+
+		final int[] status = new int[1];
+		bulk.fail((device, s) -> status[0] = s);
+		assertFalse(bulk.notifySuccess(null));
+		assertEquals(0x85, status[0]);
+	}
+
+	private WriteRequest newWriteRequest() {
+		return Request.newWriteRequest(characteristic, new byte[] { 1, 2, 3 },
+				BluetoothGattCharacteristic.WRITE_TYPE_DEFAULT);
+	}
+
+	/**
+	 * Returns the next request of the bulk transfer, as the handler would execute it.
+	 */
+	private Request next(final BulkTransferRequest bulk) {
+		bulk.handler = handler;
+		bulk.clock = () -> now;
+		final Request request = bulk.getNext();
+		request.handler = handler;
+		return request;
+	}
+}
@@ -0,0 +1,70 @@
+/*
+ * Copyright (c) 2018, Nordic Semiconductor
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its contributors may be used to endorse or promote products derived from this
+ * software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE
+ * USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package no.nordicsemi.android.ble;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+@SuppressWarnings("ConstantConditions")
+public class ConnectRequestTest {
+
+	@Test
+	public void preDiscoveryOptions_notSetByDefault() {
+		final ConnectRequest request = Request.connect(null);
+		assertFalse(request.hasPreDiscoveryOptions());
+		assertEquals(0, request.getPreDiscoveryMtu());
+		assertEquals(-1, request.getPreDiscoveryConnectionPriority());
+	}
+
+	@Test
+	public void requestMtuBeforeDiscovery_clamped() {
+		final ConnectRequest request = Request.connect(null).requestMtuBeforeDiscovery(10);
+		assertTrue(request.hasPreDiscoveryOptions());
+		assertEquals(23, request.getPreDiscoveryMtu());
+		assertEquals(517, request.requestMtuBeforeDiscovery(1000).getPreDiscoveryMtu());
+		assertEquals(247, request.requestMtuBeforeDiscovery(247).getPreDiscoveryMtu());
+	}
+
+	@Test
+	public void preferredPhyBeforeDiscovery() {
+		final ConnectRequest request = Request.connect(null)
+				.setPreferredPhyBeforeDiscovery(PhyRequest.PHY_LE_2M_MASK, PhyRequest.PHY_LE_1M_MASK,
+						PhyRequest.PHY_OPTION_S2);
+		assertTrue(request.hasPreDiscoveryOptions());
+		assertEquals(PhyRequest.PHY_LE_2M_MASK, request.getPreDiscoveryTxPhy());
+		assertEquals(PhyRequest.PHY_LE_1M_MASK, request.getPreDiscoveryRxPhy());
+		assertEquals(PhyRequest.PHY_OPTION_S2, request.getPreDiscoveryPhyOptions());
+	}
+
+	@Test
+	public void connectionPriorityBeforeDiscovery() {
+		final ConnectRequest request = Request.connect(null).requestConnectionPriorityBeforeDiscovery(
+				ConnectionPriorityRequest.CONNECTION_PRIORITY_BALANCED);
+		assertTrue(request.hasPreDiscoveryOptions());
+		assertEquals(ConnectionPriorityRequest.CONNECTION_PRIORITY_BALANCED,
+				request.getPreDiscoveryConnectionPriority());
+	}
+}
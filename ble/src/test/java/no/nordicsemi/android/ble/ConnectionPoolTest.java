@@ -0,0 +1,197 @@
+/*
+ * Copyright (c) 2018, Nordic Semiconductor
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its contributors may be used to endorse or promote products derived from this
+ * software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE
+ * USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package no.nordicsemi.android.ble;
+
+import android.bluetooth.BluetoothDevice;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+import no.nordicsemi.android.ble.callback.FailCallback;
+import no.nordicsemi.android.ble.observer.RequestObserver;
+
+import static org.junit.Assert.assertEquals;
+
+@SuppressWarnings("ConstantConditions")
+public class ConnectionPoolTest {
+
+	/**
+	 * A pool of managers that never connect. The devices are not available in tests.
+	 */
+	private static class TestPool extends ConnectionPool<TestManager> {
+
+		TestPool(final int maxConnections, @NonNull final RadioScheduler scheduler) {
+			super(maxConnections, device -> {
+				final TestManager manager = new TestManager();
+				manager.setRadioScheduler(scheduler);
+				return manager;
+			});
+		}
+
+		@NonNull
+		@Override
+		protected ConnectRequest createConnectRequest(@NonNull final TestManager manager,
+													  @NonNull final BluetoothDevice device) {
+			return Request.connect(device).setRequestHandler(manager.requestHandler);
+		}
+	}
+
+	private final RadioScheduler scheduler = new RadioScheduler(1);
+	/** Holds the only slot of the scheduler, so that the managers don't execute any request. */
+	private final RadioScheduler.Client blocker = new RadioScheduler.Client() {
+		@Override
+		void onSlotGranted(@NonNull final RadioScheduler scheduler) {
+			// do nothing
+		}
+
+		@Override
+		int getQueueDepth() {
+			return 0;
+		}
+	};
+
+	@Before
+	public void setUp() {
+		scheduler.acquire(blocker, Request.PRIORITY_INTERACTIVE);
+	}
+
+	@Test
+	public void onRequest_limitsConnections() {
+		final TestPool pool = new TestPool(1, scheduler);
+		final ConnectionPool.Entry<TestManager> a = pool.getEntry(null, "A");
+		final ConnectionPool.Entry<TestManager> b = pool.getEntry(null, "B");
+
+		assertEquals(ConnectionPool.CONNECT, a.onRequest(false));
+		assertEquals(ConnectionPool.ADMITTED, a.onRequest(false));
+		assertEquals(1, pool.getConnectionCount());
+
+		// The request waits in the queue of the manager.
+		b.manager.sleep(10).enqueue();
+		assertEquals(1, pool.getWaitingManagers());
+		assertEquals(ConnectionPool.WAIT, b.onRequest(false));
+
+		// The connection attempt of A fails. B gets the connection and waits for a radio slot
+		// to execute its connect request.
+		a.onDisconnected(false);
+		assertEquals(0, pool.getWaitingManagers());
+		assertEquals(1, pool.getConnectionCount());
+		assertEquals(1, scheduler.getWaitingManagers());
+
+		assertEquals(ConnectionPool.FAIL, a.onRequest(false));
+		a.onIdle();
+		assertEquals(ConnectionPool.WAIT, a.onRequest(false));
+
+		assertEquals(0, pool.getHitCount());
+		assertEquals(3, pool.getMissCount());
+		assertEquals(0, pool.getEvictionCount());
+	}
+
+	@Test
+	public void onRequest_evictsLeastRecentlyUsedIdleConnection() {
+		final TestPool pool = new TestPool(2, scheduler);
+		final ConnectionPool.Entry<TestManager> a = pool.getEntry(null, "A");
+		final ConnectionPool.Entry<TestManager> b = pool.getEntry(null, "B");
+		final ConnectionPool.Entry<TestManager> c = pool.getEntry(null, "C");
+
+		assertEquals(ConnectionPool.CONNECT, a.onRequest(false));
+		a.onReady();
+		assertEquals(ConnectionPool.CONNECT, b.onRequest(false));
+		b.onReady();
+		assertEquals(ConnectionPool.ADMITTED, a.onRequest(true));
+
+		// B is closed, as A was used more recently. The disconnect request waits for a slot.
+		c.manager.sleep(10).enqueue();
+		assertEquals(1, pool.getEvictionCount());
+		assertEquals(1, pool.getWaitingManagers());
+		assertEquals(1, scheduler.getWaitingManagers());
+		assertEquals(ConnectionPool.ADMITTED, b.onRequest(false));
+
+		// Another request must not close another connection.
+		assertEquals(ConnectionPool.WAIT, c.onRequest(false));
+		assertEquals(1, pool.getEvictionCount());
+
+		b.onDisconnected(true);
+		assertEquals(0, pool.getWaitingManagers());
+		assertEquals(2, pool.getConnectionCount());
+		assertEquals(ConnectionPool.ADMITTED, c.onRequest(false));
+
+		assertEquals(1, pool.getHitCount());
+		assertEquals(3, pool.getMissCount());
+		pool.resetStatistics();
+		assertEquals(0, pool.getHitCount());
+		assertEquals(0, pool.getMissCount());
+		assertEquals(0, pool.getEvictionCount());
+	}
+
+	@Test
+	public void onRequest_busyConnectionNotEvicted() {
+		final TestPool pool = new TestPool(1, scheduler);
+		final ConnectionPool.Entry<TestManager> a = pool.getEntry(null, "A");
+		final ConnectionPool.Entry<TestManager> b = pool.getEntry(null, "B");
+
+		assertEquals(ConnectionPool.CONNECT, a.onRequest(false));
+		a.onReady();
+		a.manager.sleep(10).enqueue();
+
+		assertEquals(ConnectionPool.WAIT, b.onRequest(false));
+		assertEquals(0, pool.getEvictionCount());
+		assertEquals(1, pool.getWaitingManagers());
+	}
+
+	@Test
+	public void connectFailed_waitingRequestsFail() {
+		final List<Integer> reasons = new ArrayList<>();
+		final TestPool pool = new TestPool(1, scheduler);
+		final ConnectionPool.Entry<TestManager> a = pool.getEntry(null, "A");
+		a.manager.setRequestObserver(new RequestObserver() {
+			@Override
+			public void onRequestFailed(@Nullable final BluetoothDevice device,
+										@NonNull final Request request,
+										@NonNull final String type, @Nullable final UUID uuid,
+										final int status) {
+				reasons.add(status);
+			}
+		});
+
+		// The connect request and the sleep request wait for a radio slot.
+		a.manager.sleep(10).enqueue();
+		assertEquals(1, pool.getConnectionCount());
+
+		a.onDisconnected(false);
+		assertEquals(0, pool.getConnectionCount());
+		scheduler.release(blocker, -1);
+
+		assertEquals(2, reasons.size());
+		assertEquals(FailCallback.REASON_DEVICE_DISCONNECTED, (int) reasons.get(0));
+		assertEquals(FailCallback.REASON_DEVICE_DISCONNECTED, (int) reasons.get(1));
+		// The pool will connect again for the next request.
+		assertEquals(ConnectionPool.CONNECT, a.onRequest(false));
+	}
+}
@@ -0,0 +1,100 @@
+/*
+ * Copyright (c) 2018, Nordic Semiconductor
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its contributors may be used to endorse or promote products derived from this
+ * software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE
+ * USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package no.nordicsemi.android.ble;
+
+import org.junit.Test;
+
+import static no.nordicsemi.android.ble.ConnectionPriorityPolicy.NONE;
+import static no.nordicsemi.android.ble.ConnectionPriorityRequest.CONNECTION_PRIORITY_BALANCED;
+import static no.nordicsemi.android.ble.ConnectionPriorityRequest.CONNECTION_PRIORITY_HIGH;
+import static no.nordicsemi.android.ble.ConnectionPriorityRequest.CONNECTION_PRIORITY_LOW_POWER;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class ConnectionPriorityPolicyTest {
+
+	@Test
+	public void queueDepth_raisesAndFallsBack() {
+		final ConnectionPriorityPolicy policy =
+				new ConnectionPriorityPolicy(3, 0, 1000, CONNECTION_PRIORITY_LOW_POWER);
+		// A new connection uses the balanced priority, so the idle one is requested.
+		assertEquals(CONNECTION_PRIORITY_LOW_POWER, policy.getPriorityToRequest(0));
+		policy.onPriorityRequested(CONNECTION_PRIORITY_LOW_POWER);
+
+		policy.onQueueDepth(2, 0);
+		assertEquals(NONE, policy.getPriorityToRequest(0));
+		policy.onQueueDepth(3, 100);
+		assertEquals(CONNECTION_PRIORITY_HIGH, policy.getPriorityToRequest(100));
+		policy.onPriorityRequested(CONNECTION_PRIORITY_HIGH);
+
+		assertEquals(NONE, policy.getPriorityToRequest(1000));
+		assertEquals(100, policy.getIdleDelay(1000));
+		assertEquals(CONNECTION_PRIORITY_LOW_POWER, policy.getPriorityToRequest(1100));
+		assertEquals(2, policy.getSwitchCount());
+	}
+
+	@Test
+	public void notificationRate_raises() {
+		final ConnectionPriorityPolicy policy =
+				new ConnectionPriorityPolicy(3, 5, 1000, CONNECTION_PRIORITY_BALANCED);
+		// 5 notifications spread over more than a second.
+		for (int i = 0; i < 5; i++)
+			policy.onNotification(i * 300);
+		assertEquals(NONE, policy.getPriorityToRequest(1200));
+		// The last 5 within a second.
+		for (int i = 0; i < 4; i++)
+			policy.onNotification(1300 + i * 100);
+		assertEquals(CONNECTION_PRIORITY_HIGH, policy.getPriorityToRequest(1600));
+	}
+
+	@Test
+	public void rejectedPriority_notRetriedUntilLoadChanges() {
+		final ConnectionPriorityPolicy policy =
+				new ConnectionPriorityPolicy(3, 0, 1000, CONNECTION_PRIORITY_BALANCED);
+		policy.onQueueDepth(3, 0);
+		assertEquals(CONNECTION_PRIORITY_HIGH, policy.getPriorityToRequest(0));
+		policy.onPriorityRejected(CONNECTION_PRIORITY_HIGH);
+		assertEquals(NONE, policy.getPriorityToRequest(0));
+		policy.onQueueDepth(3, 500);
+		assertEquals(NONE, policy.getPriorityToRequest(500));
+
+		// The load has dropped and risen again.
+		assertEquals(NONE, policy.getPriorityToRequest(1500));
+		policy.onQueueDepth(3, 1600);
+		assertEquals(CONNECTION_PRIORITY_HIGH, policy.getPriorityToRequest(1600));
+		assertEquals(0, policy.getSwitchCount());
+	}
+
+	@Test
+	public void connectionUpdated_confirmsInterval() {
+		final ConnectionPriorityPolicy policy = new ConnectionPriorityPolicy();
+		policy.onPriorityRequested(CONNECTION_PRIORITY_HIGH);
+		assertTrue(policy.onConnectionUpdated(9));
+		policy.onPriorityRequested(CONNECTION_PRIORITY_BALANCED);
+		assertFalse(policy.onConnectionUpdated(9));
+		assertEquals(1, policy.getConfirmedCount());
+		assertEquals(1, policy.getUnconfirmedCount());
+		assertEquals(9, policy.getLastInterval());
+	}
+}
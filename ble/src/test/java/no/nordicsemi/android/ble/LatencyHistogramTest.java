@@ -0,0 +1,57 @@
+/*
+ * Copyright (c) 2018, Nordic Semiconductor
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its contributors may be used to endorse or promote products derived from this
+ * software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE
+ * USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package no.nordicsemi.android.ble;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class LatencyHistogramTest {
+
+	@Test
+	public void indexOf_bucketContainsValue() {
+		for (long value = 0; value < 1_000_000; value += 37) {
+			final int index = LatencyHistogram.indexOf(value);
+			final long representative = LatencyHistogram.valueOf(index);
+			// Relative error is bounded by the sub-bucket resolution.
+			assertTrue(Math.abs(representative - value) <= Math.max(1, value / 4));
+			assertTrue(index <= LatencyHistogram.indexOf(value + 1));
+		}
+	}
+
+	@Test
+	public void percentiles() {
+		final LatencyHistogram histogram = new LatencyHistogram();
+		assertEquals(0, histogram.getP50());
+		for (int i = 0; i < 99; i++)
+			histogram.record(100);
+		histogram.record(100_000);
+		histogram.record(-1);
+
+		assertEquals(100, histogram.getCount());
+		assertEquals(LatencyHistogram.valueOf(LatencyHistogram.indexOf(100)), histogram.getP50());
+		assertEquals(LatencyHistogram.valueOf(LatencyHistogram.indexOf(100)), histogram.getP99());
+		assertEquals(LatencyHistogram.valueOf(LatencyHistogram.indexOf(100_000)), histogram.getPercentile(100));
+	}
+}
@@ -0,0 +1,49 @@
+/*
+ * Copyright (c) 2018, Nordic Semiconductor
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its contributors may be used to endorse or promote products derived from this
+ * software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE
+ * USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package no.nordicsemi.android.ble;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+public class MetricsRecorderTest {
+
+	@Test
+	public void onDeviceReady_routedByPreDiscovery() {
+		final MetricsRecorder recorder = new MetricsRecorder();
+		recorder.onDeviceReady(300_000_000L, false);
+		recorder.onDeviceReady(100_000_000L, true);
+		recorder.onDeviceReady(120_000_000L, true);
+
+		final RequestMetrics metrics = recorder.getSnapshot();
+		final LatencyHistogram timeToReady = metrics.getTimeToReady(false);
+		final LatencyHistogram timeToReadyPreDiscovery = metrics.getTimeToReady(true);
+		assertEquals(1, timeToReady.getCount());
+		assertEquals(2, timeToReadyPreDiscovery.getCount());
+		// Times are recorded in microseconds.
+		assertEquals(LatencyHistogram.valueOf(LatencyHistogram.indexOf(300_000)), timeToReady.getP50());
+
+		recorder.reset();
+		assertEquals(0, recorder.getSnapshot().getTimeToReady(true).getCount());
+	}
+}
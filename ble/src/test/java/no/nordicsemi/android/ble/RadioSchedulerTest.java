@@ -0,0 +1,151 @@
+/*
+ * Copyright (c) 2018, Nordic Semiconductor
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its contributors may be used to endorse or promote products derived from this
+ * software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE
+ * USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package no.nordicsemi.android.ble;
+
+import androidx.annotation.NonNull;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class RadioSchedulerTest {
+
+	private static class TestClient extends RadioScheduler.Client {
+		private final List<TestClient> grants;
+		final int priority;
+		int operations;
+
+		TestClient(final List<TestClient> grants, final int priority) {
+			this.grants = grants;
+			this.priority = priority;
+		}
+
+		@Override
+		void onSlotGranted(@NonNull final RadioScheduler scheduler) {
+			grants.add(this);
+		}
+
+		@Override
+		int getQueueDepth() {
+			return 1;
+		}
+	}
+
+	@Test
+	public void acquire_limitsOperationsInFlight() {
+		final List<TestClient> grants = new ArrayList<>();
+		final RadioScheduler scheduler = new RadioScheduler(2);
+		final TestClient a = new TestClient(grants, Request.PRIORITY_INTERACTIVE);
+		final TestClient b = new TestClient(grants, Request.PRIORITY_INTERACTIVE);
+		final TestClient c = new TestClient(grants, Request.PRIORITY_INTERACTIVE);
+		assertTrue(scheduler.acquire(a, a.priority));
+		assertTrue(scheduler.acquire(b, b.priority));
+		assertFalse(scheduler.acquire(c, c.priority));
+		assertEquals(2, scheduler.getOperationsInFlight());
+		assertEquals(1, scheduler.getWaitingManagers());
+
+		assertFalse(scheduler.release(a, -1));
+		assertEquals(1, grants.size());
+		assertEquals(c, grants.get(0));
+		assertEquals(2, scheduler.getOperationsInFlight());
+		assertEquals(0, scheduler.getWaitingManagers());
+	}
+
+	@Test
+	public void release_sharesSlotByPriority() {
+		final List<TestClient> grants = new ArrayList<>();
+		final RadioScheduler scheduler = new RadioScheduler(1);
+		final TestClient control = new TestClient(grants, Request.PRIORITY_CONTROL);
+		final TestClient bulk1 = new TestClient(grants, Request.PRIORITY_BULK);
+		final TestClient bulk2 = new TestClient(grants, Request.PRIORITY_BULK);
+		assertTrue(scheduler.acquire(bulk1, bulk1.priority));
+		assertFalse(scheduler.acquire(bulk2, bulk2.priority));
+		assertFalse(scheduler.acquire(control, control.priority));
+
+		// Each client always has more requests to execute.
+		TestClient holder = bulk1;
+		for (int i = 0; i < 600; i++) {
+			holder.operations++;
+			if (!scheduler.release(holder, holder.priority)) {
+				assertEquals(1, grants.size());
+				holder = grants.remove(0);
+			}
+		}
+		assertEquals(1, scheduler.getOperationsInFlight());
+		// The quantum of a CONTROL client is 4 times bigger than of a BULK one.
+		assertEquals(400, control.operations, 4);
+		assertEquals(100, bulk1.operations, 4);
+		assertEquals(100, bulk2.operations, 4);
+	}
+
+	@Test
+	public void cancel_removesWaitingClient() {
+		final List<TestClient> grants = new ArrayList<>();
+		final RadioScheduler scheduler = new RadioScheduler(1);
+		final TestClient a = new TestClient(grants, Request.PRIORITY_INTERACTIVE);
+		final TestClient b = new TestClient(grants, Request.PRIORITY_INTERACTIVE);
+		assertTrue(scheduler.acquire(a, a.priority));
+		assertFalse(scheduler.acquire(b, b.priority));
+		scheduler.cancel(b);
+		scheduler.release(a, -1);
+		assertTrue(grants.isEmpty());
+		assertEquals(0, scheduler.getOperationsInFlight());
+	}
+
+	@SuppressWarnings("ConstantConditions")
+	@Test
+	public void grantedSlot_releasedWhileWaitingForConnection() {
+		final List<TestClient> grants = new ArrayList<>();
+		final RadioScheduler scheduler = new RadioScheduler(1);
+		final TestClient a = new TestClient(grants, Request.PRIORITY_INTERACTIVE);
+		final TestClient b = new TestClient(grants, Request.PRIORITY_INTERACTIVE);
+		final ConnectionPool<TestManager> pool =
+				new ConnectionPool<>(1, device -> new TestManager());
+		final ConnectionPool.Entry<TestManager> entry = pool.getEntry(null, "A");
+		final ConnectionPool.Entry<TestManager> other = pool.getEntry(null, "B");
+		entry.manager.setRadioScheduler(scheduler);
+
+		// The manager is connecting and waits for a slot to execute a request.
+		assertEquals(ConnectionPool.CONNECT, entry.onRequest(false));
+		assertTrue(scheduler.acquire(a, a.priority));
+		entry.manager.sleep(10).enqueue();
+		assertFalse(scheduler.acquire(b, b.priority));
+		assertEquals(2, scheduler.getWaitingManagers());
+
+		// The device disconnects and the other device takes the only connection.
+		entry.onDisconnected(true);
+		assertEquals(ConnectionPool.CONNECT, other.onRequest(false));
+
+		// The manager gets the slot, but has to wait for a connection now.
+		scheduler.release(a, -1);
+		assertEquals(1, pool.getWaitingManagers());
+		assertEquals(1, grants.size());
+		assertEquals(b, grants.get(0));
+		assertEquals(1, scheduler.getOperationsInFlight());
+	}
+}
@@ -0,0 +1,100 @@
+/*
+ * Copyright (c) 2018, Nordic Semiconductor
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its contributors may be used to endorse or promote products derived from this
+ * software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE
+ * USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package no.nordicsemi.android.ble;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Random;
+
+import no.nordicsemi.android.ble.callback.PhyCallback;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class ReconnectionTest {
+
+	/** A random returning the maximum value, so the delay equals the backoff. */
+	private static final class MaxRandom extends Random {
+		@Override
+		public double nextDouble() {
+			return 0.9999999999;
+		}
+	}
+
+	@Test
+	public void backoff_doublesUpToMax() {
+		final Reconnection reconnection = new Reconnection(6, 100, 1000, new MaxRandom());
+		final long[] expected = { 100, 200, 400, 800, 1000, 1000 };
+		for (final long delay : expected) {
+			assertTrue(reconnection.hasAttemptsLeft());
+			assertEquals(delay, reconnection.nextDelay());
+		}
+		assertFalse(reconnection.hasAttemptsLeft());
+
+		reconnection.onReady();
+		assertTrue(reconnection.hasAttemptsLeft());
+		assertEquals(100, reconnection.nextDelay());
+	}
+
+	@Test
+	public void jitter_withinBackoff() {
+		final Reconnection reconnection = new Reconnection(1000, 100, 5000, new Random(42));
+		long sum = 0;
+		for (int attempt = 0; attempt < 1000; attempt++) {
+			final long backoff = Math.min(5000, 100L << Math.min(attempt, 20));
+			final long delay = reconnection.nextDelay();
+			assertTrue(delay >= 0 && delay <= backoff);
+			sum += delay;
+		}
+		// Delays are spread over the whole range, not clustered at the backoff.
+		final long mean = sum / 1000;
+		assertTrue(mean > 2000 && mean < 3000);
+	}
+
+	@Test
+	@SuppressWarnings("ConstantConditions")
+	public void restore_skipsStateSetByInitialization() {
+		final Reconnection reconnection = new Reconnection(1, 100, 1000, new Random());
+		reconnection.onPhyChanged(PhyCallback.PHY_LE_2M, PhyCallback.PHY_LE_2M);
+		reconnection.onConnectionPriorityChanged(ConnectionPriorityRequest.CONNECTION_PRIORITY_HIGH);
+		reconnection.onLinkLoss(247, new HashMap<>());
+
+		// Without subscriptions, the GATT client is not used.
+		final List<Request> restored = reconnection.restore(null,
+				Collections.singletonList(Request.newMtuRequest(100)));
+		assertEquals(2, restored.size());
+		assertEquals(Request.Type.SET_PREFERRED_PHY, restored.get(0).type);
+		assertEquals(Request.Type.REQUEST_CONNECTION_PRIORITY, restored.get(1).type);
+
+		assertTrue(reconnection.restore(null, Arrays.asList(Request.newMtuRequest(100),
+				Request.newSetPreferredPhyRequest(PhyRequest.PHY_LE_1M_MASK,
+						PhyRequest.PHY_LE_1M_MASK, PhyRequest.PHY_OPTION_NO_PREFERRED),
+				Request.newConnectionPriorityRequest(
+						ConnectionPriorityRequest.CONNECTION_PRIORITY_BALANCED))).isEmpty());
+	}
+}
@@ -0,0 +1,191 @@
+/*
+ * Copyright (c) 2018, Nordic Semiconductor
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its contributors may be used to endorse or promote products derived from this
+ * software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE
+ * USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package no.nordicsemi.android.ble;
+
+import android.bluetooth.BluetoothDevice;
+import android.bluetooth.BluetoothGatt;
+import android.bluetooth.BluetoothGattCallback;
+import android.bluetooth.BluetoothGattCharacteristic;
+
+import androidx.annotation.NonNull;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.lang.management.ManagementFactory;
+
+import no.nordicsemi.android.ble.callback.SuccessCallback;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeTrue;
+import static org.mockito.Mockito.mock;
+
+/**
+ * Verifies that requests which are only enqueued, and never awaited, do not allocate
+ * synchronization primitives or callback wrappers that are not needed.
+ * <p>
+ * Requests are executed by the handler of a connected manager. The GATT client is replaced
+ * with a fake one, which accepts every operation. Operations are reported as completed
+ * by the test, on the same thread.
+ */
+public class RequestAllocationTest {
+	/**
+	 * Maximum number of bytes allocated on average per request by its execution, in addition
+	 * to creating it. Executing a request posts 2 tasks to the event loop, enqueuing it and
+	 * handling the GATT callback, each with a queue node, and one task invoking the done
+	 * callback. The log messages are created lazily, but their suppliers are allocated.
+	 * This is about 200 bytes with compressed references.
+	 */
+	private final static long EXECUTION_BUDGET_PER_REQUEST = 256;
+	private final static int WARM_UP = 20_000;
+	private final static int CYCLES = 10_000;
+
+	private final CallbackHandler handler = new SynchronousHandler();
+	private final TestManager manager = new TestManager() {
+		@NonNull
+		@Override
+		protected BleManagerGattCallback getGattCallback() {
+			return new BleManagerGattCallback() {
+				@Override
+				protected boolean isRequiredServiceSupported(@NonNull final BluetoothGatt gatt) {
+					return true;
+				}
+
+				@Override
+				protected void onServicesInvalidated() {
+					// do nothing
+				}
+
+				@Override
+				boolean gattReadCharacteristic(@NonNull final BluetoothGatt gatt,
+											   @NonNull final BluetoothGattCharacteristic characteristic) {
+					return true;
+				}
+
+				@Override
+				boolean gattWriteCharacteristic(@NonNull final BluetoothGatt gatt,
+												@NonNull final BluetoothGattCharacteristic characteristic) {
+					return true;
+				}
+			};
+		}
+	};
+	private final TestCharacteristic characteristic = new TestCharacteristic(
+			BluetoothGattCharacteristic.PROPERTY_WRITE | BluetoothGattCharacteristic.PROPERTY_READ);
+	private final byte[] value = new byte[] { 1, 2, 3, 4 };
+	/** Keeps the requests reachable, so that their allocations can't be optimized out. */
+	private final Request[] requests = new Request[2 * CYCLES];
+	private int completed;
+	private final SuccessCallback doneCallback = device -> completed++;
+	private BluetoothGatt gatt;
+	private BluetoothGattCallback callback;
+
+	@Before
+	public void setUp() {
+		gatt = mock(BluetoothGatt.class);
+		manager.requestHandler.setConnectedGatt(mock(BluetoothDevice.class), gatt);
+		callback = manager.requestHandler.getBluetoothGattCallback();
+	}
+
+	@Test
+	public void enqueueOnly_noSyncLock() {
+		cycle(0);
+		assertEquals(2, completed);
+		assertNull(requests[0].syncLock);
+		assertNull(requests[1].syncLock);
+	}
+
+	@Test
+	public void enqueueOnly_allocationBudget() {
+		final java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+		assumeTrue("Allocation counting is not supported on this JVM",
+				bean instanceof com.sun.management.ThreadMXBean);
+		final com.sun.management.ThreadMXBean threadBean = (com.sun.management.ThreadMXBean) bean;
+		assumeTrue("Allocation counting is disabled",
+				threadBean.isThreadAllocatedMemorySupported()
+						&& threadBean.isThreadAllocatedMemoryEnabled());
+		final long threadId = Thread.currentThread().getId();
+
+		for (int i = 0; i < WARM_UP; i++) {
+			create(i % CYCLES);
+			cycle(i % CYCLES);
+		}
+
+		// The baseline is creating the requests, so that adding fields to them doesn't change
+		// the budget.
+		long before = threadBean.getThreadAllocatedBytes(threadId);
+		for (int i = 0; i < CYCLES; i++)
+			create(i);
+		final long created = threadBean.getThreadAllocatedBytes(threadId) - before;
+
+		completed = 0;
+		before = threadBean.getThreadAllocatedBytes(threadId);
+		for (int i = 0; i < CYCLES; i++)
+			cycle(i);
+		final long allocated = threadBean.getThreadAllocatedBytes(threadId) - before;
+
+		assertEquals(2 * CYCLES, completed);
+		final long perRequest = (allocated - created) / (2 * CYCLES);
+		assertTrue("Execution allocated " + perRequest + " bytes per request",
+				perRequest <= EXECUTION_BUDGET_PER_REQUEST);
+	}
+
+	/**
+	 * Creates a write and a read request, as {@link #cycle(int)} does, without executing them.
+	 */
+	private void create(final int index) {
+		final WriteRequest write = manager.writeCharacteristic(characteristic, value,
+				BluetoothGattCharacteristic.WRITE_TYPE_DEFAULT)
+				.done(doneCallback);
+		write.handler = handler;
+		requests[2 * index] = write;
+
+		final ReadRequest read = manager.readCharacteristic(characteristic)
+				.done(doneCallback);
+		read.handler = handler;
+		requests[2 * index + 1] = read;
+	}
+
+	/**
+	 * Enqueues a write and a read request, without waiting for them, and completes them
+	 * as the GATT client would.
+	 */
+	private void cycle(final int index) {
+		final WriteRequest write = manager.writeCharacteristic(characteristic, value,
+				BluetoothGattCharacteristic.WRITE_TYPE_DEFAULT)
+				.done(doneCallback);
+		write.handler = handler;
+		requests[2 * index] = write;
+		write.enqueue();
+		callback.onCharacteristicWrite(gatt, characteristic, BluetoothGatt.GATT_SUCCESS);
+
+		final ReadRequest read = manager.readCharacteristic(characteristic)
+				.done(doneCallback);
+		read.handler = handler;
+		requests[2 * index + 1] = read;
+		read.enqueue();
+		callback.onCharacteristicRead(gatt, characteristic, BluetoothGatt.GATT_SUCCESS);
+	}
+}
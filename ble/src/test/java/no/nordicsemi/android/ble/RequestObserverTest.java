@@ -0,0 +1,239 @@
+/*
+ * Copyright (c) 2018, Nordic Semiconductor
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its contributors may be used to endorse or promote products derived from this
+ * software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE
+ * USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package no.nordicsemi.android.ble;
+
+import android.bluetooth.BluetoothDevice;
+import android.bluetooth.BluetoothGattCharacteristic;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.UUID;
+
+import no.nordicsemi.android.ble.callback.FailCallback;
+import no.nordicsemi.android.ble.observer.RequestObserver;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+
+/**
+ * Requests are notified by the tests as they would be by the manager during execution.
+ */
+public class RequestObserverTest {
+	private static final UUID UUID_CHAR = UUID.fromString("00002a37-0000-1000-8000-00805f9b34fb");
+
+	private final List<String> events = new ArrayList<>();
+	private final RequestObserver observer = new RequestObserver() {
+		@Override
+		public void onRequestEnqueued(@Nullable final BluetoothDevice device,
+									  @NonNull final Request request,
+									  @NonNull final String type, @Nullable final UUID uuid) {
+			events.add("enqueued " + type);
+		}
+
+		@Override
+		public void onRequestStarted(@NonNull final BluetoothDevice device,
+									 @NonNull final Request request,
+									 @NonNull final String type, @Nullable final UUID uuid) {
+			events.add("started " + type);
+		}
+
+		@Override
+		public void onPacketSent(@NonNull final BluetoothDevice device,
+								 @NonNull final Request request,
+								 @NonNull final String type, @Nullable final UUID uuid,
+								 final int bytes) {
+			events.add("sent " + type + " " + bytes);
+		}
+
+		@Override
+		public void onPacketReceived(@NonNull final BluetoothDevice device,
+									 @NonNull final Request request,
+									 @NonNull final String type, @Nullable final UUID uuid,
+									 final int bytes) {
+			events.add("received " + type + " " + bytes);
+		}
+
+		@Override
+		public void onRequestSucceeded(@NonNull final BluetoothDevice device,
+									   @NonNull final Request request,
+									   @NonNull final String type, @Nullable final UUID uuid) {
+			events.add("succeeded " + type);
+		}
+
+		@Override
+		public void onRequestFailed(@Nullable final BluetoothDevice device,
+									@NonNull final Request request,
+									@NonNull final String type, @Nullable final UUID uuid,
+									final int status) {
+			events.add("failed " + type + " " + status);
+		}
+
+		@Override
+		public void onRequestTimedOut(@NonNull final BluetoothDevice device,
+									  @NonNull final Request request,
+									  @NonNull final String type, @Nullable final UUID uuid) {
+			events.add("timed out " + type);
+		}
+	};
+	private final TestManager manager = new TestManager();
+	private BluetoothDevice device;
+	private BluetoothGattCharacteristic characteristic;
+
+	@Before
+	public void setUp() {
+		// Requests stay in the queue, as the only slot of the scheduler is taken.
+		final RadioScheduler scheduler = new RadioScheduler(1);
+		scheduler.acquire(new RadioScheduler.Client() {
+			@Override
+			void onSlotGranted(@NonNull final RadioScheduler scheduler) {
+				// do nothing
+			}
+
+			@Override
+			int getQueueDepth() {
+				return 0;
+			}
+		}, Request.PRIORITY_INTERACTIVE);
+		manager.setRadioScheduler(scheduler);
+		manager.setRequestObserver(observer);
+
+		device = mock(BluetoothDevice.class);
+		characteristic = new BluetoothGattCharacteristic(UUID_CHAR,
+				BluetoothGattCharacteristic.PROPERTY_WRITE
+						| BluetoothGattCharacteristic.PROPERTY_NOTIFY,
+				BluetoothGattCharacteristic.PERMISSION_WRITE) {
+			@Override
+			public UUID getUuid() {
+				return UUID_CHAR;
+			}
+		};
+	}
+
+	@NonNull
+	private WriteRequest newWriteRequest() {
+		return manager.writeCharacteristic(characteristic, new byte[] { 1, 2, 3 },
+				BluetoothGattCharacteristic.WRITE_TYPE_DEFAULT);
+	}
+
+	@Test
+	public void request_succeeded() {
+		final WriteRequest request = newWriteRequest();
+		request.enqueue();
+		request.notifyStarted(device);
+		request.notifyPacketSent(device, request.getData(23));
+		request.notifySuccess(device);
+
+		assertEquals(Arrays.asList("enqueued WRITE", "started WRITE", "sent WRITE 3",
+				"succeeded WRITE"), events);
+	}
+
+	@Test
+	public void request_failed() {
+		final WriteRequest request = newWriteRequest();
+		request.enqueue();
+		request.notifyStarted(device);
+		request.notifyFail(device, FailCallback.REASON_REQUEST_FAILED);
+
+		assertEquals(Arrays.asList("enqueued WRITE", "started WRITE",
+				"failed WRITE " + FailCallback.REASON_REQUEST_FAILED), events);
+	}
+
+	@Test
+	public void request_timedOut() {
+		final WriteRequest request = newWriteRequest();
+		request.enqueue();
+		request.notifyStarted(device);
+		request.notifyFail(device, FailCallback.REASON_TIMEOUT);
+
+		assertEquals(Arrays.asList("enqueued WRITE", "started WRITE", "timed out WRITE"), events);
+	}
+
+	@Test
+	public void request_cancelled() {
+		final WriteRequest request = newWriteRequest();
+		request.enqueue();
+		assertTrue(request.cancel());
+		assertFalse(request.cancel());
+
+		// The manager has never been connected, so the request is reported as invalid.
+		assertEquals(Arrays.asList("enqueued WRITE",
+				"failed WRITE " + FailCallback.REASON_REQUEST_FAILED), events);
+	}
+
+	@Test
+	public void cancelQueue_failsQueuedRequests() {
+		newWriteRequest().enqueue();
+		manager.readCharacteristic(characteristic).enqueue();
+		manager.cancelQueue();
+
+		assertEquals(Arrays.asList("enqueued WRITE", "enqueued READ",
+				"failed WRITE " + FailCallback.REASON_REQUEST_FAILED,
+				"failed READ " + FailCallback.REASON_REQUEST_FAILED), events);
+	}
+
+	@Test
+	public void awaitingRequest_withTrigger() {
+		final WriteRequest trigger = newWriteRequest();
+		final WaitForValueChangedRequest request = manager.waitForNotification(characteristic)
+				.trigger(trigger);
+		request.enqueue();
+		// The awaiting request starts first, then its trigger is executed.
+		request.notifyStarted(device);
+		trigger.notifyStarted(device);
+		trigger.notifyPacketSent(device, trigger.getData(23));
+		trigger.notifySuccess(device);
+		request.notifyValueChanged(device, new byte[] { 4, 5 });
+		request.notifySuccess(device);
+
+		assertEquals(Arrays.asList("enqueued WAIT_FOR_NOTIFICATION",
+				"started WAIT_FOR_NOTIFICATION", "started WRITE", "sent WRITE 3",
+				"succeeded WRITE", "received WAIT_FOR_NOTIFICATION 2",
+				"succeeded WAIT_FOR_NOTIFICATION"), events);
+	}
+
+	@Test
+	public void awaitingRequest_triggerFailed() {
+		final WriteRequest trigger = newWriteRequest();
+		final WaitForValueChangedRequest request = manager.waitForNotification(characteristic)
+				.trigger(trigger);
+		request.enqueue();
+		request.notifyStarted(device);
+		trigger.notifyStarted(device);
+		trigger.notifyFail(device, FailCallback.REASON_REQUEST_FAILED);
+
+		// The awaiting request fails with its trigger.
+		assertEquals(Arrays.asList("enqueued WAIT_FOR_NOTIFICATION",
+				"started WAIT_FOR_NOTIFICATION", "started WRITE",
+				"failed WRITE " + FailCallback.REASON_REQUEST_FAILED,
+				"failed WAIT_FOR_NOTIFICATION " + FailCallback.REASON_REQUEST_FAILED), events);
+	}
+}
@@ -27,35 +27,38 @@ import android.bluetooth.BluetoothGattCharacteristic;
 import org.junit.Before;
 import org.junit.Test;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 import java.util.UUID;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
 
 import androidx.annotation.NonNull;
+import no.nordicsemi.android.ble.callback.FailCallback;
+import no.nordicsemi.android.ble.data.DataSource;
+import no.nordicsemi.android.ble.exception.DeviceDisconnectedException;
+import no.nordicsemi.android.ble.response.ReadResponse;
 
 import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 
 @SuppressWarnings("ConstantConditions")
 public class RequestTest {
-	private final static class SynchronousHandler implements CallbackHandler {
-		@Override
-		public void post(@NonNull final Runnable r) {
-			r.run();
-		}
-
-		@Override
-		public void postDelayed(@NonNull final Runnable r, final long delayMillis) {
-			r.run();
-		}
-
-		@Override
-		public void removeCallbacks(@NonNull final Runnable r) {
-			// do nothing
-		}
-	}
-
 	private final String text =
 			"Lorem ipsum dolor sit amet, consectetur adipiscing elit, sed do eiusmod " +
 			"tempor incididunt ut labore et dolore magna aliqua. Ut enim ad minim veniam, quis " +
@@ -141,6 +144,137 @@ public class RequestTest {
 		assertTrue(done);
 	}
 
+	@Test
+	public void stream_inputStream() throws IOException {
+		final boolean[] closed = { false };
+		final InputStream stream = new ByteArrayInputStream(text.getBytes()) {
+			@Override
+			public void close() {
+				closed[0] = true;
+			}
+		};
+		final long[] offset = { 0 };
+		final WriteRequest request = Request.newWriteRequest(characteristic,
+				DataSource.from(stream), BluetoothGattCharacteristic.WRITE_TYPE_NO_RESPONSE)
+				.progress((device, o, size) -> {
+					assertTrue(o > offset[0]);
+					offset[0] = o;
+				});
+		request.handler = new SynchronousHandler();
+
+		final ByteArrayOutputStream sent = new ByteArrayOutputStream();
+		do {
+			chunk = request.getData(MTU);
+			assertTrue(chunk.length <= MTU - 3);
+			sent.write(chunk);
+			request.notifyPacketSent(null, chunk);
+		} while (request.hasMore());
+		request.notifySuccess(null);
+
+		assertArrayEquals(text.getBytes(), sent.toByteArray());
+		assertEquals(text.length(), offset[0]);
+		assertNull(request.getSourceException());
+		assertTrue(closed[0]);
+	}
+
+	@Test
+	public void stream_readError() {
+		final InputStream stream = new InputStream() {
+			@Override
+			public int read() throws IOException {
+				throw new IOException("Test");
+			}
+		};
+		final WriteRequest request = Request.newWriteRequest(characteristic,
+				DataSource.from(stream), BluetoothGattCharacteristic.WRITE_TYPE_DEFAULT);
+		assertEquals(0, request.getData(MTU).length);
+		assertTrue(request.getSourceException() instanceof IOException);
+		assertFalse(request.hasMore());
+	}
+
+	@Test
+	public void stream_closeError() {
+		final IOException error = new IOException("Test");
+		final InputStream stream = new ByteArrayInputStream(text.getBytes()) {
+			@Override
+			public void close() throws IOException {
+				throw error;
+			}
+		};
+		final WriteRequest request = Request.newWriteRequest(characteristic,
+				DataSource.from(stream), BluetoothGattCharacteristic.WRITE_TYPE_DEFAULT)
+				.done(device -> done = true);
+		request.handler = new SynchronousHandler();
+
+		done = false;
+		do {
+			request.notifyPacketSent(null, request.getData(MTU));
+		} while (request.hasMore());
+		assertNull(request.getSourceException());
+		// The error is kept for the manager to report it, the request still succeeds.
+		request.notifySuccess(null);
+		assertTrue(done);
+		assertSame(error, request.getSourceException());
+	}
+
+	@Test
+	public void stream_readAhead() throws IOException {
+		final boolean[] closed = { false };
+		final InputStream stream = new ByteArrayInputStream(text.getBytes()) {
+			@Override
+			public void close() {
+				closed[0] = true;
+			}
+		};
+		final WriteRequest request = Request.newWriteRequest(characteristic,
+				DataSource.from(stream), BluetoothGattCharacteristic.WRITE_TYPE_NO_RESPONSE);
+		request.handler = new SynchronousHandler();
+		final List<Runnable> reads = new ArrayList<>();
+		final int[] resumed = { 0 };
+
+		final ByteArrayOutputStream sent = new ByteArrayOutputStream();
+		do {
+			if (!request.isDataReady()) {
+				request.readAhead(MTU, reads::add, Runnable::run, () -> resumed[0]++);
+				// The source is not read on the calling thread.
+				assertFalse(request.isDataReady());
+				assertEquals(1, reads.size());
+				reads.remove(0).run();
+				assertTrue(request.isDataReady());
+			}
+			chunk = request.getData(MTU);
+			sent.write(chunk);
+			request.notifyPacketSent(null, chunk);
+		} while (request.hasMore());
+		request.notifySuccess(null);
+
+		assertArrayEquals(text.getBytes(), sent.toByteArray());
+		assertTrue(resumed[0] > 0);
+		assertTrue(closed[0]);
+	}
+
+	@Test
+	public void stream_closedAfterPendingRead() {
+		final boolean[] closed = { false };
+		final InputStream stream = new ByteArrayInputStream(text.getBytes()) {
+			@Override
+			public void close() {
+				closed[0] = true;
+			}
+		};
+		final WriteRequest request = Request.newWriteRequest(characteristic,
+				DataSource.from(stream), BluetoothGattCharacteristic.WRITE_TYPE_NO_RESPONSE);
+		request.handler = new SynchronousHandler();
+		final List<Runnable> reads = new ArrayList<>();
+
+		request.readAhead(MTU, reads::add, Runnable::run, null);
+		request.notifyFail(null, FailCallback.REASON_CANCELLED);
+		// The source must not be closed while it's being read.
+		assertFalse(closed[0]);
+		reads.remove(0).run();
+		assertTrue(closed[0]);
+	}
+
 	@Test
 	public void split_merge() {
 		// The WriteRequest is only to split the text into chunks
@@ -198,4 +332,308 @@ public class RequestTest {
 		readRequest.notifySuccess(null);
 		assertTrue(done);
 	}
-}
\ No newline at end of file
+
+	@Test
+	public void split_pipelined() {
+		final int window = 4;
+		final StringBuilder received = new StringBuilder();
+		final int[] lastIndex = { -1 };
+		final WriteRequest request = Request.newWriteRequest(characteristic, text.getBytes(), BluetoothGattCharacteristic.WRITE_TYPE_NO_RESPONSE)
+				.split((device, data, index) -> {
+					// Packets must be reported in order
+					assertEquals(lastIndex[0] + 1, index);
+					lastIndex[0] = index;
+					received.append(new String(data));
+				})
+				.pipeline(window)
+				.with((device, data) -> {
+					done = true;
+					assertArrayEquals(text.getBytes(), data.getValue());
+				});
+		request.handler = new SynchronousHandler();
+
+		done = false;
+		// P - the next packet is sent from the write callback, Q - it goes through the queue.
+		final StringBuilder sequence = new StringBuilder();
+		chunk = request.getData(MTU);
+		while (true) {
+			request.notifyPacketSent(null, chunk);
+			if (!request.hasMore())
+				break;
+			sequence.append(request.canPipelineNextPacket() ? 'P' : 'Q');
+			chunk = request.getData(MTU);
+		}
+		assertTrue(done);
+		assertEquals(text, received.toString());
+		// 445 bytes are sent in 23 packets. After every window - 1 packets sent from the
+		// callback, one goes through the queue.
+		assertEquals("PPPQ" + "PPPQ" + "PPPQ" + "PPPQ" + "PPPQ" + "PP", sequence.toString());
+	}
+
+	@Test
+	public void split_pipelined_ignoredWithResponse() {
+		final WriteRequest request = Request.newWriteRequest(characteristic, text.getBytes(), BluetoothGattCharacteristic.WRITE_TYPE_DEFAULT)
+				.split()
+				.pipeline(8);
+		request.handler = new SynchronousHandler();
+
+		request.notifyPacketSent(null, request.getData(MTU));
+		assertTrue(request.hasMore());
+		assertFalse(request.canPipelineNextPacket());
+	}
+
+	@Test
+	public void read_shared() {
+		final TaskQueue queue = new TaskQueue();
+		final byte[] value = text.getBytes();
+		final int[] received = new int[1];
+		final ReadRequest leader = Request.newReadRequest(characteristic).share()
+				.with((device, data) -> {
+					assertArrayEquals(value, data.getValue());
+					received[0]++;
+				});
+		final ReadRequest follower = Request.newReadRequest(characteristic).share()
+				.with((device, data) -> {
+					assertArrayEquals(value, data.getValue());
+					received[0]++;
+				})
+				.done(device -> done = true);
+		final ReadRequest filtered = Request.newReadRequest(characteristic).share()
+				.filter(data -> true);
+		leader.handler = follower.handler = filtered.handler = new SynchronousHandler();
+
+		assertTrue(leader.isShared());
+		assertFalse(filtered.isShared());
+		assertNull(queue.add(leader));
+		assertNull(queue.add(follower));
+		assertSame(leader, queue.poll());
+		assertTrue(queue.isEmpty());
+
+		done = false;
+		leader.notifyValueChanged(null, value);
+		leader.notifySuccess(null);
+		assertEquals(2, received[0]);
+		assertTrue(done);
+
+		// The result is known, new requests must not attach anymore.
+		final ReadRequest late = Request.newReadRequest(characteristic).share();
+		assertNull(queue.add(late));
+		assertSame(late, queue.poll());
+	}
+
+	@Test
+	public void read_sharedLeaderWithdrawn() {
+		final TaskQueue queue = new TaskQueue();
+		final Request before = Request.newSleepRequest(0);
+		final ReadRequest leader = Request.newReadRequest(characteristic).share();
+		final Request after = Request.newSleepRequest(0);
+		final ReadRequest first = Request.newReadRequest(characteristic).share();
+		final ReadRequest second = Request.newReadRequest(characteristic).share()
+				.done(device -> done = true);
+		leader.handler = first.handler = second.handler = new SynchronousHandler();
+		assertNull(queue.add(before));
+		assertNull(queue.add(leader));
+		assertNull(queue.add(after));
+		assertNull(queue.add(first));
+		assertNull(queue.add(second));
+
+		// The first attached request takes the place of the withdrawn one.
+		assertTrue(queue.withdraw(leader));
+		assertSame(before, queue.poll());
+		assertSame(first, queue.poll());
+		assertSame(after, queue.poll());
+		assertTrue(queue.isEmpty());
+
+		done = false;
+		leader.notifyFail(null, FailCallback.REASON_CANCELLED);
+		assertFalse(done);
+		first.notifyValueChanged(null, text.getBytes());
+		first.notifySuccess(null);
+		assertTrue(done);
+	}
+
+	@Test
+	public void read_sharedFollowerWithdrawn() {
+		final TaskQueue queue = new TaskQueue();
+		final ReadRequest leader = Request.newReadRequest(characteristic).share();
+		final ReadRequest follower = Request.newReadRequest(characteristic).share();
+		final ReadRequest late = Request.newReadRequest(characteristic).share();
+		leader.handler = follower.handler = late.handler = new SynchronousHandler();
+		assertNull(queue.add(leader));
+		assertNull(queue.add(follower));
+		assertNull(queue.add(late));
+
+		// Only the withdrawn request is detached.
+		assertTrue(queue.withdraw(follower));
+		assertSame(leader, queue.poll());
+		assertTrue(queue.isEmpty());
+
+		leader.notifyValueChanged(null, text.getBytes());
+		// The result is being delivered, the request can't be withdrawn anymore.
+		assertFalse(queue.withdraw(late));
+		leader.notifySuccess(null);
+		assertFalse(follower.finished);
+		assertTrue(late.finished);
+	}
+
+	@Test
+	public void future_success() throws Exception {
+		final byte[] value = text.getBytes();
+		final ReadRequest request = Request.newReadRequest(characteristic);
+		request.handler = new SynchronousHandler();
+		final ReadResponse response = new ReadResponse();
+		final RequestFuture<ReadResponse> future = new RequestFuture<>(request, response);
+		request.with(response).future = future;
+
+		called = false;
+		future.whenComplete((result, error) -> {
+			assertSame(response, result);
+			assertNull(error);
+			called = true;
+		});
+		assertFalse(future.isDone());
+		request.notifyStarted(null);
+		request.notifyValueChanged(null, value);
+		request.notifySuccess(null);
+		assertTrue(called);
+		assertTrue(future.isDone());
+		assertArrayEquals(value, future.get().getRawData().getValue());
+	}
+
+	@Test
+	public void future_completesAfterValueCallback() throws Exception {
+		final byte[] value = text.getBytes();
+		final ExecutorService executor = Executors.newSingleThreadExecutor();
+		try {
+			final ReadRequest request = Request.newReadRequest(characteristic);
+			request.handler = new CallbackHandler() {
+				@Override
+				public void post(@NonNull final Runnable r) {
+					executor.execute(r);
+				}
+
+				@Override
+				public void postDelayed(@NonNull final Runnable r, final long delayMillis) {
+					executor.execute(r);
+				}
+
+				@Override
+				public void removeCallbacks(@NonNull final Runnable r) {
+					// do nothing
+				}
+			};
+			final ReadResponse response = new ReadResponse();
+			final RequestFuture<ReadResponse> future = new RequestFuture<>(request, response);
+			request.with(response).future = future;
+
+			// Hold the handler's thread, so that the callbacks are pending when the request
+			// completes.
+			final CountDownLatch blocked = new CountDownLatch(1);
+			executor.execute(() -> {
+				try {
+					blocked.await();
+				} catch (final InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+			});
+			request.notifyStarted(null);
+			request.notifyValueChanged(null, value);
+			request.notifySuccess(null);
+			assertFalse(future.isDone());
+
+			blocked.countDown();
+			assertArrayEquals(value, future.get(1, TimeUnit.SECONDS).getRawData().getValue());
+		} finally {
+			executor.shutdown();
+		}
+	}
+
+	@Test
+	public void future_failure() throws Exception {
+		final WriteRequest request = Request.newWriteRequest(characteristic, text.getBytes(),
+				BluetoothGattCharacteristic.WRITE_TYPE_DEFAULT);
+		request.handler = new SynchronousHandler();
+		final RequestFuture<Void> future = new RequestFuture<>(request, null);
+		request.future = future;
+
+		request.notifyStarted(null);
+		request.notifyFail(null, FailCallback.REASON_DEVICE_DISCONNECTED);
+
+		called = false;
+		future.whenComplete((result, error) -> {
+			assertTrue(error instanceof DeviceDisconnectedException);
+			called = true;
+		});
+		assertTrue(called);
+		try {
+			future.get(1, TimeUnit.SECONDS);
+			fail();
+		} catch (final ExecutionException e) {
+			assertTrue(e.getCause() instanceof DeviceDisconnectedException);
+		}
+	}
+
+	@Test
+	public void future_completesAfterCallbacks() {
+		final List<String> order = new ArrayList<>();
+		final WriteRequest succeeding = Request.newWriteRequest(characteristic, text.getBytes(),
+				BluetoothGattCharacteristic.WRITE_TYPE_DEFAULT)
+				.done(device -> order.add("done"))
+				.then(device -> order.add("after"));
+		final WriteRequest failing = Request.newWriteRequest(characteristic, text.getBytes(),
+				BluetoothGattCharacteristic.WRITE_TYPE_DEFAULT)
+				.fail((device, status) -> order.add("fail"))
+				.then(device -> order.add("after"));
+		succeeding.handler = failing.handler = new SynchronousHandler();
+		succeeding.future = new RequestFuture<>(succeeding, null);
+		failing.future = new RequestFuture<>(failing, null);
+		succeeding.future.whenComplete((result, error) -> order.add("future"));
+		failing.future.whenComplete((result, error) -> order.add("future"));
+
+		succeeding.notifyStarted(null);
+		succeeding.notifySuccess(null);
+		failing.notifyStarted(null);
+		failing.notifyFail(null, FailCallback.REASON_REQUEST_FAILED);
+		assertEquals(Arrays.asList("done", "after", "future", "fail", "after", "future"), order);
+	}
+
+	@Test
+	public void future_cancel() throws Exception {
+		final ReadRequest request = Request.newReadRequest(characteristic);
+		request.handler = new SynchronousHandler();
+		final RequestFuture<Void> future = new RequestFuture<>(request, null);
+		request.future = future;
+
+		final int[] results = new int[1];
+		future.whenComplete((result, error) -> {
+			assertTrue(error instanceof CancellationException);
+			results[0]++;
+		});
+		assertTrue(future.cancel(false));
+		assertTrue(future.isCancelled());
+		assertTrue(future.isDone());
+		assertFalse(future.cancel(false));
+
+		// The failure of the withdrawn request does not complete the future again.
+		request.notifyFail(null, FailCallback.REASON_CANCELLED);
+		assertEquals(1, results[0]);
+		try {
+			future.get();
+			fail();
+		} catch (final CancellationException e) {
+			// expected
+		}
+	}
+
+	@Test
+	public void deadline_expired() {
+		final Request request = Request.newReadRequest(characteristic).deadline(1000);
+		assertFalse(request.isExpired(1000));
+		assertTrue(request.isExpired(1001));
+		// Deadline is not checked once the request has started.
+		request.started = true;
+		assertFalse(request.isExpired(1001));
+		// No deadline by default.
+		assertFalse(Request.newReadRequest(characteristic).isExpired(Long.MAX_VALUE));
+	}
+}
@@ -0,0 +1,154 @@
+/*
+ * Copyright (c) 2018, Nordic Semiconductor
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its contributors may be used to endorse or promote products derived from this
+ * software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE
+ * USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package no.nordicsemi.android.ble;
+
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class SerialExecutorTest {
+	private static final int THREADS = 16;
+	private static final int TASKS_PER_THREAD = 20_000;
+
+	/** Modified only by tasks of the executor, without synchronization. */
+	private int counter;
+	private final int[] lastTaskOfThread = new int[THREADS];
+
+	@Test
+	public void execute_serializedAndInOrder() throws InterruptedException {
+		final SerialExecutor executor = new SerialExecutor();
+		final AtomicInteger running = new AtomicInteger();
+		final AtomicBoolean overlapped = new AtomicBoolean();
+		final AtomicBoolean reordered = new AtomicBoolean();
+		final CountDownLatch start = new CountDownLatch(1);
+		final Thread[] threads = new Thread[THREADS];
+		for (int t = 0; t < THREADS; t++) {
+			final int thread = t;
+			threads[t] = new Thread(() -> {
+				try {
+					start.await();
+				} catch (final InterruptedException e) {
+					return;
+				}
+				for (int i = 1; i <= TASKS_PER_THREAD; i++) {
+					final int task = i;
+					executor.execute(() -> {
+						if (running.incrementAndGet() != 1)
+							overlapped.set(true);
+						if (lastTaskOfThread[thread] != task - 1)
+							reordered.set(true);
+						lastTaskOfThread[thread] = task;
+						counter++;
+						running.decrementAndGet();
+					});
+				}
+			});
+			threads[t].start();
+		}
+		start.countDown();
+		for (final Thread thread : threads)
+			thread.join();
+
+		// All tasks have been executed when the last thread returned from execute().
+		final int[] executed = new int[1];
+		executor.execute(() -> executed[0] = counter);
+		assertEquals(THREADS * TASKS_PER_THREAD, executed[0]);
+		assertFalse(overlapped.get());
+		assertFalse(reordered.get());
+	}
+
+	@Test
+	public void execute_nestedTaskRunsInline() {
+		final SerialExecutor executor = new SerialExecutor();
+		final StringBuilder order = new StringBuilder();
+		executor.execute(() -> {
+			order.append('a');
+			executor.execute(() -> order.append('b'));
+			order.append('c');
+		});
+		assertEquals("abc", order.toString());
+	}
+
+	@Test
+	public void execute_onTargetExecutor() throws Exception {
+		final ExecutorService target = Executors.newSingleThreadExecutor();
+		try {
+			final Thread targetThread = target.submit(Thread::currentThread).get();
+			final SerialExecutor executor = new SerialExecutor(target);
+			final CountDownLatch done = new CountDownLatch(100);
+			final AtomicBoolean wrongThread = new AtomicBoolean();
+			for (int i = 0; i < 100; i++) {
+				executor.execute(() -> {
+					if (Thread.currentThread() != targetThread)
+						wrongThread.set(true);
+					done.countDown();
+				});
+			}
+			assertTrue(done.await(5, TimeUnit.SECONDS));
+			assertFalse(wrongThread.get());
+		} finally {
+			target.shutdown();
+		}
+	}
+
+	@Test
+	public void execute_exceptionDoesNotStopExecutor() {
+		final AtomicReference<Throwable> reported = new AtomicReference<>();
+		final SerialExecutor executor = new SerialExecutor(null, (thread, t) -> reported.set(t));
+		final AtomicBoolean executed = new AtomicBoolean();
+		executor.execute(() -> {
+			throw new IllegalStateException();
+		});
+		executor.execute(() -> executed.set(true));
+		assertTrue(executed.get());
+		assertTrue(reported.get() instanceof IllegalStateException);
+	}
+
+	@Test
+	public void execute_exceptionPropagatedWithoutHandler() {
+		final SerialExecutor executor = new SerialExecutor();
+		try {
+			executor.execute(() -> {
+				throw new IllegalStateException();
+			});
+			fail();
+		} catch (final IllegalStateException e) {
+			// expected
+		}
+		// The executor is released and runs the next task.
+		final AtomicBoolean executed = new AtomicBoolean();
+		executor.execute(() -> executed.set(true));
+		assertTrue(executed.get());
+	}
+}
@@ -0,0 +1,81 @@
+/*
+ * Copyright (c) 2018, Nordic Semiconductor
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its contributors may be used to endorse or promote products derived from this
+ * software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE
+ * USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package no.nordicsemi.android.ble;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+public class ServiceCacheTest {
+	private static final String ADDRESS = "00:11:22:33:44:55";
+	private static final String KEY = ServiceCache.keyOf(BleManager.class, ADDRESS);
+
+	@Test
+	public void get_matchingFingerprint() {
+		final ServiceCache cache = new ServiceCache(10);
+		assertNull(cache.get(KEY, 1));
+		cache.put(KEY, 1, false);
+
+		final ServiceCache.Entry entry = cache.get(KEY, 1);
+		assertNotNull(entry);
+		assertFalse(entry.supported);
+		// Services have changed.
+		assertNull(cache.get(KEY, 2));
+		assertEquals(1, cache.getHitCount());
+		assertEquals(2, cache.getMissCount());
+	}
+
+	@Test
+	public void invalidate_removesAllManagers() {
+		final ServiceCache cache = new ServiceCache(10);
+		cache.put(KEY, 1, true);
+		cache.put(ServiceCache.keyOf(Object.class, ADDRESS), 1, true);
+		cache.put(ServiceCache.keyOf(BleManager.class, "AA:BB:CC:DD:EE:FF"), 1, true);
+		cache.invalidate(ADDRESS);
+		assertEquals(1, cache.size());
+		assertNull(cache.get(KEY, 1));
+	}
+
+	@Test
+	public void put_evictsLeastRecentlyUsed() {
+		final ServiceCache cache = new ServiceCache(2);
+		cache.put("a", 1, true);
+		cache.put("b", 1, true);
+		cache.get("a", 1);
+		cache.put("c", 1, true);
+		assertEquals(2, cache.size());
+		assertNotNull(cache.get("a", 1));
+		assertNull(cache.get("b", 1));
+	}
+
+	@Test
+	public void mix_orderSensitive() {
+		final long ab = ServiceCache.mix(ServiceCache.mix(0, 1), 2);
+		final long ba = ServiceCache.mix(ServiceCache.mix(0, 2), 1);
+		assertNotEquals(ab, ba);
+	}
+}
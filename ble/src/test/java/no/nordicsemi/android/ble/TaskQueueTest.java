@@ -0,0 +1,247 @@
+/*
+ * Copyright (c) 2018, Nordic Semiconductor
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its contributors may be used to endorse or promote products derived from this
+ * software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE
+ * USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package no.nordicsemi.android.ble;
+
+import android.bluetooth.BluetoothGattCharacteristic;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class TaskQueueTest {
+
+	@Test
+	public void poll_highestPriorityFirst() {
+		final TaskQueue queue = new TaskQueue();
+		final Request bulk = Request.newSleepRequest(0).priority(Request.PRIORITY_BULK);
+		final Request interactive = Request.newSleepRequest(0);
+		final Request control = Request.newSleepRequest(0).priority(Request.PRIORITY_CONTROL);
+		queue.add(bulk);
+		queue.add(interactive);
+		queue.add(control);
+		assertSame(control, queue.poll());
+		assertSame(interactive, queue.poll());
+		assertSame(bulk, queue.poll());
+		assertNull(queue.poll());
+		assertTrue(queue.isEmpty());
+	}
+
+	@Test
+	public void addFirst_staysBehindHigherPriority() {
+		final TaskQueue queue = new TaskQueue();
+		final Request chunk = Request.newSleepRequest(0).priority(Request.PRIORITY_BULK);
+		final Request next = Request.newSleepRequest(0).priority(Request.PRIORITY_BULK);
+		final Request control = Request.newSleepRequest(0).priority(Request.PRIORITY_CONTROL);
+		queue.add(next);
+		queue.add(control);
+		queue.addFirst(chunk);
+		assertSame(control, queue.poll());
+		assertSame(chunk, queue.poll());
+		assertSame(next, queue.poll());
+	}
+
+	@Test
+	public void poll_bulkNotStarved() {
+		final TaskQueue queue = new TaskQueue();
+		final Request bulk = Request.newSleepRequest(0).priority(Request.PRIORITY_BULK);
+		queue.add(bulk);
+		for (int i = 0; i < TaskQueue.MAX_BULK_SKIPS + 1; i++)
+			queue.add(Request.newSleepRequest(0));
+		for (int i = 0; i < TaskQueue.MAX_BULK_SKIPS; i++)
+			assertEquals(Request.PRIORITY_INTERACTIVE, queue.poll().priority);
+		assertSame(bulk, queue.poll());
+		assertEquals(Request.PRIORITY_INTERACTIVE, queue.poll().priority);
+		assertTrue(queue.isEmpty());
+	}
+
+	@Test
+	public void add_coalescingWriteSupersedesPending() {
+		final BluetoothGattCharacteristic characteristic = new BluetoothGattCharacteristic(UUID.randomUUID(),
+				BluetoothGattCharacteristic.PROPERTY_WRITE, BluetoothGattCharacteristic.PERMISSION_WRITE);
+		final TaskQueue queue = new TaskQueue();
+		final WriteRequest first = Request.newWriteRequest(characteristic, new byte[] { 1 },
+				BluetoothGattCharacteristic.WRITE_TYPE_DEFAULT).coalesce();
+		final WriteRequest plain = Request.newWriteRequest(characteristic, new byte[] { 2 },
+				BluetoothGattCharacteristic.WRITE_TYPE_DEFAULT);
+		final WriteRequest second = Request.newWriteRequest(characteristic, new byte[] { 3 },
+				BluetoothGattCharacteristic.WRITE_TYPE_DEFAULT).coalesce();
+		assertNull(queue.add(first));
+		assertNull(queue.add(plain));
+		assertSame(first, queue.add(second));
+		assertSame(plain, queue.poll());
+		assertSame(second, queue.poll());
+		assertTrue(queue.isEmpty());
+
+		// A request taken from the queue can't be superseded.
+		final WriteRequest third = Request.newWriteRequest(characteristic, new byte[] { 4 },
+				BluetoothGattCharacteristic.WRITE_TYPE_DEFAULT).coalesce();
+		assertNull(queue.add(third));
+		assertFalse(queue.isEmpty());
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void priority_invalid() {
+		Request.newSleepRequest(0).priority(3);
+	}
+
+	@Test
+	public void addAll_keepsOrder() {
+		final TaskQueue queue = new TaskQueue();
+		final Request[] requests = new Request[] {
+				Request.newSleepRequest(0), Request.newSleepRequest(1), Request.newSleepRequest(2)
+		};
+		queue.add(Request.newSleepRequest(0).priority(Request.PRIORITY_BULK));
+		assertNull(queue.addAll(requests));
+		for (final Request request : requests)
+			assertSame(request, queue.poll());
+		assertEquals(Request.PRIORITY_BULK, queue.poll().priority);
+		assertTrue(queue.isEmpty());
+	}
+
+	@Test
+	public void withdraw_skipped() {
+		final TaskQueue queue = new TaskQueue();
+		final Request first = Request.newSleepRequest(0);
+		final Request second = Request.newSleepRequest(1);
+		queue.add(first);
+		queue.add(second);
+		assertTrue(queue.withdraw(first));
+		assertFalse(queue.withdraw(first));
+		assertSame(second, queue.poll());
+		assertTrue(queue.isEmpty());
+	}
+
+	@Test
+	public void add_withdrawnBeforeAddedIgnored() {
+		final BluetoothGattCharacteristic characteristic = new BluetoothGattCharacteristic(UUID.randomUUID(),
+				BluetoothGattCharacteristic.PROPERTY_WRITE | BluetoothGattCharacteristic.PROPERTY_READ,
+				BluetoothGattCharacteristic.PERMISSION_WRITE | BluetoothGattCharacteristic.PERMISSION_READ);
+		final TaskQueue queue = new TaskQueue();
+		final WriteRequest pending = Request.newWriteRequest(characteristic, new byte[] { 1 },
+				BluetoothGattCharacteristic.WRITE_TYPE_DEFAULT).coalesce();
+		assertNull(queue.add(pending));
+
+		// The requests are cancelled after being enqueued, but before being added.
+		final WriteRequest cancelledWrite = Request.newWriteRequest(characteristic, new byte[] { 2 },
+				BluetoothGattCharacteristic.WRITE_TYPE_DEFAULT).coalesce();
+		final ReadRequest cancelledRead = Request.newReadRequest(characteristic).share();
+		assertTrue(queue.withdraw(cancelledWrite));
+		assertTrue(queue.withdraw(cancelledRead));
+		assertNull(queue.addAll(new Request[] { cancelledWrite, cancelledRead }));
+		assertEquals(1, queue.size());
+
+		// The cancelled write did not supersede the pending one, and the cancelled read
+		// is not the leader of the next shared read.
+		final ReadRequest read = Request.newReadRequest(characteristic).share();
+		assertNull(queue.add(read));
+		assertEquals(2, queue.size());
+		assertSame(pending, queue.poll());
+		assertSame(read, queue.poll());
+		assertEquals(0, queue.size());
+		assertTrue(queue.isEmpty());
+	}
+
+	@Test
+	public void size_countsWaitingRequests() {
+		final TaskQueue queue = new TaskQueue();
+		final Request first = Request.newSleepRequest(0);
+		final Request second = Request.newSleepRequest(1);
+		final Request third = Request.newSleepRequest(2);
+		queue.add(first);
+		queue.add(second);
+		queue.add(third);
+		assertEquals(3, queue.size());
+
+		// Withdrawn requests stay in the queue until reached, but are not counted.
+		assertTrue(queue.withdraw(second));
+		assertEquals(2, queue.size());
+		assertSame(first, queue.poll());
+		assertEquals(1, queue.size());
+
+		// A request continued in another step counts again.
+		queue.addFirst(first);
+		assertEquals(2, queue.size());
+		assertSame(first, queue.poll());
+		assertSame(third, queue.poll());
+		assertEquals(0, queue.size());
+		assertTrue(queue.isEmpty());
+	}
+
+	@Test
+	public void clear_returnsRemovedRequests() {
+		final TaskQueue queue = new TaskQueue();
+		final BluetoothGattCharacteristic characteristic = new BluetoothGattCharacteristic(
+				UUID.randomUUID(), BluetoothGattCharacteristic.PROPERTY_READ, 0);
+		final Request withdrawn = Request.newSleepRequest(0);
+		final ReadRequest leader = Request.newReadRequest(characteristic).share();
+		final ReadRequest follower = Request.newReadRequest(characteristic).share();
+		final Request bulk = Request.newSleepRequest(0).priority(Request.PRIORITY_BULK);
+		queue.add(withdrawn);
+		queue.add(leader);
+		queue.add(follower);
+		queue.add(bulk);
+		assertTrue(queue.withdraw(withdrawn));
+
+		assertEquals(Arrays.asList(bulk, leader, follower), queue.clear());
+		assertTrue(queue.isEmpty());
+		// The removed requests can't be withdrawn anymore.
+		assertFalse(queue.withdraw(leader));
+		assertFalse(queue.withdraw(follower));
+	}
+
+	@Test
+	public void withdraw_racingWithPoll() throws InterruptedException {
+		final int count = 10_000;
+		final TaskQueue queue = new TaskQueue();
+		final Request[] requests = new Request[count];
+		for (int i = 0; i < count; i++) {
+			requests[i] = Request.newSleepRequest(0);
+			queue.add(requests[i]);
+		}
+		final AtomicInteger withdrawn = new AtomicInteger();
+		final Thread canceller = new Thread(() -> {
+			for (final Request request : requests) {
+				if (queue.withdraw(request))
+					withdrawn.incrementAndGet();
+			}
+		});
+		canceller.start();
+		int taken = 0;
+		while (queue.poll() != null)
+			taken++;
+		canceller.join();
+
+		// Each request was either taken for execution or withdrawn, never both.
+		assertEquals(count, taken + withdrawn.get());
+		for (final Request request : requests)
+			assertTrue(request.taken != request.withdrawn);
+	}
+}
@@ -0,0 +1,70 @@
+/*
+ * Copyright (c) 2018, Nordic Semiconductor
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its contributors may be used to endorse or promote products derived from this
+ * software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE
+ * USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package no.nordicsemi.android.ble;
+
+import android.bluetooth.BluetoothGatt;
+import android.content.BroadcastReceiver;
+import android.content.ContextWrapper;
+import android.content.Intent;
+import android.content.IntentFilter;
+import android.os.Handler;
+
+import androidx.annotation.NonNull;
+
+/**
+ * A manager that never connects to a device. Events are processed on the calling thread.
+ * <p>
+ * Requests executed without a device fail as invalid, without posting anything to the handler,
+ * as long as no callbacks are set.
+ */
+class TestManager extends BleManager {
+
+	@SuppressWarnings("deprecation")
+	TestManager() {
+		super(new ContextWrapper(null) {
+			@Override
+			public Intent registerReceiver(final BroadcastReceiver receiver,
+										   final IntentFilter filter,
+										   final String broadcastPermission,
+										   final Handler scheduler) {
+				return null;
+			}
+		}, new Handler(), null, Runnable::run, System::nanoTime);
+	}
+
+	@NonNull
+	@Override
+	protected BleManagerGattCallback getGattCallback() {
+		return new BleManagerGattCallback() {
+			@Override
+			protected boolean isRequiredServiceSupported(@NonNull final BluetoothGatt gatt) {
+				return true;
+			}
+
+			@Override
+			protected void onServicesInvalidated() {
+				// do nothing
+			}
+		};
+	}
+}
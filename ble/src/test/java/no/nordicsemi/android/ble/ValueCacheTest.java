@@ -0,0 +1,177 @@
+/*
+ * Copyright (c) 2018, Nordic Semiconductor
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its contributors may be used to endorse or promote products derived from this
+ * software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE
+ * USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package no.nordicsemi.android.ble;
+
+import android.bluetooth.BluetoothGattCharacteristic;
+
+import org.junit.Test;
+
+import java.util.UUID;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+public class ValueCacheTest {
+	private final BluetoothGattCharacteristic characteristic = newCharacteristic();
+	private final BluetoothGattCharacteristic other = newCharacteristic();
+
+	/**
+	 * Creates a characteristic with a random UUID. The UUID is returned by an overridden
+	 * getter, as methods of the Android framework are not available in unit tests.
+	 */
+	private static BluetoothGattCharacteristic newCharacteristic() {
+		final UUID uuid = UUID.randomUUID();
+		return new BluetoothGattCharacteristic(uuid,
+				BluetoothGattCharacteristic.PROPERTY_READ,
+				BluetoothGattCharacteristic.PERMISSION_READ) {
+			@Override
+			public UUID getUuid() {
+				return uuid;
+			}
+		};
+	}
+
+	@Test
+	public void untracked_notCached() {
+		final ValueCache cache = new ValueCache();
+		cache.put(characteristic, new byte[] { 1 }, false, 0);
+		assertNull(cache.get(characteristic, false, 0));
+		assertEquals(0, cache.getMissCount());
+	}
+
+	@Test
+	public void tracked_hitAndMiss() {
+		final ValueCache cache = new ValueCache();
+		cache.setTimeToLive(characteristic.getUuid(), ValueCache.FOREVER);
+		cache.track(characteristic);
+		assertNull(cache.get(characteristic, false, 0));
+
+		final byte[] value = { 1, 2, 3 };
+		cache.put(characteristic, value, false, 0);
+		value[0] = 9;
+		assertArrayEquals(new byte[] { 1, 2, 3 }, cache.get(characteristic, false, 1000));
+		assertEquals(1, cache.getHitCount());
+		assertEquals(1, cache.getMissCount());
+
+		cache.invalidate(characteristic);
+		assertNull(cache.get(characteristic, false, 0));
+		assertEquals(2, cache.getMissCount());
+	}
+
+	@Test
+	public void tracked_withoutTimeToLive_completesFirstRead() {
+		final ValueCache cache = new ValueCache();
+		cache.track(characteristic);
+		cache.put(characteristic, new byte[] { 1 }, false, 0);
+		assertArrayEquals(new byte[] { 1 }, cache.get(characteristic, false, 1000));
+
+		// Next reads are performed, and their values are not cached.
+		assertNull(cache.get(characteristic, false, 1000));
+		cache.put(characteristic, new byte[] { 2 }, false, 1000);
+		assertNull(cache.get(characteristic, false, 1000));
+		assertEquals(0, cache.size());
+		assertEquals(0, cache.getByteCount());
+	}
+
+	@Test
+	public void tracked_expiresWithTimeToLive() {
+		final ValueCache cache = new ValueCache();
+		cache.track(characteristic);
+		cache.put(characteristic, new byte[] { 1 }, false, 0);
+
+		// The time to live applies also to the value cached before it was set.
+		cache.setTimeToLive(characteristic.getUuid(), 100);
+		assertArrayEquals(new byte[] { 1 }, cache.get(characteristic, false, 50));
+		assertNull(cache.get(characteristic, false, 100));
+		assertEquals(1, cache.getMissCount());
+	}
+
+	@Test
+	public void timeToLive_expires() {
+		final ValueCache cache = new ValueCache();
+		cache.setTimeToLive(characteristic.getUuid(), 100);
+		cache.put(characteristic, new byte[] { 1 }, false, 1000);
+
+		// Only reads marked to use the cache complete from it.
+		assertNull(cache.get(characteristic, false, 1050));
+		assertArrayEquals(new byte[] { 1 }, cache.get(characteristic, true, 1050));
+		assertNull(cache.get(characteristic, true, 1100));
+
+		// A notification refreshes the value.
+		cache.put(characteristic, new byte[] { 2 }, false, 1100);
+		assertArrayEquals(new byte[] { 2 }, cache.get(characteristic, true, 1150));
+		assertEquals(2, cache.getHitCount());
+		assertEquals(1, cache.getMissCount());
+	}
+
+	@Test
+	public void defaultTimeToLive_onlyForMarkedReads() {
+		final ValueCache cache = new ValueCache();
+		cache.setDefaultTimeToLive(100);
+		cache.put(characteristic, new byte[] { 1 }, false, 0);
+		assertEquals(0, cache.size());
+		cache.put(characteristic, new byte[] { 1 }, true, 0);
+		assertEquals(1, cache.size());
+	}
+
+	@Test
+	public void maxBytes_evictsLeastRecentlyUsed() {
+		final ValueCache cache = new ValueCache();
+		cache.setMaxBytes(4);
+		cache.setDefaultTimeToLive(ValueCache.FOREVER);
+		cache.put(characteristic, new byte[] { 1, 2 }, true, 0);
+		cache.put(other, new byte[] { 3, 4 }, true, 0);
+		assertEquals(4, cache.getByteCount());
+
+		// Access the first value, so that the second one is evicted.
+		cache.get(characteristic, true, 0);
+		final BluetoothGattCharacteristic third = newCharacteristic();
+		cache.put(third, new byte[] { 5 }, true, 0);
+		assertNull(cache.get(other, true, 0));
+		assertArrayEquals(new byte[] { 1, 2 }, cache.get(characteristic, true, 0));
+		assertEquals(1, cache.getEvictionCount());
+		assertEquals(3, cache.getByteCount());
+
+		// Values larger than the limit are not cached.
+		cache.put(third, new byte[] { 1, 2, 3, 4, 5 }, true, 0);
+		assertEquals(2, cache.getByteCount());
+		assertEquals(1, cache.size());
+	}
+
+	@Test
+	public void maxBytes_keepsTrackedCharacteristics() {
+		final ValueCache cache = new ValueCache();
+		cache.setMaxBytes(2);
+		cache.setDefaultTimeToLive(ValueCache.FOREVER);
+		cache.track(characteristic);
+		cache.put(characteristic, new byte[] { 1, 2 }, false, 0);
+		cache.put(other, new byte[] { 3, 4 }, true, 0);
+
+		// The value of the tracked characteristic was evicted, but it is still tracked.
+		assertNull(cache.get(characteristic, false, 0));
+		assertEquals(1, cache.getEvictionCount());
+		cache.put(characteristic, new byte[] { 5 }, false, 0);
+		assertArrayEquals(new byte[] { 5 }, cache.get(characteristic, false, 0));
+	}
+}
@@ -0,0 +1,69 @@
+/*
+ * Copyright (c) 2018, Nordic Semiconductor
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its contributors may be used to endorse or promote products derived from this
+ * software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE
+ * USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package no.nordicsemi.android.ble;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+public class WriteRateLimiterTest {
+	private static final long MS = 1_000_000;
+
+	@Test
+	public void bytesPerSecond_pacesPackets() {
+		// 1000 B/s, no burst: a 20-byte packet every 20 ms.
+		final WriteRateLimiter limiter = new WriteRateLimiter(1000, 0, 0);
+		assertEquals(0, limiter.getDelay(0));
+		limiter.onPacketSent(20, 0);
+		assertEquals(20 * MS, limiter.getDelay(0));
+		assertEquals(5 * MS, limiter.getDelay(15 * MS));
+		assertEquals(0, limiter.getDelay(20 * MS));
+		limiter.onPacketSent(20, 20 * MS);
+		assertEquals(0, limiter.getDelay(40 * MS));
+		limiter.onPacketSent(20, 40 * MS);
+
+		assertEquals(1000.0, limiter.getActualBytesPerSecond(), 0.001);
+		assertEquals(50.0, limiter.getActualPacketsPerSecond(), 0.001);
+		assertEquals(2, limiter.getThrottledCount());
+	}
+
+	@Test
+	public void packetsPerSecond_limitsSmallPackets() {
+		final WriteRateLimiter limiter = new WriteRateLimiter(1000, 10, 0);
+		limiter.onPacketSent(1, 0);
+		// The byte bucket would allow the next packet after 1 ms.
+		assertEquals(100 * MS, limiter.getDelay(0));
+	}
+
+	@Test
+	public void burst_allowsUnusedTokens() {
+		// 100 packets per second with 50 ms burst: 5 packets and the current one
+		// may be sent at once.
+		final WriteRateLimiter limiter = new WriteRateLimiter(0, 100, 50);
+		for (int i = 0; i < 6; i++) {
+			assertEquals(0, limiter.getDelay(0));
+			limiter.onPacketSent(20, 0);
+		}
+		assertEquals(10 * MS, limiter.getDelay(0));
+	}
+}